@@ -0,0 +1,60 @@
+package leventebajak.battleships;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarking the turns of the AI over whole games.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AIBenchmark {
+
+    /**
+     * The number of rows and columns of the boards.
+     */
+    @Param({"10", "30", "100"})
+    public int size;
+
+    /**
+     * The mode of the AI.
+     */
+    @Param({"HUNT", "DENSITY", "ENDGAME"})
+    public AI.Mode mode;
+
+    /**
+     * The AI playing the game.
+     */
+    AI ai;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Player.ROWS = size;
+        Player.COLUMNS = size;
+        AI.MODE = mode;
+        newGame();
+    }
+
+    /**
+     * Starts a new game against a freshly placed fleet.
+     */
+    void newGame() {
+        int[] fleet = Benchmarks.fleet(size, size, 17);
+        ai = new AI(new Player("benchmark", fleet), fleet);
+    }
+
+    /**
+     * Benchmarking a single turn of the AI. A new game is started whenever the fleet has been sunk,
+     * so the measurement covers every phase of a game.
+     * @return the index of the guessed tile
+     */
+    @Benchmark
+    public int makeAGuess() {
+        if (ai.opponent.board.shipsRemaining == 0)
+            newGame();
+        ai.makeAGuess();
+        return ai.lastGuess;
+    }
+}
@@ -0,0 +1,53 @@
+package leventebajak.battleships;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the benchmarks with the GC profiler, which reports the allocation rates.
+ * <p>
+ * The benchmarks are in the bench source folder. Compile it together with the sources and the JMH annotation processor,
+ * then run this class. An optional argument is a regular expression selecting the benchmarks, for example {@code Shoot}.
+ */
+public class Benchmarks {
+
+    /**
+     * Runs the benchmarks.
+     * @param args an optional regular expression selecting the benchmarks
+     * @throws RunnerException The benchmarks could not be run.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "leventebajak.battleships.*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .build()).run();
+    }
+
+    /**
+     * Builds a fleet in the proportions of the default one, covering roughly the given fraction of the board.
+     * @param rows the number of rows of the board
+     * @param columns the number of columns of the board
+     * @param density the fraction of the board covered by the fleet, in percent
+     * @return the lengths of the ships, longest first
+     */
+    static int[] fleet(int rows, int columns, int density) {
+        int[] lengths = {5, 4, 3, 3, 2};
+        int target = rows * columns * density / 100;
+        ArrayList<Integer> fleet = new ArrayList<>();
+        for (int tiles = 0; tiles < target; ) {
+            for (int length : lengths)
+                if (length <= Math.max(rows, columns) && tiles < target) {
+                    fleet.add(length);
+                    tiles += length;
+                }
+        }
+        return fleet.stream().sorted((a, b) -> b - a).mapToInt(Integer::intValue).toArray();
+    }
+}
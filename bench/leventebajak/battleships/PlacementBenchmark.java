@@ -0,0 +1,67 @@
+package leventebajak.battleships;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarking the construction of players and the placement of their ships.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlacementBenchmark {
+
+    /**
+     * The number of rows and columns of the board.
+     */
+    @Param({"10", "30", "100"})
+    public int size;
+
+    /**
+     * The fraction of the board covered by the fleet, in percent.
+     */
+    @Param({"5", "10", "17"})
+    public int density;
+
+    /**
+     * The lengths of the ships, longest first.
+     */
+    int[] fleet;
+
+    /**
+     * The source of randomness used for the placement.
+     */
+    Random random;
+
+    @Setup
+    public void setup() {
+        Player.ROWS = size;
+        Player.COLUMNS = size;
+        fleet = Benchmarks.fleet(size, size, density);
+        random = new Random(1);
+    }
+
+    /**
+     * Benchmarking the Player(String, int...) constructor, including its UI components.
+     * @return the new player
+     */
+    @Benchmark
+    public Player newPlayer() {
+        return new Player("benchmark", fleet);
+    }
+
+    /**
+     * Benchmarking the addShip method on its own, placing the whole fleet on an empty board.
+     * @return the board with the fleet on it
+     * @throws NoMoreSpaceException The fleet does not fit on the board.
+     */
+    @Benchmark
+    public Board addShip() throws NoMoreSpaceException {
+        Board board = new Board(size, size);
+        for (int length : fleet)
+            board.addShip(length, random);
+        return board;
+    }
+}
@@ -0,0 +1,62 @@
+package leventebajak.battleships;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarking saving and loading games.
+ * The games have windows, so this benchmark needs a display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SaveBenchmark {
+
+    /**
+     * The number of rows and columns of the boards.
+     */
+    @Param({"10", "30", "100"})
+    public int size;
+
+    /**
+     * The game to save.
+     */
+    Game game;
+
+    /**
+     * The file the game is saved to.
+     */
+    File file;
+
+    @Setup
+    public void setup() throws IOException {
+        Player.ROWS = size;
+        Player.COLUMNS = size;
+        game = new Game(false);
+        file = File.createTempFile("benchmark", ".save");
+        file.deleteOnExit();
+    }
+
+    @TearDown
+    public void tearDown() {
+        game.frame.dispose();
+        file.delete();
+    }
+
+    /**
+     * Benchmarking a round trip of saving the game and loading it back.
+     * @return the loaded game
+     * @throws IOException The file could not be written or read.
+     * @throws ClassNotFoundException Class of a serialized object cannot be found.
+     */
+    @Benchmark
+    public Game roundTrip() throws IOException, ClassNotFoundException {
+        game.save(file);
+        Game loaded = Game.load(file);
+        loaded.frame.dispose();
+        return loaded;
+    }
+}
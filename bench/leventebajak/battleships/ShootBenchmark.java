@@ -0,0 +1,67 @@
+package leventebajak.battleships;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarking the shoot method, including the reveal cascades and the checks of sunken ships.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShootBenchmark {
+
+    /**
+     * The number of rows and columns of the board.
+     */
+    @Param({"10", "30", "100"})
+    public int size;
+
+    /**
+     * A board with a single ship, as long as the board is wide.
+     */
+    Board longShip;
+
+    /**
+     * A board with short ships on every third row and column.
+     */
+    Board manyShips;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        longShip = new Board(size, size);
+        for (int column = 0; column < size; column++)
+            longShip.setShip(longShip.cell(size / 2, column));
+
+        manyShips = new Board(size, size);
+        for (int row = 0; row < size; row += 3)
+            for (int column = 0; column + 1 < size; column += 3) {
+                manyShips.setShip(manyShips.cell(row, column));
+                manyShips.setShip(manyShips.cell(row, column + 1));
+            }
+    }
+
+    /**
+     * Sinking a ship that spans the whole board, one tile at a time.
+     * Every hit checks whether the ship has been sunk, and the last one reveals its surroundings.
+     * @return the sunken board
+     */
+    @Benchmark
+    public Board sinkLongShip() {
+        for (int column = 0; column < size; column++)
+            longShip.shoot(longShip.cell(size / 2, column));
+        return longShip;
+    }
+
+    /**
+     * Shooting every tile of a board full of short ships.
+     * @return the fully discovered board
+     */
+    @Benchmark
+    public Board shootEverything() {
+        for (int cell = 0; cell < manyShips.size(); cell++)
+            manyShips.shoot(cell);
+        return manyShips;
+    }
+}
@@ -1,56 +1,138 @@
 package leventebajak.battleships;
 
-import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.random.RandomGenerator;
 
 /**
  * Custom player, that can automatically make a guess based on previous guesses.
  */
-public class AI extends Player implements Serializable {
+public class AI extends Player {
 
     /**
-     * The player to defeat.
+     * The ways the computer can choose its guesses.
      */
-    public Player opponent;
+    public enum Mode {
+        /**
+         * Guess randomly until a ship is hit, then follow it.
+         */
+        HUNT,
+        /**
+         * Always shoot the tile covered by the most possible ship placements.
+         */
+        DENSITY,
+        /**
+         * Shoot like {@link #DENSITY}, then search for the fewest expected shots once few ships are left.
+         */
+        ENDGAME;
+
+        /**
+         * Creates a strategy of this mode.
+         * @param random the source of randomness used by the strategy
+         * @return the new strategy
+         */
+        Strategy create(RandomGenerator random) {
+            return switch (this) {
+                case HUNT -> new HuntStrategy(random);
+                case DENSITY -> new DensityStrategy(random);
+                case ENDGAME -> new EndgameStrategy(DENSITY.create(random));
+            };
+        }
+
+        /**
+         * Creates a strategy of this mode, that can play on a board.
+         * The density strategy keeps tables the size of the board for every ship length,
+         * and so does the search of the endgame strategy,
+         * so on boards larger than {@link DensityStrategy#MAX_SIZE} a hunt strategy is created instead.
+         * @param random the source of randomness used by the strategy
+         * @param board the opponent's board
+         * @return the new strategy
+         */
+        Strategy create(RandomGenerator random, Board board) {
+            if (this != HUNT && board.size() > DensityStrategy.MAX_SIZE)
+                return HUNT.create(random);
+            return create(random);
+        }
+    }
+
+    /**
+     * The mode of the AIs created from now on.
+     */
+    public static Mode MODE = Mode.ENDGAME;
+
+    /**
+     * The longest time the computer may think about a move in a game, in nanoseconds.
+     */
+    public static long DEADLINE = 250_000_000;
 
     /**
-     * The most recently guessed tile.
+     * The thread the computer thinks on during a game, so that the window stays responsive.
+     * It runs below the normal priority, so that it gives way to the painting of the window.
      */
-    Tile lastGuess;
+    static final ExecutorService THINKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ai-thinker");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
 
     /**
-     * The first discovered tile of the ship.
+     * The player to defeat.
      */
-    Tile shipOrigin;
+    public Player opponent;
 
     /**
-     * The different routes to check for ship tiles.
+     * The way this AI chooses its guesses.
      */
-    private ArrayList<Direction> possibleRoutes;
+    public Strategy strategy;
 
     /**
-     * The route chosen from the possible routes.
+     * The index of the most recently guessed tile, or -1 if there is none.
      */
-    Direction chosenRoute;
+    int lastGuess = -1;
 
     /**
      * Creates an AI-controlled player.
      * @param opponent the player to defeat
      */
     AI(Player opponent) {
-        super("Computer");
-        this.opponent = opponent;
+        this(opponent, FLEET);
     }
 
     /**
-     * Creates an AI-controlled player and places ships on its board.
-     * @param opponent the player to defeat
+     * Creates an AI-controlled player with a board the size of the opponent's and places ships on it.
+     * @param opponent the player to defeat, or null to use a board of the default size
      * @param shipLengths the lengths of the ships
      */
     AI(Player opponent, int... shipLengths) {
-        super("Computer", shipLengths);
+        this(opponent, new SplittableRandom(), shipLengths);
+    }
+
+    /**
+     * Creates an AI-controlled player with a board the size of the opponent's and places ships on it.
+     * @param opponent the player to defeat, or null to use a board of the default size
+     * @param random the source of randomness used for placing the ships and by the strategy
+     * @param shipLengths the lengths of the ships
+     */
+    AI(Player opponent, RandomGenerator random, int... shipLengths) {
+        super("Computer", opponent == null ? new Board(ROWS, COLUMNS)
+                : new Board(opponent.board.rows, opponent.board.columns), random, shipLengths);
         this.opponent = opponent;
+        strategy = MODE.create(random, board);
+    }
+
+    /**
+     * Creates an AI-controlled player with an existing board.
+     * @param name the name of the player
+     * @param board the player's board
+     * @param opponent the player to defeat
+     * @param strategy the way the AI chooses its guesses
+     */
+    AI(String name, Board board, Player opponent, Strategy strategy) {
+        super(name, board);
+        this.opponent = opponent;
+        this.strategy = strategy;
     }
 
     /**
@@ -61,74 +143,53 @@ public class AI extends Player implements Serializable {
         if(opponent == null)
             throw new NullPointerException();
 
-        // If we know about a ship, try to find its remaining tiles
-        if (shipOrigin != null) {
-            // If the chosen route is correct, continue guessing that way
-            if (shipOrigin != lastGuess && lastGuess.isShip) {
-                try {
-                    Tile neighbor = lastGuess.getNeighbor(chosenRoute);
-                    if (!neighbor.isDiscovered) {
-                        neighbor.shoot();
-                        lastGuess = neighbor;
-                        return;
-                    }
-                    else {
-                        chosenRoute = chosenRoute.opposite();
-                        neighbor = shipOrigin.getNeighbor(chosenRoute);
-                        if (!neighbor.isDiscovered) {
-                            neighbor.shoot();
-                            lastGuess = neighbor;
-                            return;
-                        }
-                    }
-                } catch (IndexOutOfBoundsException e) {
-                    chosenRoute = chosenRoute.opposite();
-                    Tile neighbor = shipOrigin.getNeighbor(chosenRoute);
-                    if (!neighbor.isDiscovered) {
-                        neighbor.shoot();
-                        lastGuess = neighbor;
-                        return;
-                    }
-                }
-            }
-            // Otherwise try finding the correct route
-            else {
-                while (possibleRoutes.size() > 0) {
-                    chosenRoute = possibleRoutes.remove(RND.nextInt(0, possibleRoutes.size()));
-                    try {
-                        Tile neighbor = shipOrigin.getNeighbor(chosenRoute);
-                        if (!neighbor.isDiscovered) {
-                            neighbor.shoot();
-                            lastGuess = neighbor;
-                            return;
-                        }
-                    } catch (IndexOutOfBoundsException ignored) {}
-                }
-            }
-            // If the whole ship has been discovered, forget it
-            shipOrigin = null;
-        }
+        long start = Metrics.start();
+        lastGuess = strategy.nextGuess(opponent.board);
+        opponent.shoot(lastGuess);
+        strategy.update(opponent.board, lastGuess);
+        Metrics.GUESS.since(start);
+    }
 
-        // Not knowing where to look, guess a tile randomly
-        do {
-            lastGuess = opponent.getTile(RND.nextInt(0, ROWS), RND.nextInt(0, COLUMNS));
-
-            // If all the tile's neighbors are discovered, then don't guess that, as it cannot be a ship
-            if (!lastGuess.isDiscovered) {
-                try { if (!lastGuess.getNeighbor(Direction.NORTH).isDiscovered) continue;} catch (IndexOutOfBoundsException ignored) {}
-                try { if (!lastGuess.getNeighbor(Direction.SOUTH).isDiscovered) continue;} catch (IndexOutOfBoundsException ignored) {}
-                try { if (!lastGuess.getNeighbor(Direction.WEST).isDiscovered) continue;} catch (IndexOutOfBoundsException ignored) {}
-                try { if (!lastGuess.getNeighbor(Direction.EAST).isDiscovered) continue;} catch (IndexOutOfBoundsException ignored) {}
-                lastGuess = null;
-            }
-        } while (lastGuess == null || lastGuess.isDiscovered);
-
-        // Finally, shoot the chosen tile
-        lastGuess.shoot();
-        // If it was part of a ship, remember it
-        if (lastGuess.isShip) {
-            shipOrigin = lastGuess;
-            possibleRoutes = new ArrayList<>(Arrays.asList(Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST));
-        }
+    /**
+     * Chooses the next guess by a deadline, without shooting it.
+     * Only the strategy is changed, so it can run on another thread,
+     * as long as the boards and the strategy are left alone until the guess is played.
+     * @param deadline the time the guess is needed by, from {@link System#nanoTime()}
+     * @return the index of an undiscovered tile of the opponent's board
+     * @throws NullPointerException The AI has no opponent.
+     */
+    int think(long deadline) throws NullPointerException {
+        if(opponent == null)
+            throw new NullPointerException();
+
+        long start = Metrics.start();
+        int guess = strategy.nextGuess(opponent.board, deadline);
+        Metrics.GUESS.since(start);
+        return guess;
+    }
+
+    /**
+     * Shoots a guess chosen by {@link #think(long)}.
+     * @param cell the index of the tile of the opponent's board
+     * @throws NullPointerException The AI has no opponent.
+     */
+    void play(int cell) throws NullPointerException {
+        lastGuess = cell;
+        opponent.getTile(opponent.board.row(cell), opponent.board.column(cell)).shoot();
+        strategy.update(opponent.board, cell);
+    }
+
+    /**
+     * Chooses a guess without the strategy, for when it failed: the first undiscovered tile of the opponent's board.
+     * @return the index of an undiscovered tile of the opponent's board
+     * @throws NullPointerException The AI has no opponent.
+     * @throws IllegalStateException Every tile of the opponent's board has been discovered.
+     */
+    int scan() throws NullPointerException, IllegalStateException {
+        Board board = opponent.board;
+        for (int cell = 0; cell < board.size(); cell++)
+            if (!board.isDiscovered(cell))
+                return cell;
+        throw new IllegalStateException("Every tile has been discovered.");
     }
 }
@@ -0,0 +1,968 @@
+package leventebajak.battleships;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
+
+/**
+ * Headless model of a player's board.
+ * The ships and the discovered tiles are stored as packed bitboards, one bit per tile,
+ * so the rules of the game can run without any UI components.
+ * <p>
+ * The bitboards are split into chunks of {@link #CHUNK_WORDS} words, and a chunk is only allocated
+ * once one of its tiles becomes part of a ship or discovered. Very large boards, which are mostly
+ * empty water, therefore only take up memory for the areas actually in play.
+ */
+public class Board {
+
+    /**
+     * The number of words in a chunk of the bitboards.
+     */
+    public static final int CHUNK_WORDS = 64;
+
+    /**
+     * The largest number of tiles a board can have.
+     */
+    public static final int MAX_SIZE = Integer.MAX_VALUE / 2;
+
+    /**
+     * The largest board the legal placements of new ships are indexed on, which takes up to 20 bytes
+     * per tile for every length of the ships. On larger boards, where the ships are sparse,
+     * the placements are drawn randomly until a legal one is found.
+     */
+    public static int MAX_INDEXED_SIZE = 1 << 16;
+
+    /**
+     * The largest number of changed tiles listed for the view of the board. If more tiles change
+     * before the view takes them, the whole board is repainted instead.
+     */
+    public static int MAX_CHANGES = 256;
+
+    /**
+     * The number of random placements tried on boards too large to index, before giving up on placing a ship.
+     */
+    public static int MAX_PLACEMENT_ATTEMPTS = 100_000;
+
+    /**
+     * The number of rows the board has.
+     */
+    public final int rows;
+
+    /**
+     * The number of columns the board has.
+     */
+    public final int columns;
+
+    /**
+     * Bitboard of the tiles that are part of a ship, null chunks are empty.
+     */
+    private final long[][] ships;
+
+    /**
+     * Bitboard of the tiles that have been discovered by the opponent, null chunks are empty.
+     */
+    private final long[][] discovered;
+
+    /**
+     * The number of words of the bitboards.
+     */
+    private final int words;
+
+    /**
+     * The lengths of the ships placed on the board, in order of placement.
+     */
+    private final ArrayList<Integer> fleet = new ArrayList<>();
+
+    /**
+     * The number of undiscovered ship tiles remaining on the board.
+     */
+    public int shipsRemaining = 0;
+
+    /**
+     * The legal placements of new ships, built when the first ship is placed.
+     */
+    private PlacementIndex placements;
+
+    /**
+     * The offsets of the neighbors of the tiles, shared by the boards of the same shape.
+     */
+    private NeighborTable neighbors;
+
+    /**
+     * Open addressing table from the tiles of the ships to the indices of their ships, stored as
+     * pairs of a tile and a ship, with -1 marking the empty slots. Null until the ships are identified.
+     */
+    private int[] shipOf;
+
+    /**
+     * The number of tiles in the table of the ships' tiles.
+     */
+    private int shipTiles;
+
+    /**
+     * The tiles of each ship, indexed by the indices of the ships, the first tile first.
+     */
+    private int[][] shipCells;
+
+    /**
+     * The number of undiscovered tiles of each ship, indexed by the indices of the ships.
+     */
+    private int[] hitsLeft;
+
+    /**
+     * The number of ships identified.
+     */
+    private int shipCount;
+
+    /**
+     * The worklist of the tiles to reveal, reused between shots.
+     */
+    private int[] pending;
+
+    /**
+     * The number of tiles in the worklist.
+     */
+    private int pendingCount;
+
+    /**
+     * The tiles discovered, hidden again or made part of a ship since the view last took them, in order.
+     */
+    private int[] changes;
+
+    /**
+     * The number of tiles in the list of the changed tiles.
+     */
+    private int changeCount;
+
+    /**
+     * Whether more tiles changed than {@link #MAX_CHANGES}, or the whole board was replaced,
+     * so every tile has to be assumed changed.
+     */
+    private boolean changedAll;
+
+    /**
+     * Creates an empty board.
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @throws IllegalArgumentException The board has no tiles, or more than {@link #MAX_SIZE}.
+     */
+    Board(int rows, int columns) throws IllegalArgumentException {
+        if (rows <= 0 || columns <= 0 || (long) rows * columns > MAX_SIZE)
+            throw new IllegalArgumentException();
+        this.rows = rows;
+        this.columns = columns;
+        words = (rows * columns + 63) >>> 6;
+        ships = new long[(words + CHUNK_WORDS - 1) / CHUNK_WORDS][];
+        discovered = new long[ships.length][];
+        neighbors = NeighborTable.of(rows, columns);
+    }
+
+    /**
+     * Gets the index of a tile.
+     * @param row the row the tile lies in
+     * @param column the column the tile lies in
+     * @return the index of the tile
+     * @throws IndexOutOfBoundsException The requested tile falls outside the board.
+     */
+    public int cell(int row, int column) throws IndexOutOfBoundsException {
+        if (row < 0 || row >= rows || column < 0 || column >= columns)
+            throw new IndexOutOfBoundsException();
+        return row * columns + column;
+    }
+
+    /**
+     * Gets the row of a tile.
+     * @param cell the index of the tile
+     * @return the row the tile lies in
+     */
+    public int row(int cell) {
+        return cell / columns;
+    }
+
+    /**
+     * Gets the column of a tile.
+     * @param cell the index of the tile
+     * @return the column the tile lies in
+     */
+    public int column(int cell) {
+        return cell % columns;
+    }
+
+    /**
+     * @return the number of tiles on the board
+     */
+    public int size() {
+        return rows * columns;
+    }
+
+    /**
+     * @param cell the index of the tile
+     * @return whether the tile is part of a ship
+     */
+    public boolean isShip(int cell) {
+        return get(ships, cell);
+    }
+
+    /**
+     * @param cell the index of the tile
+     * @return whether the tile has been discovered by the opponent
+     */
+    public boolean isDiscovered(int cell) {
+        return get(discovered, cell);
+    }
+
+    /**
+     * @return the lengths of the ships placed on the board, in order of placement
+     */
+    public List<Integer> fleet() {
+        return Collections.unmodifiableList(fleet);
+    }
+
+    /**
+     * @return the number of words of the bitboards
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * @return the number of chunks of the bitboards
+     */
+    public int chunks() {
+        return discovered.length;
+    }
+
+    /**
+     * Determines whether a chunk of the bitboard of the discovered tiles may contain discovered tiles.
+     * The words of the other chunks are all zero.
+     * @param chunk the index of the chunk, covering the words from {@code CHUNK_WORDS * chunk}
+     * @return whether the chunk has been allocated
+     */
+    public boolean hasDiscovered(int chunk) {
+        return discovered[chunk] != null;
+    }
+
+    /**
+     * Gets a word of the bitboard of the discovered tiles.
+     * Bit {@code i} of word {@code w} belongs to the tile with the index {@code 64 * w + i}.
+     * @param word the index of the word
+     * @return the word of the bitboard
+     */
+    public long discoveredWord(int word) {
+        return word(discovered, word);
+    }
+
+    /**
+     * Finds the first tile of a ship, which is its northernmost or westernmost tile.
+     * @param cell the index of a tile of the ship
+     * @return the index of the first tile of the ship, or -1 if the tile is not part of a ship
+     */
+    public int shipStart(int cell) {
+        if (!isShip(cell))
+            return -1;
+        int ship = shipOf(cell);
+        return shipCells[ship][0];
+    }
+
+    /**
+     * Gets the length of a sunken ship.
+     * @param cell the index of a tile of the ship
+     * @return the length of the ship if all of its tiles have been discovered, otherwise 0
+     */
+    public int sunkLength(int cell) {
+        if (!isShip(cell))
+            return 0;
+        int ship = shipOf(cell);
+        return hitsLeft[ship] == 0 ? shipCells[ship].length : 0;
+    }
+
+    /**
+     * Get the tile's neighbor in a direction.
+     * @param cell the index of the tile
+     * @param direction direction of the required neighbor
+     * @return the index of the neighbor tile
+     * @throws IndexOutOfBoundsException There is no tile in the given direction.
+     */
+    public int getNeighbor(int cell, Direction direction) throws IndexOutOfBoundsException {
+        int neighbor = neighbor(cell, direction);
+        if (neighbor == -1)
+            throw new IndexOutOfBoundsException();
+        return neighbor;
+    }
+
+    /**
+     * Gets the tile's neighbor in a direction, without throwing at the edges of the board.
+     * @param cell the index of the tile
+     * @param direction direction of the required neighbor
+     * @return the index of the neighbor tile, or -1 if there is none
+     */
+    public int neighbor(int cell, Direction direction) {
+        if (neighbors == null)
+            neighbors = NeighborTable.of(rows, columns);
+        return neighbors.neighbor(cell, direction.ordinal());
+    }
+
+    /**
+     * Shoots a tile and reveals neighboring tiles according to the rules.
+     * <p>
+     * The revealed tiles are processed from a worklist instead of recursively, so the cascade cannot overflow
+     * the stack, and a sunken ship is detected by its counter of remaining hits instead of by rescanning it.
+     * @param cell the index of the tile
+     * @return the number of tiles revealed, 0 if the tile was already discovered
+     */
+    public int shoot(int cell) {
+        return shoot(cell, null);
+    }
+
+    /**
+     * Shoots a tile and reveals neighboring tiles according to the rules, reporting every tile revealed.
+     * @param cell the index of the tile
+     * @param revealed receives the indices of the revealed tiles, the shot tile first, or null
+     * @return the number of tiles revealed, 0 if the tile was already discovered
+     */
+    public int shoot(int cell, IntConsumer revealed) {
+        if (isDiscovered(cell))
+            return 0;
+        if (shipOf == null)
+            identifyShips();
+
+        int count = 0;
+        pendingCount = 0;
+        push(cell);
+        while (pendingCount > 0) {
+            int current = pending[--pendingCount];
+            if (isDiscovered(current))
+                continue;
+            set(discovered, current);
+            changed(current);
+            count++;
+            if (revealed != null)
+                revealed.accept(current);
+            boolean ship = isShip(current);
+            if (ship)
+                shipsRemaining--;
+
+            // Next to a discovered ship, the tiles on the sides of the ship's line cannot be ships
+            for (Direction d : Direction.ORTHOGONAL) {
+                int neighbor = neighbor(current, d);
+                if (neighbor == -1 || !isDiscovered(neighbor))
+                    continue;
+                if (ship) {
+                    if (isShip(neighbor))
+                        pushSides(current, d);
+                    pushSides(neighbor, d);
+                } else if (isShip(neighbor))
+                    pushSides(current, d);
+            }
+
+            // If the whole ship has been sunk, reveal all its surrounding tiles
+            if (ship && --hitsLeft[shipOf(current)] == 0)
+                pushHalo(shipOf(current));
+        }
+        return count;
+    }
+
+    /**
+     * If the whole ship has been sunk, reveals all its surrounding tiles.
+     * @param cell the index of a tile of the ship
+     */
+    public void checkSunken(int cell) {
+        if (!isShip(cell) || !isDiscovered(cell))
+            return;
+        int ship = shipOf(cell);
+        if (hitsLeft[ship] != 0)
+            return;
+        for (int tile : shipCells[ship])
+            for (Direction d : Direction.VALUES) {
+                int neighbor = neighbor(tile, d);
+                if (neighbor != -1 && !isDiscovered(neighbor))
+                    shoot(neighbor);
+            }
+    }
+
+    /**
+     * Gets the index of the ship a tile is part of, identifying the ships first if needed.
+     * @param cell the index of a tile of a ship
+     * @return the index of the ship
+     */
+    private int shipOf(int cell) {
+        if (shipOf == null)
+            identifyShips();
+        int mask = shipOf.length / 2 - 1;
+        for (int slot = mix(cell) & mask; ; slot = (slot + 1) & mask)
+            if (shipOf[2 * slot] == cell)
+                return shipOf[2 * slot + 1];
+    }
+
+    /**
+     * Records a ship, giving it the next index.
+     * @param cells the indices of the tiles of the ship, the first one first
+     */
+    private void recordShip(int[] cells) {
+        int ship = shipCount++;
+        if (ship == shipCells.length) {
+            shipCells = Arrays.copyOf(shipCells, 2 * ship);
+            hitsLeft = Arrays.copyOf(hitsLeft, 2 * ship);
+        }
+        shipCells[ship] = cells;
+        for (int cell : cells) {
+            if (!isDiscovered(cell))
+                hitsLeft[ship]++;
+            // Keep the table of the tiles at most half full
+            if (2 * ++shipTiles > shipOf.length / 2)
+                rehash(shipOf.length);
+            insert(cell, ship);
+        }
+    }
+
+    /**
+     * Identifies the ships on the board from its bitboard, for boards whose ships were not placed by
+     * {@link #addShip(int, RandomGenerator)}: every group of touching ship tiles is a ship.
+     */
+    private void identifyShips() {
+        shipOf = new int[2 * 16];
+        Arrays.fill(shipOf, -1);
+        shipCells = new int[4][];
+        hitsLeft = new int[4];
+        shipCount = 0;
+        shipTiles = 0;
+
+        long[][] seen = new long[ships.length][];
+        for (int chunk = 0; chunk < ships.length; chunk++) {
+            if (ships[chunk] == null)
+                continue;
+            for (int word = chunk * CHUNK_WORDS; word < Math.min(words, (chunk + 1) * CHUNK_WORDS); word++) {
+                for (long bits = word(ships, word) & ~word(seen, word); bits != 0; bits = word(ships, word) & ~word(seen, word)) {
+                    // Collect the tiles touching the first unseen ship tile of the word
+                    int first = word << 6 | Long.numberOfTrailingZeros(bits);
+                    set(seen, first);
+                    int[] cells = {first};
+                    int size = 1;
+                    for (int i = 0; i < size; i++)
+                        for (Direction d : Direction.VALUES) {
+                            int neighbor = neighbor(cells[i], d);
+                            if (neighbor != -1 && isShip(neighbor) && !get(seen, neighbor)) {
+                                set(seen, neighbor);
+                                if (size == cells.length)
+                                    cells = Arrays.copyOf(cells, 2 * size);
+                                cells[size++] = neighbor;
+                            }
+                        }
+                    cells = Arrays.copyOf(cells, size);
+                    Arrays.sort(cells);
+                    recordShip(cells);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a tile of a ship into the table of the ships' tiles.
+     * @param cell the index of the tile
+     * @param ship the index of the ship
+     */
+    private void insert(int cell, int ship) {
+        int mask = shipOf.length / 2 - 1;
+        int slot = mix(cell) & mask;
+        while (shipOf[2 * slot] != -1)
+            slot = (slot + 1) & mask;
+        shipOf[2 * slot] = cell;
+        shipOf[2 * slot + 1] = ship;
+    }
+
+    /**
+     * Doubles the table of the ships' tiles.
+     * @param length the current length of the table
+     */
+    private void rehash(int length) {
+        int[] old = shipOf;
+        shipOf = new int[2 * length];
+        Arrays.fill(shipOf, -1);
+        for (int slot = 0; slot < old.length; slot += 2)
+            if (old[slot] != -1)
+                insert(old[slot], old[slot + 1]);
+    }
+
+    /**
+     * Scrambles the index of a tile for the table of the ships' tiles.
+     * @param cell the index of the tile
+     * @return the hash of the index
+     */
+    private static int mix(int cell) {
+        int h = cell * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Adds a tile to the worklist of the tiles to reveal, if it has not been discovered yet.
+     * @param cell the index of the tile, or -1 for none
+     */
+    private void push(int cell) {
+        if (cell == -1 || isDiscovered(cell))
+            return;
+        if (pending == null)
+            pending = new int[16];
+        else if (pendingCount == pending.length)
+            pending = Arrays.copyOf(pending, 2 * pendingCount);
+        pending[pendingCount++] = cell;
+    }
+
+    /**
+     * Adds a tile to the list of the changed tiles, or gives up listing them once there are too many.
+     * @param cell the index of the tile
+     */
+    private void changed(int cell) {
+        if (changedAll)
+            return;
+        if (changeCount == MAX_CHANGES) {
+            changedAll = true;
+            return;
+        }
+        if (changes == null)
+            changes = new int[Math.min(16, MAX_CHANGES)];
+        else if (changeCount == changes.length)
+            changes = Arrays.copyOf(changes, Math.min(2 * changeCount, MAX_CHANGES));
+        changes[changeCount++] = cell;
+    }
+
+    /**
+     * Hands the tiles changed since the last call over to the view of the board, and forgets them.
+     * @param changed receives the indices of the changed tiles, in the order they changed, some maybe more than once
+     * @return whether the changed tiles were listed, false if too many changed,
+     * so every tile has to be assumed changed
+     */
+    boolean takeChanges(IntConsumer changed) {
+        boolean listed = !changedAll;
+        if (listed)
+            for (int i = 0; i < changeCount; i++)
+                changed.accept(changes[i]);
+        changeCount = 0;
+        changedAll = false;
+        return listed;
+    }
+
+    /**
+     * Adds the two tiles beside a tile, perpendicular to a direction, to the worklist.
+     * @param cell the index of the tile
+     * @param direction the direction
+     */
+    private void pushSides(int cell, Direction direction) {
+        push(neighbor(cell, direction.right()));
+        push(neighbor(cell, direction.left()));
+    }
+
+    /**
+     * Adds every tile around a ship to the worklist.
+     * @param ship the index of the ship
+     */
+    private void pushHalo(int ship) {
+        for (int tile : shipCells[ship])
+            for (Direction d : Direction.VALUES)
+                push(neighbor(tile, d));
+    }
+
+    /**
+     * Determines whether a ship can be placed on a tile, meaning that it
+     * doesn't already have any neighboring ships, and it is not a ship either.
+     * @param cell the index of the tile
+     * @return whether a ship can be placed on the tile
+     */
+    public boolean validPlacement(int cell) {
+        if (isShip(cell))
+            return false;
+
+        for (Direction d : Direction.VALUES) {
+            int neighbor = neighbor(cell, d);
+            if (neighbor != -1 && isShip(neighbor))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Places a new ship on the board, chosen uniformly from all the legal placements.
+     *
+     * @param shipLength the length of the ship to be placed
+     * @param random the source of randomness used for choosing the placement
+     * @throws IllegalArgumentException The ship is too long to fit on the board, or has a length of less than two.
+     * @throws NoMoreSpaceException There is not enough space left on the board to place the ship.
+     */
+    public void addShip(int shipLength, RandomGenerator random) throws IllegalArgumentException, NoMoreSpaceException {
+        // If the ship is too long to fit on the board, then don't even try placing it
+        if (shipLength <= 1 || (shipLength > rows && shipLength > columns))
+            throw new IllegalArgumentException();
+
+        int placement;
+        if (size() <= MAX_INDEXED_SIZE) {
+            if (placements == null)
+                placements = new PlacementIndex(this);
+            placement = placements.pick(shipLength, random);
+        } else
+            placement = drawPlacement(shipLength, random);
+        int start = placement >>> 1;
+        boolean vertical = (placement & 1) == 1;
+
+        // Placing the ship on the board
+        for (int i = 0; i < shipLength; i++)
+            set(ships, start + i * (vertical ? columns : 1));
+        if (placements != null)
+            placements.stamp(start, shipLength, vertical);
+        if (shipOf != null) {
+            int[] cells = new int[shipLength];
+            for (int i = 0; i < shipLength; i++)
+                cells[i] = start + i * (vertical ? columns : 1);
+            recordShip(cells);
+        }
+        fleet.add(shipLength);
+        shipsRemaining += shipLength;
+    }
+
+    /**
+     * Draws random placements of a ship until a legal one is found, for boards too large to index.
+     * Every placement that fits on the board is drawn with the same probability,
+     * so the legal ones are chosen uniformly as well.
+     * @param length the length of the ship
+     * @param random the source of randomness
+     * @return the placement, encoded as {@code 2 * start + (vertical ? 1 : 0)}
+     * @throws NoMoreSpaceException No legal placement was found in {@link #MAX_PLACEMENT_ATTEMPTS} attempts.
+     */
+    private int drawPlacement(int length, RandomGenerator random) throws NoMoreSpaceException {
+        long horizontal = columns >= length ? (long) rows * (columns - length + 1) : 0;
+        long vertical = rows >= length ? (long) (rows - length + 1) * columns : 0;
+        attempts:
+        for (int attempt = 0; attempt < MAX_PLACEMENT_ATTEMPTS; attempt++) {
+            long pick = random.nextLong(horizontal + vertical);
+            boolean down = pick >= horizontal;
+            int start = down
+                    ? cell((int) ((pick - horizontal) / columns), (int) ((pick - horizontal) % columns))
+                    : cell((int) (pick / (columns - length + 1)), (int) (pick % (columns - length + 1)));
+            for (int i = 0; i < length; i++)
+                if (!validPlacement(start + i * (down ? columns : 1)))
+                    continue attempts;
+            return 2 * start + (down ? 1 : 0);
+        }
+        throw new NoMoreSpaceException();
+    }
+
+    /**
+     * @return the number of bytes the board takes up when written
+     */
+    int bytes() {
+        return 4 + 4 + 2 + 2 * fleet.size() + bytes(ships) + bytes(discovered);
+    }
+
+    /**
+     * Writes the board: its dimensions, the lengths of its ships and its bitboards.
+     * @param buffer the buffer to write to
+     */
+    void write(ByteBuffer buffer) {
+        buffer.putInt(rows).putInt(columns);
+        buffer.putShort((short) fleet.size());
+        for (int length : fleet)
+            buffer.putShort((short) length);
+        write(buffer, ships);
+        write(buffer, discovered);
+    }
+
+    /**
+     * Reads a board written by {@link #write(ByteBuffer)}.
+     * @param buffer the buffer to read from
+     * @return the board
+     * @throws IllegalArgumentException The board has no tiles.
+     * @throws java.nio.BufferUnderflowException The buffer ended before the board.
+     */
+    static Board read(ByteBuffer buffer) throws IllegalArgumentException {
+        return read(buffer, true);
+    }
+
+    /**
+     * Reads a board written by {@link #write(ByteBuffer)}, or by older versions.
+     * @param buffer the buffer to read from
+     * @param sparse whether the bitboards may be written sparsely, false for boards written by older versions,
+     *               which always wrote every word
+     * @return the board
+     * @throws IllegalArgumentException The board has no tiles, or its bitboards are corrupt.
+     * @throws java.nio.BufferUnderflowException The buffer ended before the board.
+     */
+    static Board read(ByteBuffer buffer, boolean sparse) throws IllegalArgumentException {
+        Board board = new Board(buffer.getInt(), buffer.getInt());
+        for (int i = buffer.getShort(); i > 0; i--)
+            board.fleet.add((int) buffer.getShort());
+        board.read(buffer, board.ships, sparse);
+        board.read(buffer, board.discovered, sparse);
+        for (int chunk = 0; chunk < board.ships.length; chunk++)
+            if (board.ships[chunk] != null)
+                for (int word = 0; word < CHUNK_WORDS; word++) {
+                    long found = board.discovered[chunk] == null ? 0 : board.discovered[chunk][word];
+                    board.shipsRemaining += Long.bitCount(board.ships[chunk][word] & ~found);
+                }
+        return board;
+    }
+
+    /**
+     * Gets the number of bytes a bitboard takes up when written. A bitboard is written densely as all of its words,
+     * or sparsely as the number of non-zero words followed by their indices and values, whichever is shorter.
+     * @param bits the bitboard
+     * @return the number of bytes
+     */
+    private int bytes(long[][] bits) {
+        long nonZero = nonZero(bits);
+        return 1 + (int) Math.min(8L * words, 4 + 12 * nonZero);
+    }
+
+    /**
+     * Writes a bitboard, densely or sparsely, whichever is shorter.
+     * @param buffer the buffer to write to
+     * @param bits the bitboard
+     */
+    private void write(ByteBuffer buffer, long[][] bits) {
+        long nonZero = nonZero(bits);
+        if (8L * words <= 4 + 12 * nonZero) {
+            buffer.put((byte) 0);
+            for (int word = 0; word < words; word++)
+                buffer.putLong(word(bits, word));
+        } else {
+            buffer.put((byte) 1);
+            buffer.putInt((int) nonZero);
+            for (int chunk = 0; chunk < bits.length; chunk++)
+                if (bits[chunk] != null)
+                    for (int word = 0; word < CHUNK_WORDS; word++)
+                        if (bits[chunk][word] != 0)
+                            buffer.putInt(chunk * CHUNK_WORDS + word).putLong(bits[chunk][word]);
+        }
+    }
+
+    /**
+     * Reads a bitboard written by {@link #write(ByteBuffer, long[][])}.
+     * @param buffer the buffer to read from
+     * @param bits the empty bitboard to read into
+     * @param sparse whether the bitboard may be written sparsely, if not, it has no leading byte
+     * @throws IllegalArgumentException The bitboard is corrupt.
+     */
+    private void read(ByteBuffer buffer, long[][] bits, boolean sparse) throws IllegalArgumentException {
+        byte encoding = sparse ? buffer.get() : 0;
+        if (encoding == 0) {
+            for (int word = 0; word < words; word++) {
+                long value = buffer.getLong();
+                if (value != 0)
+                    chunk(bits, word)[word % CHUNK_WORDS] = value;
+            }
+        } else if (encoding == 1) {
+            for (int i = buffer.getInt(); i > 0; i--) {
+                int word = buffer.getInt();
+                if (word < 0 || word >= words)
+                    throw new IllegalArgumentException();
+                chunk(bits, word)[word % CHUNK_WORDS] = buffer.getLong();
+            }
+        } else
+            throw new IllegalArgumentException();
+    }
+
+    /**
+     * @param bits the bitboard
+     * @return the number of non-zero words of the bitboard
+     */
+    private static long nonZero(long[][] bits) {
+        long count = 0;
+        for (long[] chunk : bits)
+            if (chunk != null)
+                for (long word : chunk)
+                    if (word != 0)
+                        count++;
+        return count;
+    }
+
+    /**
+     * Marks a tile as part of a ship, without any placement checks.
+     * @param cell the index of the tile
+     */
+    void setShip(int cell) {
+        placements = null;
+        shipOf = null;
+        if (!isShip(cell)) {
+            set(ships, cell);
+            changed(cell);
+            if (!isDiscovered(cell))
+                shipsRemaining++;
+        }
+    }
+
+    /**
+     * Makes the ships on the board its fleet, for boards whose ships were set tile by tile with {@link #setShip(int)}:
+     * every group of touching ship tiles is a ship, and the longest ones are taken to be placed first.
+     */
+    void identifyFleet() {
+        if (shipOf == null)
+            identifyShips();
+        fleet.clear();
+        for (int ship = 0; ship < shipCount; ship++)
+            fleet.add(shipCells[ship].length);
+        fleet.sort(Comparator.reverseOrder());
+    }
+
+    /**
+     * Restores the state of another board of the same shape, reusing the allocated chunks.
+     * @param from the board to restore
+     * @throws IllegalArgumentException The boards have different shapes.
+     */
+    void restore(Board from) throws IllegalArgumentException {
+        if (from.rows != rows || from.columns != columns)
+            throw new IllegalArgumentException();
+        restore(from.ships, ships);
+        restore(from.discovered, discovered);
+        fleet.clear();
+        fleet.addAll(from.fleet);
+        shipsRemaining = from.shipsRemaining;
+        placements = null;
+        shipOf = null;
+        changedAll = true;
+    }
+
+    /**
+     * Removes every ship and hides every tile, so the board can be reused for a new game.
+     * The allocated chunks, the index of the legal placements and the table of the ships' tiles are kept
+     * and emptied in place, so placing a new fleet allocates next to nothing.
+     */
+    void clear() {
+        clear(ships);
+        clear(discovered);
+        fleet.clear();
+        shipsRemaining = 0;
+        if (placements != null)
+            placements.reset();
+        if (shipOf != null) {
+            // The ships placed from now on are recorded as they are placed
+            Arrays.fill(shipOf, -1);
+            Arrays.fill(hitsLeft, 0);
+            shipCount = 0;
+            shipTiles = 0;
+        }
+        changedAll = true;
+    }
+
+    /**
+     * Zeroes the allocated chunks of a bitboard.
+     * @param bits the bitboard
+     */
+    private static void clear(long[][] bits) {
+        for (long[] chunk : bits)
+            if (chunk != null)
+                Arrays.fill(chunk, 0);
+    }
+
+    /**
+     * Copies a bitboard into another one of the same size.
+     * @param from the bitboard to copy
+     * @param to the bitboard to overwrite
+     */
+    private static void restore(long[][] from, long[][] to) {
+        for (int chunk = 0; chunk < from.length; chunk++) {
+            if (from[chunk] == null) {
+                if (to[chunk] != null)
+                    Arrays.fill(to[chunk], 0);
+            } else if (to[chunk] == null)
+                to[chunk] = from[chunk].clone();
+            else
+                System.arraycopy(from[chunk], 0, to[chunk], 0, CHUNK_WORDS);
+        }
+    }
+
+    /**
+     * Creates the copy of a remote opponent's board, that is only known from the tiles revealed by the shots.
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @param fleet the lengths of the opponent's ships
+     * @return the board without any known tiles
+     * @throws IllegalArgumentException The board has no tiles, or more than {@link #MAX_SIZE}.
+     */
+    static Board mirror(int rows, int columns, int[] fleet) throws IllegalArgumentException {
+        Board board = new Board(rows, columns);
+        for (int length : fleet) {
+            board.fleet.add(length);
+            board.shipsRemaining += length;
+        }
+        return board;
+    }
+
+    /**
+     * Marks a tile of a copied board as discovered, as reported by its owner.
+     * @param cell the index of the tile
+     * @param ship whether the tile is part of a ship
+     */
+    void reveal(int cell, boolean ship) {
+        if (isDiscovered(cell))
+            return;
+        shipOf = null;
+        set(discovered, cell);
+        changed(cell);
+        if (ship) {
+            set(ships, cell);
+            shipsRemaining--;
+        }
+    }
+
+    /**
+     * Flips tiles of a word of the bitboard of the discovered tiles, keeping the counters of the ships in step.
+     * Flipping the tiles revealed by shots hides them again, and flipping them once more reveals them again.
+     * @param word the index of the word
+     * @param mask the bits of the tiles to flip
+     */
+    void toggle(int word, long mask) {
+        long[] chunk = chunk(discovered, word);
+        long before = chunk[word % CHUNK_WORDS];
+        chunk[word % CHUNK_WORDS] = before ^ mask;
+        for (long bits = mask; bits != 0; bits &= bits - 1)
+            changed(word << 6 | Long.numberOfTrailingZeros(bits));
+        for (long bits = mask & word(ships, word); bits != 0; bits &= bits - 1) {
+            int cell = word << 6 | Long.numberOfTrailingZeros(bits);
+            int change = (before & bits & -bits) != 0 ? 1 : -1;
+            shipsRemaining += change;
+            if (shipOf != null)
+                hitsLeft[shipOf(cell)] += change;
+        }
+    }
+
+    /**
+     * Reads a word of a bitboard.
+     * @param bits the bitboard
+     * @param word the index of the word
+     * @return the word, 0 if its chunk has not been allocated
+     */
+    private static long word(long[][] bits, int word) {
+        long[] chunk = bits[word / CHUNK_WORDS];
+        return chunk == null ? 0 : chunk[word % CHUNK_WORDS];
+    }
+
+    /**
+     * Gets the chunk of a bitboard containing a word, allocating it if needed.
+     * @param bits the bitboard
+     * @param word the index of the word
+     * @return the chunk
+     */
+    private static long[] chunk(long[][] bits, int word) {
+        long[] chunk = bits[word / CHUNK_WORDS];
+        if (chunk == null)
+            chunk = bits[word / CHUNK_WORDS] = new long[CHUNK_WORDS];
+        return chunk;
+    }
+
+    /**
+     * Reads a bit of a bitboard.
+     * @param bits the bitboard
+     * @param index the index of the bit
+     * @return whether the bit is set
+     */
+    private static boolean get(long[][] bits, int index) {
+        return (word(bits, index >>> 6) & 1L << index) != 0;
+    }
+
+    /**
+     * Sets a bit of a bitboard.
+     * @param bits the bitboard
+     * @param index the index of the bit
+     */
+    private static void set(long[][] bits, int index) {
+        chunk(bits, index >>> 6)[(index >>> 6) % CHUNK_WORDS] |= 1L << index;
+    }
+}
@@ -0,0 +1,244 @@
+package leventebajak.battleships;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.Serial;
+
+/**
+ * Component displaying a player's board.
+ * <p>
+ * The whole board is painted from the model in a single pass, only the tiles inside the clip are drawn.
+ * Mouse and keyboard input is mapped to tiles by arithmetic. After a shot only the tiles the board lists
+ * as changed are repainted, in the single rectangle bounding them, so the cost of a turn
+ * does not grow with the size of the board.
+ */
+public class BoardView extends JComponent {
+
+    /**
+     * The serial version of the component.
+     */
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The largest size of a tile in pixels.
+     */
+    public static int MAX_TILE_SIZE = 50;
+
+    /**
+     * The smallest size of a tile in pixels.
+     */
+    public static int MIN_TILE_SIZE = 6;
+
+    /**
+     * The size of the whole board in pixels the size of the tiles is chosen for, if it fits the limits.
+     */
+    public static int PREFERRED_BOARD_SIZE = 500;
+
+    /**
+     * The player whose board is displayed.
+     */
+    private final Player owner;
+
+    /**
+     * The size of a tile in pixels.
+     */
+    final int tileSize;
+
+    /**
+     * The bounds of the tiles changed since the last repaint: the first and last rows and columns,
+     * the first ones past the last ones while there are none.
+     */
+    private int top, bottom, left, right;
+
+    /**
+     * Whether the undiscovered tiles are revealed.
+     */
+    private boolean revealed = false;
+
+    /**
+     * Creates the view of a player's board.
+     * @param owner the player whose board is displayed
+     */
+    BoardView(Player owner) {
+        this.owner = owner;
+        Board board = owner.board;
+        tileSize = Math.max(MIN_TILE_SIZE,
+                Math.min(MAX_TILE_SIZE, PREFERRED_BOARD_SIZE / Math.max(board.rows, board.columns)));
+        // The first painting covers the whole board anyway
+        board.takeChanges(cell -> {});
+        setPreferredSize(new Dimension(board.columns * tileSize + 1, board.rows * tileSize + 1));
+        setFont(new Font(Font.SANS_SERIF, Font.BOLD, tileSize * 3 / 5));
+        setFocusable(true);
+        setOpaque(true);
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (!isEnabled())
+                    return;
+                requestFocusInWindow();
+                int row = e.getY() / tileSize, column = e.getX() / tileSize;
+                if (row < board.rows && column < board.columns)
+                    select(board.cell(row, column));
+            }
+        });
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!isEnabled())
+                    return;
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    if (Game.endRoundButton != null && Game.endRoundButton.isEnabled())
+                        Game.endRoundButton.doClick();
+                    return;
+                }
+                Direction direction = switch (e.getKeyCode()) {
+                    case KeyEvent.VK_UP -> Direction.NORTH;
+                    case KeyEvent.VK_DOWN -> Direction.SOUTH;
+                    case KeyEvent.VK_LEFT -> Direction.WEST;
+                    case KeyEvent.VK_RIGHT -> Direction.EAST;
+                    default -> null;
+                };
+                if (direction == null)
+                    return;
+                if (owner.selected == null)
+                    select(0);
+                else {
+                    int neighbor = board.neighbor(owner.selected.cell(), direction);
+                    if (neighbor != -1)
+                        select(neighbor);
+                }
+            }
+        });
+    }
+
+    /**
+     * Selects a tile for the opponent to shoot.
+     * @param cell the index of the tile
+     */
+    void select(int cell) {
+        deselect();
+        owner.selected = owner.getTile(owner.board.row(cell), owner.board.column(cell));
+        repaintTile(cell);
+        scrollRectToVisible(bounds(cell));
+        if (Game.endRoundButton != null)
+            Game.endRoundButton.setEnabled(!owner.board.isDiscovered(cell));
+    }
+
+    /**
+     * Clears the selection of the opponent.
+     */
+    void deselect() {
+        if (owner.selected != null)
+            repaintTile(owner.selected.cell());
+        owner.selected = null;
+    }
+
+    /**
+     * Reveals or hides the undiscovered tiles.
+     * @param revealed whether the undiscovered tiles should be revealed
+     */
+    void setRevealed(boolean revealed) {
+        if (this.revealed != revealed) {
+            this.revealed = revealed;
+            repaint();
+        }
+    }
+
+    /**
+     * Repaints the tiles discovered or hidden again since the last time the board was painted,
+     * all of them in a single rectangle.
+     */
+    void refresh() {
+        Board board = owner.board;
+        top = board.rows;
+        left = board.columns;
+        bottom = right = -1;
+        if (!board.takeChanges(this::changed)) {
+            repaint();
+            return;
+        }
+        if (bottom >= top)
+            repaint(left * tileSize, top * tileSize,
+                    (right - left + 1) * tileSize + 1, (bottom - top + 1) * tileSize + 1);
+    }
+
+    /**
+     * Extends the bounds of the changed tiles to a tile.
+     * @param cell the index of the tile
+     */
+    private void changed(int cell) {
+        int row = owner.board.row(cell), column = owner.board.column(cell);
+        top = Math.min(top, row);
+        bottom = Math.max(bottom, row);
+        left = Math.min(left, column);
+        right = Math.max(right, column);
+    }
+
+    /**
+     * @param cell the index of the tile
+     * @return the rectangle the tile is painted in
+     */
+    Rectangle bounds(int cell) {
+        return new Rectangle(owner.board.column(cell) * tileSize, owner.board.row(cell) * tileSize,
+                tileSize + 1, tileSize + 1);
+    }
+
+    /**
+     * Repaints a single tile.
+     * @param cell the index of the tile
+     */
+    private void repaintTile(int cell) {
+        repaint(owner.board.column(cell) * tileSize, owner.board.row(cell) * tileSize, tileSize + 1, tileSize + 1);
+    }
+
+    /**
+     * Gets the color a tile is painted with.
+     * @param cell the index of the tile
+     * @return the color of the tile
+     */
+    Color color(int cell) {
+        Board board = owner.board;
+        if (board.isDiscovered(cell) || revealed)
+            return board.isShip(cell) ? Tile.SHIP_COLOR : Tile.WATER_COLOR;
+        if (owner.selected != null && owner.selected.cell() == cell)
+            return Tile.SELECTED_COLOR;
+        return Tile.UNDISCOVERED_COLOR;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Board board = owner.board;
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(getSize());
+        int firstRow = Math.max(0, clip.y / tileSize);
+        int lastRow = Math.min(board.rows - 1, (clip.y + clip.height) / tileSize);
+        int firstColumn = Math.max(0, clip.x / tileSize);
+        int lastColumn = Math.min(board.columns - 1, (clip.x + clip.width) / tileSize);
+
+        g.setFont(getFont());
+        FontMetrics metrics = g.getFontMetrics();
+        int markX = (tileSize - metrics.stringWidth("X")) / 2;
+        int markY = (tileSize - metrics.getHeight()) / 2 + metrics.getAscent();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = board.cell(row, column);
+                int x = column * tileSize, y = row * tileSize;
+                g.setColor(color(cell));
+                g.fillRect(x, y, tileSize, tileSize);
+                g.setColor(Color.BLACK);
+                g.drawRect(x, y, tileSize, tileSize);
+                if (board.isDiscovered(cell) && tileSize >= 12) {
+                    g.setColor(Color.RED);
+                    g.drawString("X", x + markX, y + markY);
+                }
+            }
+        }
+    }
+}
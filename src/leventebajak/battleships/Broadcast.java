@@ -0,0 +1,450 @@
+package leventebajak.battleships;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * In-process event bus broadcasting the shots of the local games to any number of read-only spectators.
+ * <p>
+ * The game publishes typed events on its own thread, and every subscriber has its own bounded ring buffer,
+ * written by the game and read by the subscriber without any locks. Publishing never waits for a subscriber:
+ * an event that does not fit a full ring is dropped, and the subscriber is resynced instead.
+ * Its ring is emptied, and it is handed a snapshot of the game first: the events that rebuild the boards
+ * as they are, preceded by a {@link Kind#RESET} event. The bus keeps these events in an append-only log
+ * as the game goes on, that the subscribers read without taking any lock: a snapshot is a prefix of the log,
+ * not a copy of it, and the events of the ring that the snapshot already contains are skipped.
+ * <p>
+ * An event is packed into a long in the rings: its kind, its board and its two values.
+ */
+public class Broadcast {
+
+    /**
+     * The number of events the ring of a subscriber holds, a power of two.
+     */
+    public static int CAPACITY = 1024;
+
+    /**
+     * The kinds of the events.
+     */
+    public enum Kind {
+        /**
+         * A board is shown: its number of rows is the cell of the event, and its number of columns the length.
+         */
+        START,
+        /**
+         * A tile of the board is shot.
+         */
+        SHOT,
+        /**
+         * The shot tile is part of a ship.
+         */
+        HIT,
+        /**
+         * The shot tile is water.
+         */
+        MISS,
+        /**
+         * A water tile is revealed by the rules, next to a hit or around a sunk ship.
+         */
+        REVEALED,
+        /**
+         * A ship of the board is sunk: its first tile is the cell and its length the length of the event.
+         */
+        SUNK,
+        /**
+         * All the ships of the board are sunk, so the owner of the other board won.
+         */
+        OVER,
+        /**
+         * The events before are void, and the boards are rebuilt from the events after.
+         */
+        RESET;
+
+        /**
+         * The kinds by their ordinals.
+         */
+        static final Kind[] VALUES = values();
+    }
+
+    /**
+     * An event of a game.
+     * @param kind the kind of the event
+     * @param board the index of the board, 0 or 1
+     * @param cell the index of the tile, or the first value of the event
+     * @param length the length of the sunk ship, or the second value of the event
+     */
+    public record Event(Kind kind, int board, int cell, int length) {
+
+        /**
+         * Packs the event into a long: the kind in its top three bits, then the board, the cell and the length,
+         * in 30 bits each, as no board has more tiles than {@link Board#MAX_SIZE}.
+         * @return the packed event
+         */
+        long pack() {
+            return (long) kind.ordinal() << 61 | (long) board << 60 | (long) cell << 30 | length;
+        }
+
+        /**
+         * Unpacks an event packed by {@link #pack()}.
+         * @param packed the packed event
+         * @return the event
+         */
+        static Event unpack(long packed) {
+            return new Event(Kind.VALUES[(int) (packed >>> 61)], (int) (packed >>> 60) & 1,
+                    (int) (packed >>> 30) & 0x3FFFFFFF, (int) packed & 0x3FFFFFFF);
+        }
+    }
+
+    /**
+     * The subscribers.
+     */
+    private final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The boards of the game, or null before the first game.
+     */
+    private final Board[] boards = new Board[2];
+
+    /**
+     * The events that rebuild the boards as they are. Only the publisher writes it, under the lock of the bus.
+     */
+    private volatile Log log = new Log(new long[64], 0);
+
+    /**
+     * An append-only log of packed events, read by the subscribers without locks. The events below the count
+     * are never changed: the log is copied into a new one when it is full, and replaced when the boards are reset.
+     */
+    private static final class Log {
+
+        /**
+         * The packed events.
+         */
+        final long[] events;
+
+        /**
+         * The number of the resets of the boards before this log was started, for telling the logs apart.
+         */
+        final int generation;
+
+        /**
+         * The number of events of the log.
+         */
+        volatile int count;
+
+        /**
+         * Creates a log.
+         * @param events the packed events
+         * @param generation the number of the resets of the boards before this log was started
+         */
+        Log(long[] events, int generation) {
+            this.events = events;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * The number of events published, for the statistics.
+     */
+    private long published;
+
+    /**
+     * Shows the boards of a game to the spectators, resyncing them all.
+     * It must be called again whenever the boards change other than by shots, to keep the spectators in step.
+     * @param first the first board
+     * @param second the second board
+     */
+    public synchronized void reset(Board first, Board second) {
+        boards[0] = first;
+        boards[1] = second;
+        // The subscribers may still read the old log, so a new one is started
+        log = new Log(new long[64], log.generation + 1);
+        for (int index = 0; index < 2; index++) {
+            Board board = boards[index];
+            record(new Event(Kind.START, index, board.rows, board.columns).pack());
+            for (int word = 0; word < board.words(); word++)
+                for (long bits = board.discoveredWord(word); bits != 0; bits &= bits - 1) {
+                    int cell = word << 6 | Long.numberOfTrailingZeros(bits);
+                    if (!board.isShip(cell))
+                        record(new Event(Kind.REVEALED, index, cell, 0).pack());
+                    else {
+                        record(new Event(Kind.HIT, index, cell, 0).pack());
+                        if (board.shipStart(cell) == cell && board.sunkLength(cell) > 0)
+                            record(new Event(Kind.SUNK, index, cell, board.sunkLength(cell)).pack());
+                    }
+                }
+            if (board.shipsRemaining == 0 && !board.fleet().isEmpty())
+                record(new Event(Kind.OVER, index, 0, 0).pack());
+        }
+        for (Subscription subscription : subscribers)
+            subscription.overflowed = true;
+    }
+
+    /**
+     * Re-shows the boards of the game to the spectators, after they changed other than by shots.
+     */
+    public synchronized void reset() {
+        if (boards[0] != null)
+            reset(boards[0], boards[1]);
+    }
+
+    /**
+     * Publishes a shot, before the board is shot.
+     * @param board the shot board
+     * @param cell the index of the shot tile
+     * @return publishes the tiles revealed by the shot, it has to be passed to {@link Board#shoot(int, IntConsumer)},
+     * then {@link #landed(Board, int)} has to be called; or null if the board is not shown
+     */
+    IntConsumer shot(Board board, int cell) {
+        int index = index(board);
+        if (index == -1)
+            return null;
+        return revealed -> {
+            if (revealed == cell) {
+                publish(new Event(Kind.SHOT, index, cell, 0));
+                publish(new Event(board.isShip(cell) ? Kind.HIT : Kind.MISS, index, cell, 0));
+            } else
+                publish(new Event(Kind.REVEALED, index, revealed, 0));
+        };
+    }
+
+    /**
+     * Publishes whether a shot sank a ship, and whether it sank the last one, after the board is shot.
+     * @param board the shot board
+     * @param cell the index of the shot tile
+     */
+    void landed(Board board, int cell) {
+        int index = index(board);
+        int length = board.sunkLength(cell);
+        if (index == -1 || length == 0)
+            return;
+        publish(new Event(Kind.SUNK, index, board.shipStart(cell), length));
+        if (board.shipsRemaining == 0)
+            publish(new Event(Kind.OVER, index, 0, 0));
+    }
+
+    /**
+     * @param board a board
+     * @return the index of the board among the boards shown, or -1 if it is not shown
+     */
+    private int index(Board board) {
+        return board == boards[0] ? 0 : board == boards[1] ? 1 : -1;
+    }
+
+    /**
+     * Publishes an event to every subscriber, without waiting for any of them.
+     * @param event the event
+     */
+    public synchronized void publish(Event event) {
+        long packed = event.pack();
+        long position = record(packed);
+        published++;
+        for (Subscription subscription : subscribers)
+            subscription.offer(packed, position);
+    }
+
+    /**
+     * Appends an event to the log.
+     * @param packed the packed event
+     * @return the generation of the log in the upper half and the index of the event in the lower half
+     */
+    private long record(long packed) {
+        Log current = log;
+        int count = current.count;
+        if (count == current.events.length) {
+            Log grown = new Log(Arrays.copyOf(current.events, 2 * count), current.generation);
+            grown.count = count;
+            log = current = grown;
+        }
+        current.events[count] = packed;
+        current.count = count + 1;
+        return (long) current.generation << 32 | count;
+    }
+
+    /**
+     * Subscribes to the events, starting with a snapshot of the game.
+     * @return the subscription
+     */
+    public Subscription subscribe() {
+        Subscription subscription = new Subscription(CAPACITY);
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return the number of subscribers
+     */
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    /**
+     * @return the number of events published
+     */
+    public synchronized long published() {
+        return published;
+    }
+
+    /**
+     * The events of a subscriber, to be read by a single thread.
+     */
+    public class Subscription implements Closeable {
+
+        /**
+         * The packed events, at the indices of their sequence numbers modulo the capacity.
+         */
+        private final long[] ring;
+
+        /**
+         * The positions of the events of the ring in the log, as returned by {@link #record(long)}.
+         */
+        private final long[] positions;
+
+        /**
+         * The sequence number of the next event written, only changed by the publisher.
+         */
+        private volatile long head;
+
+        /**
+         * The sequence number of the next event read, only changed by the subscriber.
+         */
+        private volatile long tail;
+
+        /**
+         * Whether events were dropped, or the boards changed, so the subscriber needs a snapshot.
+         */
+        private volatile boolean overflowed = true;
+
+        /**
+         * The log the snapshot being read is a prefix of, or null if the snapshot has been read.
+         */
+        private Log snapshot;
+
+        /**
+         * The number of events of the log in the snapshot, the events of the ring before it are skipped.
+         */
+        private int snapshotCount;
+
+        /**
+         * The index of the next event of the snapshot read, -1 for the {@link Kind#RESET} event before it.
+         */
+        private int snapshotIndex;
+
+        /**
+         * The number of snapshots taken.
+         */
+        private volatile long resyncs;
+
+        /**
+         * Creates a subscription.
+         * @param capacity the number of events the ring holds, a power of two
+         * @throws IllegalArgumentException The capacity is not a power of two.
+         */
+        private Subscription(int capacity) throws IllegalArgumentException {
+            if (Integer.bitCount(capacity) != 1)
+                throw new IllegalArgumentException("The capacity has to be a power of two.");
+            ring = new long[capacity];
+            positions = new long[capacity];
+        }
+
+        /**
+         * Adds an event to the ring, or marks it overflowed if it is full. Called by the publisher.
+         * @param packed the packed event
+         * @param position the position of the event in the log
+         */
+        private void offer(long packed, long position) {
+            if (overflowed)
+                return;
+            long h = head;
+            if (h - tail == ring.length) {
+                overflowed = true;
+                return;
+            }
+            ring[(int) h & (ring.length - 1)] = packed;
+            positions[(int) h & (ring.length - 1)] = position;
+            head = h + 1;
+        }
+
+        /**
+         * Takes the next event.
+         * @return the next event, or null if there is none yet
+         */
+        public Event poll() {
+            long packed = next();
+            return packed == -1 ? null : Event.unpack(packed);
+        }
+
+        /**
+         * Takes all the events available.
+         * @param consumer receives the events
+         * @return the number of events taken
+         */
+        public int drain(Consumer<Event> consumer) {
+            int count = 0;
+            for (long packed; (packed = next()) != -1; count++)
+                consumer.accept(Event.unpack(packed));
+            return count;
+        }
+
+        /**
+         * Takes the next event, from the snapshot first, taking a snapshot if the ring overflowed.
+         * @return the next packed event, or -1 if there is none yet, which is not a valid packed event
+         */
+        long next() {
+            if (overflowed)
+                resync();
+            if (snapshot != null) {
+                if (snapshotIndex == -1) {
+                    snapshotIndex++;
+                    return new Event(Kind.RESET, 0, 0, 0).pack();
+                }
+                if (snapshotIndex < snapshotCount)
+                    return snapshot.events[snapshotIndex++];
+            }
+            for (long t = tail; t != head; t = tail) {
+                long packed = ring[(int) t & (ring.length - 1)];
+                long position = positions[(int) t & (ring.length - 1)];
+                tail = t + 1;
+                // The events offered while the snapshot was taken may be part of it already,
+                // and the ones of the boards before a reset are void
+                if (snapshot == null || position >= ((long) snapshot.generation << 32 | snapshotCount)) {
+                    snapshot = null;
+                    return packed;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Replaces the events not read yet with a snapshot of the game, without holding up the publisher.
+         * The ring is emptied and reopened before the log is read, so every event published after the snapshot
+         * lands in the ring; the ones published in between are in both, and are skipped in the ring.
+         */
+        private void resync() {
+            tail = head;
+            overflowed = false;
+            Log current = log;
+            snapshot = current;
+            snapshotCount = current.count;
+            snapshotIndex = -1;
+            resyncs++;
+        }
+
+        /**
+         * @return the number of snapshots taken, the first one included
+         */
+        public long resyncs() {
+            return resyncs;
+        }
+
+        /**
+         * Unsubscribes from the events.
+         */
+        @Override
+        public void close() {
+            subscribers.remove(this);
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package leventebajak.battleships;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Corpus of self-played games of the computer against randomly placed fleets, for training and analysis,
+ * generated on all cores and stored in a compressed, block-columnar file.
+ * <p>
+ * The games are played the same way as by {@link Simulator#play}, every game with its own source of randomness
+ * derived from the seed and the index of the game, so the file only depends on the seed, whatever the number of threads.
+ * <p>
+ * The file starts with the magic number "BSHD" and the version of the format, followed by the mode of the computer,
+ * the size of the boards, the lengths of the ships, the seed and the number of games.
+ * The games follow in blocks of {@link #BLOCK} consecutive games. A block starts with the number of its games,
+ * shots and revealed tiles, followed by its columns, each deflated separately, with its compressed and raw length:
+ * <ol>
+ * <li>the number of shots of every game,</li>
+ * <li>the tiles of the ships of every game, in increasing order, as differences from the previous tile of the game,</li>
+ * <li>the shot tiles,</li>
+ * <li>the outcome of every shot, the ordinal of a {@link Match.Outcome},</li>
+ * <li>the number of tiles revealed by every shot,</li>
+ * <li>the revealed tiles, in the order the reveal cascades revealed them.</li>
+ * </ol>
+ * The numbers are variable-length integers, except for the outcomes, which are single bytes.
+ * The index closes the file: for every block, its position in the file, its first game, and the number of its games
+ * and shots, then the number of blocks, and finally the position of the index and the magic number again.
+ */
+public class Dataset implements Closeable {
+
+    /**
+     * The first bytes of the datasets, "BSHD".
+     */
+    private static final int MAGIC = 0x42534844;
+
+    /**
+     * The version of the format of the datasets.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * The number of columns of a block.
+     */
+    private static final int COLUMNS = 6;
+
+    /**
+     * The number of games in a block.
+     */
+    public static int BLOCK = 256;
+
+    /**
+     * The number of entries of the index kept in memory while a dataset is written,
+     * before they are moved to a temporary file.
+     */
+    public static int INDEX_BUFFER = 4096;
+
+    /**
+     * The level of the compression of the columns, from 0 to 9.
+     */
+    public static int COMPRESSION = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * The decoded columns of a block of games.
+     */
+    public static class Block {
+
+        /**
+         * The index of the first game of the block.
+         */
+        public final long firstGame;
+
+        /**
+         * The number of shots of every game.
+         */
+        public final int[] shots;
+
+        /**
+         * The tiles of the ships of every game, the same number for every game, in increasing order.
+         */
+        public final int[] ships;
+
+        /**
+         * The shot tiles of all the games.
+         */
+        public final int[] cells;
+
+        /**
+         * The ordinals of the {@link Match.Outcome}s of the shots.
+         */
+        public final byte[] outcomes;
+
+        /**
+         * The number of tiles revealed by every shot.
+         */
+        public final int[] revealed;
+
+        /**
+         * The tiles revealed by the shots, in the order they were revealed.
+         */
+        public final int[] revealedCells;
+
+        /**
+         * Creates a decoded block.
+         * @param firstGame the index of the first game of the block
+         * @param shots the number of shots of every game
+         * @param ships the tiles of the ships of every game
+         * @param cells the shot tiles
+         * @param outcomes the ordinals of the outcomes of the shots
+         * @param revealed the number of tiles revealed by every shot
+         * @param revealedCells the revealed tiles
+         */
+        Block(long firstGame, int[] shots, int[] ships, int[] cells, byte[] outcomes, int[] revealed, int[] revealedCells) {
+            this.firstGame = firstGame;
+            this.shots = shots;
+            this.ships = ships;
+            this.cells = cells;
+            this.outcomes = outcomes;
+            this.revealed = revealed;
+            this.revealedCells = revealedCells;
+        }
+
+        /**
+         * @return the number of games in the block
+         */
+        public int games() {
+            return shots.length;
+        }
+
+        /**
+         * @param shot the index of a shot in the block
+         * @return the outcome of the shot
+         */
+        public Match.Outcome outcome(int shot) {
+            return Match.Outcome.values()[outcomes[shot]];
+        }
+    }
+
+    /**
+     * Growable buffer of a column being encoded.
+     */
+    private static class Column {
+
+        /**
+         * The bytes of the column.
+         */
+        byte[] bytes = new byte[1024];
+
+        /**
+         * The number of bytes written.
+         */
+        int size = 0;
+
+        /**
+         * Appends a byte.
+         * @param b the byte
+         */
+        void put(int b) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, 2 * size);
+            bytes[size++] = (byte) b;
+        }
+
+        /**
+         * Appends a variable-length integer, seven bits per byte, the lowest first.
+         * @param value the value, treated as unsigned
+         */
+        void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                put(value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            put(value);
+        }
+    }
+
+    /**
+     * The mode of the computer that played the games.
+     */
+    public final AI.Mode mode;
+
+    /**
+     * The number of rows of the boards.
+     */
+    public final int rows;
+
+    /**
+     * The number of columns of the boards.
+     */
+    public final int columns;
+
+    /**
+     * The lengths of the ships.
+     */
+    public final int[] fleet;
+
+    /**
+     * The seed the randomness of every game was derived from.
+     */
+    public final long seed;
+
+    /**
+     * The number of games.
+     */
+    public final long games;
+
+    /**
+     * The position of every block in the file.
+     */
+    private final long[] offsets;
+
+    /**
+     * The index of the first game of every block.
+     */
+    private final long[] firstGames;
+
+    /**
+     * The number of shots of every block.
+     */
+    private final int[] blockShots;
+
+    /**
+     * The file being read.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Opens a dataset and reads its header and index.
+     * @param file the file of the dataset
+     * @throws IOException The file cannot be read, or it is not a dataset.
+     */
+    public Dataset(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < 12)
+                throw new IOException("Not a dataset: " + file);
+            ByteBuffer tail = read(size - 12, 12);
+            long index = tail.getLong();
+            if (tail.getInt() != MAGIC || index < 0 || index > size - 16)
+                throw new IOException("Not a dataset: " + file);
+
+            ByteBuffer header = read(0, (int) Math.min(size, 1 << 16));
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a dataset: " + file);
+            short version = header.getShort();
+            if (version != VERSION)
+                throw new IOException("Unsupported version " + version + ": " + file);
+            byte[] name = new byte[header.getShort()];
+            header.get(name);
+            mode = AI.Mode.valueOf(new String(name, StandardCharsets.UTF_8));
+            rows = header.getInt();
+            columns = header.getInt();
+            fleet = new int[header.getShort()];
+            for (int i = 0; i < fleet.length; i++)
+                fleet[i] = header.getShort();
+            seed = header.getLong();
+            games = header.getLong();
+
+            ByteBuffer footer = read(index, (int) (size - 12 - index));
+            int blocks = footer.getInt(footer.limit() - 4);
+            if (blocks < 0 || (long) blocks * 24 + 4 != footer.limit())
+                throw new IOException("Corrupt dataset: " + file);
+            offsets = new long[blocks];
+            firstGames = new long[blocks];
+            blockShots = new int[blocks];
+            for (int block = 0; block < blocks; block++) {
+                offsets[block] = footer.getLong();
+                firstGames[block] = footer.getLong();
+                footer.getInt();
+                blockShots[block] = footer.getInt();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            channel.close();
+            throw new IOException("Corrupt dataset: " + file, e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads bytes of the file.
+     * @param position the position of the first byte
+     * @param length the number of bytes
+     * @return the bytes, ready to be read
+     * @throws IOException The file cannot be read, or it is shorter.
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) == -1)
+                throw new IOException("Unexpected end of the dataset.");
+        return buffer.flip();
+    }
+
+    /**
+     * @return the number of blocks
+     */
+    public int blocks() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the number of shots of all the games
+     */
+    public long shots() {
+        long shots = 0;
+        for (int count : blockShots)
+            shots += count;
+        return shots;
+    }
+
+    /**
+     * Reads and decodes a block of games.
+     * @param block the index of the block
+     * @return the columns of the block
+     * @throws IOException The file cannot be read, or the block is corrupt.
+     * @throws IndexOutOfBoundsException There is no such block.
+     */
+    public Block block(int block) throws IOException, IndexOutOfBoundsException {
+        long end = block + 1 < offsets.length ? offsets[block + 1] : channel.size() - 12 - (offsets.length * 24L + 4);
+        ByteBuffer buffer = read(offsets[block], (int) (end - offsets[block]));
+        Inflater inflater = new Inflater();
+        try {
+            int games = buffer.getInt(), shots = buffer.getInt(), revealedCount = buffer.getInt();
+            int shipTiles = Arrays.stream(fleet).sum();
+            ByteBuffer[] columns = new ByteBuffer[COLUMNS];
+            for (int column = 0; column < COLUMNS; column++) {
+                int compressed = buffer.getInt(), raw = buffer.getInt();
+                inflater.reset();
+                inflater.setInput(buffer.array(), buffer.position(), compressed);
+                byte[] bytes = new byte[raw];
+                if (inflater.inflate(bytes) != raw || !inflater.finished())
+                    throw new IOException("Corrupt block " + block + " of the dataset.");
+                buffer.position(buffer.position() + compressed);
+                columns[column] = ByteBuffer.wrap(bytes);
+            }
+
+            int[] gameShots = varints(columns[0], games);
+            int[] ships = varints(columns[1], games * shipTiles);
+            for (int game = 0; game < games; game++)
+                for (int i = 1; i < shipTiles; i++)
+                    ships[game * shipTiles + i] += ships[game * shipTiles + i - 1];
+            int[] cells = varints(columns[2], shots);
+            byte[] outcomes = columns[3].array();
+            if (outcomes.length != shots)
+                throw new IOException("Corrupt block " + block + " of the dataset.");
+            int[] revealed = varints(columns[4], shots);
+            int[] revealedCells = varints(columns[5], revealedCount);
+            return new Block(firstGames[block], gameShots, ships, cells, outcomes, revealed, revealedCells);
+        } catch (BufferUnderflowException | IllegalArgumentException | DataFormatException e) {
+            throw new IOException("Corrupt block " + block + " of the dataset.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decodes a column of variable-length integers.
+     * @param column the column
+     * @param count the number of integers
+     * @return the integers
+     * @throws IOException An integer is longer than five bytes.
+     */
+    private static int[] varints(ByteBuffer column, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift == 35)
+                    throw new IOException("Corrupt dataset.");
+                byte b = column.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    break;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Plays games of an AI against randomly placed fleets and writes them to a dataset.
+     * <p>
+     * The blocks are played and compressed by the threads of a pool, and written in order by the calling thread.
+     * At most twice as many blocks as threads are in flight at once, so the memory used does not depend on
+     * the number of games, and the writing only waits for the threads when they cannot keep up with the disk.
+     * The entries of the index are kept in memory up to {@link #INDEX_BUFFER} of them,
+     * the ones before them in a temporary file, and both are appended to the dataset after the last block.
+     * @param file where the dataset is written
+     * @param mode the mode of the AI
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param fleet the lengths of the ships
+     * @param games the number of games to play
+     * @param seed the seed the randomness of every game is derived from
+     * @param threads the number of threads playing the games
+     * @throws IOException The file cannot be written.
+     * @throws IllegalArgumentException The fleet does not fit on the board, or there are too many games.
+     */
+    public static void generate(File file, AI.Mode mode, int rows, int columns, int[] fleet, long games, long seed,
+                                int threads) throws IOException, IllegalArgumentException {
+        byte[] name = mode.name().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 + 2 + 2 + name.length + 4 + 4 + 2 + 2 * fleet.length + 8 + 8);
+        header.putInt(MAGIC).putShort(VERSION);
+        header.putShort((short) name.length).put(name);
+        header.putInt(rows).putInt(columns);
+        header.putShort((short) fleet.length);
+        for (int length : fleet)
+            header.putShort((short) length);
+        header.putLong(seed).putLong(games);
+
+        long blocks = (games + BLOCK - 1) / BLOCK;
+        if (blocks > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many games: " + games);
+        ByteBuffer index = ByteBuffer.allocate(24 * Math.max(1, INDEX_BUFFER));
+        FileChannel spilled = null;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, header.flip());
+            ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+            long next = 0;
+            while (next < games || !pending.isEmpty()) {
+                while (next < games && pending.size() < 2 * threads) {
+                    long from = next, to = Math.min(games, next + BLOCK);
+                    pending.add(pool.submit(() -> encode(mode, rows, columns, fleet, from, to, seed)));
+                    next = to;
+                }
+                ByteBuffer block = pending.poll().get();
+                if (!index.hasRemaining())
+                    spilled = spill(spilled, index);
+                index.putLong(channel.position());
+                index.putLong(block.getLong(block.limit() - 8));
+                index.putInt(block.getInt(0)).putInt(block.getInt(4));
+                write(channel, block.limit(block.limit() - 8));
+            }
+            long position = channel.position();
+            if (spilled != null) {
+                spilled = spill(spilled, index);
+                spilled.position(0);
+                while (spilled.read(index) != -1) {
+                    write(channel, index.flip());
+                    index.clear();
+                }
+            }
+            write(channel, index.flip());
+            write(channel, ByteBuffer.allocate(4 + 8 + 4).putInt((int) blocks).putLong(position).putInt(MAGIC).flip());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException iae)
+                throw iae;
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            if (spilled != null)
+                spilled.close();
+        }
+    }
+
+    /**
+     * Moves the entries of the index from memory to the end of a temporary file, which is deleted when it is closed.
+     * @param spilled the temporary file, or null to create it
+     * @param entries the entries, which are cleared
+     * @return the temporary file
+     * @throws IOException The temporary file cannot be created or written.
+     */
+    private static FileChannel spill(FileChannel spilled, ByteBuffer entries) throws IOException {
+        if (spilled == null)
+            spilled = FileChannel.open(Files.createTempFile("battleships", ".index"), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        write(spilled, entries.flip());
+        entries.clear();
+        return spilled;
+    }
+
+    /**
+     * Writes a buffer to a channel.
+     * @param channel the channel
+     * @param buffer the buffer, ready to be read
+     * @throws IOException The channel cannot be written.
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Plays a block of games and encodes it.
+     * @param mode the mode of the AI
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param fleet the lengths of the ships
+     * @param from the index of the first game
+     * @param to the index after the last game
+     * @param seed the seed the randomness of every game is derived from
+     * @return the encoded block, followed by the index of its first game, which is not part of the block
+     * @throws IllegalArgumentException The fleet does not fit on the board.
+     */
+    private static ByteBuffer encode(AI.Mode mode, int rows, int columns, int[] fleet, long from, long to, long seed)
+            throws IllegalArgumentException {
+        Column[] data = new Column[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++)
+            data[column] = new Column();
+        int shots = 0;
+        int[] revealedCount = new int[1];
+
+        for (long game = from; game < to; game++) {
+            SplittableRandom random = new SplittableRandom(Simulator.seed(seed, game));
+            Board board = Simulator.place(rows, columns, fleet, random);
+            Strategy strategy = mode.create(random, board);
+            for (int cell = 0, previous = 0; cell < board.size(); cell++)
+                if (board.isShip(cell)) {
+                    data[1].putVarint(cell - previous);
+                    previous = cell;
+                }
+            int gameShots = 0;
+            while (board.shipsRemaining > 0) {
+                int guess = strategy.nextGuess(board);
+                int revealed = board.shoot(guess, cell -> {
+                    data[5].putVarint(cell);
+                    revealedCount[0]++;
+                });
+                strategy.update(board, guess);
+                data[2].putVarint(guess);
+                data[3].put(Match.Outcome.of(board, guess).ordinal());
+                data[4].putVarint(revealed);
+                gameShots++;
+            }
+            data[0].putVarint(gameShots);
+            shots += gameShots;
+        }
+
+        Deflater deflater = new Deflater(COMPRESSION);
+        try {
+            byte[][] compressed = new byte[COLUMNS][];
+            int length = 12 + 8;
+            for (int column = 0; column < COLUMNS; column++) {
+                deflater.reset();
+                deflater.setInput(data[column].bytes, 0, data[column].size);
+                deflater.finish();
+                byte[] out = new byte[data[column].size + data[column].size / 1000 + 64];
+                int size = 0;
+                while (!deflater.finished()) {
+                    if (size == out.length)
+                        out = Arrays.copyOf(out, 2 * out.length);
+                    size += deflater.deflate(out, size, out.length - size);
+                }
+                compressed[column] = Arrays.copyOf(out, size);
+                length += 8 + size;
+            }
+            ByteBuffer block = ByteBuffer.allocate(length);
+            block.putInt((int) (to - from)).putInt(shots).putInt(revealedCount[0]);
+            for (int column = 0; column < COLUMNS; column++)
+                block.putInt(compressed[column].length).putInt(data[column].size).put(compressed[column]);
+            return block.putLong(from).flip();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Generates a dataset from the command line and reports the speed of the generation.
+     * <p>
+     * Options: {@code --out FILE}, {@code --games N}, {@code --seed S}, {@code --threads T},
+     * {@code --size ROWSxCOLUMNS}, {@code --mode HUNT} and {@code --fleet 5,4,3,3,2}.
+     * @param args the options
+     * @throws IOException The file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        File file = new File("games.bshd");
+        long games = 100000, seed = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int rows = Player.ROWS, columns = Player.COLUMNS;
+        AI.Mode mode = AI.MODE;
+        int[] fleet = Player.FLEET;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--out" -> file = new File(value);
+                case "--games" -> games = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--size" -> {
+                    String[] size = value.toLowerCase().split("x");
+                    rows = Integer.parseInt(size[0]);
+                    columns = Integer.parseInt(size[1]);
+                }
+                case "--mode" -> mode = AI.Mode.valueOf(value.trim().toUpperCase());
+                case "--fleet" -> fleet = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        generate(file, mode, rows, columns, fleet, games, seed, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        try (Dataset dataset = new Dataset(file)) {
+            System.out.printf(Locale.ROOT, "%s: %d games, %d shots, %d blocks, %d bytes in %.2f s, %.0f games/s, %.2f MB/s%n",
+                    file, dataset.games, dataset.shots(), dataset.blocks(), file.length(), seconds,
+                    dataset.games / seconds, file.length() / seconds / 1e6);
+        }
+    }
+}
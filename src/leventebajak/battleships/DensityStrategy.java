@@ -0,0 +1,356 @@
+package leventebajak.battleships;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Strategy that shoots the tile most likely to be part of a ship.
+ * <p>
+ * For every ship that has not been sunk yet, it counts the ways the ship can still be placed
+ * on the undiscovered tiles, and keeps a heatmap of how many of those placements cover each tile.
+ * The heatmap is updated incrementally: a newly discovered tile only invalidates the placements
+ * crossing it, and a sunken ship only removes its own length's placements.
+ * <p>
+ * Once a ship has been hit, only the placements through the hit tiles are considered,
+ * until the ship has been sunk.
+ */
+public class DensityStrategy implements Strategy {
+
+    /**
+     * The largest board the strategy plays on, its tables take up memory proportional to the size of the board.
+     */
+    public static int MAX_SIZE = 1 << 20;
+
+    /**
+     * The source of randomness used for breaking ties.
+     */
+    private final RandomGenerator random;
+
+    /**
+     * The board the heatmap was built for.
+     */
+    private Board board;
+
+    /**
+     * The discovered tiles already processed, in the same layout as the board's bitboard.
+     */
+    private long[] known;
+
+    /**
+     * The first tiles of the sunken ships already processed.
+     */
+    private long[] sunk;
+
+    /**
+     * The distinct lengths of the ships in the opponent's fleet.
+     */
+    private int[] lengths;
+
+    /**
+     * The number of ships not sunk yet for each length.
+     */
+    private int[] remaining;
+
+    /**
+     * For each length and orientation (horizontal, vertical), whether the placement starting at a tile is still possible.
+     */
+    private long[][][] valid;
+
+    /**
+     * For each length, the number of possible placements covering each tile.
+     */
+    private int[][] count;
+
+    /**
+     * The number of possible placements of the remaining ships covering each tile.
+     */
+    private int[] density;
+
+    /**
+     * The hit tiles of the ships that have not been sunk yet.
+     */
+    private ArrayList<Integer> hits;
+
+    /**
+     * Scores of the tiles around the hits, reused between guesses.
+     */
+    private int[] scores;
+
+    /**
+     * The weights of the tiles while hunting, or null if all tiles are alike.
+     */
+    private int[] prior;
+
+    /**
+     * Creates the strategy.
+     * @param random the source of randomness used for breaking ties
+     */
+    DensityStrategy(RandomGenerator random) {
+        this.random = random;
+    }
+
+    @Override
+    public int nextGuess(Board board) {
+        sync(board);
+        int guess = hits.isEmpty() ? hunt() : target();
+        if (guess != -1)
+            return guess;
+
+        // Without any possible placement left, guess any undiscovered tile
+        int start = random.nextInt(0, board.size());
+        for (int i = 0; i < board.size(); i++) {
+            int cell = (start + i) % board.size();
+            if (!board.isDiscovered(cell))
+                return cell;
+        }
+        throw new IllegalStateException();
+    }
+
+    @Override
+    public void update(Board board, int cell) {
+        sync(board);
+    }
+
+    @Override
+    public AI.Mode mode() {
+        return AI.Mode.DENSITY;
+    }
+
+    @Override
+    public int afloat(Board board) {
+        sync(board);
+        int afloat = 0;
+        for (int count : remaining)
+            afloat += count;
+        return afloat;
+    }
+
+    /**
+     * Gets the number of possible placements of the remaining ships covering a tile.
+     * @param board the opponent's board
+     * @param cell the index of the tile
+     * @return the value of the heatmap at the tile
+     */
+    int density(Board board, int cell) {
+        sync(board);
+        return density[cell];
+    }
+
+    @Override
+    public void prior(int[] weights) {
+        prior = weights;
+    }
+
+    /**
+     * @return the index of the tile covered by the most placements, weighted by the prior if there is one,
+     * or -1 if there are none
+     */
+    private int hunt() {
+        int best = -1, ties = 0;
+        long bestScore = 0;
+        for (int cell = 0; cell < density.length; cell++) {
+            long score = prior == null ? density[cell] : (long) density[cell] * prior[cell];
+            if (score > bestScore) {
+                best = cell;
+                bestScore = score;
+                ties = 1;
+            } else if (score == bestScore && bestScore > 0 && random.nextInt(++ties) == 0)
+                best = cell;
+        }
+        return best;
+    }
+
+    /**
+     * @return the undiscovered tile covered by the most placements through the hits, or -1 if there are none
+     */
+    private int target() {
+        ArrayList<Integer> touched = new ArrayList<>();
+        for (int hit : hits)
+            for (int k = 0; k < lengths.length; k++)
+                if (remaining[k] > 0)
+                    for (int vertical = 0; vertical < 2; vertical++) {
+                        int step = vertical == 0 ? 1 : board.columns;
+                        int along = vertical == 0 ? board.column(hit) : board.row(hit);
+                        int limit = vertical == 0 ? board.columns : board.rows;
+                        for (int offset = 0; offset < lengths[k]; offset++) {
+                            if (along - offset < 0 || along - offset + lengths[k] > limit)
+                                continue;
+                            int start = hit - offset * step;
+                            if (!possibleAround(start, lengths[k], vertical == 1))
+                                continue;
+                            for (int i = 0; i < lengths[k]; i++) {
+                                int cell = start + i * step;
+                                if (!board.isDiscovered(cell)) {
+                                    if (scores[cell] == 0)
+                                        touched.add(cell);
+                                    scores[cell] += remaining[k];
+                                }
+                            }
+                        }
+                    }
+
+        int best = -1, bestScore = 0, ties = 0;
+        for (int cell : touched) {
+            if (scores[cell] > bestScore) {
+                best = cell;
+                bestScore = scores[cell];
+                ties = 1;
+            } else if (scores[cell] == bestScore && random.nextInt(++ties) == 0)
+                best = cell;
+            scores[cell] = 0;
+        }
+        return best;
+    }
+
+    /**
+     * Determines whether a ship can lie on the given tiles, considering the hits around it.
+     * None of its tiles can be discovered water, and it cannot touch a hit that is not part of it.
+     * @param start the index of the first tile
+     * @param length the length of the ship
+     * @param vertical whether the ship lies vertically
+     * @return whether the placement is possible
+     */
+    private boolean possibleAround(int start, int length, boolean vertical) {
+        int step = vertical ? board.columns : 1;
+        int end = start + (length - 1) * step;
+        for (int i = 0; i < length; i++) {
+            int cell = start + i * step;
+            if (board.isDiscovered(cell) && !board.isShip(cell))
+                return false;
+            if (vertical) {
+                if (board.column(cell) > 0 && isHit(cell - 1)) return false;
+                if (board.column(cell) + 1 < board.columns && isHit(cell + 1)) return false;
+            } else {
+                if (cell >= board.columns && isHit(cell - board.columns)) return false;
+                if (cell + board.columns < board.size() && isHit(cell + board.columns)) return false;
+            }
+        }
+        if (vertical)
+            return (start < board.columns || !isHit(start - board.columns))
+                    && (end + board.columns >= board.size() || !isHit(end + board.columns));
+        return (board.column(start) == 0 || !isHit(start - 1))
+                && (board.column(end) + 1 == board.columns || !isHit(end + 1));
+    }
+
+    /**
+     * @param cell the index of the tile
+     * @return whether the tile is a discovered part of a ship
+     */
+    private boolean isHit(int cell) {
+        return board.isDiscovered(cell) && board.isShip(cell);
+    }
+
+    /**
+     * Brings the heatmap up to date with the tiles discovered since the last call.
+     * @param board the opponent's board
+     */
+    private void sync(Board board) {
+        if (this.board != board)
+            build(board);
+
+        ArrayList<Integer> newShips = new ArrayList<>();
+        for (int word = 0; word < known.length; word++) {
+            // Tiles hidden again by undoing turns cannot be taken off the heatmap, so it is built again
+            if ((known[word] & ~board.discoveredWord(word)) != 0) {
+                build(board);
+                sync(board);
+                return;
+            }
+            long fresh = board.discoveredWord(word) & ~known[word];
+            known[word] |= fresh;
+            for (; fresh != 0; fresh &= fresh - 1) {
+                int cell = word * 64 + Long.numberOfTrailingZeros(fresh);
+                block(cell);
+                if (board.isShip(cell))
+                    newShips.add(cell);
+            }
+        }
+
+        for (int cell : newShips) {
+            int length = board.sunkLength(cell);
+            if (length == 0) {
+                hits.add(cell);
+                continue;
+            }
+            int start = board.shipStart(cell);
+            if ((sunk[start >>> 6] & 1L << start) != 0)
+                continue;
+            sunk[start >>> 6] |= 1L << start;
+            hits.removeIf(hit -> board.shipStart(hit) == start);
+            for (int k = 0; k < lengths.length; k++)
+                if (lengths[k] == length && remaining[k] > 0) {
+                    remaining[k]--;
+                    for (int c = 0; c < density.length; c++)
+                        density[c] -= count[k][c];
+                    break;
+                }
+        }
+    }
+
+    /**
+     * Builds the heatmap for a board on which no tile has been discovered.
+     * The discovered tiles are processed afterwards, just like after any shot.
+     * @param board the opponent's board
+     */
+    private void build(Board board) {
+        this.board = board;
+        known = new long[board.words()];
+        sunk = new long[board.words()];
+        hits = new ArrayList<>();
+        scores = new int[board.size()];
+        density = new int[board.size()];
+
+        List<Integer> fleet = board.fleet();
+        lengths = fleet.stream().mapToInt(Integer::intValue).distinct().toArray();
+        remaining = new int[lengths.length];
+        for (int length : fleet)
+            for (int k = 0; k < lengths.length; k++)
+                if (lengths[k] == length)
+                    remaining[k]++;
+
+        valid = new long[lengths.length][2][board.words()];
+        count = new int[lengths.length][board.size()];
+        for (int k = 0; k < lengths.length; k++)
+            for (int vertical = 0; vertical < 2; vertical++) {
+                int step = vertical == 0 ? 1 : board.columns;
+                for (int start = 0; start < board.size(); start++) {
+                    if (vertical == 0 ? board.column(start) + lengths[k] > board.columns : board.row(start) + lengths[k] > board.rows)
+                        continue;
+                    valid[k][vertical][start >>> 6] |= 1L << start;
+                    for (int i = 0; i < lengths[k]; i++) {
+                        count[k][start + i * step]++;
+                        density[start + i * step] += remaining[k];
+                    }
+                }
+            }
+    }
+
+    /**
+     * Removes every placement crossing a newly discovered tile.
+     * @param cell the index of the tile
+     */
+    private void block(int cell) {
+        for (int k = 0; k < lengths.length; k++) {
+            if (remaining[k] == 0)
+                continue;
+            int length = lengths[k];
+            for (int vertical = 0; vertical < 2; vertical++) {
+                int step = vertical == 0 ? 1 : board.columns;
+                int along = vertical == 0 ? board.column(cell) : board.row(cell);
+                int limit = vertical == 0 ? board.columns : board.rows;
+                long[] bits = valid[k][vertical];
+                for (int offset = Math.max(0, along + length - limit); offset < length && offset <= along; offset++) {
+                    int start = cell - offset * step;
+                    if ((bits[start >>> 6] & 1L << start) == 0)
+                        continue;
+                    bits[start >>> 6] &= ~(1L << start);
+                    for (int i = 0; i < length; i++) {
+                        count[k][start + i * step]--;
+                        density[start + i * step] -= remaining[k];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -15,11 +15,37 @@ public enum Direction implements Serializable {
     WEST,
     NORTH_WEST;
 
+    /**
+     * All the directions, in clockwise order. Unlike {@link #values()}, it is not copied on every use.
+     */
+    static final Direction[] VALUES = values();
+
+    /**
+     * The orthogonal directions, in clockwise order.
+     */
+    static final Direction[] ORTHOGONAL = {NORTH, EAST, SOUTH, WEST};
+
     /**
      * Gets the direction's opposite.
      * @return the opposite direction
      */
     Direction opposite() {
-        return Direction.values()[(this.ordinal() + Direction.values().length/2) % Direction.values().length];
+        return VALUES[(this.ordinal() + VALUES.length/2) % VALUES.length];
+    }
+
+    /**
+     * Gets the direction a quarter turn clockwise.
+     * @return the direction to the right
+     */
+    Direction right() {
+        return VALUES[(this.ordinal() + 2) % VALUES.length];
+    }
+
+    /**
+     * Gets the direction a quarter turn counterclockwise.
+     * @return the direction to the left
+     */
+    Direction left() {
+        return VALUES[(this.ordinal() + 6) % VALUES.length];
     }
 }
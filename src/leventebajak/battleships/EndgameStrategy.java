@@ -0,0 +1,1015 @@
+package leventebajak.battleships;
+
+import java.io.Serial;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Strategy that plays like another strategy until only a few ships are left afloat,
+ * then searches exactly for the guess with the fewest expected shots needed to sink them.
+ * <p>
+ * The search lists every placement of the remaining ships that agrees with the discovered tiles,
+ * weighted by how likely the random placement of the fleet is to produce it. A shot splits them into the ones
+ * it misses and the ones it hits, and the ones it hits by the ship it sinks, if any, as the water revealed around
+ * a sunken ship tells where it lies. The expected number of shots of a position is the smallest over its guesses
+ * of one plus the expectations of their outcomes. Tiles hit by every placement are shot right away,
+ * as they have to be shot anyway, and guesses are cut off as soon as they cannot beat the best one found.
+ * <p>
+ * The positions are memoized in a transposition table indexed by their Zobrist hash: the placements that agree with
+ * a position and the tiles hit are hashed, not the shots leading to it, so the positions reached by missing different
+ * tiles are solved once. Tiles covered by the same ships of the same placements lead to the same positions
+ * but for the name of a tile, so only one of them is searched. A position is cut off without telling its tiles
+ * apart when its placements need too many shots anyway: every tile they have left, and as a shot hits at most
+ * the placements covering one tile, every shot misses the rest of them.
+ * <p>
+ * A placement is only listed if every hit it touches is part of it, as the ship that hit belongs to would
+ * touch it otherwise, and the last ship is only placed over the first hit the others leave uncovered.
+ * The likelihoods of the placements are kept between the guesses, and the positions are searched
+ * in scratch arrays kept per depth, so a guess allocates next to nothing. The table has a fixed size, and keeps its entries
+ * between the guesses; of two positions competing for a slot, the one that took more work to solve is kept.
+ * If the placements are too many, the guess of the other strategy is taken instead.
+ * The search is anytime: if it runs past the deadline of the guess, or searches more than {@link #BUDGET} positions
+ * if the guess has no deadline, the best guess it has found by then is taken, or the guess of the other strategy
+ * if there is none yet. Without a deadline the guesses only depend on the board, so seeded games can be replayed.
+ */
+public class EndgameStrategy implements Strategy {
+
+    /**
+     * The largest number of ships left afloat that the search is started for.
+     */
+    public static int MAX_SHIPS = 2;
+
+    /**
+     * The largest number of placements of the remaining ships that the search is started for.
+     */
+    public static int MAX_PLACEMENTS = 16;
+
+    /**
+     * The largest number of positions a search may search, unless the guess is given a deadline.
+     */
+    public static long BUDGET = 10_000;
+
+    /**
+     * The number of entries of the transposition table, a power of two.
+     */
+    public static final int TABLE_SIZE = 1 << 12;
+
+    /**
+     * The strategy played until the endgame, and whenever the search gives up.
+     */
+    final Strategy fallback;
+
+    /**
+     * The board the tables below were built for.
+     */
+    private Board board;
+
+    /**
+     * The random values of the tiles, that the hashes of the hit tiles and of the placements are made of.
+     */
+    private long[] zobrist;
+
+    /**
+     * The hashes of the positions in the transposition table, 0 for empty entries.
+     */
+    private long[] keys;
+
+    /**
+     * The expected numbers of shots of the positions in the transposition table.
+     */
+    private double[] values;
+
+    /**
+     * Whether the values in the transposition table are only lower bounds of the expected numbers of shots.
+     */
+    private boolean[] bounds;
+
+    /**
+     * The number of positions searched to solve the positions in the transposition table.
+     */
+    private int[] work;
+
+    /**
+     * The undiscovered tiles of every placement of the remaining ships.
+     */
+    private int[][] placements;
+
+    /**
+     * The undiscovered tiles of every ship of every placement of the remaining ships.
+     */
+    private int[][][] ships;
+
+    /**
+     * The hashes of all the tiles of every ship of every placement, positive and odd so that they are never zero.
+     */
+    private long[][] sinks;
+
+    /**
+     * Whether a tile has been hit in the line of shots being searched.
+     */
+    private boolean[] shot;
+
+    /**
+     * Whether a tile cannot be part of a ship left afloat, reused between the guesses.
+     */
+    private boolean[] blocked;
+
+    /**
+     * The number of placements of the position being searched covering every tile, zero otherwise.
+     */
+    private int[] counts;
+
+    /**
+     * The sum of the likelihoods of the placements of the position being searched covering every tile, zero otherwise.
+     */
+    private double[] coverage;
+
+    /**
+     * The hashes of the placements, of all their tiles, so that they stay the same from one guess to the other.
+     * The signature of a tile is the XOR over the placements covering it of the hashes of their ships covering it.
+     */
+    private long[] tags;
+
+    /**
+     * How likely every placement of the remaining ships is, in proportion to the others.
+     */
+    private double[] likelihoods;
+
+    /**
+     * The likelihoods of the placements of the whole fleet computed for the previous guesses, by the hash of their tiles,
+     * as the same placements are listed guess after guess until a ship is sunk.
+     */
+    private final HashMap<Long, Double> known = new HashMap<>();
+
+    /**
+     * The numbers of legal placements of the next ship of the fleet computed for the likelihoods,
+     * by the hash of the tiles of the ships placed before it, as most placements share the sunken ships.
+     */
+    private final HashMap<Long, Integer> legal = new HashMap<>();
+
+    /**
+     * The XOR of the random values of the hits on the ships left afloat.
+     */
+    private long hitKey;
+
+    /**
+     * The signatures of the tiles in the position being searched, zero otherwise.
+     */
+    private long[] signatures;
+
+    /**
+     * The number of tiles of all the placements of the remaining ships, counting the shared ones once per placement.
+     */
+    private int tiles;
+
+    /**
+     * The scratch arrays of the positions being searched, by their depth, so that the search allocates nothing.
+     */
+    private Frame[] frames = new Frame[0];
+
+    /**
+     * The depth of the position being searched.
+     */
+    private int depth;
+
+    /**
+     * The number of positions searched since the search started.
+     */
+    private int nodes;
+
+    /**
+     * The time the search has to end by, from {@link System#nanoTime()}, or {@link Long#MAX_VALUE} if it has none.
+     */
+    private long deadline;
+
+    /**
+     * The largest number of positions the search may search.
+     */
+    private long budget;
+
+    /**
+     * The best guess of the last search, or -1 if it found none.
+     */
+    private int best;
+
+    /**
+     * The number of guesses found by the search, for the statistics.
+     */
+    private long solved;
+
+    /**
+     * Signals that the search ran out of time.
+     */
+    private static class Timeout extends RuntimeException {
+
+        /**
+         * The serial version of the signal.
+         */
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the signal, without a stack trace.
+         */
+        Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The scratch arrays of a position being searched.
+     */
+    private static final class Frame {
+
+        /**
+         * The tiles not hit yet of the placements, the ones to guess first.
+         */
+        final int[] cells;
+
+        /**
+         * The sum of the likelihoods of the placements covering the tiles to guess.
+         */
+        final double[] covering;
+
+        /**
+         * The lower bounds of the expected numbers of shots of the tiles to guess.
+         */
+        final double[] lower;
+
+        /**
+         * The signatures of the tiles seen, an open-addressing hash set.
+         */
+        final long[] seen;
+
+        /**
+         * The indices of the tiles to guess, in the order they are tried.
+         */
+        final int[] order;
+
+        /**
+         * The placements split by the outcome of a guess.
+         */
+        final int[] split;
+
+        /**
+         * The hashes of the ships the guess sinks in the placements it hits.
+         */
+        final long[] sunk;
+
+        /**
+         * Creates the arrays.
+         * @param tiles the number of tiles of all the placements
+         * @param placements the number of placements
+         */
+        Frame(int tiles, int placements) {
+            cells = new int[tiles];
+            covering = new double[tiles];
+            lower = new double[tiles];
+            seen = new long[Integer.highestOneBit(tiles) << 2];
+            order = new int[tiles];
+            split = new int[placements];
+            sunk = new long[placements];
+        }
+    }
+
+    /**
+     * Creates the strategy.
+     * @param fallback the strategy played until the endgame, and whenever the search gives up
+     */
+    EndgameStrategy(Strategy fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int nextGuess(Board board) {
+        solve(board, Long.MAX_VALUE, BUDGET);
+        if (best != -1) {
+            solved++;
+            return best;
+        }
+        return fallback.nextGuess(board);
+    }
+
+    @Override
+    public int nextGuess(Board board, long deadline) {
+        solve(board, deadline, Long.MAX_VALUE);
+        if (best != -1) {
+            solved++;
+            return best;
+        }
+        return fallback.nextGuess(board, deadline);
+    }
+
+    @Override
+    public void update(Board board, int cell) {
+        fallback.update(board, cell);
+    }
+
+    @Override
+    public void prior(int[] weights) {
+        fallback.prior(weights);
+    }
+
+    @Override
+    public AI.Mode mode() {
+        return AI.Mode.ENDGAME;
+    }
+
+    @Override
+    public int bytes() {
+        return fallback.bytes();
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        fallback.write(buffer);
+    }
+
+    @Override
+    public void read(ByteBuffer buffer) {
+        fallback.read(buffer);
+    }
+
+    /**
+     * @return the number of guesses found by the search instead of the other strategy
+     */
+    long solved() {
+        return solved;
+    }
+
+    /**
+     * Searches for the guess with the fewest expected shots needed to sink the remaining ships,
+     * until it has searched {@link #BUDGET} positions.
+     * @param board the opponent's board
+     * @return the expected number of shots, with the best guess in {@link #best},
+     * or NaN if the position is not an endgame, or the search gave up
+     */
+    double solve(Board board) {
+        return solve(board, Long.MAX_VALUE, BUDGET);
+    }
+
+    /**
+     * Searches for the guess with the fewest expected shots needed to sink the remaining ships,
+     * until a deadline or a number of positions searched.
+     * @param board the opponent's board
+     * @param deadline the time the search has to end by, from {@link System#nanoTime()},
+     * or {@link Long#MAX_VALUE} for none
+     * @param budget the largest number of positions the search may search
+     * @return the expected number of shots, with the best guess in {@link #best},
+     * or NaN if the position is not an endgame, or the search ran out of time,
+     * with the best guess found by then in {@link #best}, if any
+     */
+    double solve(Board board, long deadline, long budget) {
+        best = -1;
+        if (board.size() > DensityStrategy.MAX_SIZE)
+            return Double.NaN;
+        // Counting the ships afloat is cheap for the other strategy, listing the placements is not
+        if (fallback.afloat(board) > MAX_SHIPS)
+            return Double.NaN;
+        if (this.board != board)
+            build(board);
+        if (!enumerate(board))
+            return Double.NaN;
+
+        long placed = 0;
+        int[] all = new int[placements.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+            placed ^= tags[i];
+        }
+        nodes = 0;
+        depth = 0;
+        this.deadline = deadline;
+        this.budget = budget;
+        try {
+            double value = search(all, all.length, 0, placed, hitKey, Double.POSITIVE_INFINITY, true);
+            return best == -1 ? Double.NaN : value;
+        } catch (Timeout e) {
+            return Double.NaN;
+        } finally {
+            Arrays.fill(shot, false);
+        }
+    }
+
+    /**
+     * Creates the tables for a board.
+     * @param board the opponent's board
+     */
+    private void build(Board board) {
+        this.board = board;
+        SplittableRandom random = new SplittableRandom(board.size());
+        zobrist = new long[board.size()];
+        for (int i = 0; i < zobrist.length; i++)
+            zobrist[i] = random.nextLong();
+        keys = new long[TABLE_SIZE];
+        values = new double[TABLE_SIZE];
+        bounds = new boolean[TABLE_SIZE];
+        work = new int[TABLE_SIZE];
+        shot = new boolean[board.size()];
+        blocked = new boolean[board.size()];
+        counts = new int[board.size()];
+        coverage = new double[board.size()];
+        signatures = new long[board.size()];
+        known.clear();
+        legal.clear();
+    }
+
+    /**
+     * Lists the placements of the ships left afloat, that agree with the discovered tiles.
+     * @param board the opponent's board
+     * @return whether there are few enough ships and placements to search
+     */
+    private boolean enumerate(Board board) {
+        // The lengths of the sunken ships are crossed off the fleet, the hits of the others have to be covered
+        List<Integer> lengths = new ArrayList<>(board.fleet());
+        ArrayList<Integer> hits = new ArrayList<>();
+        ArrayList<int[]> sunken = new ArrayList<>();
+        long sunkenSum = 0;
+        hitKey = 0;
+        Arrays.fill(blocked, false);
+        for (int word = 0; word < board.words(); word++)
+            for (long bits = board.discoveredWord(word); bits != 0; bits &= bits - 1) {
+                int cell = word << 6 | Long.numberOfTrailingZeros(bits);
+                if (!board.isShip(cell)) {
+                    blocked[cell] = true;
+                    continue;
+                }
+                // On the copies of remote boards every hit looks sunk, only the water revealed around it proves it
+                int sunk = board.sunkLength(cell);
+                for (Direction d : Direction.VALUES) {
+                    int neighbor = board.neighbor(cell, d);
+                    if (neighbor != -1 && !board.isDiscovered(neighbor))
+                        sunk = 0;
+                }
+                if (sunk == 0) {
+                    hits.add(cell);
+                    hitKey ^= zobrist[cell];
+                    continue;
+                }
+                if (board.shipStart(cell) == cell) {
+                    lengths.remove(Integer.valueOf(sunk));
+                    int step = sunk > 1 && board.column(cell) + 1 < board.columns && board.isShip(cell + 1) ? 1 : board.columns;
+                    int[] cells = new int[sunk];
+                    for (int i = 0; i < sunk; i++) {
+                        cells[i] = cell + i * step;
+                        sunkenSum += zobrist[cells[i]];
+                    }
+                    sunken.add(cells);
+                }
+                blocked[cell] = true;
+                for (Direction d : Direction.VALUES) {
+                    int neighbor = board.neighbor(cell, d);
+                    if (neighbor != -1)
+                        blocked[neighbor] = true;
+                }
+            }
+        if (lengths.isEmpty() || lengths.size() > MAX_SHIPS)
+            return false;
+        lengths.sort(null);
+
+        // The placements of every ship on its own, that cover every hit they touch,
+        // as the ship a hit is part of would touch them otherwise
+        int[][][] single = new int[lengths.size()][][];
+        for (int k = 0; k < lengths.size(); k++) {
+            ArrayList<int[]> found = new ArrayList<>();
+            int length = lengths.get(k);
+            for (int vertical = 0; vertical < (length > 1 ? 2 : 1); vertical++) {
+                int step = vertical == 0 ? 1 : board.columns;
+                for (int row = 0; row + (vertical == 0 ? 1 : length) <= board.rows; row++)
+                    for (int column = 0; column + (vertical == 0 ? length : 1) <= board.columns; column++) {
+                        int start = row * board.columns + column;
+                        boolean valid = true;
+                        for (int i = 0; i < length && valid; i++)
+                            valid = !blocked[start + i * step];
+                        if (!valid)
+                            continue;
+                        int[] cells = new int[length];
+                        for (int i = 0; i < length; i++)
+                            cells[i] = start + i * step;
+                        for (int i = 0; i < hits.size() && valid; i++)
+                            valid = contains(cells, hits.get(i)) || !touch(board, cells, hits.get(i));
+                        if (valid)
+                            found.add(cells);
+                    }
+            }
+            single[k] = found.toArray(new int[0][]);
+        }
+
+        // The combinations of the placements that cover every hit without touching each other
+        ArrayList<int[][]> found = new ArrayList<>();
+        if (!combine(board, lengths, single, 0, 0, new int[lengths.size()][], hits, found) || found.isEmpty())
+            return false;
+
+        placements = new int[found.size()][];
+        tiles = 0;
+        ships = new int[found.size()][][];
+        sinks = new long[found.size()][];
+        tags = new long[found.size()];
+        likelihoods = new double[found.size()];
+        int[] occupied = new int[board.size()];
+        for (int i = 0; i < placements.length; i++) {
+            int[][] ships = found.get(i);
+            long sum = 0;
+            int size = 0;
+            for (int[] cells : ships)
+                for (int cell : cells) {
+                    sum += zobrist[cell];
+                    if (!board.isDiscovered(cell))
+                        size++;
+                }
+            placements[i] = new int[size];
+            tiles += size;
+            this.ships[i] = new int[ships.length][];
+            sinks[i] = new long[ships.length];
+            size = 0;
+            for (int k = 0; k < ships.length; k++) {
+                int from = size;
+                long ship = 0;
+                for (int cell : ships[k]) {
+                    ship += zobrist[cell];
+                    if (!board.isDiscovered(cell))
+                        placements[i][size++] = cell;
+                }
+                this.ships[i][k] = Arrays.copyOfRange(placements[i], from, size);
+                sinks[i][k] = mix(ship) >>> 1 | 1;
+            }
+            // The sum of the values of the tiles is mixed, as their XOR over different sets of placements could cancel out
+            tags[i] = mix(sum);
+            Double known = this.known.get(mix(sum + sunkenSum));
+            if (known == null) {
+                ArrayList<int[]> fleet = new ArrayList<>(sunken);
+                fleet.addAll(Arrays.asList(ships));
+                known = likelihood(board, board.fleet(), 0, fleet, occupied, 0);
+                this.known.put(mix(sum + sunkenSum), known);
+            }
+            likelihoods[i] = known;
+        }
+        return true;
+    }
+
+    /**
+     * Chooses the placements of the remaining ships one after the other.
+     * @param board the opponent's board
+     * @param lengths the lengths of the remaining ships, in increasing order
+     * @param single the placements of every ship on its own
+     * @param ship the index of the ship to place
+     * @param from the index of the first placement to consider, to list the ships of the same length only once
+     * @param chosen the placements chosen for the previous ships
+     * @param hits the hits, that have to be covered
+     * @param found receives the tiles of the ships of the combined placements
+     * @return whether there are at most {@link #MAX_PLACEMENTS} combined placements
+     */
+    private static boolean combine(Board board, List<Integer> lengths, int[][][] single, int ship, int from,
+                                   int[][] chosen, List<Integer> hits, List<int[][]> found) {
+        if (ship == lengths.size()) {
+            found.add(chosen.clone());
+            return found.size() <= MAX_PLACEMENTS;
+        }
+        // The last ship has to cover the hits the others left, so only the placements covering the first one are tried
+        int uncovered = -1;
+        if (ship == lengths.size() - 1)
+            for (int i = 0; i < hits.size() && uncovered == -1; i++)
+                if (!covers(chosen, ship, hits.get(i)))
+                    uncovered = hits.get(i);
+        boolean same = ship > 0 && lengths.get(ship).equals(lengths.get(ship - 1));
+        for (int i = same ? from : 0; i < single[ship].length; i++) {
+            int[] cells = single[ship][i];
+            if (uncovered != -1 && !contains(cells, uncovered))
+                continue;
+            boolean apart = true;
+            for (int other = 0; other < ship && apart; other++)
+                apart = !touch(board, cells, chosen[other]);
+            if (!apart)
+                continue;
+            chosen[ship] = cells;
+            if (ship == lengths.size() - 1 && uncovered != -1) {
+                boolean all = true;
+                for (int j = 0; j < hits.size() && all; j++)
+                    all = covers(chosen, ship + 1, hits.get(j));
+                if (!all)
+                    continue;
+            }
+            if (!combine(board, lengths, single, ship + 1, i + 1, chosen, hits, found))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes how likely the ships are placed the way the players' ships are: one after the other in the order
+     * of the fleet, every ship chosen uniformly from the legal placements left by the ones before it.
+     * Ships of the same length can be placed in either order, so the probabilities of all the orders are added up.
+     * @param board the opponent's board
+     * @param order the lengths of the fleet, in the order its ships are placed
+     * @param index the index of the next ship to place in the fleet
+     * @param ships the tiles of the ships not placed yet
+     * @param occupied the number of placed ships every tile is part of or next to
+     * @param placed the sum of the random values of the tiles of the placed ships
+     * @return the probability of the placement of the rest of the ships, given the ones placed
+     */
+    private double likelihood(Board board, List<Integer> order, int index, List<int[]> ships, int[] occupied,
+                              long placed) {
+        if (index == order.size())
+            return 1;
+        int length = order.get(index);
+        Integer legal = this.legal.get(mix(placed + index));
+        if (legal == null) {
+            legal = 0;
+            for (int vertical = 0; vertical < 2; vertical++)
+                for (int start = 0; start < board.size(); start++) {
+                    if (vertical == 0 ? board.column(start) + length > board.columns : board.row(start) + length > board.rows)
+                        continue;
+                    boolean free = true;
+                    for (int i = 0; i < length && free; i++)
+                        free = occupied[start + i * (vertical == 0 ? 1 : board.columns)] == 0;
+                    if (free)
+                        legal++;
+                }
+            this.legal.put(mix(placed + index), legal);
+        }
+        double probability = 0;
+        for (int i = 0; i < ships.size(); i++) {
+            int[] ship = ships.get(i);
+            if (ship.length != length || i > 0 && Arrays.equals(ship, ships.get(i - 1)))
+                continue;
+            long tiles = placed;
+            for (int cell : ship)
+                tiles += zobrist[cell];
+            occupy(board, ship, occupied, 1);
+            ships.remove(i);
+            probability += likelihood(board, order, index + 1, ships, occupied, tiles) / legal;
+            ships.add(i, ship);
+            occupy(board, ship, occupied, -1);
+        }
+        return probability;
+    }
+
+    /**
+     * Marks the tiles of a ship and the tiles next to it as occupied, or unmarks them.
+     * @param board the opponent's board
+     * @param ship the tiles of the ship
+     * @param occupied the number of placed ships every tile is part of or next to
+     * @param change 1 to mark the tiles, -1 to unmark them
+     */
+    private static void occupy(Board board, int[] ship, int[] occupied, int change) {
+        for (int cell : ship)
+            for (int row = Math.max(0, board.row(cell) - 1); row <= Math.min(board.rows - 1, board.row(cell) + 1); row++)
+                for (int column = Math.max(0, board.column(cell) - 1); column <= Math.min(board.columns - 1, board.column(cell) + 1); column++)
+                    occupied[row * board.columns + column] += change;
+    }
+
+    /**
+     * Mixes the bits of a number, with the finalizer of SplitMix64.
+     * @param z the number
+     * @return the mixed number
+     */
+    private static long mix(long z) {
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        return z ^ z >>> 31;
+    }
+
+    /**
+     * @param chosen placements of ships
+     * @param count the number of placements to consider
+     * @param cell the index of a tile
+     * @return whether one of the first placements covers the tile
+     */
+    private static boolean covers(int[][] chosen, int count, int cell) {
+        for (int i = 0; i < count; i++)
+            if (contains(chosen[i], cell))
+                return true;
+        return false;
+    }
+
+    /**
+     * @param board the opponent's board
+     * @param first the tiles of a ship
+     * @param second the tiles of another ship
+     * @return whether the ships overlap or touch, even diagonally
+     */
+    private static boolean touch(Board board, int[] first, int[] second) {
+        for (int b : second)
+            if (touch(board, first, b))
+                return true;
+        return false;
+    }
+
+    /**
+     * @param board the opponent's board
+     * @param ship the tiles of a ship
+     * @param cell the index of a tile
+     * @return whether the ship covers the tile or touches it, even diagonally
+     */
+    private static boolean touch(Board board, int[] ship, int cell) {
+        for (int a : ship)
+            if (Math.abs(board.row(a) - board.row(cell)) <= 1 && Math.abs(board.column(a) - board.column(cell)) <= 1)
+                return true;
+        return false;
+    }
+
+    /**
+     * Computes the expected number of shots needed to sink the remaining ships in a position.
+     * Only values below a cutoff are computed exactly: if the position takes at least that many shots,
+     * a lower bound is returned instead, which is at least the cutoff.
+     * @param set the indices of the placements that agree with the position, in its first elements
+     * @param size the number of placements that agree with the position
+     * @param hit the number of tiles hit since the searched position, which every placement in the set covers
+     * @param placed the XOR of the hashes of the placements in the set
+     * @param hits the XOR of the random values of the tiles hit
+     * @param cutoff the value above which the exact value is not needed
+     * @param root whether this is the searched position, whose best guess is stored in {@link #best}
+     * @return the expected number of shots, or a lower bound of it at least as large as the cutoff
+     * @throws Timeout The search ran out of time, or searched too many positions.
+     */
+    private double search(int[] set, int size, int hit, long placed, long hits, double cutoff, boolean root)
+            throws Timeout {
+        if (size == 1 && !root)
+            return placements[set[0]].length - hit;
+        long key = placed ^ hits;
+        int slot = (int) key & (TABLE_SIZE - 1) & ~1;
+        if (!root)
+            for (int s = slot; s < slot + 2; s++)
+                if (keys[s] == key && (!bounds[s] || values[s] >= cutoff))
+                    return values[s];
+        if (++nodes > budget || deadline != Long.MAX_VALUE && (nodes & 0xFF) == 1 && System.nanoTime() > deadline)
+            throw new Timeout();
+        int start = nodes;
+        Frame frame = frame(depth++);
+
+        // Add up the likelihoods of the placements covering every tile not hit yet
+        int cellCount = 0;
+        double total = 0, remaining = 0, most = 0;
+        int[] cells = frame.cells;
+        for (int i = 0; i < size; i++) {
+            int placement = set[i];
+            double likelihood = likelihoods[placement];
+            total += likelihood;
+            remaining += likelihood * (placements[placement].length - hit);
+            for (int cell : placements[placement])
+                if (!shot[cell]) {
+                    if (counts[cell]++ == 0)
+                        cells[cellCount++] = cell;
+                    most = Math.max(most, coverage[cell] += likelihood);
+                }
+        }
+        if (cellCount == 0) {
+            depth--;
+            return 0;
+        }
+
+        // Every placement needs all its tiles shot, and the shots missing it on top of them: a shot hits
+        // at most the placements covering the most likely tile, so the others are missed at least once more.
+        // Most positions are cut off by this bound, so the tiles are only told apart if it does not cut it off
+        double bound = (remaining + misses(total, most)) / total;
+        if (bound >= cutoff) {
+            for (int i = 0; i < cellCount; i++) {
+                counts[cells[i]] = 0;
+                coverage[cells[i]] = 0;
+            }
+            depth--;
+            return bound;
+        }
+        for (int i = 0; i < size; i++) {
+            int placement = set[i];
+            for (int k = 0; k < ships[placement].length; k++) {
+                // The ships of a placement are told apart by their index, so that the signatures tell them apart too
+                long ship = mix(tags[placement] + k);
+                for (int cell : ships[placement][k])
+                    if (!shot[cell])
+                        signatures[cell] ^= ship;
+            }
+        }
+
+        // Tiles covered by the same ships of the same placements split them the same way, and lead to positions
+        // that only differ in the name of a tile, so only the first one of them is searched
+        double[] covering = frame.covering;
+        long[] seen = frame.seen;
+        int mask = (Integer.highestOneBit(cellCount) << 2) - 1;
+        Arrays.fill(seen, 0, mask + 1, 0);
+        int sure = -1, distinct = 0;
+        for (int i = 0; i < cellCount; i++) {
+            int cell = cells[i];
+            int count = counts[cell];
+            double likelihood = coverage[cell];
+            long signature = signatures[cell];
+            counts[cell] = 0;
+            coverage[cell] = 0;
+            signatures[cell] = 0;
+            int index = (int) (signature ^ signature >>> 32) & mask;
+            while (seen[index] != 0 && seen[index] != (signature | 1))
+                index = index + 1 & mask;
+            if (seen[index] != 0)
+                continue;
+            seen[index] = signature | 1;
+            if (count == size && sure == -1)
+                sure = cell;
+            cells[distinct] = cell;
+            covering[distinct++] = likelihood;
+        }
+
+        // The values are only exact if they are made of exact values, which are below their cutoffs:
+        // comparing the sums with the cutoff instead could let a bound through by a rounding error,
+        // so a guess with an outcome that is only bounded is not taken at all
+        double value;
+        if (sure != -1) {
+            // A tile every placement covers has to be shot anyway, and it may rule out placements for free,
+            // so it is the best guess even if the search runs out of time below
+            if (root)
+                best = sure;
+            value = guess(frame, set, size, hit, hits, sure, total, remaining, cutoff);
+        } else {
+            // A guess takes one shot, then the tiles the placements have left afterwards
+            // and the misses the ones it does not hit still need
+            double[] lower = frame.lower;
+            for (int i = 0; i < distinct; i++) {
+                lower[i] = 1 + (remaining - covering[i] + misses(total - covering[i], Math.min(most, total - covering[i]))) / total;
+            }
+
+            // The guesses are tried in the order of their lower bounds
+            int[] order = frame.order;
+            for (int i = 0; i < distinct; i++) {
+                int j = i;
+                for (; j > 0 && lower[order[j - 1]] > lower[i]; j--)
+                    order[j] = order[j - 1];
+                order[j] = i;
+            }
+            value = Double.POSITIVE_INFINITY;
+            for (int o = 0; o < distinct; o++) {
+                int i = order[o];
+                double limit = Math.min(value, cutoff);
+                if (lower[i] >= limit)
+                    break;
+                double guess = guess(frame, set, size, hit, hits, cells[i], total, remaining, limit);
+                if (guess < value) {
+                    value = guess;
+                    if (root)
+                        best = cells[i];
+                }
+            }
+        }
+        boolean exact = value < cutoff;
+        if (!exact)
+            value = cutoff;
+        store(key, value, !exact, nodes - start);
+        depth--;
+        return value;
+    }
+
+    /**
+     * Bounds the misses of a set of placements: every shot hits at most the placements covering a tile,
+     * so at least the rest of them are still missed by all the shots so far.
+     * @param weight the sum of the likelihoods of the placements
+     * @param most the largest sum of the likelihoods of the placements covering a tile
+     * @return the sum of the likelihoods of the placements missed by every shot, added up over the shots
+     */
+    private static double misses(double weight, double most) {
+        if (most <= 0)
+            return 0;
+        double shots = Math.floor(weight / most);
+        return shots * weight - most * shots * (shots + 1) / 2;
+    }
+
+    /**
+     * Gets the scratch arrays of a depth of the search, creating them if they are missing or too small.
+     * @param depth the depth of the position being searched
+     * @return the scratch arrays
+     */
+    private Frame frame(int depth) {
+        if (depth == frames.length)
+            frames = Arrays.copyOf(frames, 2 * depth + 1);
+        Frame frame = frames[depth];
+        if (frame == null || frame.cells.length < tiles || frame.split.length < placements.length)
+            frames[depth] = frame = new Frame(tiles, placements.length);
+        return frame;
+    }
+
+    /**
+     * Computes the expected number of shots of a guess in a position, if it is below a limit.
+     * A miss leaves the placements that do not cover the tile, a hit the ones that do, split by the ship
+     * the hit sinks in them, if any. Each outcome only has to be solved exactly if the guess can still beat the limit.
+     * @param frame the scratch arrays of the position
+     * @param set the indices of the placements that agree with the position, in its first elements
+     * @param size the number of placements that agree with the position
+     * @param hit the number of tiles hit since the searched position, which every placement in the set covers
+     * @param hits the XOR of the random values of the tiles hit
+     * @param cell the index of the tile to shoot
+     * @param total the sum of the likelihoods of the placements in the set
+     * @param remaining the sum of the likelihoods of the placements in the set times the tiles they have left
+     * @param limit the value the guess has to beat
+     * @return the expected number of shots, or infinity if the guess cannot beat the limit
+     * @throws Timeout The search ran out of time, or searched too many positions.
+     */
+    private double guess(Frame frame, int[] set, int size, int hit, long hits, int cell, double total,
+                         double remaining, double limit) throws Timeout {
+        // The placements covering the tile first, in the order of the ship the hit sinks, the others after them
+        int[] split = frame.split;
+        long[] sunk = frame.sunk;
+        int hitCount = 0, misses = size;
+        double onTarget = 0;
+        for (int j = 0; j < size; j++) {
+            int placement = set[j];
+            long ship = sinks(placement, cell);
+            if (ship == -1) {
+                split[--misses] = placement;
+                continue;
+            }
+            onTarget += likelihoods[placement];
+            int k = hitCount++;
+            for (; k > 0 && sunk[k - 1] > ship; k--) {
+                split[k] = split[k - 1];
+                sunk[k] = sunk[k - 1];
+            }
+            split[k] = placement;
+            sunk[k] = ship;
+        }
+
+        // Every outcome takes at least the tiles its placements have left, the lower bounds of the ones
+        // not solved yet are replaced by their values one after the other
+        double budget = (limit - 1) * total;
+        double spent = remaining - onTarget;
+        for (int from = 0, to; from < size; from = to) {
+            boolean onHit = from < hitCount;
+            to = from + 1;
+            if (onHit)
+                while (to < hitCount && sunk[to] == sunk[from])
+                    to++;
+            else
+                to = size;
+            int after = onHit ? hit + 1 : hit;
+            double likelihood = 0, least = 0;
+            long placed = 0;
+            for (int j = from; j < to; j++) {
+                likelihood += likelihoods[split[j]];
+                least += likelihoods[split[j]] * (placements[split[j]].length - after);
+                placed ^= tags[split[j]];
+            }
+            double outcomeCutoff = (budget - spent + least) / likelihood;
+            // The outcomes solved already are not needed anymore, so the set of this one is moved in their place
+            if (from > 0)
+                System.arraycopy(split, from, split, 0, to - from);
+            shot[cell] = onHit;
+            long key = onHit ? hits ^ zobrist[cell] : hits;
+            double value = search(split, to - from, after, placed, key, outcomeCutoff, false);
+            shot[cell] = false;
+            if (value >= outcomeCutoff)
+                return Double.POSITIVE_INFINITY;
+            spent += likelihood * value - least;
+        }
+        return 1 + spent / total;
+    }
+
+    /**
+     * Finds the ship of a placement a tile is part of, and whether shooting the tile sinks it.
+     * @param placement the index of the placement
+     * @param cell the index of a tile not hit yet
+     * @return the hash of the ship the shot sinks, 0 if it hits a ship without sinking it,
+     * or -1 if the placement does not cover the tile
+     */
+    private long sinks(int placement, int cell) {
+        for (int k = 0; k < ships[placement].length; k++) {
+            int[] ship = ships[placement][k];
+            if (!contains(ship, cell))
+                continue;
+            for (int c : ship)
+                if (c != cell && !shot[c])
+                    return 0;
+            return sinks[placement][k];
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a position in the transposition table, in the slot of its pair that took less work to fill.
+     * @param key the hash of the position
+     * @param value the expected number of shots, or a lower bound of it
+     * @param bound whether the value is only a lower bound
+     * @param effort the number of positions searched to solve it
+     */
+    private void store(long key, double value, boolean bound, int effort) {
+        int slot = (int) key & (TABLE_SIZE - 1) & ~1;
+        int victim = keys[slot + 1] == key || keys[slot] != key && work[slot + 1] < work[slot] ? slot + 1 : slot;
+        if (keys[victim] != key && keys[victim] != 0 && work[victim] > effort)
+            return;
+        keys[victim] = key;
+        values[victim] = value;
+        bounds[victim] = bound;
+        work[victim] = effort;
+    }
+
+    /**
+     * @param cells the tiles of a placement
+     * @param cell the index of a tile
+     * @return whether the placement covers the tile
+     */
+    private static boolean contains(int[] cells, int cell) {
+        for (int c : cells)
+            if (c == cell)
+                return true;
+        return false;
+    }
+}
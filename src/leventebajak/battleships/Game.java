@@ -1,22 +1,68 @@
 package leventebajak.battleships;
 
+import leventebajak.battleships.legacy.SerializedGame;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.random.RandomGenerator;
 
 /**
  * The class that controls and displays the game.
  */
-public class Game implements Serializable {
+public class Game {
 
     /**
      * The file, that the game is saved to on exit.
      */
     public static File EXIT_SAVE = new File("last.save");
 
+    /**
+     * The first bytes of the saved games, "BSHP".
+     */
+    private static final int MAGIC = 0x42534850;
+
+    /**
+     * The version of the format of the saved games.
+     */
+    private static final short VERSION = 5;
+
+    /**
+     * The first bytes of the games saved with Java serialization, by older versions.
+     */
+    private static final short LEGACY_MAGIC = (short) 0xACED;
+
+    /**
+     * The directory the recordings of the finished games are saved to, or null if they are not saved, as by default.
+     */
+    public static File RECORDINGS;
+
+    /**
+     * The number of shots journaled before a new snapshot of the game is taken.
+     */
+    public static int SNAPSHOT_INTERVAL = 100;
+
+    /**
+     * The broadcast the local games are published on to the spectators, or null not to publish them.
+     */
+    public static Broadcast BROADCAST = null;
+
     /**
      * The button the players can use to end their turn.
      */
@@ -25,7 +71,7 @@ public class Game implements Serializable {
     /**
      * The frame the players' boards are displayed in.
      */
-    transient public JFrame frame;
+    public JFrame frame;
 
     /**
      * The player whose turn is active.
@@ -48,48 +94,220 @@ public class Game implements Serializable {
     private boolean over = false;
 
     /**
-     * Create a new game.
+     * The number of shots taken in the game.
+     */
+    private int turns = 0;
+
+    /**
+     * The seed the randomness of the game is derived from.
+     */
+    private long seed;
+
+    /**
+     * The file the game is autosaved to, or null if the game is not autosaved.
+     */
+    private File autosave;
+
+    /**
+     * The journal the shots are appended to between the snapshots of the autosave.
+     */
+    private Journal journal;
+
+    /**
+     * The number of shots contained by the last snapshot of the autosave.
+     */
+    private int snapshotTurns;
+
+    /**
+     * The player's shot the computer is replying to, that is journaled together with the reply, or -1.
+     */
+    private int replyTo = -1;
+
+    /**
+     * The recording of the game, or null for games against remote opponents.
+     */
+    private Recording recording;
+
+    /**
+     * The match against a remote opponent, or null if both players are local.
+     */
+    private RemoteMatch remote;
+
+    /**
+     * The turns played since the game was started or loaded, that can be undone and redone,
+     * or null for games against remote opponents.
+     */
+    private History history;
+
+    /**
+     * The habits of the human player the computer takes into account, or null if they are not learned.
+     */
+    private Habits habits;
+
+    /**
+     * Whether the placement of the human player's ships has been learned from this game.
+     */
+    private boolean learned = false;
+
+    /**
+     * The guess the computer is thinking of, or null if it is not thinking.
+     */
+    private CompletableFuture<Integer> thinking;
+
+    /**
+     * Create a new game on boards of the default size.
      * @param pvp whether the opponent is another human
      */
     Game(boolean pvp) {
+        this(pvp, Player.ROWS, Player.COLUMNS);
+    }
+
+    /**
+     * Create a new game.
+     * @param pvp whether the opponent is another human
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @throws IllegalArgumentException The boards cannot have the given size.
+     */
+    Game(boolean pvp, int rows, int columns) throws IllegalArgumentException {
+        this(pvp, rows, columns, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create a new game, that can be reproduced from its seed. The players get their own generators,
+     * split from the generator of the game, so the placements and the computer's guesses only depend on the seed.
+     * @param pvp whether the opponent is another human
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param seed the seed the randomness of the game is derived from
+     * @throws IllegalArgumentException The boards cannot have the given size.
+     */
+    Game(boolean pvp, int rows, int columns, long seed) throws IllegalArgumentException {
         this.pvp = pvp;
+        this.seed = seed;
+        SplittableRandom random = new SplittableRandom(seed);
         if (pvp) {
-            activePlayer = new Player("PLAYER 1");
-            inactivePlayer = new Player("PLAYER 2");
+            activePlayer = new Player("PLAYER 1", new Board(rows, columns), random.split(), Player.FLEET);
+            inactivePlayer = new Player("PLAYER 2", new Board(rows, columns), random.split(), Player.FLEET);
         }
         else {
-            activePlayer = new Player("YOU");
-            inactivePlayer = new AI(activePlayer);
+            activePlayer = new Player("YOU", new Board(rows, columns), random.split(), Player.FLEET);
+            inactivePlayer = new AI(activePlayer, random.split(), Player.FLEET);
         }
+        recording = new Recording(activePlayer, inactivePlayer, seed);
+        initialize();
+    }
+
+    /**
+     * Create a game against a remote opponent, whose match has already started.
+     * The player's board is on the left, and the copy of the opponent's board is on the right.
+     * @param match the match against the remote opponent
+     */
+    Game(RemoteMatch match) {
+        pvp = false;
+        remote = match;
+        activePlayer = new Player("YOU", match.board());
+        inactivePlayer = new Player("OPPONENT", match.opponent());
+        match.listen(new RemoteMatch.Listener() {
+            @Override
+            public void started(RemoteMatch match) {
+            }
+
+            @Override
+            public void shot(int cell, Match.Outcome outcome) {
+                turns++;
+                activePlayer.panel.refresh();
+                if (outcome == Match.Outcome.WON) {
+                    over = true;
+                    JOptionPane.showMessageDialog(null, "You lost!");
+                } else
+                    inactivePlayer.setEnabled(true);
+            }
+
+            @Override
+            public void answered(int cell, Match.Outcome outcome) {
+                turns++;
+                inactivePlayer.panel.refresh();
+                if (outcome == Match.Outcome.WON) {
+                    over = true;
+                    JOptionPane.showMessageDialog(null, "You won!");
+                }
+            }
+
+            @Override
+            public void disconnected(IOException cause) {
+                over = true;
+                inactivePlayer.setEnabled(false);
+                endRoundButton.setEnabled(false);
+                JOptionPane.showMessageDialog(null, cause == null ? "The opponent left."
+                        : "The connection was lost: " + cause.getMessage());
+            }
+        });
         initialize();
+        inactivePlayer.setEnabled(match.isTurn());
+    }
+
+    /**
+     * Creates a game from existing players.
+     * @param pvp whether the opponent is another human
+     * @param activePlayer the player whose turn is active
+     * @param inactivePlayer the computer, or the player who is waiting
+     * @param over whether the game has ended
+     * @param turns the number of shots taken in the game
+     * @param seed the seed the randomness of the game is derived from
+     */
+    private Game(boolean pvp, Player activePlayer, Player inactivePlayer, boolean over, int turns, long seed) {
+        this.pvp = pvp;
+        this.seed = seed;
+        this.activePlayer = activePlayer;
+        this.inactivePlayer = inactivePlayer;
+        this.over = over;
+        this.turns = turns;
     }
 
     /**
      * Initializes UI components.
      */
     public void initialize() {
-        Main.FRAME.setVisible(false);
+        Main.frame().setVisible(false);
         frame = new JFrame("BATTLESHIPS");
         JMenuBar menuBar = new JMenuBar();
         JMenu fileMenu = new JMenu("File");
         JMenu newGameMenu = new JMenu("New game");
         JMenuItem mainMenu = new JMenuItem("Main menu");
         JMenuItem saveGame = new JMenuItem("Save game");
+        // A game against a remote opponent cannot be saved, as the opponent's ships are unknown
+        saveGame.setEnabled(remote == null);
         JMenuItem loadGame = new JMenuItem("Load game");
+        JMenuItem saveRecording = new JMenuItem("Save recording");
+        saveRecording.setEnabled(recording != null);
+        JMenuItem replayRecording = new JMenuItem("Replay recording");
         JMenuItem vsComputer = new JMenuItem("VS computer");
         JMenuItem vsPlayer = new JMenuItem("VS player");
+        JMenu editMenu = new JMenu("Edit");
+        JMenuItem undo = new JMenuItem("Undo turn");
+        undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        JMenuItem redo = new JMenuItem("Redo turn");
+        redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        // The turns of a game against a remote opponent cannot be taken back
+        editMenu.setEnabled(remote == null);
         fileMenu.add(mainMenu);
         fileMenu.add(saveGame);
         fileMenu.add(loadGame);
+        fileMenu.add(saveRecording);
+        fileMenu.add(replayRecording);
         newGameMenu.add(vsComputer);
         newGameMenu.add(vsPlayer);
+        editMenu.add(undo);
+        editMenu.add(redo);
         menuBar.add(fileMenu);
+        menuBar.add(editMenu);
         menuBar.add(newGameMenu);
         frame.setJMenuBar(menuBar);
 
         mainMenu.addActionListener(ae -> {
             closeGame();
-            Main.FRAME.setVisible(true);
+            Main.frame().setVisible(true);
         });
         saveGame.addActionListener(ae -> {
             JFileChooser fc = new JFileChooser(new File("").getAbsolutePath());
@@ -97,22 +315,75 @@ public class Game implements Serializable {
                 save(fc.getSelectedFile());
         });
         loadGame.addActionListener(ae -> {
+            // The loaded game takes over the autosave, so hand it over first
+            File file = autosave;
+            stopAutosave();
             if (Main.loadGame() == JFileChooser.APPROVE_OPTION) {
                 closeGame();
-                Main.FRAME.setVisible(false);
+                Main.frame().setVisible(false);
+            } else if (file != null)
+                autosave(file);
+        });
+        saveRecording.addActionListener(ae -> {
+            JFileChooser fc = new JFileChooser(new File("").getAbsolutePath());
+            if (fc.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    recording.save(fc.getSelectedFile());
+                } catch (IOException e) {
+                    JOptionPane.showMessageDialog(null, "The recording could not be saved.");
+                }
             }
         });
+        replayRecording.addActionListener(ae -> {
+            JFileChooser fc = new JFileChooser(RECORDINGS != null && RECORDINGS.isDirectory()
+                    ? RECORDINGS.getAbsoluteFile() : new File("").getAbsoluteFile());
+            if (fc.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    ReplayView.open(fc.getSelectedFile());
+                } catch (IOException e) {
+                    JOptionPane.showMessageDialog(null, "The recording could not be loaded.");
+                }
+            }
+        });
+        undo.addActionListener(ae -> undo());
+        redo.addActionListener(ae -> redo());
         vsComputer.addActionListener(ae -> {
-            closeGame();
-            Main.vsComputer();
+            if (rematchable(false))
+                rematch(new SplittableRandom().nextLong());
+            else {
+                closeGame();
+                Main.vsComputer();
+            }
         });
         vsPlayer.addActionListener(ae -> {
-            closeGame();
-            Main.vsPlayer();
+            if (rematchable(true))
+                rematch(new SplittableRandom().nextLong());
+            else {
+                closeGame();
+                Main.vsPlayer();
+            }
         });
 
         frame.setLayout(new BorderLayout());
-        frame.getContentPane().setBackground(Main.FRAME.getContentPane().getBackground());
+        frame.getContentPane().setBackground(Main.frame().getContentPane().getBackground());
+
+        if (remote == null && history == null) {
+            history = new History(activePlayer.board, inactivePlayer.board, state());
+            activePlayer.history = inactivePlayer.history = history;
+        }
+        if (remote == null && BROADCAST != null) {
+            BROADCAST.reset(activePlayer.board, inactivePlayer.board);
+            activePlayer.broadcast = inactivePlayer.broadcast = BROADCAST;
+        }
+        if (!pvp && habits == null && Habits.HABITS != null && inactivePlayer instanceof AI ai) {
+            try {
+                habits = Habits.open(Habits.PROFILE, activePlayer.board.rows, activePlayer.board.columns);
+                ai.strategy.prior(habits.weights());
+            } catch (IOException ex) {
+                // The game is just as playable without the habits
+                habits = null;
+            }
+        }
 
         activePlayer.setEnabled(false);
 
@@ -125,28 +396,28 @@ public class Game implements Serializable {
 
         JPanel leftPanel = new JPanel(new BorderLayout());
         leftPanel.add(player1_name, BorderLayout.NORTH);
-        leftPanel.add(activePlayer.panel, BorderLayout.SOUTH);
+        leftPanel.add(scrollable(activePlayer.panel), BorderLayout.SOUTH);
         leftPanel.setBorder(new EmptyBorder(50, 50, 50, 50));
-        leftPanel.setBackground(Main.FRAME.getContentPane().getBackground());
+        leftPanel.setBackground(Main.frame().getContentPane().getBackground());
         frame.add(leftPanel, BorderLayout.WEST);
 
         JPanel rightPanel = new JPanel(new BorderLayout());
         rightPanel.add(player2_name, BorderLayout.NORTH);
-        rightPanel.add(inactivePlayer.panel, BorderLayout.SOUTH);
+        rightPanel.add(scrollable(inactivePlayer.panel), BorderLayout.SOUTH);
         rightPanel.setBorder(new EmptyBorder(50, 50, 50, 50));
-        rightPanel.setBackground(Main.FRAME.getContentPane().getBackground());
+        rightPanel.setBackground(Main.frame().getContentPane().getBackground());
         frame.add(rightPanel, BorderLayout.EAST);
 
         JPanel bottomPanel = new JPanel();
         endRoundButton = new JButton("End round");
         endRoundButton.addActionListener(ae -> nextRound());
-        endRoundButton.setEnabled(inactivePlayer.selected != null && !inactivePlayer.selected.isDiscovered);
+        endRoundButton.setEnabled(inactivePlayer.selected != null && !inactivePlayer.selected.isDiscovered());
         endRoundButton.setPreferredSize(new Dimension(400, 100));
         endRoundButton.setFont(frame.getFont());
-        endRoundButton.setBackground(Main.FRAME.getContentPane().getBackground());
+        endRoundButton.setBackground(Main.frame().getContentPane().getBackground());
         endRoundButton.setBorder(null);
         bottomPanel.add(endRoundButton);
-        bottomPanel.setBackground(Main.FRAME.getContentPane().getBackground());
+        bottomPanel.setBackground(Main.frame().getContentPane().getBackground());
         frame.add(bottomPanel, BorderLayout.SOUTH);
         if (pvp)
             JOptionPane.showMessageDialog(null, activePlayer.name + "\nPress OK to start!");
@@ -158,27 +429,65 @@ public class Game implements Serializable {
         frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                if (!over) save(EXIT_SAVE);
+                settle();
+                if (remote != null)
+                    remote.close();
+                else if (autosave != null)
+                    stopAutosave();
+                else if (!over)
+                    save(EXIT_SAVE);
                 frame.dispose();
                 Main.continueButton.setEnabled(EXIT_SAVE.exists());
             }
         });
     }
 
+    /**
+     * Puts a board into a scroll pane, if it is larger than the preferred size of the boards.
+     * @param view the board
+     * @return the board, or the scroll pane containing it
+     */
+    private static JComponent scrollable(BoardView view) {
+        Dimension size = view.getPreferredSize();
+        int limit = BoardView.PREFERRED_BOARD_SIZE + 1;
+        if (size.width <= limit && size.height <= limit)
+            return view;
+        JScrollPane pane = new JScrollPane(view);
+        pane.getViewport().setPreferredSize(new Dimension(Math.min(size.width, limit), Math.min(size.height, limit)));
+        pane.getVerticalScrollBar().setUnitIncrement(view.tileSize);
+        pane.getHorizontalScrollBar().setUnitIncrement(view.tileSize);
+        return pane;
+    }
+
     /**
      * This is what happens when a player ends the turn.
      */
     public void nextRound() {
+        if (thinking != null)
+            return;
+        long start = Metrics.start();
+        if (remote != null) {
+            remoteRound();
+            Metrics.ROUND.since(start);
+            return;
+        }
+        history.begin();
+
         // Shoot and reveal the selected tile on the opponent's board
+        int cell = inactivePlayer.selected.cell();
         inactivePlayer.selected.shoot();
+        // Against the computer the shot is journaled together with the reply, so that a game resumed after
+        // a crash while the computer was thinking gives the turn back to the player instead of skipping the reply
+        if (pvp || inactivePlayer.board.shipsRemaining == 0)
+            journal(Journal.PLAYER_SHOT, cell, null);
+        else
+            replyTo = cell;
         inactivePlayer.showDiscovered();
-        frame.repaint();
         if (pvp) inactivePlayer.setEnabled(false);
 
         // If the opponent has no more ships, the current player won
-        if (inactivePlayer.shipsRemaining == 0) {
+        if (inactivePlayer.board.shipsRemaining == 0) {
             inactivePlayer.showAll();
-            frame.repaint();
             JOptionPane.showMessageDialog(null, activePlayer.name + " won!");
             over = true;
         }
@@ -191,66 +500,645 @@ public class Game implements Serializable {
 
                 activePlayer.showDiscovered();
                 inactivePlayer.showDiscovered();
-                frame.repaint();
                 JOptionPane.showMessageDialog(null, activePlayer.name + "\n Press OK to continue!");
                 activePlayer.showAll();
-                frame.repaint();
 
                 inactivePlayer.setEnabled(true);
             }
-            // ...or the computer makes a guess
+            // ...or the computer thinks of a guess, without holding up the window
             else {
-                ((AI) inactivePlayer).makeAGuess();
-                // If the player has no ships left, the computer won
-                if (activePlayer.shipsRemaining == 0) {
-                    inactivePlayer.setEnabled(false);
-                    inactivePlayer.showAll();
-                    frame.repaint();
-                    JOptionPane.showMessageDialog(null, "You lost!");
-                    over = true;
-                }
+                inactivePlayer.setEnabled(false);
+                endRoundButton.setEnabled(false);
+                think((AI) inactivePlayer, start);
+                return;
             }
         }
+        endRound(start);
+    }
+
+    /**
+     * Lets the computer think of its guess on its own thread, until {@link AI#DEADLINE},
+     * and plays it on the event dispatch thread when it is found.
+     * Until then the boards and the strategy are the computer's, so nothing else touches them:
+     * taking back turns, saving and closing the game wait for the guess to be played first.
+     * If the computer fails to think of a guess, the first undiscovered tile is played instead.
+     * @param ai the computer
+     * @param start the time the round started, for the metrics
+     */
+    private void think(AI ai, long start) {
+        long deadline = System.nanoTime() + AI.DEADLINE;
+        CompletableFuture<Integer> guess = CompletableFuture.supplyAsync(() -> ai.think(deadline), AI.THINKER);
+        thinking = guess;
+        guess.whenCompleteAsync((cell, failure) -> {
+            // The guess has already been played if the game had to wait for it
+            if (thinking != guess)
+                return;
+            thinking = null;
+            aiRound(ai, failure == null ? cell : ai.scan());
+            endRound(start);
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Waits for the computer to finish thinking, if it is, and plays its guess,
+     * or the first undiscovered tile if it failed, so that the game can be saved or its turns taken back.
+     */
+    private void settle() {
+        CompletableFuture<Integer> guess = thinking;
+        if (guess == null)
+            return;
+        thinking = null;
+        AI ai = (AI) inactivePlayer;
+        int cell;
+        try {
+            cell = guess.join();
+        } catch (CompletionException | CancellationException e) {
+            cell = ai.scan();
+        }
+        aiRound(ai, cell);
+        endRound(Metrics.start());
+    }
+
+    /**
+     * This is what happens when the computer has thought of its guess.
+     * @param ai the computer
+     * @param cell the index of the guessed tile of the player's board
+     */
+    private void aiRound(AI ai, int cell) {
+        ai.play(cell);
+        journal(Journal.PLAYER_SHOT, replyTo, null);
+        replyTo = -1;
+        journal(Journal.AI_SHOT, ai.lastGuess, ai.strategy);
+        // If the player has no ships left, the computer won
+        if (activePlayer.board.shipsRemaining == 0) {
+            inactivePlayer.showAll();
+            JOptionPane.showMessageDialog(null, "You lost!");
+            over = true;
+        } else
+            inactivePlayer.setEnabled(true);
+    }
+
+    /**
+     * Closes the round: records it in the history and the autosave, and learns from the game if it is over.
+     * @param start the time the round started, for the metrics
+     */
+    private void endRound(long start) {
+        endRoundButton.setEnabled(false);
+        history.end(state());
+        if (over) {
+            saveRecording();
+            learn();
+        }
+        snapshot(false);
+        Metrics.ROUND.since(start);
+    }
+
+    /**
+     * Saves the recording of the finished game to the directory of the recordings, if there is one,
+     * named after the time it ended and its seed. A name already taken gets a number, so no recording is overwritten.
+     */
+    private void saveRecording() {
+        if (RECORDINGS == null || recording == null)
+            return;
+        try {
+            Files.createDirectories(RECORDINGS.toPath());
+            String name = "game-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date())
+                    + "-" + Long.toHexString(seed);
+            File file = new File(RECORDINGS, name + ".bshr");
+            for (int copy = 2; !file.createNewFile(); copy++)
+                file = new File(RECORDINGS, name + "-" + copy + ".bshr");
+            recording.save(file);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "The recording could not be saved.");
+        }
+    }
+
+    /**
+     * Sets the directory of the recordings, if the system property {@code battleships.recordings} is set to one.
+     */
+    public static void configure() {
+        String directory = System.getProperty("battleships.recordings");
+        if (directory != null && !directory.isBlank())
+            RECORDINGS = new File(directory);
+    }
+
+    /**
+     * Learns the placement of the human player's ships from the finished game, once.
+     */
+    private void learn() {
+        if (habits == null || learned)
+            return;
+        habits.learn(activePlayer.board);
+        learned = true;
+    }
+
+    /**
+     * This is what happens when the player ends the turn against a remote opponent:
+     * the shot is sent, and the board waits for the answer, without blocking the UI.
+     */
+    private void remoteRound() {
+        int cell = inactivePlayer.selected.cell();
+        inactivePlayer.panel.deselect();
+        inactivePlayer.setEnabled(false);
         endRoundButton.setEnabled(false);
+        remote.shoot(cell);
+    }
+
+    /**
+     * Determines whether a new game of a kind can be played in this game's window, by {@link #rematch(long)}:
+     * it has to be a local game of the same kind, on boards of the default size, against a computer of the current mode.
+     * @param pvp whether the opponent of the new game is another human
+     * @return whether the game can be restarted as the new game
+     */
+    boolean rematchable(boolean pvp) {
+        return remote == null && this.pvp == pvp
+                && activePlayer.board.rows == Player.ROWS && activePlayer.board.columns == Player.COLUMNS
+                && (!(inactivePlayer instanceof AI ai) || ai.strategy.mode() == AI.MODE);
+    }
+
+    /**
+     * Starts a new game in this game's window, reusing the players, their boards and views, and the window itself.
+     * The boards are cleared and new fleets are placed on them, the first player starts again,
+     * and the computer gets a new strategy of the same mode. The recording, the history and the autosave
+     * carry on with the new game, which is placed and played exactly like a new game with the same seed.
+     * No component is created or laid out again, so the new game starts at once.
+     * @param seed the seed the randomness of the new game is derived from
+     * @throws IllegalStateException The game is against a remote opponent.
+     */
+    public void rematch(long seed) throws IllegalStateException {
+        if (remote != null)
+            throw new IllegalStateException("A game against a remote opponent cannot be restarted.");
+        settle();
+        if (activePlayer.board != history.first()) {
+            Player tmp = activePlayer;
+            activePlayer = inactivePlayer;
+            inactivePlayer = tmp;
+        }
+        this.seed = seed;
+        SplittableRandom random = new SplittableRandom(seed);
+        activePlayer.reset(random.split(), Player.FLEET);
+        SplittableRandom second = random.split();
+        inactivePlayer.reset(second, Player.FLEET);
+        if (inactivePlayer instanceof AI ai) {
+            ai.strategy = ai.strategy.mode().create(second, ai.board);
+            ai.lastGuess = -1;
+            if (habits != null)
+                ai.strategy.prior(habits.weights());
+        }
+        over = false;
+        turns = 0;
+        learned = false;
+        if (recording != null)
+            recording.restart(seed);
+        history.clear(state());
+        if (activePlayer.broadcast != null)
+            activePlayer.broadcast.reset();
+
+        activePlayer.setEnabled(false);
+        inactivePlayer.setEnabled(true);
+        endRoundButton.setEnabled(false);
+        if (pvp) {
+            activePlayer.showDiscovered();
+            inactivePlayer.showDiscovered();
+            JOptionPane.showMessageDialog(null, activePlayer.name + "\nPress OK to start!");
+        }
+        activePlayer.showAll();
+        inactivePlayer.showDiscovered();
+        snapshot(true);
+    }
+
+    /**
+     * Takes back the last turn played, including the computer's reply.
+     */
+    public void undo() {
+        settle();
+        if (history != null)
+            restore(history.undo());
+    }
+
+    /**
+     * Plays the last turn taken back again, exactly as it was played.
+     */
+    public void redo() {
+        settle();
+        if (history != null)
+            restore(history.redo());
+    }
+
+    /**
+     * Encodes the state of the game besides the boards, for the history of the game: which player is active,
+     * whether the game is over, the number of shots, the computer's last guess and memory,
+     * and the position of the recording.
+     * @return the state of the game
+     */
+    private byte[] state() {
+        Strategy strategy = inactivePlayer instanceof AI ai ? ai.strategy : null;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 4 + 4 + 8 + (strategy != null ? strategy.bytes() : 0));
+        boolean swapped = history != null && activePlayer.board != history.first();
+        buffer.put((byte) ((swapped ? 1 : 0) | (over ? 2 : 0)));
+        buffer.putInt(turns);
+        buffer.putInt(inactivePlayer instanceof AI ai ? ai.lastGuess : -1);
+        buffer.putInt(recording != null ? recording.shots() : 0);
+        buffer.putLong(recording != null ? recording.digest() : 0);
+        if (strategy != null)
+            strategy.write(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Restores the state of the game encoded by {@link #state()}, after the history restored the boards,
+     * and brings the view and the autosave up to date.
+     * @param state the state of the game, or null if the history had nothing to restore
+     */
+    private void restore(byte[] state) {
+        if (state == null)
+            return;
+        ByteBuffer buffer = ByteBuffer.wrap(state);
+        byte flags = buffer.get();
+        if (((flags & 1) != 0) == (activePlayer.board == history.first())) {
+            Player tmp = activePlayer;
+            activePlayer = inactivePlayer;
+            inactivePlayer = tmp;
+        }
+        over = (flags & 2) != 0;
+        turns = buffer.getInt();
+        int lastGuess = buffer.getInt();
+        int shots = buffer.getInt();
+        long digest = buffer.getLong();
+        if (recording != null)
+            recording.rewind(shots, digest);
+        if (inactivePlayer instanceof AI ai) {
+            ai.lastGuess = lastGuess;
+            ai.strategy.read(buffer);
+        }
+
+        activePlayer.setEnabled(false);
+        activePlayer.showAll();
+        inactivePlayer.panel.deselect();
+        inactivePlayer.setEnabled(!over);
+        if (over)
+            inactivePlayer.showAll();
+        else
+            inactivePlayer.showDiscovered();
+        activePlayer.panel.refresh();
+        inactivePlayer.panel.refresh();
+        endRoundButton.setEnabled(false);
+        if (activePlayer.broadcast != null)
+            activePlayer.broadcast.reset();
+        snapshot(true);
+    }
+
+    /**
+     * @return the seed the randomness of the game is derived from
+     */
+    public long seed() {
+        return seed;
     }
 
     /**
      * Save the game to the given file.
+     * <p>
+     * The file starts with the magic number "BSHP" and the version of the format, followed by whether the game is
+     * PvP and whether it is over, the number of shots taken and the seed of the game. Then come both players, the active one first:
+     * their names, their boards with the ships and the discovered tiles as bitboards,
+     * and for the computer, its mode and memory. The recording of the game closes the file, if it has one.
      * @param file where the game will be saved
      */
     public void save(File file) {
+        settle();
+        long start = Metrics.start();
+        byte[] activeName = activePlayer.name.getBytes(StandardCharsets.UTF_8);
+        byte[] inactiveName = inactivePlayer.name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + 1 + 4 + 8
+                + bytes(activePlayer, activeName) + bytes(inactivePlayer, inactiveName)
+                + 1 + (recording != null ? recording.bytes() : 0));
+        buffer.putInt(MAGIC).putShort(VERSION);
+        buffer.put((byte) ((pvp ? 1 : 0) | (over ? 2 : 0)));
+        buffer.putInt(turns);
+        buffer.putLong(seed);
+        write(buffer, activePlayer, activeName);
+        write(buffer, inactivePlayer, inactiveName);
+        buffer.put((byte) (recording != null ? 1 : 0));
+        if (recording != null)
+            recording.write(buffer);
+        buffer.flip();
+
+        // Write a temporary file first, so a crash never leaves a half-written save behind
+        Path temporary = file.toPath().resolveSibling(file.getName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(false);
+            }
+            try {
+                Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (start != 0) {
+            Metrics.SAVE.since(start);
+            Metrics.SAVE_SIZE.record(buffer.limit());
+        }
+    }
+
+    /**
+     * Starts autosaving the game: takes a snapshot of it, and from then on appends every shot to a journal
+     * next to the snapshot. A new snapshot is taken after every {@link #SNAPSHOT_INTERVAL} shots.
+     * Games against remote opponents are not autosaved, as they cannot be resumed.
+     * @param file where the snapshots of the game are saved
+     */
+    public void autosave(File file) {
+        stopAutosave();
+        if (remote != null)
+            return;
+        autosave = file;
+        save(file);
+        snapshotTurns = turns;
         try {
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-            out.writeObject(this);
-            out.close();
+            journal = new Journal(Journal.fileOf(file), turns,
+                    inactivePlayer instanceof AI ai ? ai.strategy.bytes() : 0);
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    /**
+     * Stops autosaving the game. An unfinished game is saved a final time, a finished one is deleted.
+     */
+    private void stopAutosave() {
+        if (autosave == null)
+            return;
+        try {
+            journal.close();
+            if (over) {
+                Files.deleteIfExists(autosave.toPath());
+                Files.deleteIfExists(Journal.fileOf(autosave).toPath());
+            } else {
+                save(autosave);
+                Files.deleteIfExists(Journal.fileOf(autosave).toPath());
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        autosave = null;
+        journal = null;
+    }
+
+    /**
+     * Appends a shot to the journal, if the game is autosaved.
+     * @param kind the kind of the shot
+     * @param cell the index of the shot tile
+     * @param strategy the computer's strategy after the shot, or null for the players' shots
+     */
+    private void journal(byte kind, int cell, Strategy strategy) {
+        turns++;
+        if (journal == null)
+            return;
+        try {
+            journal.append(kind, cell, strategy);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Takes a new snapshot of the autosaved game and empties its journal,
+     * if enough shots have been journaled since the last one.
+     * @param force whether to take the snapshot anyway, as the journal no longer matches the game
+     */
+    private void snapshot(boolean force) {
+        if (journal == null || !force && turns - snapshotTurns < SNAPSHOT_INTERVAL)
+            return;
+        save(autosave);
+        try {
+            journal.reset(turns);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        snapshotTurns = turns;
+    }
+
+    /**
+     * Applies a shot read from the journal, the same way {@link #nextRound()} does, without any dialogs.
+     * @param kind the kind of the shot
+     * @param cell the index of the shot tile
+     * @param memory the memory of the computer's strategy after the shot
+     * @throws IOException The shot cannot be taken in the game.
+     */
+    private void replay(byte kind, int cell, ByteBuffer memory) throws IOException {
+        if (over)
+            throw new IOException("Corrupt journal: a shot after the end of the game.");
+        if (kind == Journal.PLAYER_SHOT) {
+            if (cell < 0 || cell >= inactivePlayer.board.size())
+                throw new IOException("Corrupt journal: invalid tile " + cell + ".");
+        } else if (kind == Journal.AI_SHOT && inactivePlayer instanceof AI ai) {
+            if (cell < 0 || cell >= activePlayer.board.size())
+                throw new IOException("Corrupt journal: invalid tile " + cell + ".");
+            if (memory.remaining() != ai.strategy.bytes())
+                throw new IOException("Corrupt journal: invalid memory of the strategy.");
+        } else
+            throw new IOException("Corrupt journal: invalid kind of shot " + kind + ".");
+
+        turns++;
+        if (kind == Journal.PLAYER_SHOT) {
+            inactivePlayer.shoot(cell);
+            if (inactivePlayer.board.shipsRemaining == 0)
+                over = true;
+            else if (pvp) {
+                Player tmp = activePlayer;
+                activePlayer = inactivePlayer;
+                inactivePlayer = tmp;
+            }
+        } else {
+            AI ai = (AI) inactivePlayer;
+            activePlayer.shoot(cell);
+            ai.lastGuess = cell;
+            ai.strategy.read(memory);
+            if (activePlayer.board.shipsRemaining == 0)
+                over = true;
+        }
+    }
+
+    /**
+     * @param player the player to write
+     * @param name the player's name encoded in UTF-8
+     * @return the number of bytes the player takes up when written
+     */
+    private static int bytes(Player player, byte[] name) {
+        int bytes = 2 + name.length + 1 + player.board.bytes();
+        if (player instanceof AI ai)
+            bytes += 1 + ai.strategy.bytes();
+        return bytes;
+    }
+
+    /**
+     * Writes a player of the game.
+     * @param buffer the buffer to write to
+     * @param player the player to write
+     * @param name the player's name encoded in UTF-8
+     */
+    private static void write(ByteBuffer buffer, Player player, byte[] name) {
+        buffer.putShort((short) name.length).put(name);
+        buffer.put((byte) (player instanceof AI ? 1 : 0));
+        player.board.write(buffer);
+        if (player instanceof AI ai) {
+            buffer.put((byte) ai.strategy.mode().ordinal());
+            ai.strategy.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a player written by {@link #write(ByteBuffer, Player, byte[])}.
+     * The opponent of the computer has to be set afterwards.
+     * @param buffer the buffer to read from
+     * @param version the version of the format of the saved game
+     * @param random the source of randomness of the player
+     * @return the player
+     * @throws IOException The length of the player's name is invalid.
+     */
+    private static Player read(ByteBuffer buffer, short version, RandomGenerator random) throws IOException {
+        short length = buffer.getShort();
+        if (length < 0)
+            throw new IOException("Corrupt saved game: invalid length of a name.");
+        byte[] name = new byte[length];
+        buffer.get(name);
+        boolean ai = buffer.get() == 1;
+        Board board = Board.read(buffer, version >= 3);
+        if (!ai)
+            return new Player(new String(name, StandardCharsets.UTF_8), board, random);
+        Strategy strategy = AI.Mode.values()[buffer.get()].create(random);
+        strategy.read(buffer);
+        return new AI(new String(name, StandardCharsets.UTF_8), board, null, strategy);
+    }
+
+    /**
+     * Converts a player of a game saved with Java serialization into a player of the current model.
+     * The ships of the board are identified from its tiles, and the computer keeps following the ship it hit.
+     * The opponent of the computer has to be set afterwards.
+     * @param saved the saved game
+     * @param index the index of the player in the saved game
+     * @param random the source of randomness of the player
+     * @return the player
+     */
+    private static Player convert(SerializedGame saved, int index, RandomGenerator random) {
+        Board board = new Board(saved.rows(index), saved.columns(index));
+        for (int cell = 0; cell < board.size(); cell++)
+            if (saved.isShip(index, board.row(cell), board.column(cell)))
+                board.setShip(cell);
+        for (int cell = 0; cell < board.size(); cell++)
+            if (saved.isDiscovered(index, board.row(cell), board.column(cell)))
+                board.reveal(cell, board.isShip(cell));
+        board.identifyFleet();
+        if (!saved.isComputer(index))
+            return new Player(saved.name(index), board, random);
+        Strategy strategy = new HuntStrategy(random, saved.lastGuess(index), saved.shipOrigin(index),
+                saved.chosenRoute(index), saved.possibleRoutes(index));
+        return new AI(saved.name(index), board, null, strategy);
+    }
+
     /**
      * Tries loading the game using from the given file.
+     * Games saved with Java serialization by older versions can be loaded as well.
      * @param file where the game is saved
      * @return the loaded game
-     * @throws IOException Something is wrong with a class used by deserialization.
+     * @throws IOException The file cannot be read, or it is not a saved game.
      * @throws ClassNotFoundException Class of a serialized object cannot be found.
      */
     public static Game load(File file) throws IOException, ClassNotFoundException {
-        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-        Game result = (Game) in.readObject();
-        in.close();
-        for (int row = 0; row < Player.ROWS; row++) {
-            for (int column = 0; column < Player.COLUMNS; column++) {
-                result.activePlayer.getTile(row, column).initialize();
-                result.inactivePlayer.getTile(row, column).initialize();
-            }
+        Game result = read(file);
+        result.initialize();
+        return result;
+    }
+
+    /**
+     * Resumes an autosaved game: loads its last snapshot and replays the journal after it.
+     * @param file where the snapshots of the game are saved
+     * @return the resumed game
+     * @throws IOException The files cannot be read, or they are not a saved game.
+     * @throws ClassNotFoundException Class of a serialized object cannot be found.
+     */
+    public static Game resume(File file) throws IOException, ClassNotFoundException {
+        Game result = read(file);
+        try {
+            Journal.replay(Journal.fileOf(file), result.turns, result::replay);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt journal: " + Journal.fileOf(file), e);
         }
-        result.activePlayer.initialize();
-        result.inactivePlayer.initialize();
         result.initialize();
         return result;
     }
 
+    /**
+     * Reads a game from the given file, without initializing its UI components.
+     * @param file where the game is saved
+     * @return the game
+     * @throws IOException The file cannot be read, or it is not a saved game.
+     * @throws ClassNotFoundException Class of a serialized object cannot be found.
+     */
+    private static Game read(File file) throws IOException, ClassNotFoundException {
+        long start = Metrics.start();
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1);
+        }
+        buffer.flip();
+
+        Game result;
+        if (buffer.remaining() >= 2 && buffer.getShort(0) == LEGACY_MAGIC) try {
+            SerializedGame saved = SerializedGame.read(new ByteArrayInputStream(buffer.array(), 0, buffer.limit()));
+            long seed = new SplittableRandom().nextLong();
+            SplittableRandom random = new SplittableRandom(seed);
+            Player active = convert(saved, 0, random.split());
+            Player inactive = convert(saved, 1, random.split());
+            if (active instanceof AI ai)
+                ai.opponent = inactive;
+            if (inactive instanceof AI ai)
+                ai.opponent = active;
+            result = new Game(saved.pvp(), active, inactive, saved.over(), 0, seed);
+            result.recording = new Recording(active, inactive, seed);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IOException("Corrupt saved game: " + file, e);
+        }
+        else try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a saved game: " + file);
+            short version = buffer.getShort();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported version " + version + ": " + file);
+            byte flags = buffer.get();
+            int turns = version >= 2 ? buffer.getInt() : 0;
+            long seed = version >= 5 ? buffer.getLong() : new SplittableRandom().nextLong();
+            // The generator of a loaded game is derived from its seed and the number of shots taken
+            SplittableRandom random = new SplittableRandom(Simulator.seed(seed, turns));
+            Player active = read(buffer, version, random.split());
+            Player inactive = read(buffer, version, random.split());
+            if (active instanceof AI ai)
+                ai.opponent = inactive;
+            if (inactive instanceof AI ai)
+                ai.opponent = active;
+            result = new Game((flags & 1) != 0, active, inactive, (flags & 2) != 0, turns, seed);
+            // The recording continues from the saved one, or starts from the loaded state for older saves
+            if (version >= 4 && buffer.get() == 1) {
+                result.recording = Recording.read(buffer);
+                result.recording.attach(active, inactive);
+            } else
+                result.recording = new Recording(active, inactive, seed);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt saved game: " + file, e);
+        }
+        if (start != 0) {
+            Metrics.LOAD.since(start);
+            Metrics.LOAD_SIZE.record(buffer.limit());
+        }
+        return result;
+    }
+
     /**
      * Closes the window, thus ending the game.
      */
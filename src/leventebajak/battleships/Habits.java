@@ -0,0 +1,203 @@
+package leventebajak.battleships;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Model of the habits of a human player placing ships: how often each tile held a ship
+ * in the player's finished games against the computer, for one size of the boards.
+ * <p>
+ * The model is kept in a memory-mapped file per profile and board size, which is updated in place after every game.
+ * The file starts with the magic number "BSHH" and the version of the format, followed by the size of the boards,
+ * the number of games learned, then the counts of the tiles, as unsigned 16-bit integers.
+ * When a count would overflow, all the counts and the number of games are halved, which also lets
+ * old habits fade, so the file never grows, however many games are learned.
+ * <p>
+ * The counts are turned into {@link #weights() weights} of the tiles, that the computer's strategy multiplies
+ * its own estimates with while it has no lead. They are only recomputed after a game is learned,
+ * so looking them up costs a single array access.
+ */
+public class Habits {
+
+    /**
+     * The directory of the models, or null if the habits of the players are not learned.
+     */
+    public static File HABITS = new File("habits");
+
+    /**
+     * The name of the profile of the player at this computer.
+     */
+    public static String PROFILE = System.getProperty("user.name", "player");
+
+    /**
+     * How strongly the habits influence the guesses: 0 ignores them,
+     * 1 makes a tile twice as likely to be guessed if it held ships twice as often as the average tile.
+     */
+    public static double STRENGTH = 0.5;
+
+    /**
+     * The weight of a tile that held ships as often as the average tile.
+     */
+    public static final int ONE = 256;
+
+    /**
+     * The number of games after which the habits have half of their full influence.
+     */
+    private static final int CONFIDENCE_GAMES = 10;
+
+    /**
+     * The first bytes of the models, "BSHH".
+     */
+    private static final int MAGIC = 0x42534848;
+
+    /**
+     * The version of the format of the models.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * The number of bytes before the counts.
+     */
+    private static final int HEADER = 4 + 2 + 4 + 4 + 4;
+
+    /**
+     * The largest count of a tile.
+     */
+    private static final int MAX_COUNT = 0xFFFF;
+
+    /**
+     * The number of rows of the boards.
+     */
+    public final int rows;
+
+    /**
+     * The number of columns of the boards.
+     */
+    public final int columns;
+
+    /**
+     * The mapped file of the model.
+     */
+    private final MappedByteBuffer map;
+
+    /**
+     * The weights of the tiles, derived from the counts.
+     */
+    private final int[] weights;
+
+    /**
+     * Maps a model, creating an empty one if the file does not exist.
+     * @param file the file of the model
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @throws IOException The file cannot be mapped, or it is not a model of boards of this size.
+     */
+    Habits(File file, int rows, int columns) throws IOException {
+        this.rows = rows;
+        this.columns = columns;
+        int size = rows * columns;
+        long length = HEADER + 2L * size;
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("The board is too large to learn habits on.");
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long existing = channel.size();
+            if (existing != 0 && existing != length)
+                throw new IOException("Not a model of " + rows + "x" + columns + " boards: " + file);
+            // The mapping stays valid after the channel is closed
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        if (map.getInt(0) == 0) {
+            map.putInt(0, MAGIC).putShort(4, VERSION).putInt(6, rows).putInt(10, columns);
+            map.force();
+        }
+        if (map.getInt(0) != MAGIC || map.getShort(4) != VERSION || map.getInt(6) != rows || map.getInt(10) != columns)
+            throw new IOException("Not a model of " + rows + "x" + columns + " boards: " + file);
+        weights = new int[size];
+        reweigh();
+    }
+
+    /**
+     * Maps the model of a profile for boards of a size, in the directory of the models.
+     * @param profile the name of the profile
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @return the model
+     * @throws IOException The file cannot be mapped, or it is not a model of boards of this size.
+     */
+    public static Habits open(String profile, int rows, int columns) throws IOException {
+        Files.createDirectories(HABITS.toPath());
+        String name = profile.replaceAll("[^A-Za-z0-9._-]", "_");
+        return new Habits(new File(HABITS, name + "-" + rows + "x" + columns + ".bshh"), rows, columns);
+    }
+
+    /**
+     * @return the number of games learned, halved whenever the counts are
+     */
+    public int games() {
+        return map.getInt(14);
+    }
+
+    /**
+     * @param cell the index of the tile
+     * @return how many times the tile held a ship, halved whenever a count would overflow
+     */
+    public int count(int cell) {
+        return map.getChar(HEADER + 2 * cell);
+    }
+
+    /**
+     * Gets the weights of the tiles: {@link #ONE} for a tile that held ships as often as the average tile,
+     * more for the tiles preferred by the player. The array must not be changed, it is updated in place
+     * whenever a game is learned.
+     * @return the weights of the tiles
+     */
+    public int[] weights() {
+        return weights;
+    }
+
+    /**
+     * Learns the placement of the ships of a finished game.
+     * @param board the player's board
+     * @throws IllegalArgumentException The board has a different size.
+     */
+    public void learn(Board board) throws IllegalArgumentException {
+        if (board.rows != rows || board.columns != columns)
+            throw new IllegalArgumentException();
+        boolean full = false;
+        for (int cell = 0; cell < weights.length; cell++)
+            if (board.isShip(cell) && count(cell) == MAX_COUNT)
+                full = true;
+        if (full) {
+            for (int cell = 0; cell < weights.length; cell++)
+                map.putChar(HEADER + 2 * cell, (char) (count(cell) >>> 1));
+            map.putInt(14, games() >>> 1);
+        }
+        for (int cell = 0; cell < weights.length; cell++)
+            if (board.isShip(cell))
+                map.putChar(HEADER + 2 * cell, (char) (count(cell) + 1));
+        map.putInt(14, games() + 1);
+        map.force();
+        reweigh();
+    }
+
+    /**
+     * Derives the weights of the tiles from the counts. The fewer games have been learned,
+     * the closer the weights stay to {@link #ONE}.
+     */
+    private void reweigh() {
+        long total = 0;
+        for (int cell = 0; cell < weights.length; cell++)
+            total += count(cell);
+        double confidence = (double) games() / (games() + CONFIDENCE_GAMES);
+        for (int cell = 0; cell < weights.length; cell++) {
+            double relative = total == 0 ? 1 : (double) count(cell) * weights.length / total;
+            double weight = 1 + STRENGTH * confidence * (relative - 1);
+            weights[cell] = (int) Math.round(ONE * Math.max(0.25, Math.min(4, weight)));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package leventebajak.battleships;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Unlimited undo and redo of the turns of a game on two boards.
+ * <p>
+ * Instead of copies of the boards, every turn only keeps the words of the bitboards of the discovered tiles
+ * it changed, as masks of the tiles it revealed. Undoing or redoing a turn flips the same bits,
+ * so it only touches the few words the turn changed, however large the boards are, and everything else
+ * is shared with the current state of the boards. Next to the masks, every turn keeps the rest of the state
+ * of the game after it, encoded by the game, which is restored along with the boards.
+ */
+class History {
+
+    /**
+     * The boards of the game.
+     */
+    private final Board[] boards;
+
+    /**
+     * The changed words of every turn, one turn after the other, as the index of the word shifted left by one,
+     * with the index of the board in the lowest bit.
+     */
+    private int[] words = new int[64];
+
+    /**
+     * The masks of the tiles revealed in the changed words.
+     */
+    private long[] masks = new long[64];
+
+    /**
+     * The number of changed words of all the turns.
+     */
+    private int size = 0;
+
+    /**
+     * The index of the first changed word of the turn being recorded.
+     */
+    private int start = 0;
+
+    /**
+     * The index after the last changed word of every turn.
+     */
+    private int[] ends = new int[16];
+
+    /**
+     * The state of the game before the first turn, then after every turn.
+     */
+    private byte[][] states = new byte[16][];
+
+    /**
+     * The number of turns that can be redone or undone.
+     */
+    private int count = 0;
+
+    /**
+     * The number of turns played, that can be undone.
+     */
+    private int position = 0;
+
+    /**
+     * Starts the history of a game.
+     * @param first the board of the first player
+     * @param second the board of the second player
+     * @param state the current state of the game
+     */
+    History(Board first, Board second, byte[] state) {
+        boards = new Board[]{first, second};
+        states[0] = state;
+    }
+
+    /**
+     * Forgets every turn, for a new game on the same boards, keeping the allocated arrays.
+     * @param state the state of the new game
+     */
+    void clear(byte[] state) {
+        Arrays.fill(states, 1, states.length, null);
+        states[0] = state;
+        size = start = count = position = 0;
+    }
+
+    /**
+     * Starts recording a turn. The turns undone until now cannot be redone anymore.
+     */
+    void begin() {
+        count = position;
+        size = start = position == 0 ? 0 : ends[position - 1];
+    }
+
+    /**
+     * Records a shot of the turn being recorded.
+     * @param board the board being shot
+     * @return collects the tiles revealed by the shot, it has to be passed to {@link Board#shoot(int, IntConsumer)}
+     * @throws IllegalArgumentException The board is not one of the boards of the game.
+     */
+    IntConsumer shot(Board board) throws IllegalArgumentException {
+        int index = board == boards[0] ? 0 : board == boards[1] ? 1 : -1;
+        if (index == -1)
+            throw new IllegalArgumentException("The board is not part of the history.");
+        return cell -> reveal((cell >>> 6) << 1 | index, 1L << cell);
+    }
+
+    /**
+     * Adds a revealed tile to the changed words of the turn being recorded.
+     * @param key the index of the word shifted left by one, with the index of the board in the lowest bit
+     * @param bit the bit of the tile
+     */
+    private void reveal(int key, long bit) {
+        // A cascade keeps revealing tiles of the same few words, so the last ones are the likeliest
+        for (int i = size - 1; i >= start; i--)
+            if (words[i] == key) {
+                masks[i] |= bit;
+                return;
+            }
+        if (size == words.length) {
+            words = Arrays.copyOf(words, 2 * size);
+            masks = Arrays.copyOf(masks, 2 * size);
+        }
+        words[size] = key;
+        masks[size++] = bit;
+    }
+
+    /**
+     * Finishes recording a turn.
+     * @param state the state of the game after the turn
+     */
+    void end(byte[] state) {
+        if (position + 1 == ends.length) {
+            ends = Arrays.copyOf(ends, 2 * ends.length);
+            states = Arrays.copyOf(states, 2 * states.length);
+        }
+        ends[position] = size;
+        states[++position] = state;
+        count = position;
+        start = size;
+    }
+
+    /**
+     * @return whether there is a turn to undo
+     */
+    boolean canUndo() {
+        return position > 0;
+    }
+
+    /**
+     * @return whether there is an undone turn to redo
+     */
+    boolean canRedo() {
+        return position < count;
+    }
+
+    /**
+     * Hides the tiles revealed by the last turn.
+     * @return the state of the game before the turn, or null if there is no turn to undo
+     */
+    byte[] undo() {
+        if (!canUndo())
+            return null;
+        flip(--position);
+        return states[position];
+    }
+
+    /**
+     * Reveals the tiles of the last undone turn again.
+     * @return the state of the game after the turn, or null if there is no turn to redo
+     */
+    byte[] redo() {
+        if (!canRedo())
+            return null;
+        flip(position++);
+        return states[position];
+    }
+
+    /**
+     * Flips the tiles revealed by a turn.
+     * @param turn the index of the turn
+     */
+    private void flip(int turn) {
+        for (int i = turn == 0 ? 0 : ends[turn - 1]; i < ends[turn]; i++)
+            boards[words[i] & 1].toggle(words[i] >>> 1, masks[i]);
+    }
+
+    /**
+     * @return the board of the first player
+     */
+    Board first() {
+        return boards[0];
+    }
+
+    /**
+     * @return the number of turns played, that can be undone
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * @return the number of bytes the recorded turns take up, not counting the unused capacity
+     */
+    long bytes() {
+        long bytes = (long) size * (4 + 8) + 4L * count;
+        for (int turn = 0; turn <= count; turn++)
+            bytes += states[turn].length;
+        return bytes;
+    }
+}
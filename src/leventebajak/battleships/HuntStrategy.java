@@ -0,0 +1,179 @@
+package leventebajak.battleships;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Strategy that guesses randomly until it hits a ship, then follows the ship until it has been sunk.
+ */
+public class HuntStrategy implements Strategy {
+
+    /**
+     * The source of randomness used for guessing.
+     */
+    private final RandomGenerator random;
+
+    /**
+     * The index of the most recently guessed tile, or -1 if there is none.
+     */
+    int lastGuess = -1;
+
+    /**
+     * The index of the first discovered tile of the ship, or -1 if no ship is being followed.
+     */
+    int shipOrigin = -1;
+
+    /**
+     * The different routes to check for ship tiles.
+     */
+    private ArrayList<Direction> possibleRoutes;
+
+    /**
+     * The route chosen from the possible routes.
+     */
+    Direction chosenRoute;
+
+    /**
+     * The weights of the tiles while guessing randomly, or null if all tiles are alike.
+     */
+    private int[] prior;
+
+    /**
+     * The largest weight of the tiles.
+     */
+    private int maxWeight;
+
+    /**
+     * Creates the strategy.
+     * @param random the source of randomness used for guessing
+     */
+    HuntStrategy(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * Creates the strategy with the memory of a computer of the first versions, saved by its tiles.
+     * @param random the source of randomness used for guessing
+     * @param lastGuess the index of the most recently guessed tile, or -1 if there is none
+     * @param shipOrigin the index of the first discovered tile of the ship being followed, or -1 if there is none
+     * @param chosenRoute the route chosen from the possible routes, or null
+     * @param possibleRoutes the different routes to check for ship tiles
+     */
+    HuntStrategy(RandomGenerator random, int lastGuess, int shipOrigin, Direction chosenRoute, List<Direction> possibleRoutes) {
+        this(random);
+        this.lastGuess = lastGuess;
+        this.shipOrigin = shipOrigin;
+        this.chosenRoute = chosenRoute;
+        this.possibleRoutes = new ArrayList<>(possibleRoutes);
+    }
+
+    @Override
+    public int nextGuess(Board board) {
+        // If we know about a ship, try to find its remaining tiles
+        if (shipOrigin != -1) {
+            // If the chosen route is correct, continue guessing that way
+            if (shipOrigin != lastGuess && board.isShip(lastGuess)) {
+                int neighbor = board.neighbor(lastGuess, chosenRoute);
+                if (neighbor != -1 && !board.isDiscovered(neighbor))
+                    return neighbor;
+                // At the end of the ship, continue on the other side of its first discovered tile
+                chosenRoute = chosenRoute.opposite();
+                neighbor = board.neighbor(shipOrigin, chosenRoute);
+                if (neighbor != -1 && !board.isDiscovered(neighbor))
+                    return neighbor;
+            }
+            // Otherwise try finding the correct route
+            else {
+                while (possibleRoutes.size() > 0) {
+                    chosenRoute = possibleRoutes.remove(random.nextInt(0, possibleRoutes.size()));
+                    int neighbor = board.neighbor(shipOrigin, chosenRoute);
+                    if (neighbor != -1 && !board.isDiscovered(neighbor))
+                        return neighbor;
+                }
+            }
+            // If the whole ship has been discovered, forget it
+            shipOrigin = -1;
+        }
+
+        // Not knowing where to look, guess a tile randomly
+        int guess;
+        do {
+            guess = board.cell(random.nextInt(0, board.rows), random.nextInt(0, board.columns));
+
+            // If all the tile's neighbors are discovered, then don't guess that, as it cannot be a ship
+            if (!board.isDiscovered(guess) && !hasUndiscoveredNeighbor(board, guess))
+                guess = -1;
+            // Keep the tile with a probability proportional to its weight
+            else if (prior != null && random.nextInt(maxWeight) >= prior[guess])
+                guess = -1;
+        } while (guess == -1 || board.isDiscovered(guess));
+        return guess;
+    }
+
+    /**
+     * @param board the opponent's board
+     * @param cell the index of the tile
+     * @return whether any of the orthogonal neighbors of the tile is undiscovered
+     */
+    private static boolean hasUndiscoveredNeighbor(Board board, int cell) {
+        for (Direction d : Direction.ORTHOGONAL) {
+            int neighbor = board.neighbor(cell, d);
+            if (neighbor != -1 && !board.isDiscovered(neighbor))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void prior(int[] weights) {
+        prior = weights;
+        maxWeight = weights == null ? 0 : Arrays.stream(weights).max().orElse(1);
+    }
+
+    @Override
+    public void update(Board board, int cell) {
+        lastGuess = cell;
+        // If a randomly guessed tile was part of a ship, remember it
+        if (shipOrigin == -1 && board.isShip(cell)) {
+            shipOrigin = cell;
+            possibleRoutes = new ArrayList<>(Arrays.asList(Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST));
+        }
+    }
+
+    @Override
+    public AI.Mode mode() {
+        return AI.Mode.HUNT;
+    }
+
+    @Override
+    public int bytes() {
+        return 4 + 4 + 1 + 1;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(lastGuess).putInt(shipOrigin);
+        buffer.put((byte) (chosenRoute == null ? -1 : chosenRoute.ordinal()));
+        int routes = 0;
+        if (possibleRoutes != null)
+            for (Direction route : possibleRoutes)
+                routes |= 1 << route.ordinal();
+        buffer.put((byte) routes);
+    }
+
+    @Override
+    public void read(ByteBuffer buffer) {
+        lastGuess = buffer.getInt();
+        shipOrigin = buffer.getInt();
+        byte route = buffer.get();
+        chosenRoute = route == -1 ? null : Direction.VALUES[route];
+        int routes = buffer.get() & 0xFF;
+        possibleRoutes = new ArrayList<>();
+        for (Direction d : Direction.VALUES)
+            if ((routes & 1 << d.ordinal()) != 0)
+                possibleRoutes.add(d);
+    }
+}
@@ -0,0 +1,198 @@
+package leventebajak.battleships;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the shots of a game, kept next to its last snapshot.
+ * <p>
+ * The journal starts with a header: the magic number "BSHJ", the version of the format, the size of the records
+ * and the number of turns the snapshot contains. Every shot is appended as a fixed-size record: its kind,
+ * the index of the shot tile, the turn it was taken in, for the computer's shots the memory of its strategy
+ * afterwards, and a CRC-32 checksum of all of these.
+ * A game is resumed by loading the snapshot and replaying the records after it.
+ * <p>
+ * Records are forced to the disk as soon as they are appended, so they survive the program crashing
+ * and the machine losing power. Replaying stops at the first record that is torn, fails its checksum
+ * or is not of the next turn, as the ones after it cannot be trusted either.
+ */
+class Journal implements Closeable {
+
+    /**
+     * The first bytes of the journals, "BSHJ".
+     */
+    private static final int MAGIC = 0x4253484A;
+
+    /**
+     * The version of the format of the journals.
+     */
+    private static final short VERSION = 2;
+
+    /**
+     * The number of bytes of the header.
+     */
+    private static final int HEADER = 4 + 2 + 2 + 4;
+
+    /**
+     * The number of bytes of the records without the memory of the strategy.
+     */
+    private static final int RECORD = 1 + 3 + 4 + 4 + 4;
+
+    /**
+     * The kind of the records of a player shooting the opponent's board.
+     */
+    static final byte PLAYER_SHOT = 0;
+
+    /**
+     * The kind of the records of the computer shooting the player's board.
+     */
+    static final byte AI_SHOT = 1;
+
+    /**
+     * Receives the records of a journal when replaying it.
+     */
+    interface Handler {
+
+        /**
+         * Receives a record.
+         * @param kind the kind of the record
+         * @param cell the index of the shot tile
+         * @param memory the memory of the computer's strategy after the shot
+         * @throws IOException The record does not fit the game.
+         */
+        void record(byte kind, int cell, ByteBuffer memory) throws IOException;
+    }
+
+    /**
+     * The channel the records are appended to.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The buffer the records are built in.
+     */
+    private final ByteBuffer record;
+
+    /**
+     * Computes the checksums of the records.
+     */
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * The turn of the last record appended.
+     */
+    private int turn;
+
+    /**
+     * Creates an empty journal, replacing the existing one.
+     * @param file the file of the journal
+     * @param turns the number of turns the snapshot contains
+     * @param memoryBytes the number of bytes of the memory of the computer's strategy
+     * @throws IOException The journal cannot be written.
+     */
+    Journal(File file, int turns, int memoryBytes) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        record = ByteBuffer.allocate(RECORD + memoryBytes);
+        reset(turns);
+    }
+
+    /**
+     * Gets the file of the journal kept next to a snapshot.
+     * @param snapshot the file of the snapshot
+     * @return the file of the journal
+     */
+    static File fileOf(File snapshot) {
+        return new File(snapshot.getPath() + ".journal");
+    }
+
+    /**
+     * Empties the journal after a new snapshot has been taken.
+     * @param turns the number of turns the snapshot contains
+     * @throws IOException The journal cannot be written.
+     */
+    void reset(int turns) throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) record.capacity()).putInt(turns);
+        header.flip();
+        channel.write(header, 0);
+        channel.position(HEADER);
+        channel.force(false);
+        turn = turns;
+    }
+
+    /**
+     * Appends a record of a shot.
+     * @param kind the kind of the record
+     * @param cell the index of the shot tile
+     * @param strategy the computer's strategy after the shot, or null for the players' shots
+     * @throws IOException The journal cannot be written.
+     */
+    void append(byte kind, int cell, Strategy strategy) throws IOException {
+        Arrays.fill(record.array(), (byte) 0);
+        record.clear();
+        record.put(0, kind).putInt(4, cell).putInt(8, ++turn).position(RECORD - 4);
+        if (strategy != null)
+            strategy.write(record);
+        checksum.reset();
+        checksum.update(record.array(), 0, record.capacity() - 4);
+        record.putInt(record.capacity() - 4, (int) checksum.getValue());
+        record.position(record.capacity());
+        record.flip();
+        while (record.hasRemaining())
+            channel.write(record);
+        channel.force(false);
+    }
+
+    /**
+     * Replays the records of a journal, if it belongs to the snapshot.
+     * @param file the file of the journal
+     * @param turns the number of turns the snapshot contains
+     * @param handler receives the records
+     * @return the number of records replayed
+     * @throws IOException The journal cannot be read, or the handler rejected a record.
+     */
+    static int replay(File file, int turns, Handler handler) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        buffer.flip();
+
+        if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+            return 0;
+        int size = buffer.getShort();
+        if (buffer.getInt() != turns || size < RECORD)
+            return 0;
+
+        CRC32 checksum = new CRC32();
+        int replayed = 0;
+        while (buffer.remaining() >= size) {
+            int start = buffer.position();
+            checksum.reset();
+            checksum.update(buffer.array(), start, size - 4);
+            if (buffer.getInt(start + size - 4) != (int) checksum.getValue()
+                    || buffer.getInt(start + 8) != turns + replayed + 1)
+                break;
+            handler.record(buffer.get(start), buffer.getInt(start + 4), buffer.slice(start + RECORD - 4, size - RECORD));
+            buffer.position(start + size);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,289 @@
+package leventebajak.battleships;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking connection between two game instances, exchanging framed binary messages.
+ * <p>
+ * A single selector thread accepts or establishes the connection, reads the incoming frames
+ * and writes the queued outgoing ones, so neither sending nor receiving ever blocks the caller.
+ * Every frame is a type byte and a two-byte length, followed by the payload.
+ */
+public class Link implements Closeable {
+
+    /**
+     * Receives the frames and the end of the connection, on the selector thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called once the connection is established.
+         */
+        void connected();
+
+        /**
+         * Called for every frame received.
+         * @param type the type of the frame
+         * @param payload the payload of the frame, only valid during the call
+         */
+        void received(byte type, ByteBuffer payload);
+
+        /**
+         * Called once when the connection ends.
+         * @param cause the error that ended the connection, or null if it was closed
+         */
+        void closed(IOException cause);
+    }
+
+    /**
+     * The number of bytes of the header of a frame.
+     */
+    static final int HEADER = 3;
+
+    /**
+     * The largest payload of a frame.
+     */
+    public static final int MAX_PAYLOAD = 0xFFFF;
+
+    /**
+     * Receives the frames.
+     */
+    private final Listener listener;
+
+    /**
+     * The selector of the connection.
+     */
+    private final Selector selector;
+
+    /**
+     * The socket waiting for the opponent, or null when joining.
+     */
+    private ServerSocketChannel server;
+
+    /**
+     * The connection, or null while the host is waiting.
+     */
+    private SocketChannel channel;
+
+    /**
+     * The frames waiting to be written.
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The bytes received, but not processed yet.
+     */
+    private ByteBuffer incoming = ByteBuffer.allocate(4096);
+
+    /**
+     * Whether the link has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a link and starts its selector thread.
+     * @param listener receives the frames
+     * @param server the socket waiting for the opponent, or null
+     * @param channel the connection being established, or null
+     * @throws IOException The selector cannot be opened.
+     */
+    private Link(Listener listener, ServerSocketChannel server, SocketChannel channel) throws IOException {
+        this.listener = listener;
+        this.server = server;
+        this.channel = channel;
+        selector = Selector.open();
+        if (server != null)
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        else if (channel.isConnected())
+            register();
+        else
+            channel.register(selector, SelectionKey.OP_CONNECT);
+        Thread thread = new Thread(this::run, "link-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for an opponent to connect.
+     * @param port the port to listen on, 0 for any free port
+     * @param listener receives the frames
+     * @return the link
+     * @throws IOException The port cannot be listened on.
+     */
+    public static Link host(int port, Listener listener) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(port), 1);
+            server.configureBlocking(false);
+            return new Link(listener, server, null);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to a hosting opponent.
+     * @param host the host of the opponent
+     * @param port the port of the opponent
+     * @param listener receives the frames
+     * @return the link
+     * @throws IOException The connection cannot be started.
+     */
+    public static Link join(String host, int port, Listener listener) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress(host, port));
+            return new Link(listener, null, channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the local port of the link
+     * @throws IOException The link has been closed.
+     */
+    public int port() throws IOException {
+        NetworkChannel local = server != null ? server : channel;
+        return ((InetSocketAddress) local.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Queues a frame to be sent, without waiting for it to be written.
+     * @param type the type of the frame
+     * @param payload the payload of the frame, from its position to its limit
+     * @throws IllegalArgumentException The payload is too large.
+     */
+    public void send(byte type, ByteBuffer payload) throws IllegalArgumentException {
+        if (payload.remaining() > MAX_PAYLOAD)
+            throw new IllegalArgumentException("The payload is too large.");
+        ByteBuffer frame = ByteBuffer.allocate(HEADER + payload.remaining());
+        frame.put(type).putShort((short) payload.remaining()).put(payload).flip();
+        outgoing.add(frame);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers the established connection for reading.
+     * @throws IOException The connection cannot be configured.
+     */
+    private void register() throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ);
+        listener.connected();
+    }
+
+    /**
+     * Runs the selector loop until the link is closed or the connection ends.
+     */
+    private void run() {
+        IOException cause = null;
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        channel = server.accept();
+                        if (channel == null)
+                            continue;
+                        // Only one opponent is accepted
+                        server.close();
+                        channel.configureBlocking(false);
+                        register();
+                    } else if (key.isConnectable()) {
+                        channel.finishConnect();
+                        register();
+                    } else if (key.isReadable())
+                        read();
+                }
+                if (channel != null && channel.isConnected())
+                    write();
+            }
+        } catch (ClosedSelectorException | ClosedChannelException e) {
+            // The link was closed
+        } catch (IOException e) {
+            cause = e;
+        } finally {
+            closed = true;
+            try {
+                selector.close();
+                if (server != null)
+                    server.close();
+                if (channel != null)
+                    channel.close();
+            } catch (IOException ignored) {
+            }
+            listener.closed(cause);
+        }
+    }
+
+    /**
+     * Reads the available bytes and passes the complete frames to the listener.
+     * @throws IOException The connection was lost.
+     */
+    private void read() throws IOException {
+        if (channel.read(incoming) == -1)
+            throw new EOFException("The opponent disconnected.");
+        incoming.flip();
+        while (incoming.remaining() >= HEADER) {
+            int start = incoming.position();
+            byte type = incoming.get(start);
+            int length = Short.toUnsignedInt(incoming.getShort(start + 1));
+            if (incoming.remaining() < HEADER + length)
+                break;
+            ByteBuffer payload = incoming.slice(start + HEADER, length);
+            incoming.position(start + HEADER + length);
+            listener.received(type, payload);
+        }
+        incoming.compact();
+        // Make room for the largest frame
+        if (!incoming.hasRemaining() && incoming.capacity() < HEADER + MAX_PAYLOAD)
+            incoming = ByteBuffer.allocate(HEADER + MAX_PAYLOAD).put(incoming.flip());
+    }
+
+    /**
+     * Writes as many of the queued frames as the connection accepts, then waits to be writable if any are left.
+     * @throws IOException The connection was lost.
+     */
+    private void write() throws IOException {
+        ByteBuffer frame;
+        while ((frame = outgoing.peek()) != null) {
+            channel.write(frame);
+            if (frame.hasRemaining())
+                break;
+            outgoing.poll();
+        }
+        SelectionKey key = channel.keyFor(selector);
+        if (key != null && key.isValid())
+            key.interestOps(outgoing.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * @return whether the link has been closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+}
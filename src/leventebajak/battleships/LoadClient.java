@@ -0,0 +1,224 @@
+package leventebajak.battleships;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load generator for the {@link Server}: many concurrent clients, each playing matches by shooting
+ * the tiles in a random order, while the latency of every request is measured.
+ */
+public class LoadClient {
+
+    /**
+     * The statistics of a load test.
+     */
+    public static class Result {
+
+        /**
+         * The number of concurrent clients.
+         */
+        public final int clients;
+
+        /**
+         * The number of matches played to the end.
+         */
+        public final long games;
+
+        /**
+         * The latencies of the requests in nanoseconds, in increasing order.
+         */
+        public final long[] latencies;
+
+        /**
+         * The number of requests answered with an error.
+         */
+        public final long errors;
+
+        /**
+         * The time the load test took, in nanoseconds.
+         */
+        public final long nanos;
+
+        /**
+         * Creates the statistics.
+         * @param clients the number of concurrent clients
+         * @param games the number of matches played to the end
+         * @param latencies the latencies of the requests in nanoseconds, in increasing order
+         * @param errors the number of requests answered with an error
+         * @param nanos the time the load test took, in nanoseconds
+         */
+        Result(int clients, long games, long[] latencies, long errors, long nanos) {
+            this.clients = clients;
+            this.games = games;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Gets a percentile of the latencies.
+         * @param fraction the fraction of the requests answered faster, between 0 and 1
+         * @return the latency in nanoseconds
+         */
+        public long percentile(double fraction) {
+            if (latencies.length == 0)
+                return 0;
+            int index = (int) Math.ceil(fraction * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        /**
+         * @return a human-readable report of the statistics
+         */
+        public String report() {
+            double seconds = nanos / 1e9;
+            int cores = Runtime.getRuntime().availableProcessors();
+            return String.format(Locale.ROOT,
+                    "%d clients: %d games, %d requests (%d errors) in %.2f s%n"
+                            + "  %.0f requests/s, %.1f games/s, %.1f games/s per core (%d cores)%n"
+                            + "  latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                    clients, games, latencies.length, errors, seconds,
+                    latencies.length / seconds, games / seconds, games / seconds / cores, cores,
+                    percentile(0.5) / 1e3, percentile(0.99) / 1e3, percentile(0.999) / 1e3,
+                    percentile(1) / 1e3);
+        }
+    }
+
+    /**
+     * Runs a load test.
+     * @param host the host of the server
+     * @param port the port of the server
+     * @param clients the number of concurrent clients
+     * @param games the number of matches each client plays
+     * @param options the options of the {@code NEW} command, for example {@code "10x10 HUNT"}
+     * @return the statistics of the load test
+     * @throws IOException A client could not connect or lost its connection.
+     */
+    public static Result run(String host, int port, int clients, int games, String options) throws IOException {
+        long start = System.nanoTime();
+        List<Future<long[]>> futures = new ArrayList<>();
+        long[] errors = new long[clients];
+        ExecutorService executor = Server.newThreadPerTaskExecutor();
+        try {
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                futures.add(executor.submit(() -> play(host, port, games, options, errors, client)));
+            }
+            long[][] latencies = new long[clients][];
+            for (int i = 0; i < clients; i++)
+                latencies[i] = futures.get(i).get();
+            long[] merged = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Result(clients, (long) clients * games, merged, Arrays.stream(errors).sum(),
+                    System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays matches on a single connection.
+     * @param host the host of the server
+     * @param port the port of the server
+     * @param games the number of matches to play
+     * @param options the options of the {@code NEW} command
+     * @param errors the numbers of errors of the clients
+     * @param client the index of the client
+     * @return the latencies of the requests in nanoseconds
+     * @throws IOException The client could not connect or lost its connection.
+     */
+    private static long[] play(String host, int port, int games, String options, long[] errors, int client)
+            throws IOException {
+        long[] latencies = new long[256];
+        int count = 0;
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            Random random = ThreadLocalRandom.current();
+            for (int game = 0; game < games; game++) {
+                String[] session = request(in, out, "NEW " + options).split(" ");
+                if (!session[0].equals("SESSION"))
+                    throw new IOException("Unexpected answer: " + String.join(" ", session));
+                int rows = Integer.parseInt(session[2]), columns = Integer.parseInt(session[3]);
+
+                // Shoot the tiles in a random order until either side wins
+                int[] cells = new int[rows * columns];
+                for (int i = 0; i < cells.length; i++)
+                    cells[i] = i;
+                for (int i = cells.length - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1), tmp = cells[i];
+                    cells[i] = cells[j];
+                    cells[j] = tmp;
+                }
+                for (int cell : cells) {
+                    long sent = System.nanoTime();
+                    String answer = request(in, out, "SHOT " + cell / columns + " " + cell % columns);
+                    if (count == latencies.length)
+                        latencies = Arrays.copyOf(latencies, 2 * count);
+                    latencies[count++] = System.nanoTime() - sent;
+                    if (answer.startsWith("ERROR"))
+                        errors[client]++;
+                    else if (answer.endsWith("WON"))
+                        break;
+                }
+            }
+            request(in, out, "QUIT");
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * Sends a request and waits for the answer.
+     * @param in the input of the connection
+     * @param out the output of the connection
+     * @param request the request
+     * @return the first line of the answer
+     * @throws IOException The connection was lost.
+     */
+    private static String request(BufferedReader in, Writer out, String request) throws IOException {
+        out.write(request);
+        out.write('\n');
+        out.flush();
+        String answer = in.readLine();
+        if (answer == null)
+            throw new EOFException();
+        return answer;
+    }
+
+    /**
+     * Runs a load test from the command line.
+     * <p>
+     * Options: {@code --host H}, {@code --port P}, {@code --clients C}, {@code --games G},
+     * the number of matches per client, {@code --size ROWSxCOLUMNS} and {@code --mode HUNT|DENSITY}.
+     * @param args the options
+     * @throws IOException A client could not connect or lost its connection.
+     */
+    public static void main(String[] args) throws IOException {
+        String host = "localhost", size = Player.ROWS + "x" + Player.COLUMNS, mode = AI.MODE.name();
+        int port = Server.PORT, clients = 100, games = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host" -> host = value;
+                case "--port" -> port = Integer.parseInt(value);
+                case "--clients" -> clients = Integer.parseInt(value);
+                case "--games" -> games = Integer.parseInt(value);
+                case "--size" -> size = value;
+                case "--mode" -> mode = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.print(run(host, port, clients, games, size + " " + mode).report());
+    }
+}
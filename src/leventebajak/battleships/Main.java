@@ -5,6 +5,7 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
+import java.util.SplittableRandom;
 
 /**
  * Main class, that builds the main menu.
@@ -12,30 +13,65 @@ import java.io.*;
 public class Main {
 
     /**
-     * This frame is the main menu.
+     * Holds the main menu, so that the frame is only created, and AWT only started, once the menu is needed.
      */
-    static JFrame FRAME = new JFrame("BATTLESHIPS");
+    private static class Menu {
+
+        /**
+         * This frame is the main menu.
+         */
+        static final JFrame FRAME = new JFrame("BATTLESHIPS");
+    }
 
     /**
      * This button loads the last game. It is only enabled, if the file exists.
      */
     static JButton continueButton;
 
+    /**
+     * The last game closed, whose window the next new game of the same kind is played in, or null.
+     */
+    private static Game closed;
+
+    /**
+     * @return the frame of the main menu, created the first time it is needed
+     */
+    static JFrame frame() {
+        return Menu.FRAME;
+    }
+
+    /**
+     * Opens the main menu, or with any arguments, plays batches of games from the command line
+     * as described at {@link Simulator#main(String[])}, without starting AWT at all.
+     * @param args the options of the batches, or none for the main menu
+     */
     public static void main(String[] args) {
-        FRAME.setLayout(new BorderLayout());
-        FRAME.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        FRAME.setPreferredSize(new Dimension(1280, 720));
-        FRAME.getContentPane().setBackground(Color.WHITE);
+        Metrics.configure();
+        if (args.length > 0) {
+            Simulator.main(args);
+            return;
+        }
+        Game.configure();
+        try {
+            Spectators.configure();
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("The games cannot be broadcast: " + e.getMessage());
+        }
+        JFrame menu = frame();
+        menu.setLayout(new BorderLayout());
+        menu.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        menu.setPreferredSize(new Dimension(1280, 720));
+        menu.getContentPane().setBackground(Color.WHITE);
 
         JPanel title_panel = new JPanel(new BorderLayout());
         JLabel title = new JLabel("BATTLESHIPS", SwingConstants.CENTER);
         title.setFont(new Font("Stencil", Font.BOLD, 100));
         title_panel.add(title);
         title_panel.setPreferredSize(new Dimension(title.getWidth(), 200));
-        title_panel.setBackground(FRAME.getContentPane().getBackground());
-        FRAME.add(title_panel, BorderLayout.NORTH);
+        title_panel.setBackground(menu.getContentPane().getBackground());
+        menu.add(title_panel, BorderLayout.NORTH);
 
-        JPanel buttons = new JPanel(new GridLayout(5,1));
+        JPanel buttons = new JPanel(new GridLayout(6,1));
         buttons.setFont(new Font("Stencil", Font.BOLD, 50));
 
         // This button loads the last game. It is only enabled, if the file exists.
@@ -43,7 +79,7 @@ public class Main {
         continueButton.addActionListener(ae -> continueGame());
         continueButton.setEnabled(Game.EXIT_SAVE.exists());
         continueButton.setFont(buttons.getFont());
-        continueButton.setBackground(FRAME.getContentPane().getBackground());
+        continueButton.setBackground(menu.getContentPane().getBackground());
         continueButton.setBorder(null);
         buttons.add(continueButton);
 
@@ -51,7 +87,7 @@ public class Main {
         JButton vsComputerButton = new JButton("New game vs computer");
         vsComputerButton.addActionListener(ae -> vsComputer());
         vsComputerButton.setFont(buttons.getFont());
-        vsComputerButton.setBackground(FRAME.getContentPane().getBackground());
+        vsComputerButton.setBackground(menu.getContentPane().getBackground());
         vsComputerButton.setBorder(null);
         buttons.add(vsComputerButton);
 
@@ -59,15 +95,23 @@ public class Main {
         JButton vsPlayerButton = new JButton("New game vs player");
         vsPlayerButton.addActionListener(ae -> vsPlayer());
         vsPlayerButton.setFont(buttons.getFont());
-        vsPlayerButton.setBackground(FRAME.getContentPane().getBackground());
+        vsPlayerButton.setBackground(menu.getContentPane().getBackground());
         vsPlayerButton.setBorder(null);
         buttons.add(vsPlayerButton);
 
+        // This button hosts or joins a game against a player on another machine.
+        JButton vsRemoteButton = new JButton("New game vs remote player");
+        vsRemoteButton.addActionListener(ae -> vsRemote());
+        vsRemoteButton.setFont(buttons.getFont());
+        vsRemoteButton.setBackground(menu.getContentPane().getBackground());
+        vsRemoteButton.setBorder(null);
+        buttons.add(vsRemoteButton);
+
         // This button allows the user to load a previously saved game.
         JButton load_game = new JButton("Load saved game");
         load_game.addActionListener(ae -> loadGame());
         load_game.setFont(buttons.getFont());
-        load_game.setBackground(FRAME.getContentPane().getBackground());
+        load_game.setBackground(menu.getContentPane().getBackground());
         load_game.setBorder(null);
         buttons.add(load_game);
 
@@ -75,36 +119,56 @@ public class Main {
         JButton exit_game = new JButton("Exit game");
         exit_game.addActionListener( ae -> System.exit(0));
         exit_game.setFont(buttons.getFont());
-        exit_game.setBackground(FRAME.getContentPane().getBackground());
+        exit_game.setBackground(menu.getContentPane().getBackground());
         exit_game.setBorder(null);
         buttons.add(exit_game);
 
-        FRAME.add(buttons);
-        FRAME.pack();
-        FRAME.setLocationRelativeTo(null);
-        FRAME.setVisible(true);
+        menu.add(buttons);
+        menu.pack();
+        menu.setLocationRelativeTo(null);
+        menu.setVisible(true);
     }
 
     /**
-     * Displays the game window and hides the main menu.
+     * Displays the game window and hides the main menu. The game is autosaved as the last game.
      * @param game the Game to start
      */
     public static void startGame(Game game) {
+        game.autosave(Game.EXIT_SAVE);
         game.frame.setVisible(true);
         game.frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                Main.FRAME.setVisible(true);
+                closed = game;
+                Main.frame().setVisible(true);
             }
         });
     }
 
+    /**
+     * Starts a new game in the window of the last game closed, if it is of the same kind,
+     * instead of building a new one.
+     * @param pvp whether the opponent is another human
+     * @return whether the new game was started
+     */
+    private static boolean rematch(boolean pvp) {
+        Game game = closed;
+        closed = null;
+        if (game == null || !game.rematchable(pvp))
+            return false;
+        frame().setVisible(false);
+        game.rematch(new SplittableRandom().nextLong());
+        game.autosave(Game.EXIT_SAVE);
+        game.frame.setVisible(true);
+        return true;
+    }
+
     /**
      * Tries loading the last game.
      */
     public static void continueGame() {
         try {
-            startGame(Game.load(Game.EXIT_SAVE));
+            startGame(Game.resume(Game.EXIT_SAVE));
         } catch (IOException | ClassNotFoundException e) {
             JOptionPane.showMessageDialog(null, "The file could not be loaded.");
         }
@@ -132,13 +196,79 @@ public class Main {
      * Starts a new game against the computer.
      */
     public static void vsComputer() {
-        startGame(new Game(false));
+        if (!rematch(false))
+            startGame(new Game(false));
     }
 
     /**
      * Starts a new game against another player.
      */
     public static void vsPlayer() {
-        startGame(new Game(true));
+        if (!rematch(true))
+            startGame(new Game(true));
+    }
+
+    /**
+     * Hosts or joins a game against a player on another machine. The connection is made in the background,
+     * and the game starts once both fleets are placed.
+     */
+    public static void vsRemote() {
+        String[] options = {"Host", "Join"};
+        int choice = JOptionPane.showOptionDialog(null, "Host a game, or join one?", "Remote player",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice == JOptionPane.CLOSED_OPTION)
+            return;
+        String address = JOptionPane.showInputDialog(null, choice == 0 ? "Port:" : "Address (host:port):",
+                choice == 0 ? String.valueOf(RemoteMatch.PORT) : "localhost:" + RemoteMatch.PORT);
+        if (address == null)
+            return;
+
+        JDialog waiting = new JOptionPane(choice == 0 ? "Waiting for the opponent..." : "Connecting...",
+                JOptionPane.INFORMATION_MESSAGE, JOptionPane.DEFAULT_OPTION, null, new Object[0])
+                .createDialog(frame(), "Remote player");
+        waiting.setModal(false);
+        RemoteMatch.Listener listener = new RemoteMatch.Listener() {
+            @Override
+            public void started(RemoteMatch match) {
+                waiting.dispose();
+                startGame(new Game(match));
+            }
+
+            @Override
+            public void shot(int cell, Match.Outcome outcome) {
+            }
+
+            @Override
+            public void answered(int cell, Match.Outcome outcome) {
+            }
+
+            @Override
+            public void disconnected(IOException cause) {
+                waiting.dispose();
+                JOptionPane.showMessageDialog(null, "The connection failed"
+                        + (cause != null ? ": " + cause.getMessage() : "."));
+            }
+        };
+        try {
+            RemoteMatch match;
+            if (choice == 0)
+                match = RemoteMatch.host(Integer.parseInt(address.trim()), Player.ROWS, Player.COLUMNS,
+                        Player.FLEET, new SplittableRandom(), SwingUtilities::invokeLater, listener);
+            else {
+                int colon = address.lastIndexOf(':');
+                match = RemoteMatch.join(address.substring(0, colon).trim(),
+                        Integer.parseInt(address.substring(colon + 1).trim()),
+                        new SplittableRandom(), SwingUtilities::invokeLater, listener);
+            }
+            waiting.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    match.close();
+                }
+            });
+            waiting.setVisible(true);
+        } catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            JOptionPane.showMessageDialog(null, "The game could not be started: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+package leventebajak.battleships;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Headless match of a player against the computer, without any UI components.
+ * <p>
+ * It plays by the same rules as {@link Game}: the player shoots a tile of the computer's board,
+ * then, unless the player has won, the computer shoots back.
+ */
+public class Match {
+
+    /**
+     * The result of a single shot.
+     */
+    public enum Outcome {
+        /**
+         * The shot tile is water.
+         */
+        MISS,
+        /**
+         * The shot tile is part of a ship, that is still afloat.
+         */
+        HIT,
+        /**
+         * The shot sank a ship.
+         */
+        SUNK,
+        /**
+         * The shot sank the last ship of the board.
+         */
+        WON;
+
+        /**
+         * Determines the outcome of a shot that has already been made.
+         * @param board the board that was shot
+         * @param cell the index of the shot tile
+         * @return the outcome of the shot
+         */
+        static Outcome of(Board board, int cell) {
+            if (board.shipsRemaining == 0)
+                return WON;
+            if (!board.isShip(cell))
+                return MISS;
+            return board.sunkLength(cell) > 0 ? SUNK : HIT;
+        }
+    }
+
+    /**
+     * The player's board, shot by the computer.
+     */
+    public final Board board;
+
+    /**
+     * The computer's board, shot by the player.
+     */
+    public final Board opponent;
+
+    /**
+     * The way the computer chooses its guesses.
+     */
+    final Strategy strategy;
+
+    /**
+     * The number of shots taken in the match.
+     */
+    private int turns = 0;
+
+    /**
+     * The index of the tile the computer shot last, or -1 if it has not shot yet.
+     */
+    private int lastGuess = -1;
+
+    /**
+     * Creates a match with randomly placed fleets.
+     * @param mode the mode of the computer
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param fleet the lengths of the ships
+     * @param random the source of randomness of the match
+     * @throws IllegalArgumentException The fleet does not fit on the boards.
+     */
+    Match(AI.Mode mode, int rows, int columns, int[] fleet, RandomGenerator random) throws IllegalArgumentException {
+        board = Simulator.place(rows, columns, fleet, random);
+        opponent = Simulator.place(rows, columns, fleet, random);
+        strategy = mode.create(random, board);
+    }
+
+    /**
+     * @return whether either side has sunk all the other's ships
+     */
+    public boolean isOver() {
+        return board.shipsRemaining == 0 || opponent.shipsRemaining == 0;
+    }
+
+    /**
+     * @return the number of shots taken in the match
+     */
+    public int turns() {
+        return turns;
+    }
+
+    /**
+     * @return the index of the tile the computer shot last, or -1 if it has not shot yet
+     */
+    public int lastGuess() {
+        return lastGuess;
+    }
+
+    /**
+     * Plays a round: the player shoots a tile of the computer's board, then the computer shoots back,
+     * unless the player has won.
+     * @param cell the index of the tile the player shoots
+     * @return the outcome of the player's shot, the computer's shot is available from {@link #lastGuess()}
+     * @throws IllegalStateException The match is over.
+     * @throws IllegalArgumentException The tile has already been discovered.
+     * @throws IndexOutOfBoundsException The tile is not on the board.
+     */
+    public Outcome shoot(int cell) throws IllegalStateException, IllegalArgumentException, IndexOutOfBoundsException {
+        if (isOver())
+            throw new IllegalStateException("The match is over.");
+        if (cell < 0 || cell >= opponent.size())
+            throw new IndexOutOfBoundsException();
+        if (opponent.isDiscovered(cell))
+            throw new IllegalArgumentException("The tile has already been discovered.");
+
+        opponent.shoot(cell);
+        turns++;
+        Outcome outcome = Outcome.of(opponent, cell);
+        if (outcome != Outcome.WON) {
+            lastGuess = strategy.nextGuess(board);
+            board.shoot(lastGuess);
+            strategy.update(board, lastGuess);
+            turns++;
+        }
+        return outcome;
+    }
+}
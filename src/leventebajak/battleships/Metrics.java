@@ -0,0 +1,361 @@
+package leventebajak.battleships;
+
+import javax.management.*;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of the hot paths of the game, exported as a JMX MBean
+ * and optionally dumped periodically.
+ * <p>
+ * The measurements are only taken while {@link #ENABLED} is set, otherwise an instrumented method only reads
+ * that flag. The counters are {@link LongAdder}s and the histograms have a {@link LongAdder} for every power of two,
+ * so concurrent games do not contend on them.
+ * <p>
+ * With the system property {@code battleships.metrics} set to {@code true}, {@link #configure()} enables the metrics
+ * and registers the MBean, and {@code battleships.metrics.dump} sets the seconds between the dumps.
+ */
+public class Metrics {
+
+    /**
+     * Histogram of non-negative values with a bucket for every power of two.
+     */
+    public static class Histogram {
+
+        /**
+         * The name of the histogram.
+         */
+        public final String name;
+
+        /**
+         * The unit of the values.
+         */
+        public final String unit;
+
+        /**
+         * The number of values in each bucket: bucket {@code b} holds the values below {@code 2^b},
+         * but at least {@code 2^(b-1)}.
+         */
+        private final LongAdder[] buckets = new LongAdder[64];
+
+        /**
+         * The sum of the values.
+         */
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * The largest value.
+         */
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Creates an empty histogram.
+         * @param name the name of the histogram
+         * @param unit the unit of the values
+         */
+        Histogram(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+            for (int bucket = 0; bucket < buckets.length; bucket++)
+                buckets[bucket] = new LongAdder();
+        }
+
+        /**
+         * Adds a value to the histogram.
+         * @param value the value, negative values are counted as 0
+         */
+        public void record(long value) {
+            value = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        /**
+         * Adds the time passed since a start time to the histogram, unless the measurement was not started.
+         * @param start the start time from {@link Metrics#start()}, 0 if the metrics were disabled
+         */
+        public void since(long start) {
+            if (start != 0)
+                record(System.nanoTime() - start);
+        }
+
+        /**
+         * @return the number of values
+         */
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets)
+                count += bucket.sum();
+            return count;
+        }
+
+        /**
+         * @return the average of the values, 0 if there are none
+         */
+        public double mean() {
+            long count = count();
+            return count == 0 ? 0 : (double) sum.sum() / count;
+        }
+
+        /**
+         * @return the largest value, 0 if there are none
+         */
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * Estimates a percentile of the values by the upper bound of its bucket.
+         * @param fraction the fraction of the values that are smaller, between 0 and 1
+         * @return the estimate, never more than the largest value
+         */
+        public long percentile(double fraction) {
+            long count = count();
+            if (count == 0)
+                return 0;
+            long needed = Math.max(1, (long) Math.ceil(fraction * count)), seen = 0;
+            for (int bucket = 0; bucket < buckets.length; bucket++)
+                if ((seen += buckets[bucket].sum()) >= needed)
+                    return Math.min(max(), bucket == 0 ? 0 : bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1);
+            return max();
+        }
+
+        /**
+         * Removes all the values.
+         */
+        public void reset() {
+            for (LongAdder bucket : buckets)
+                bucket.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    /**
+     * Whether the measurements are taken.
+     */
+    public static boolean ENABLED = false;
+
+    /**
+     * The object name the MBean is registered with.
+     */
+    public static final String OBJECT_NAME = "leventebajak.battleships:type=Metrics";
+
+    /**
+     * The time a round takes, from ending the turn until the next player can shoot, including the dialogs.
+     */
+    public static final Histogram ROUND = new Histogram("round", "ns");
+
+    /**
+     * The time the computer takes to choose and take a shot.
+     */
+    public static final Histogram GUESS = new Histogram("guess", "ns");
+
+    /**
+     * The number of tiles revealed by a shot.
+     */
+    public static final Histogram CASCADE = new Histogram("cascade", "tiles");
+
+    /**
+     * The time saving a game takes.
+     */
+    public static final Histogram SAVE = new Histogram("save", "ns");
+
+    /**
+     * The size of the saved games.
+     */
+    public static final Histogram SAVE_SIZE = new Histogram("saveSize", "bytes");
+
+    /**
+     * The time loading a game takes.
+     */
+    public static final Histogram LOAD = new Histogram("load", "ns");
+
+    /**
+     * The size of the loaded games.
+     */
+    public static final Histogram LOAD_SIZE = new Histogram("loadSize", "bytes");
+
+    /**
+     * The number of ships the players tried to place.
+     */
+    public static final LongAdder PLACEMENTS = new LongAdder();
+
+    /**
+     * The number of ships that could not be placed.
+     */
+    public static final LongAdder FAILED_PLACEMENTS = new LongAdder();
+
+    /**
+     * All the histograms.
+     */
+    private static final Histogram[] HISTOGRAMS = {ROUND, GUESS, CASCADE, SAVE, SAVE_SIZE, LOAD, LOAD_SIZE};
+
+    /**
+     * The thread dumping the metrics, or null.
+     */
+    private static ScheduledExecutorService dumper;
+
+    /**
+     * No instances.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Starts a time measurement.
+     * @return the current time from {@link System#nanoTime()}, or 0 if the metrics are disabled
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Enables the metrics, registers the MBean and starts dumping the metrics, as set by the system properties.
+     */
+    public static void configure() {
+        if (!Boolean.getBoolean("battleships.metrics"))
+            return;
+        ENABLED = true;
+        register();
+        long period = Long.getLong("battleships.metrics.dump", 0);
+        if (period > 0)
+            dump(System.err, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers the MBean of the metrics on the platform MBean server, if it is not registered yet.
+     * Its attributes are the counters, and for every histogram its count, mean, median, 99th percentile and maximum.
+     * Its operation {@code reset} clears all the metrics.
+     */
+    public static synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(new Bean(), name);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Starts writing the report of the metrics periodically, replacing the previous dump.
+     * @param out where the reports are written
+     * @param period the time between the reports
+     * @param unit the unit of the period
+     */
+    public static synchronized void dump(PrintStream out, long period, TimeUnit unit) {
+        if (dumper != null)
+            dumper.shutdownNow();
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> out.print(report()), period, period, unit);
+    }
+
+    /**
+     * Clears all the metrics.
+     */
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS)
+            histogram.reset();
+        PLACEMENTS.reset();
+        FAILED_PLACEMENTS.reset();
+    }
+
+    /**
+     * @return the current values of the attributes of the MBean, by their names
+     */
+    static Map<String, Number> values() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put("Placements", PLACEMENTS.sum());
+        values.put("FailedPlacements", FAILED_PLACEMENTS.sum());
+        for (Histogram histogram : HISTOGRAMS) {
+            String prefix = Character.toUpperCase(histogram.name.charAt(0)) + histogram.name.substring(1);
+            values.put(prefix + "Count", histogram.count());
+            values.put(prefix + "Mean", histogram.mean());
+            values.put(prefix + "P50", histogram.percentile(0.5));
+            values.put(prefix + "P99", histogram.percentile(0.99));
+            values.put(prefix + "Max", histogram.max());
+        }
+        return values;
+    }
+
+    /**
+     * @return a human-readable report of the metrics
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder("Metrics: placements " + PLACEMENTS.sum()
+                + ", failed " + FAILED_PLACEMENTS.sum() + String.format("%n"));
+        for (Histogram h : HISTOGRAMS)
+            sb.append(String.format(Locale.ROOT, "  %-9s count %d, mean %.1f, p50 %d, p99 %d, max %d %s%n",
+                    h.name, h.count(), h.mean(), h.percentile(0.5), h.percentile(0.99), h.max(), h.unit));
+        return sb.toString();
+    }
+
+    /**
+     * The MBean of the metrics, with read-only attributes computed when they are read.
+     */
+    private static class Bean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = values().get(attribute);
+            if (value == null)
+                throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("The attributes are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> values = values();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes)
+                if (values.containsKey(attribute))
+                    list.add(new Attribute(attribute, values.get(attribute)));
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            if (!action.equals("reset"))
+                throw new ReflectionException(new NoSuchMethodException(action));
+            reset();
+            return null;
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+            values().forEach((name, value) -> attributes.add(new MBeanAttributeInfo(name,
+                    value.getClass().getName(), name, true, false, false)));
+            MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clears all the metrics.",
+                    new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Metrics.class.getName(), "Metrics of the game.",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package leventebajak.battleships;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed offsets of the neighbors of the tiles of a board shape.
+ * <p>
+ * Whether a tile has a neighbor in a direction only depends on whether it lies in the first or the last row,
+ * and in the first or the last column. So the tiles fall into 16 edge classes, and for each class the table
+ * holds the offset of the neighbor in every direction, or a sentinel if there is none. Traversals look up
+ * neighbors with a branch on the sentinel instead of catching exceptions at the edges of the board.
+ */
+final class NeighborTable {
+
+    /**
+     * The offset marking the missing neighbors.
+     */
+    private static final int NONE = Integer.MIN_VALUE;
+
+    /**
+     * The tables already built, shared by the boards of the same shape.
+     */
+    private static final ConcurrentHashMap<Long, NeighborTable> TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * The number of rows of the board shape.
+     */
+    private final int rows;
+
+    /**
+     * The number of columns of the board shape.
+     */
+    private final int columns;
+
+    /**
+     * The offsets of the neighbors, indexed by {@code 8 * class + direction}.
+     */
+    private final int[] offsets = new int[16 * 8];
+
+    /**
+     * Builds the table of a board shape.
+     * @param rows the number of rows
+     * @param columns the number of columns
+     */
+    private NeighborTable(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        for (int edges = 0; edges < 16; edges++) {
+            boolean top = (edges & 1) != 0, bottom = (edges & 2) != 0;
+            boolean left = (edges & 4) != 0, right = (edges & 8) != 0;
+            for (Direction d : Direction.VALUES) {
+                int dr = switch (d) {
+                    case NORTH, NORTH_EAST, NORTH_WEST -> -1;
+                    case SOUTH, SOUTH_EAST, SOUTH_WEST -> 1;
+                    default -> 0;
+                };
+                int dc = switch (d) {
+                    case EAST, NORTH_EAST, SOUTH_EAST -> 1;
+                    case WEST, NORTH_WEST, SOUTH_WEST -> -1;
+                    default -> 0;
+                };
+                boolean missing = dr == -1 && top || dr == 1 && bottom || dc == -1 && left || dc == 1 && right;
+                offsets[8 * edges + d.ordinal()] = missing ? NONE : dr * columns + dc;
+            }
+        }
+    }
+
+    /**
+     * Gets the table of a board shape.
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @return the table shared by the boards of the shape
+     */
+    static NeighborTable of(int rows, int columns) {
+        return TABLES.computeIfAbsent((long) rows << 32 | columns, key -> new NeighborTable(rows, columns));
+    }
+
+    /**
+     * Gets the neighbor of a tile in a direction.
+     * @param cell the index of the tile
+     * @param direction the ordinal of the direction
+     * @return the index of the neighbor tile, or -1 if there is none
+     */
+    int neighbor(int cell, int direction) {
+        int row = cell / columns, column = cell - row * columns;
+        int edges = (row == 0 ? 1 : 0) | (row == rows - 1 ? 2 : 0)
+                | (column == 0 ? 4 : 0) | (column == columns - 1 ? 8 : 0);
+        int offset = offsets[8 * edges + direction];
+        return offset == NONE ? -1 : cell + offset;
+    }
+}
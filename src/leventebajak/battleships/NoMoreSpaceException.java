@@ -1,6 +1,15 @@
 package leventebajak.battleships;
 
+import java.io.Serial;
+
 /**
  * Custom exception class, used when there is not enough space on the player's board to place the ship.
  */
-public class NoMoreSpaceException extends Exception {}
+public class NoMoreSpaceException extends Exception {
+
+    /**
+     * The serial version of the exception.
+     */
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
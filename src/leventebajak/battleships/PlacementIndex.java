@@ -0,0 +1,222 @@
+package leventebajak.battleships;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Index of all the legal placements of new ships on a board.
+ * <p>
+ * A placement is identified by its first (northernmost or westernmost) tile and its orientation,
+ * encoded as {@code 2 * start + (vertical ? 1 : 0)}. A placement is legal, if none of its tiles
+ * is part of a ship or next to one.
+ * <p>
+ * The legal placements of a length are enumerated the first time a ship of that length is placed.
+ * After that, stamping down a ship only removes the placements crossing the ship or its surroundings,
+ * so picking a random legal placement takes constant time, and running out of space is detected exactly.
+ * <p>
+ * When the board is cleared for a new game, the index is reset in place, keeping the sets it has allocated.
+ */
+class PlacementIndex {
+
+    /**
+     * The board the placements are on.
+     */
+    private final Board board;
+
+    /**
+     * The tiles that are part of a ship or next to one.
+     */
+    private final long[] blocked;
+
+    /**
+     * The legal placements of each length, or null for the lengths that have never been asked for.
+     */
+    private final Placements[] placements;
+
+    /**
+     * The lengths that have been asked for.
+     */
+    private final ArrayList<Integer> lengths = new ArrayList<>();
+
+    /**
+     * Set of the legal placements of a single length, that supports constant time removal and random picks.
+     */
+    private static class Placements {
+
+        /**
+         * The legal placements, in no particular order, grown to the number of placements enumerated.
+         */
+        int[] items = new int[16];
+
+        /**
+         * For each placement, its position in the items plus one, or 0 if it is not legal.
+         */
+        final int[] positions;
+
+        /**
+         * The number of legal placements.
+         */
+        int size = 0;
+
+        /**
+         * Whether the legal placements have been enumerated since the index was created or reset.
+         */
+        boolean enumerated = false;
+
+        /**
+         * Creates an empty set.
+         * @param capacity the number of possible placements
+         */
+        Placements(int capacity) {
+            positions = new int[capacity];
+        }
+
+        /**
+         * Adds a placement to the set.
+         * @param placement the placement
+         */
+        void add(int placement) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, Math.min(positions.length, size + (size >> 1)));
+            items[size++] = placement;
+            positions[placement] = size;
+        }
+
+        /**
+         * Removes a placement from the set, if it is in it.
+         * @param placement the placement
+         */
+        void remove(int placement) {
+            int position = positions[placement];
+            if (position == 0)
+                return;
+            int last = items[--size];
+            items[position - 1] = last;
+            positions[last] = position;
+            positions[placement] = 0;
+        }
+
+        /**
+         * Removes every placement from the set, touching only the ones in it.
+         */
+        void clear() {
+            for (int i = 0; i < size; i++)
+                positions[items[i]] = 0;
+            size = 0;
+            enumerated = false;
+        }
+    }
+
+    /**
+     * Creates the index for the ships already on a board.
+     * @param board the board
+     */
+    PlacementIndex(Board board) {
+        this.board = board;
+        blocked = new long[board.words()];
+        placements = new Placements[Math.max(board.rows, board.columns) + 1];
+        for (int cell = 0; cell < board.size(); cell++)
+            if (board.isShip(cell))
+                stamp(cell, 1, false);
+    }
+
+    /**
+     * Picks a random legal placement.
+     * @param length the length of the ship
+     * @param random the source of randomness
+     * @return the placement
+     * @throws NoMoreSpaceException There is no legal placement of the given length.
+     */
+    int pick(int length, RandomGenerator random) throws NoMoreSpaceException {
+        Placements legal = placements[length];
+        if (legal == null)
+            legal = placements[length] = new Placements(2 * board.size());
+        if (!legal.enumerated) {
+            enumerate(legal, length);
+            lengths.add(length);
+        }
+        if (legal.size == 0)
+            throw new NoMoreSpaceException();
+        return legal.items[random.nextInt(legal.size)];
+    }
+
+    /**
+     * Empties the index after every ship has been removed from the board.
+     * The legal placements of a length are enumerated again the next time it is asked for, in the same order
+     * as by a new index, so the same source of randomness places the same ships.
+     */
+    void reset() {
+        Arrays.fill(blocked, 0);
+        for (int length : lengths)
+            placements[length].clear();
+        lengths.clear();
+    }
+
+    /**
+     * Updates the index after a ship has been placed, blocking its tiles and their surroundings.
+     * @param start the index of the first tile of the ship
+     * @param length the length of the ship
+     * @param vertical whether the ship lies vertically
+     */
+    void stamp(int start, int length, boolean vertical) {
+        int row = board.row(start), column = board.column(start);
+        int lastRow = vertical ? row + length - 1 : row;
+        int lastColumn = vertical ? column : column + length - 1;
+        for (int r = Math.max(0, row - 1); r <= Math.min(board.rows - 1, lastRow + 1); r++)
+            for (int c = Math.max(0, column - 1); c <= Math.min(board.columns - 1, lastColumn + 1); c++)
+                block(board.cell(r, c));
+    }
+
+    /**
+     * Blocks a tile, removing every placement crossing it.
+     * @param cell the index of the tile
+     */
+    private void block(int cell) {
+        if ((blocked[cell >>> 6] & 1L << cell) != 0)
+            return;
+        blocked[cell >>> 6] |= 1L << cell;
+
+        int row = board.row(cell), column = board.column(cell);
+        for (int length : lengths) {
+            Placements legal = placements[length];
+            for (int c = Math.max(0, column - length + 1); c <= Math.min(column, board.columns - length); c++)
+                legal.remove(2 * (cell - column + c));
+            for (int r = Math.max(0, row - length + 1); r <= Math.min(row, board.rows - length); r++)
+                legal.remove(2 * (cell - (row - r) * board.columns) + 1);
+        }
+    }
+
+    /**
+     * Enumerates the legal placements of a length, by counting the unblocked tiles in a row in both directions.
+     * @param legal the empty set the legal placements are added to
+     * @param length the length of the ship
+     */
+    private void enumerate(Placements legal, int length) {
+        legal.enumerated = true;
+        for (int row = 0; row < board.rows; row++) {
+            int run = 0;
+            for (int column = 0; column < board.columns; column++) {
+                run = isBlocked(board.cell(row, column)) ? 0 : run + 1;
+                if (run >= length)
+                    legal.add(2 * board.cell(row, column - length + 1));
+            }
+        }
+        for (int column = 0; column < board.columns; column++) {
+            int run = 0;
+            for (int row = 0; row < board.rows; row++) {
+                run = isBlocked(board.cell(row, column)) ? 0 : run + 1;
+                if (run >= length)
+                    legal.add(2 * board.cell(row - length + 1, column) + 1);
+            }
+        }
+    }
+
+    /**
+     * @param cell the index of the tile
+     * @return whether the tile is part of a ship or next to one
+     */
+    private boolean isBlocked(int cell) {
+        return (blocked[cell >>> 6] & 1L << cell) != 0;
+    }
+}
@@ -2,29 +2,34 @@ package leventebajak.battleships;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.*;
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
 
 /**
  * Class representing players and their board.
  */
-public class Player implements Serializable {
-    protected static final Random RND = new Random();
+public class Player {
 
     /**
-     * The number of rows the board has.
+     * The default number of rows of new boards.
      */
     public static int ROWS = 10;
 
     /**
-     * The number of columns the board has.
+     * The default number of columns of new boards.
      */
     public static int COLUMNS = 10;
 
+    /**
+     * The lengths of the ships placed on the boards of new games.
+     */
+    static final int[] FLEET = {5, 4, 3, 3, 2};
+
     /**
      * The panel displaying the player's board.
      */
-    transient public JPanel panel;
+    public BoardView panel;
 
     /**
      * The player's name.
@@ -32,9 +37,9 @@ public class Player implements Serializable {
     public String name;
 
     /**
-     * Two-dimensional array representing the board.
+     * The model of the player's board.
      */
-    private final ArrayList<ArrayList<Tile>> board = new ArrayList<>();
+    public final Board board;
 
     /**
      * The tile of the board selected by the opponent.
@@ -42,30 +47,63 @@ public class Player implements Serializable {
     public Tile selected;
 
     /**
-     * The number of undiscovered ship tiles remaining on the board.
+     * The source of randomness used for placing the ships, owned by the player's game.
+     */
+    RandomGenerator random;
+
+    /**
+     * The recording of the game the shots of the board are reported to, or null.
+     */
+    Recording recording;
+
+    /**
+     * The history of the game the tiles revealed on the board are reported to, or null.
      */
-    public int shipsRemaining = 0;
+    History history;
+
+    /**
+     * The broadcast the shots of the board are published on to the spectators, or null.
+     */
+    Broadcast broadcast;
 
     /**
      * Creates a new player and places 5 ships on the player's board with the lengths of 5, 4, 3, 3 and 2.
      * @param name the name of the player
      */
     Player(String name) {
-        this(name, 5, 4, 3, 3, 2);
+        this(name, FLEET);
     }
 
     /**
-     * Creates a new player and places ships on the player's board.
+     * Creates a new player with a board of the default size and places ships on the player's board.
      * @param name the name of the player
      * @param shipLengths the lengths of the ships
      */
     Player(String name, int... shipLengths) throws IllegalArgumentException {
+        this(name, new Board(ROWS, COLUMNS), shipLengths);
+    }
+
+    /**
+     * Creates a player with an existing board and places ships on it, with a source of randomness of its own.
+     * @param name the name of the player
+     * @param board the player's board
+     * @param shipLengths the lengths of the ships
+     */
+    Player(String name, Board board, int... shipLengths) throws IllegalArgumentException {
+        this(name, board, new SplittableRandom(), shipLengths);
+    }
+
+    /**
+     * Creates a player with an existing board and places ships on it.
+     * @param name the name of the player
+     * @param board the player's board
+     * @param random the source of randomness used for placing the ships
+     * @param shipLengths the lengths of the ships
+     */
+    Player(String name, Board board, RandomGenerator random, int... shipLengths) throws IllegalArgumentException {
         this.name = name;
-        for (int row = 0; row < ROWS; row++) {
-            board.add(row, new ArrayList<>());
-            for (int column = 0; column < COLUMNS; column++)
-                board.get(row).add(column, new Tile(this, row, column));
-        }
+        this.board = board;
+        this.random = random;
         if (shipLengths != null)
             for (Integer length: shipLengths) {
                 try {
@@ -83,39 +121,51 @@ public class Player implements Serializable {
      * Initializes UI components.
      */
     public void initialize() {
-        panel = new JPanel(new GridLayout(ROWS, COLUMNS));
-        for (int row = 0; row < ROWS; row++) {
-            for (int column = 0; column < COLUMNS; column++) {
-                panel.add(board.get(row).get(column).button);
+        panel = new BoardView(this);
+    }
+
+    /**
+     * Starts a new game on the same board and view: removes the ships and the discovered tiles,
+     * and places new ships, the same way a new player would place them.
+     * @param random the source of randomness used for placing the ships from now on
+     * @param shipLengths the lengths of the ships
+     * @throws IllegalArgumentException A ship is too long to fit on the board, or has a length of less than two.
+     */
+    void reset(RandomGenerator random, int... shipLengths) throws IllegalArgumentException {
+        this.random = random;
+        panel.deselect();
+        board.clear();
+        for (int length : shipLengths) {
+            try {
+                addShip(length);
+            } catch (NoMoreSpaceException e) {
+                throw new RuntimeException();
             }
         }
-        panel.setPreferredSize(new Dimension(COLUMNS * 50, ROWS * 50));
+        panel.refresh();
     }
 
     /**
-     * Enables/Disables all tiles on the player's board.
+     * Enables/Disables selecting the tiles of the player's board.
      *
      * @param enabled whether the tiles should be enabled or disabled
      */
     public void setEnabled(boolean enabled) {
-        for (int i = 0; i < ROWS * COLUMNS; i++)
-            getTile(i / COLUMNS, i % COLUMNS).button.setEnabled(enabled);
+        panel.setEnabled(enabled);
     }
 
     /**
      * Reveals all tiles.
      */
     public void showAll() {
-        for (int i = 0; i < ROWS * COLUMNS; i++)
-            getTile(i / COLUMNS, i % COLUMNS).repaint(true);
+        panel.setRevealed(true);
     }
 
     /**
      * Shows only the discovered tiles and hides the rest.
      */
     public void showDiscovered() {
-        for (int i = 0; i < ROWS * COLUMNS; i++)
-            getTile(i / COLUMNS, i % COLUMNS).repaint(false);
+        panel.setRevealed(false);
     }
 
     /**
@@ -127,13 +177,33 @@ public class Player implements Serializable {
      * @throws IndexOutOfBoundsException The requested tile falls outside the board.
      */
     public Tile getTile(int row, int column) throws IndexOutOfBoundsException {
-        if (row < 0 || row >= ROWS || column < 0 || column >= COLUMNS)
-            throw new IndexOutOfBoundsException();
-        return board.get(row).get(column);
+        return new Tile(this, row, column);
     }
 
     /**
-     * Best-effort function for placing new ships on the board.
+     * Shoots a tile of the board, reveals neighboring tiles according to the rules
+     * and repaints every newly discovered tile.
+     *
+     * @param cell the index of the tile on the board
+     */
+    public void shoot(int cell) {
+        IntConsumer reported = recording == null ? null : recording.shot(board, cell);
+        if (history != null)
+            reported = reported == null ? history.shot(board) : reported.andThen(history.shot(board));
+        IntConsumer published = broadcast == null ? null : broadcast.shot(board, cell);
+        if (published != null)
+            reported = reported == null ? published : reported.andThen(published);
+        int revealed = board.shoot(cell, reported);
+        if (published != null)
+            broadcast.landed(board, cell);
+        if (Metrics.ENABLED)
+            Metrics.CASCADE.record(revealed);
+        panel.deselect();
+        panel.refresh();
+    }
+
+    /**
+     * Places a new ship on the board, chosen uniformly from all the legal placements.
      * It's best to place the longer ships first and then the shorter ones.
      *
      * @param shipLength the length of the ship to be placed
@@ -141,94 +211,16 @@ public class Player implements Serializable {
      * @throws NoMoreSpaceException There is not enough space left on the board to place the ship.
      */
     public void addShip(int shipLength) throws IllegalArgumentException, NoMoreSpaceException {
-        // If the ship is too long to fit on the board, then don't even try placing it
-        if (shipLength <= 1 || (shipLength > ROWS && shipLength > COLUMNS))
-            throw new IllegalArgumentException();
-
-        // Defining the maximum number of attempts to place the ship.
-        final int max_attempts = 10000;
-        int attempts = 0;
-        HashSet<Tile> coordinateSet;
-
-        finding_an_origin:
-        while (true) {
-            // Having reached the defined maximum number of attempts, give up trying to place the ship
-            if (attempts++ == max_attempts)
-                throw new NoMoreSpaceException();
-
-            // Finding an origin point that has no neighboring ships
-            Tile origin = getTile(RND.nextInt(0, ROWS), RND.nextInt(0, COLUMNS));
-
-            // If the chosen origin point is not a valid ship placement, choose another one.
-            if (!origin.validPlacement())
-                continue finding_an_origin;
-
-            // Defining possible routes
-            ArrayList<Direction> possibleRoutes = new ArrayList<>(Arrays.asList(Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST));
-
-            Direction chosenRoute;
-            Tile neighbor;
-
-            choosing_route:
-            while (true) {
-                coordinateSet = new HashSet<>(Set.of(origin));
-
-                try {
-                    chosenRoute = possibleRoutes.remove(RND.nextInt(0, possibleRoutes.size()));
-                } catch (IllegalArgumentException e) {
-                    continue finding_an_origin;
-                }
-
-                try {
-                    neighbor = origin.getNeighbor(chosenRoute);
-                } catch (IndexOutOfBoundsException e) {
-                    continue choosing_route;
-                }
-
-                placing_ship:
-                while (true) {
-                    // If the whole ship can be placed, the task has been completed
-                    if (coordinateSet.size() == shipLength)
-                        break finding_an_origin;
-
-                    // If this is a valid placement, add the coordinate to the set
-                    if (neighbor.validPlacement()) {
-                        coordinateSet.add(neighbor);
-                        if (coordinateSet.size() == shipLength)
-                            break finding_an_origin;
-                    }
-
-                    // If the placement isn't valid, try going the opposite route
-                    else if (possibleRoutes.remove(chosenRoute.opposite())) {
-                        chosenRoute = chosenRoute.opposite();
-                        try {
-                            neighbor = origin.getNeighbor(chosenRoute);
-                        } catch (IndexOutOfBoundsException e) {
-                            continue choosing_route;
-                        }
-                        continue placing_ship;
-                    }
-                    else continue choosing_route;
-
-                    // Otherwise continue going the chosen route
-                    try {
-                        neighbor = neighbor.getNeighbor(chosenRoute);
-                    } catch (IndexOutOfBoundsException e) {
-                        if (possibleRoutes.remove(chosenRoute.opposite())) {
-                            chosenRoute = chosenRoute.opposite();
-                            try {
-                                neighbor = origin.getNeighbor(chosenRoute);
-                            } catch (IndexOutOfBoundsException ignore) {
-                                continue choosing_route;
-                            }
-                        } else continue choosing_route;
-                    }
-                }
-            }
+        if (!Metrics.ENABLED) {
+            board.addShip(shipLength, random);
+            return;
+        }
+        Metrics.PLACEMENTS.increment();
+        try {
+            board.addShip(shipLength, random);
+        } catch (IllegalArgumentException | NoMoreSpaceException e) {
+            Metrics.FAILED_PLACEMENTS.increment();
+            throw e;
         }
-        // Placing the ship on the board
-        for (Tile tile : coordinateSet)
-            tile.isShip = true;
-        shipsRemaining += shipLength;
     }
 }
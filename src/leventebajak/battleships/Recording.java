@@ -0,0 +1,392 @@
+package leventebajak.battleships;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compact log of how a game unfolded: both boards as they were when the recording started,
+ * and every shot since, with the number of tiles it revealed.
+ * <p>
+ * A digest of every revealed tile, in the order the reveal cascades revealed them, is kept as well,
+ * so a {@link Replay} can check that it reproduces exactly the same cascades.
+ * <p>
+ * The file starts with the magic number "BSHR" and the version of the format, followed by the seed of the game,
+ * the names and the boards of both players, the number of shots, then the shots as pairs of variable-length integers:
+ * the index of the shot tile shifted left by one, with the index of the board in the lowest bit,
+ * and the number of tiles revealed. The digest of the cascades closes the file.
+ */
+public class Recording {
+
+    /**
+     * The first bytes of the recordings, "BSHR".
+     */
+    private static final int MAGIC = 0x42534852;
+
+    /**
+     * The version of the format of the recordings.
+     */
+    private static final short VERSION = 2;
+
+    /**
+     * The digest of a recording without any revealed tiles.
+     */
+    static final long EMPTY_DIGEST = 0xCBF29CE484222325L;
+
+    /**
+     * The names of the players, in the order of their boards.
+     */
+    final String[] names = new String[2];
+
+    /**
+     * The seed of the recorded game, 0 for recordings of older versions.
+     */
+    private long seed;
+
+    /**
+     * The boards as they were when the recording started, never shot.
+     */
+    private final Board[] initial = new Board[2];
+
+    /**
+     * The boards of the game being recorded, null for a recording read from a file.
+     */
+    private final Board[] live = new Board[2];
+
+    /**
+     * The shots, as the index of the shot tile shifted left by one, with the index of the board in the lowest bit.
+     */
+    private int[] shots = new int[64];
+
+    /**
+     * The number of tiles revealed by each shot.
+     */
+    private int[] revealed = new int[64];
+
+    /**
+     * The number of shots recorded.
+     */
+    private int count = 0;
+
+    /**
+     * The digest of the revealed tiles, in the order they were revealed.
+     */
+    private long digest = EMPTY_DIGEST;
+
+    /**
+     * Counts the tiles revealed by the last shot, and adds them to the digest.
+     */
+    private final IntConsumer counter = cell -> {
+        revealed[count - 1]++;
+        digest = mix(digest, cell << 1 | (shots[count - 1] & 1));
+    };
+
+    /**
+     * Starts recording a game from its current state.
+     * @param first the first player
+     * @param second the second player
+     * @param seed the seed of the game
+     */
+    Recording(Player first, Player second, long seed) {
+        this.seed = seed;
+        names[0] = first.name;
+        names[1] = second.name;
+        initial[0] = copy(first.board);
+        initial[1] = copy(second.board);
+        live[0] = first.board;
+        live[1] = second.board;
+        first.recording = second.recording = this;
+    }
+
+    /**
+     * Creates a recording read from a file.
+     */
+    private Recording() {
+    }
+
+    /**
+     * Starts recording a new game on the same boards from their current state, reusing the copies of the boards.
+     * @param seed the seed of the new game
+     */
+    void restart(long seed) {
+        this.seed = seed;
+        initial[0].restore(live[0]);
+        initial[1].restore(live[1]);
+        count = 0;
+        digest = EMPTY_DIGEST;
+    }
+
+    /**
+     * Continues recording the game of the players, matching them to the boards by their names,
+     * and makes the players report their shots.
+     * @param first a player of the game
+     * @param second the other player of the game
+     * @throws IllegalArgumentException The names of the players are not the ones recorded.
+     */
+    void attach(Player first, Player second) throws IllegalArgumentException {
+        boolean swapped = !first.name.equals(names[0]) || !second.name.equals(names[1]);
+        if (swapped && (!first.name.equals(names[1]) || !second.name.equals(names[0])))
+            throw new IllegalArgumentException("The players were not recorded.");
+        live[swapped ? 1 : 0] = first.board;
+        live[swapped ? 0 : 1] = second.board;
+        first.recording = second.recording = this;
+    }
+
+    /**
+     * Records a shot, before the board is shot.
+     * @param board the board of the game being shot
+     * @param cell the index of the shot tile
+     * @return counts the tiles revealed by the shot, it has to be passed to {@link Board#shoot(int, IntConsumer)}
+     * @throws IllegalArgumentException The board is not one of the recorded boards.
+     */
+    IntConsumer shot(Board board, int cell) throws IllegalArgumentException {
+        int index = board == live[0] ? 0 : board == live[1] ? 1 : -1;
+        if (index == -1)
+            throw new IllegalArgumentException("The board is not recorded.");
+        if (count == shots.length) {
+            shots = Arrays.copyOf(shots, 2 * count);
+            revealed = Arrays.copyOf(revealed, 2 * count);
+        }
+        shots[count] = cell << 1 | index;
+        revealed[count++] = 0;
+        return counter;
+    }
+
+    /**
+     * Moves the end of the recording back to an earlier shot, or forward again to a shot moved back from,
+     * as long as no shots have been recorded since.
+     * @param shots the number of shots recorded until the shot
+     * @param digest the digest of the revealed tiles until the shot
+     */
+    void rewind(int shots, long digest) {
+        count = shots;
+        this.digest = digest;
+    }
+
+    /**
+     * Adds a revealed tile to a digest.
+     * @param digest the digest
+     * @param tile the index of the tile shifted left by one, with the index of the board in the lowest bit
+     * @return the new digest
+     */
+    static long mix(long digest, int tile) {
+        return (digest ^ tile) * 0x100000001B3L;
+    }
+
+    /**
+     * Copies a board.
+     * @param board the board
+     * @return the copy
+     */
+    static Board copy(Board board) {
+        ByteBuffer buffer = ByteBuffer.allocate(board.bytes());
+        board.write(buffer);
+        return Board.read(buffer.flip());
+    }
+
+    /**
+     * @param index the index of the board
+     * @return the board as it was when the recording started, it must not be changed
+     */
+    Board initial(int index) {
+        return initial[index];
+    }
+
+    /**
+     * @return the seed of the recorded game, 0 for recordings of older versions
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of shots recorded
+     */
+    public int shots() {
+        return count;
+    }
+
+    /**
+     * @param shot the index of the shot
+     * @return the index of the shot tile
+     */
+    public int cell(int shot) {
+        return shots[shot] >>> 1;
+    }
+
+    /**
+     * @param shot the index of the shot
+     * @return the index of the shot board
+     */
+    public int board(int shot) {
+        return shots[shot] & 1;
+    }
+
+    /**
+     * @param shot the index of the shot
+     * @return the number of tiles revealed by the shot
+     */
+    public int revealed(int shot) {
+        return revealed[shot];
+    }
+
+    /**
+     * @return the digest of the revealed tiles, in the order they were revealed
+     */
+    public long digest() {
+        return digest;
+    }
+
+    /**
+     * @return the number of bytes the recording takes up when written
+     */
+    int bytes() {
+        int bytes = 4 + 2 + 8 + 4 + 8;
+        for (int i = 0; i < 2; i++)
+            bytes += 2 + names[i].getBytes(StandardCharsets.UTF_8).length + initial[i].bytes();
+        for (int i = 0; i < count; i++)
+            bytes += varintBytes(shots[i]) + varintBytes(revealed[i]);
+        return bytes;
+    }
+
+    /**
+     * Writes the recording.
+     * @param buffer the buffer to write to
+     */
+    void write(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putShort(VERSION);
+        buffer.putLong(seed);
+        for (int i = 0; i < 2; i++) {
+            byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) name.length).put(name);
+            initial[i].write(buffer);
+        }
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            putVarint(buffer, shots[i]);
+            putVarint(buffer, revealed[i]);
+        }
+        buffer.putLong(digest);
+    }
+
+    /**
+     * Reads a recording written by {@link #write(ByteBuffer)}.
+     * @param buffer the buffer to read from
+     * @return the recording
+     * @throws IOException The buffer does not contain a valid recording.
+     */
+    static Recording read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a recording.");
+            short version = buffer.getShort();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported version of the recording: " + version);
+            Recording recording = new Recording();
+            if (version >= 2)
+                recording.seed = buffer.getLong();
+            for (int i = 0; i < 2; i++) {
+                short length = buffer.getShort();
+                if (length < 0)
+                    throw new IOException("Corrupt recording.");
+                byte[] name = new byte[length];
+                buffer.get(name);
+                recording.names[i] = new String(name, StandardCharsets.UTF_8);
+                recording.initial[i] = Board.read(buffer);
+            }
+            // Every shot takes at least two bytes, so a count the rest cannot hold is rejected before allocating
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 2)
+                throw new IOException("Corrupt recording.");
+            recording.shots = new int[Math.max(64, count)];
+            recording.revealed = new int[recording.shots.length];
+            for (int i = 0; i < count; i++) {
+                int shot = getVarint(buffer);
+                if (shot >>> 1 >= recording.initial[shot & 1].size())
+                    throw new IOException("Corrupt recording.");
+                recording.shots[i] = shot;
+                recording.revealed[i] = getVarint(buffer);
+            }
+            recording.count = count;
+            recording.digest = buffer.getLong();
+            return recording;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt recording.", e);
+        }
+    }
+
+    /**
+     * Saves the recording to a file.
+     * @param file the file
+     * @throws IOException The file cannot be written.
+     */
+    public void save(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes());
+        write(buffer);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    /**
+     * Loads a recording from a file.
+     * @param file the file
+     * @return the recording
+     * @throws IOException The file cannot be read, or it is not a recording.
+     */
+    public static Recording load(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1);
+        }
+        return read(buffer.flip());
+    }
+
+    /**
+     * @param value a value
+     * @return the number of bytes of the value as a variable-length integer
+     */
+    private static int varintBytes(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Writes a value as a variable-length integer, seven bits per byte, the lowest first.
+     * @param buffer the buffer to write to
+     * @param value the value, treated as unsigned
+     */
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a variable-length integer written by {@link #putVarint(ByteBuffer, int)}.
+     * @param buffer the buffer to read from
+     * @return the value
+     * @throws IOException The integer is longer than five bytes.
+     */
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IOException("Corrupt recording.");
+    }
+}
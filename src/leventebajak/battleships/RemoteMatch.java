@@ -0,0 +1,690 @@
+package leventebajak.battleships;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.random.RandomGenerator;
+
+/**
+ * Match against a remote opponent, played over a {@link Link}.
+ * <p>
+ * The host decides the size of the boards and the fleet, and shoots first. Each side only knows its own ships:
+ * a shot is sent as the index of the tile, and is answered with its outcome and every tile it revealed,
+ * so the shooter's copy of the opponent's board is built from the answers. The frames of the protocol are:
+ * <ul>
+ *     <li>{@code HELLO}: the number of rows and columns, and the lengths of the ships, sent by the host
+ *     and echoed by the joining side once its fleet is placed</li>
+ *     <li>{@code SHOT}: the index of the shot tile</li>
+ *     <li>{@code REVEALED}: revealed tiles that did not fit into the answer</li>
+ *     <li>{@code RESULT}: the index of the shot tile, the outcome and the revealed tiles</li>
+ * </ul>
+ * The revealed tiles are sent as their indices, with the sign bit set for the tiles of ships.
+ * <p>
+ * The received frames are handed to an executor, for example the Swing event dispatch thread,
+ * so the state of the match is only changed there, while the link's selector thread serves the network.
+ */
+public class RemoteMatch implements Closeable {
+
+    /**
+     * Receives the events of the match, on the executor of the match.
+     */
+    public interface Listener {
+
+        /**
+         * Called once both fleets are placed.
+         * @param match the match
+         */
+        void started(RemoteMatch match);
+
+        /**
+         * Called when the opponent shot the player's board.
+         * @param cell the index of the shot tile
+         * @param outcome the outcome of the shot
+         */
+        void shot(int cell, Match.Outcome outcome);
+
+        /**
+         * Called when the opponent answered the player's shot.
+         * @param cell the index of the shot tile
+         * @param outcome the outcome of the shot
+         */
+        void answered(int cell, Match.Outcome outcome);
+
+        /**
+         * Called when the connection ended before the match was over.
+         * @param cause the error that ended the connection, or null if the opponent left
+         */
+        void disconnected(IOException cause);
+    }
+
+    /**
+     * The default port of the hosted matches.
+     */
+    public static int PORT = 7778;
+
+    /**
+     * The largest number of tiles of the boards described by the host that the joining side accepts.
+     */
+    public static int MAX_SIZE = 100 * 100;
+
+    /**
+     * The type of the frames describing the boards.
+     */
+    static final byte HELLO = 0;
+
+    /**
+     * The type of the frames of the shots.
+     */
+    static final byte SHOT = 1;
+
+    /**
+     * The type of the frames of the revealed tiles, that did not fit into the answer.
+     */
+    static final byte REVEALED = 2;
+
+    /**
+     * The type of the frames answering the shots.
+     */
+    static final byte RESULT = 3;
+
+    /**
+     * The bit of the revealed tiles marking the tiles of ships.
+     */
+    private static final int SHIP_BIT = 1 << 31;
+
+    /**
+     * The largest number of revealed tiles sent in a frame.
+     */
+    private static final int REVEALED_PER_FRAME = Link.MAX_PAYLOAD / 4 - 2;
+
+    /**
+     * Whether this side hosts the match.
+     */
+    public final boolean host;
+
+    /**
+     * The connection to the opponent.
+     */
+    private final Link link;
+
+    /**
+     * Places the player's fleet.
+     */
+    private final RandomGenerator random;
+
+    /**
+     * Receives the events of the match.
+     */
+    private volatile Listener listener;
+
+    /**
+     * The number of rows of the boards.
+     */
+    private int rows;
+
+    /**
+     * The number of columns of the boards.
+     */
+    private int columns;
+
+    /**
+     * The lengths of the ships.
+     */
+    private int[] fleet;
+
+    /**
+     * The player's board, null until the match has started.
+     */
+    private Board board;
+
+    /**
+     * The copy of the opponent's board, null until the match has started.
+     */
+    private Board opponent;
+
+    /**
+     * Whether both fleets are placed.
+     */
+    private boolean started = false;
+
+    /**
+     * Whether it is the player's turn to shoot.
+     */
+    private boolean turn = false;
+
+    /**
+     * The index of the tile shot by the player, that has not been answered yet, or -1.
+     */
+    private int pendingShot = -1;
+
+    /**
+     * Whether either side has won, or the connection has ended.
+     */
+    private boolean over = false;
+
+    /**
+     * The number of shots taken in the match.
+     */
+    private int turns = 0;
+
+    /**
+     * The time the pending shot was sent, from {@link System#nanoTime()}.
+     */
+    private long sentAt;
+
+    /**
+     * The time it took to answer the last shot of the player, in nanoseconds.
+     */
+    private long roundTrip;
+
+    /**
+     * The tiles revealed by the last shot of the opponent.
+     */
+    private int[] revealed = new int[16];
+
+    /**
+     * The number of tiles revealed by the last shot of the opponent.
+     */
+    private int revealedCount;
+
+    /**
+     * Creates a match and starts its connection.
+     * @param host the host of the opponent, or null to host the match
+     * @param port the port to connect to, or to listen on
+     * @param rows the number of rows of the hosted boards
+     * @param columns the number of columns of the hosted boards
+     * @param fleet the lengths of the ships of the hosted boards, or null when joining
+     * @param board the player's hosted board, or null when joining
+     * @param random places the player's fleet
+     * @param events runs the handling of the frames
+     * @param listener receives the events of the match
+     * @throws IOException The connection cannot be started.
+     */
+    private RemoteMatch(String host, int port, int rows, int columns, int[] fleet, Board board, RandomGenerator random,
+                        Executor events, Listener listener) throws IOException {
+        this.host = host == null;
+        this.rows = rows;
+        this.columns = columns;
+        this.fleet = fleet;
+        this.board = board;
+        this.random = random;
+        this.listener = listener;
+        Link.Listener handler = new Link.Listener() {
+            @Override
+            public void connected() {
+                events.execute(RemoteMatch.this::connected);
+            }
+
+            @Override
+            public void received(byte type, ByteBuffer payload) {
+                ByteBuffer copy = ByteBuffer.allocate(payload.remaining()).put(payload).flip();
+                events.execute(() -> receive(type, copy));
+            }
+
+            @Override
+            public void closed(IOException cause) {
+                events.execute(() -> end(cause));
+            }
+        };
+        // The handlers wait until the link is assigned
+        synchronized (this) {
+            link = host == null ? Link.host(port, handler) : Link.join(host, port, handler);
+        }
+    }
+
+    /**
+     * Hosts a match: places the player's fleet and waits for an opponent to join.
+     * @param port the port to listen on, 0 for any free port
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param fleet the lengths of the ships
+     * @param random places the player's fleet
+     * @param events runs the handling of the frames
+     * @param listener receives the events of the match
+     * @return the match
+     * @throws IllegalArgumentException The fleet does not fit on the boards.
+     * @throws IOException The port cannot be listened on.
+     */
+    public static RemoteMatch host(int port, int rows, int columns, int[] fleet, RandomGenerator random,
+                                   Executor events, Listener listener) throws IllegalArgumentException, IOException {
+        if (fleet.length > Link.MAX_PAYLOAD / 4 - 3)
+            throw new IllegalArgumentException("The fleet is too large.");
+        Board board = Simulator.place(rows, columns, fleet, random);
+        return new RemoteMatch(null, port, rows, columns, fleet.clone(), board, random, events, listener);
+    }
+
+    /**
+     * Joins a hosted match. The player's fleet is placed once the size of the boards is received.
+     * @param host the host of the opponent
+     * @param port the port of the opponent
+     * @param random places the player's fleet
+     * @param events runs the handling of the frames
+     * @param listener receives the events of the match
+     * @return the match
+     * @throws IOException The connection cannot be started.
+     */
+    public static RemoteMatch join(String host, int port, RandomGenerator random, Executor events, Listener listener)
+            throws IOException {
+        return new RemoteMatch(host, port, 0, 0, null, null, random, events, listener);
+    }
+
+    /**
+     * Replaces the receiver of the events of the match.
+     * @param listener receives the events of the match
+     */
+    public void listen(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the local port of the match
+     * @throws IOException The connection has ended.
+     */
+    public int port() throws IOException {
+        return link.port();
+    }
+
+    /**
+     * @return the player's board, or null if the match has not started yet
+     */
+    public synchronized Board board() {
+        return started ? board : null;
+    }
+
+    /**
+     * @return the copy of the opponent's board, or null if the match has not started yet
+     */
+    public synchronized Board opponent() {
+        return opponent;
+    }
+
+    /**
+     * @return whether the player can shoot now
+     */
+    public synchronized boolean isTurn() {
+        return started && turn && pendingShot == -1 && !over;
+    }
+
+    /**
+     * @return whether either side has won, or the connection has ended
+     */
+    public synchronized boolean isOver() {
+        return over;
+    }
+
+    /**
+     * @return the number of shots taken in the match
+     */
+    public synchronized int turns() {
+        return turns;
+    }
+
+    /**
+     * @return the time it took to answer the last shot of the player, in nanoseconds
+     */
+    public synchronized long roundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * Shoots a tile of the opponent's board. The outcome is passed to {@link Listener#answered}.
+     * @param cell the index of the tile
+     * @throws IllegalStateException It is not the player's turn.
+     * @throws IllegalArgumentException The tile has already been discovered.
+     * @throws IndexOutOfBoundsException The tile is not on the board.
+     */
+    public synchronized void shoot(int cell) throws IllegalStateException, IllegalArgumentException,
+            IndexOutOfBoundsException {
+        if (!isTurn())
+            throw new IllegalStateException("It is not the player's turn.");
+        if (cell < 0 || cell >= opponent.size())
+            throw new IndexOutOfBoundsException();
+        if (opponent.isDiscovered(cell))
+            throw new IllegalArgumentException("The tile has already been discovered.");
+        pendingShot = cell;
+        sentAt = System.nanoTime();
+        link.send(SHOT, ByteBuffer.allocate(4).putInt(cell).flip());
+    }
+
+    /**
+     * Sends the description of the boards, once the host's opponent has connected.
+     */
+    private synchronized void connected() {
+        if (host)
+            hello();
+    }
+
+    /**
+     * Sends the description of the boards.
+     */
+    private void hello() {
+        ByteBuffer payload = ByteBuffer.allocate(12 + 4 * fleet.length);
+        payload.putInt(rows).putInt(columns).putInt(fleet.length);
+        for (int length : fleet)
+            payload.putInt(length);
+        link.send(HELLO, payload.flip());
+    }
+
+    /**
+     * Handles a received frame.
+     * @param type the type of the frame
+     * @param payload the payload of the frame
+     */
+    private synchronized void receive(byte type, ByteBuffer payload) {
+        if (over)
+            return;
+        try {
+            switch (type) {
+                case HELLO -> start(payload);
+                case SHOT -> answer(payload.getInt());
+                case REVEALED -> reveal(payload);
+                case RESULT -> result(payload);
+                default -> throw new ProtocolException("Unknown frame: " + type);
+            }
+        } catch (ProtocolException | RuntimeException e) {
+            ProtocolException cause = e instanceof ProtocolException p ? p : new ProtocolException(e.toString());
+            over = true;
+            link.close();
+            listener.disconnected(cause);
+        }
+    }
+
+    /**
+     * Handles the description of the boards: the joining side places its fleet and echoes it,
+     * the host checks the echo.
+     * @param payload the description of the boards
+     * @throws ProtocolException The match has already started, or the description is invalid.
+     */
+    private void start(ByteBuffer payload) throws ProtocolException {
+        if (started)
+            throw new ProtocolException("The match has already started.");
+        int rows = payload.getInt(), columns = payload.getInt(), count = payload.getInt();
+        if (rows < 1 || columns < 1 || (long) rows * columns > MAX_SIZE)
+            throw new ProtocolException("Invalid size of the boards: " + rows + "x" + columns);
+        // The count is checked against the payload before anything is allocated for it
+        if (count < 0 || count > payload.remaining() / 4)
+            throw new ProtocolException("Invalid number of ships: " + count);
+        int[] fleet = new int[count];
+        for (int i = 0; i < fleet.length; i++) {
+            fleet[i] = payload.getInt();
+            if (fleet[i] < 1 || fleet[i] > Math.max(rows, columns))
+                throw new ProtocolException("Invalid length of a ship: " + fleet[i]);
+        }
+        if (host) {
+            if (rows != this.rows || columns != this.columns || !Arrays.equals(fleet, this.fleet))
+                throw new ProtocolException("The opponent's boards differ.");
+        } else {
+            this.rows = rows;
+            this.columns = columns;
+            this.fleet = fleet;
+            board = Simulator.place(rows, columns, fleet, random);
+            hello();
+        }
+        opponent = Board.mirror(rows, columns, fleet);
+        started = true;
+        turn = host;
+        listener.started(this);
+    }
+
+    /**
+     * Shoots the player's board for the opponent, and answers with the outcome and the revealed tiles.
+     * @param cell the index of the shot tile
+     * @throws ProtocolException It is not the opponent's turn, or the tile cannot be shot.
+     */
+    private void answer(int cell) throws ProtocolException {
+        if (!started || turn)
+            throw new ProtocolException("It is not the opponent's turn.");
+        if (cell < 0 || cell >= board.size() || board.isDiscovered(cell))
+            throw new ProtocolException("The tile cannot be shot: " + cell);
+
+        revealedCount = 0;
+        board.shoot(cell, tile -> {
+            if (revealedCount == revealed.length)
+                revealed = Arrays.copyOf(revealed, 2 * revealedCount);
+            revealed[revealedCount++] = board.isShip(tile) ? tile | SHIP_BIT : tile;
+        });
+        Match.Outcome outcome = Match.Outcome.of(board, cell);
+
+        // The tiles that do not fit into the answer are sent ahead of it
+        int sent = 0;
+        while (revealedCount - sent > REVEALED_PER_FRAME) {
+            ByteBuffer payload = ByteBuffer.allocate(4 * REVEALED_PER_FRAME);
+            payload.asIntBuffer().put(revealed, sent, REVEALED_PER_FRAME);
+            link.send(REVEALED, payload);
+            sent += REVEALED_PER_FRAME;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(5 + 4 * (revealedCount - sent));
+        payload.putInt(cell).put((byte) outcome.ordinal());
+        payload.asIntBuffer().put(revealed, sent, revealedCount - sent);
+        link.send(RESULT, payload.rewind());
+
+        turns++;
+        turn = true;
+        over = outcome == Match.Outcome.WON;
+        listener.shot(cell, outcome);
+    }
+
+    /**
+     * Marks the revealed tiles of the opponent's board.
+     * @param payload the revealed tiles
+     * @throws ProtocolException No shot is waiting for its answer, or a tile is not on the board.
+     */
+    private void reveal(ByteBuffer payload) throws ProtocolException {
+        if (pendingShot == -1)
+            throw new ProtocolException("No shot is waiting for its answer.");
+        while (payload.hasRemaining()) {
+            int tile = payload.getInt(), cell = tile & ~SHIP_BIT;
+            if (cell >= opponent.size())
+                throw new ProtocolException("The tile is not on the board: " + cell);
+            opponent.reveal(cell, tile != cell);
+        }
+    }
+
+    /**
+     * Handles the answer to the player's shot.
+     * @param payload the answer
+     * @throws ProtocolException No shot is waiting for the answer, or the answer is invalid.
+     */
+    private void result(ByteBuffer payload) throws ProtocolException {
+        int cell = payload.getInt();
+        int outcome = payload.get();
+        if (cell != pendingShot)
+            throw new ProtocolException("The answer is not for the pending shot.");
+        if (outcome < 0 || outcome >= Match.Outcome.values().length)
+            throw new ProtocolException("Unknown outcome: " + outcome);
+        reveal(payload);
+        if (!opponent.isDiscovered(cell))
+            throw new ProtocolException("The shot tile was not revealed.");
+
+        roundTrip = System.nanoTime() - sentAt;
+        pendingShot = -1;
+        turns++;
+        turn = false;
+        over = outcome == Match.Outcome.WON.ordinal();
+        listener.answered(cell, Match.Outcome.values()[outcome]);
+    }
+
+    /**
+     * Handles the end of the connection.
+     * @param cause the error that ended the connection, or null if it was closed
+     */
+    private synchronized void end(IOException cause) {
+        if (over)
+            return;
+        over = true;
+        listener.disconnected(cause);
+    }
+
+    /**
+     * Leaves the match and closes the connection.
+     */
+    @Override
+    public synchronized void close() {
+        over = true;
+        link.close();
+    }
+
+    /**
+     * Player that shoots with a {@link HuntStrategy} as soon as it is its turn, and measures the round trips
+     * of its shots. The hunting strategy only needs the discovered tiles, so it can play on the copy
+     * of the opponent's board, where the ships are only known by their discovered tiles.
+     */
+    static class Bot implements Listener {
+
+        /**
+         * The source of randomness of the strategy.
+         */
+        private final RandomGenerator random;
+
+        /**
+         * Chooses the shots, created when the match starts.
+         */
+        private Strategy strategy;
+
+        /**
+         * The match played.
+         */
+        private RemoteMatch match;
+
+        /**
+         * The round trips of the shots in nanoseconds.
+         */
+        private long[] roundTrips = new long[64];
+
+        /**
+         * The number of shots answered.
+         */
+        private int shots;
+
+        /**
+         * Whether the bot won.
+         */
+        volatile boolean won = false;
+
+        /**
+         * The error that ended the match, if any.
+         */
+        volatile IOException error;
+
+        /**
+         * Counted down when the match is over.
+         */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Creates the bot.
+         * @param random the source of randomness of the strategy
+         */
+        Bot(RandomGenerator random) {
+            this.random = random;
+        }
+
+        @Override
+        public void started(RemoteMatch match) {
+            this.match = match;
+            strategy = new HuntStrategy(random);
+            if (match.isTurn())
+                match.shoot(strategy.nextGuess(match.opponent()));
+        }
+
+        @Override
+        public void shot(int cell, Match.Outcome outcome) {
+            if (outcome == Match.Outcome.WON)
+                done.countDown();
+            else
+                match.shoot(strategy.nextGuess(match.opponent()));
+        }
+
+        @Override
+        public void answered(int cell, Match.Outcome outcome) {
+            if (shots == roundTrips.length)
+                roundTrips = Arrays.copyOf(roundTrips, 2 * shots);
+            roundTrips[shots++] = match.roundTrip();
+            strategy.update(match.opponent(), cell);
+            if (outcome == Match.Outcome.WON) {
+                won = true;
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void disconnected(IOException cause) {
+            error = cause != null ? cause : new IOException("The opponent left.");
+            done.countDown();
+        }
+
+        /**
+         * @return the round trips of the shots in nanoseconds, in increasing order
+         */
+        long[] roundTrips() {
+            long[] sorted = Arrays.copyOf(roundTrips, shots);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * Plays a match with a bot from the command line, so two instances can play each other.
+     * <p>
+     * Options: {@code --host P} to host on port P or {@code --join HOST:P} to join,
+     * and {@code --size ROWSxCOLUMNS} for the hosted boards. The round trips of the bot's shots are reported at the end.
+     * @param args the options
+     * @throws IOException The connection failed.
+     * @throws InterruptedException The match was interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String join = null;
+        int port = PORT, rows = Player.ROWS, columns = Player.COLUMNS;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host" -> port = Integer.parseInt(value);
+                case "--join" -> {
+                    join = value.substring(0, value.lastIndexOf(':'));
+                    port = Integer.parseInt(value.substring(value.lastIndexOf(':') + 1));
+                }
+                case "--size" -> {
+                    String[] size = value.toLowerCase().split("x");
+                    rows = Integer.parseInt(size[0]);
+                    columns = Integer.parseInt(size[1]);
+                }
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        SplittableRandom random = new SplittableRandom();
+        Bot bot = new Bot(random);
+        try (RemoteMatch match = join == null
+                ? host(port, rows, columns, Player.FLEET, random, Runnable::run, bot)
+                : join(join, port, random, Runnable::run, bot)) {
+            if (join == null)
+                System.out.println("Waiting on port " + match.port());
+            bot.done.await();
+            if (bot.error != null)
+                throw bot.error;
+            long[] roundTrips = bot.roundTrips();
+            System.out.printf(Locale.ROOT, "%s after %d shots, round trip p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                    bot.won ? "Won" : "Lost", match.turns(),
+                    percentile(roundTrips, 0.5) / 1e3, percentile(roundTrips, 0.99) / 1e3,
+                    percentile(roundTrips, 1) / 1e3);
+        }
+    }
+
+    /**
+     * Gets a percentile of measurements.
+     * @param sorted the measurements, in increasing order
+     * @param fraction the fraction of the measurements that are smaller, between 0 and 1
+     * @return the measurement, 0 if there are none
+     */
+    static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
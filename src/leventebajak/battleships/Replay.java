@@ -0,0 +1,167 @@
+package leventebajak.battleships;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * Replays a {@link Recording} headlessly, shot by shot, with seeking in both directions.
+ * <p>
+ * Every shot is checked against the recording: it has to reveal the same number of tiles,
+ * and at the end, the digest of all the revealed tiles, in the order they were revealed, has to match.
+ * So a replay is also a regression check of the reveal cascades.
+ */
+public class Replay {
+
+    /**
+     * The recording replayed.
+     */
+    public final Recording recording;
+
+    /**
+     * The boards in their replayed state, in the order of the recording.
+     */
+    private final Board[] boards = new Board[2];
+
+    /**
+     * The number of shots replayed.
+     */
+    private int position = 0;
+
+    /**
+     * The index of the board being shot.
+     */
+    private int shotBoard;
+
+    /**
+     * The number of tiles revealed by the shot being replayed.
+     */
+    private int revealed;
+
+    /**
+     * The digest of the revealed tiles so far.
+     */
+    private long digest = Recording.EMPTY_DIGEST;
+
+    /**
+     * Counts the tiles revealed by the shot being replayed, and adds them to the digest.
+     */
+    private final IntConsumer counter = cell -> {
+        revealed++;
+        digest = Recording.mix(digest, cell << 1 | shotBoard);
+    };
+
+    /**
+     * Creates a replay before the first shot of a recording.
+     * @param recording the recording
+     */
+    public Replay(Recording recording) {
+        this.recording = recording;
+        boards[0] = Recording.copy(recording.initial(0));
+        boards[1] = Recording.copy(recording.initial(1));
+    }
+
+    /**
+     * Gets a replayed board. The boards are changed in place by the replay, so views of them stay valid.
+     * @param index the index of the board in the recording
+     * @return the board
+     */
+    public Board board(int index) {
+        return boards[index];
+    }
+
+    /**
+     * @return the number of shots replayed
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return the number of shots of the recording
+     */
+    public int length() {
+        return recording.shots();
+    }
+
+    /**
+     * Restores the boards to the state before the first shot.
+     */
+    public void reset() {
+        boards[0].restore(recording.initial(0));
+        boards[1].restore(recording.initial(1));
+        position = 0;
+        digest = Recording.EMPTY_DIGEST;
+    }
+
+    /**
+     * Replays the next shot.
+     * @return whether there was a shot left to replay
+     * @throws IllegalStateException The shot did not reveal the same tiles as in the recording.
+     */
+    public boolean step() throws IllegalStateException {
+        if (position == recording.shots())
+            return false;
+        shotBoard = recording.board(position);
+        revealed = 0;
+        boards[shotBoard].shoot(recording.cell(position), counter);
+        if (revealed != recording.revealed(position))
+            throw new IllegalStateException("The replay diverged at shot " + position + ": " + revealed
+                    + " tiles were revealed instead of " + recording.revealed(position) + ".");
+        position++;
+        if (position == recording.shots() && digest != recording.digest())
+            throw new IllegalStateException("The replay diverged: the tiles were revealed in a different order.");
+        return true;
+    }
+
+    /**
+     * Moves to the state after a number of shots. Seeking backwards replays the recording from the start.
+     * @param shot the number of shots to be replayed
+     * @throws IndexOutOfBoundsException The recording has fewer shots.
+     * @throws IllegalStateException A shot did not reveal the same tiles as in the recording.
+     */
+    public void seek(int shot) throws IndexOutOfBoundsException, IllegalStateException {
+        if (shot < 0 || shot > recording.shots())
+            throw new IndexOutOfBoundsException();
+        if (shot < position)
+            reset();
+        while (position < shot)
+            step();
+    }
+
+    /**
+     * Replays the rest of the recording.
+     * @throws IllegalStateException A shot did not reveal the same tiles as in the recording.
+     */
+    public void run() throws IllegalStateException {
+        seek(recording.shots());
+    }
+
+    /**
+     * Replays recordings from the command line, checks them and reports the speed of the replays.
+     * <p>
+     * The arguments are the files of the recordings, optionally preceded by {@code --repeat N},
+     * the number of times each recording is replayed.
+     * @param args the arguments
+     * @throws IOException A recording cannot be loaded.
+     */
+    public static void main(String[] args) throws IOException {
+        int repeat = 1, first = 0;
+        if (args.length > 1 && args[0].equals("--repeat")) {
+            repeat = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        for (int i = first; i < args.length; i++) {
+            Replay replay = new Replay(Recording.load(new File(args[i])));
+            long start = System.nanoTime();
+            for (int r = 0; r < repeat; r++) {
+                replay.reset();
+                replay.run();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "%s: %d shots replayed %d times in %.3f s, %.2f million shots/s%n",
+                    args[i], replay.length(), repeat, seconds, (double) replay.length() * repeat / seconds / 1e6);
+        }
+    }
+}
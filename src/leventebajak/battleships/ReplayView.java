@@ -0,0 +1,200 @@
+package leventebajak.battleships;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Window replaying a recording at a chosen speed, with a slider to seek to any shot.
+ */
+public class ReplayView {
+
+    /**
+     * The speeds the replay can be played at, in shots per second.
+     */
+    public static Integer[] SPEEDS = {1, 2, 5, 10, 25, 50, 100};
+
+    /**
+     * The replay displayed.
+     */
+    final Replay replay;
+
+    /**
+     * The players whose boards are displayed, in the order of the recording.
+     */
+    final Player[] players = new Player[2];
+
+    /**
+     * The frame the replay is displayed in.
+     */
+    final JFrame frame;
+
+    /**
+     * Seeks to a shot, and shows the number of shots replayed.
+     */
+    final JSlider slider;
+
+    /**
+     * Shows the number of shots replayed.
+     */
+    private final JLabel status = new JLabel("", SwingConstants.CENTER);
+
+    /**
+     * Replays the shots while playing.
+     */
+    final Timer timer;
+
+    /**
+     * Whether the slider is being moved by the replay, rather than by the user.
+     */
+    private boolean updating = false;
+
+    /**
+     * Creates the window of a replay, before the first shot.
+     * @param recording the recording to replay
+     */
+    ReplayView(Recording recording) {
+        replay = new Replay(recording);
+        frame = new JFrame("BATTLESHIPS - REPLAY");
+        frame.setLayout(new BorderLayout());
+        frame.getContentPane().setBackground(Color.WHITE);
+
+        JPanel boards = new JPanel(new GridLayout(1, 2));
+        boards.setBackground(frame.getContentPane().getBackground());
+        for (int i = 0; i < 2; i++) {
+            players[i] = new Player(recording.names[i], replay.board(i));
+            players[i].setEnabled(false);
+            players[i].showAll();
+            JPanel panel = new JPanel(new BorderLayout());
+            JLabel name = new JLabel(recording.names[i], SwingConstants.CENTER);
+            name.setFont(new Font("Stencil", Font.BOLD, 30));
+            panel.add(name, BorderLayout.NORTH);
+            panel.add(new JScrollPane(players[i].panel), BorderLayout.CENTER);
+            panel.setBorder(new EmptyBorder(20, 20, 20, 20));
+            panel.setBackground(frame.getContentPane().getBackground());
+            boards.add(panel);
+        }
+        frame.add(boards, BorderLayout.CENTER);
+
+        timer = new Timer(1000 / SPEEDS[3], ae -> {
+            if (!advance())
+                ((Timer) ae.getSource()).stop();
+        });
+        slider = new JSlider(0, replay.length(), 0);
+        slider.addChangeListener(ce -> {
+            if (!updating)
+                seek(slider.getValue());
+        });
+
+        JButton play = new JButton("Play/Pause");
+        play.addActionListener(ae -> {
+            if (timer.isRunning())
+                timer.stop();
+            else {
+                if (replay.position() == replay.length())
+                    seek(0);
+                timer.start();
+            }
+        });
+        JButton back = new JButton("<");
+        back.addActionListener(ae -> seek(Math.max(0, replay.position() - 1)));
+        JButton forward = new JButton(">");
+        forward.addActionListener(ae -> advance());
+        JComboBox<Integer> speed = new JComboBox<>(SPEEDS);
+        speed.setSelectedItem(SPEEDS[3]);
+        speed.addActionListener(ae -> timer.setDelay(1000 / (Integer) speed.getSelectedItem()));
+        JCheckBox ships = new JCheckBox("Show ships", true);
+        ships.addActionListener(ae -> {
+            for (Player player : players)
+                if (ships.isSelected())
+                    player.showAll();
+                else
+                    player.showDiscovered();
+        });
+
+        JPanel controls = new JPanel(new BorderLayout());
+        JPanel buttons = new JPanel();
+        buttons.add(back);
+        buttons.add(play);
+        buttons.add(forward);
+        buttons.add(new JLabel("Shots/s:"));
+        buttons.add(speed);
+        buttons.add(ships);
+        controls.add(slider, BorderLayout.NORTH);
+        controls.add(buttons, BorderLayout.CENTER);
+        controls.add(status, BorderLayout.SOUTH);
+        frame.add(controls, BorderLayout.SOUTH);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                timer.stop();
+            }
+        });
+        update();
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+    }
+
+    /**
+     * Loads a recording and opens its replay.
+     * @param file the file of the recording
+     * @throws IOException The file cannot be read, or it is not a recording.
+     */
+    public static void open(File file) throws IOException {
+        new ReplayView(Recording.load(file)).frame.setVisible(true);
+    }
+
+    /**
+     * Replays the next shot.
+     * @return whether there was a shot left to replay
+     */
+    boolean advance() {
+        try {
+            boolean stepped = replay.step();
+            update();
+            return stepped;
+        } catch (IllegalStateException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * Moves to the state after a number of shots.
+     * @param shot the number of shots to be replayed
+     */
+    void seek(int shot) {
+        try {
+            replay.seek(shot);
+        } catch (IllegalStateException e) {
+            fail(e);
+        }
+        update();
+    }
+
+    /**
+     * Stops the replay after it diverged from the recording.
+     * @param e the reason of the divergence
+     */
+    private void fail(IllegalStateException e) {
+        timer.stop();
+        JOptionPane.showMessageDialog(frame, e.getMessage());
+    }
+
+    /**
+     * Repaints the changed tiles and moves the slider to the replayed shot.
+     */
+    private void update() {
+        for (Player player : players)
+            player.panel.refresh();
+        updating = true;
+        slider.setValue(replay.position());
+        updating = false;
+        status.setText("Shot " + replay.position() + " / " + replay.length());
+    }
+}
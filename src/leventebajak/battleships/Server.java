@@ -0,0 +1,305 @@
+package leventebajak.battleships;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless server hosting matches against the computer over a line-based TCP protocol on localhost.
+ * <p>
+ * Every connection is served on its own virtual thread, if the runtime supports them,
+ * otherwise on a thread of a cached pool. The commands of the protocol, one per line, are:
+ * <ul>
+ *     <li>{@code NEW [ROWSxCOLUMNS] [HUNT|DENSITY|ENDGAME]}: starts a match, answered by {@code SESSION id rows columns},
+ *     on boards of at most {@link #MAX_SIZE} tiles</li>
+ *     <li>{@code USE id}: continues the match of a session, answered by {@code SESSION id rows columns}</li>
+ *     <li>{@code SHOT row column}: shoots a tile of the computer's board, answered by {@code RESULT outcome}
+ *     if the player won, otherwise by {@code RESULT outcome row column outcome} with the computer's shot,
+ *     where the outcomes are {@code MISS}, {@code HIT}, {@code SUNK} or {@code WON}</li>
+ *     <li>{@code BOARD}: answered by {@code BOARD rows columns}, then the rows of the computer's board,
+ *     with {@code .} for the undiscovered tiles, {@code o} for water and {@code #} for ships</li>
+ *     <li>{@code QUIT}: ends the session, answered by {@code BYE}</li>
+ * </ul>
+ * Invalid commands are answered by {@code ERROR message}. A line longer than {@link #MAX_LINE} characters
+ * ends the connection, as the command cannot be valid.
+ */
+public class Server implements Closeable {
+
+    /**
+     * The default port of the server.
+     */
+    public static int PORT = 7777;
+
+    /**
+     * The largest number of tiles of the boards of the matches.
+     */
+    public static int MAX_SIZE = 100 * 100;
+
+    /**
+     * The largest number of characters of a line of the protocol.
+     */
+    public static int MAX_LINE = 1024;
+
+    /**
+     * The sessions hosted by the server.
+     */
+    private final SessionManager sessions;
+
+    /**
+     * The socket accepting the connections.
+     */
+    private final ServerSocket socket;
+
+    /**
+     * Serves the connections.
+     */
+    private final ExecutorService connections = newThreadPerTaskExecutor();
+
+    /**
+     * Creates the server and starts accepting connections.
+     * @param sessions the sessions hosted by the server
+     * @param port the port to listen on, 0 for any free port
+     * @throws IOException The port cannot be listened on.
+     */
+    public Server(SessionManager sessions, int port) throws IOException {
+        this.sessions = sessions;
+        socket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread, or on a cached pool of threads
+     * if the runtime does not support virtual threads.
+     * @return the executor
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                Socket connection = socket.accept();
+                connection.setTcpNoDelay(true);
+                connections.execute(() -> serve(connection));
+            } catch (IOException e) {
+                if (socket.isClosed())
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Reads a line of at most {@link #MAX_LINE} characters, so that a client never ending its line
+     * cannot make the server buffer it without bounds.
+     * @param in the reader of the connection
+     * @param buffer collects the characters of the line
+     * @return the line without its line terminator, or null if the connection has ended
+     * @throws IOException The line is too long, or the connection failed.
+     */
+    static String readLine(Reader in, StringBuilder buffer) throws IOException {
+        buffer.setLength(0);
+        for (int c; (c = in.read()) != -1; ) {
+            if (c == '\n') {
+                if (!buffer.isEmpty() && buffer.charAt(buffer.length() - 1) == '\r')
+                    buffer.setLength(buffer.length() - 1);
+                return buffer.toString();
+            }
+            if (buffer.length() == MAX_LINE)
+                throw new IOException("The line is too long.");
+            buffer.append((char) c);
+        }
+        return buffer.isEmpty() ? null : buffer.toString();
+    }
+
+    /**
+     * Serves a connection until the client quits or disconnects.
+     * @param connection the connection
+     */
+    private void serve(Socket connection) {
+        try (connection;
+             BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            Session session = null;
+            StringBuilder buffer = new StringBuilder();
+            String line;
+            while ((line = readLine(in, buffer)) != null) {
+                String[] words = line.trim().split("\\s+");
+                String command = words[0].toUpperCase();
+                try {
+                    switch (command) {
+                        case "NEW" -> {
+                            // A finished match is not needed anymore
+                            if (session != null && session.match.isOver())
+                                sessions.remove(session.id);
+                            session = create(words);
+                            out.write(describe(session));
+                        }
+                        case "USE" -> {
+                            Session used = words.length > 1 ? sessions.get(Long.parseLong(words[1])) : null;
+                            if (used == null)
+                                throw new IllegalArgumentException("No such session.");
+                            session = used;
+                            out.write(describe(session));
+                        }
+                        case "SHOT" -> out.write(shoot(attached(session),
+                                Integer.parseInt(words[1]), Integer.parseInt(words[2])));
+                        case "BOARD" -> out.write(board(attached(session)));
+                        case "QUIT" -> {
+                            if (session != null)
+                                sessions.remove(session.id);
+                            out.write("BYE\n");
+                            out.flush();
+                            return;
+                        }
+                        default -> throw new IllegalArgumentException("Unknown command: " + command);
+                    }
+                } catch (RuntimeException e) {
+                    out.write("ERROR " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()) + "\n");
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // The client disconnected, sent a line too long, or the connection failed, so there is no one left to answer
+        }
+    }
+
+    /**
+     * Starts a new match for a {@code NEW} command.
+     * @param words the words of the command
+     * @return the session of the match
+     * @throws IllegalArgumentException The command is invalid, or the boards would be too large.
+     */
+    private Session create(String[] words) throws IllegalArgumentException {
+        int rows = Player.ROWS, columns = Player.COLUMNS;
+        AI.Mode mode = AI.MODE;
+        for (int i = 1; i < words.length; i++) {
+            if (words[i].toLowerCase().contains("x")) {
+                String[] size = words[i].toLowerCase().split("x");
+                rows = Integer.parseInt(size[0]);
+                columns = Integer.parseInt(size[1]);
+            } else
+                mode = AI.Mode.valueOf(words[i].toUpperCase());
+        }
+        if ((long) rows * columns > MAX_SIZE)
+            throw new IllegalArgumentException("The boards can have at most " + MAX_SIZE + " tiles.");
+        return sessions.create(mode, rows, columns, Player.FLEET);
+    }
+
+    /**
+     * Checks that a connection uses a session, that has not expired.
+     * @param session the session of the connection, or null
+     * @return the session
+     * @throws IllegalStateException There is no session.
+     */
+    private Session attached(Session session) throws IllegalStateException {
+        if (session == null || sessions.get(session.id) == null)
+            throw new IllegalStateException("No session.");
+        return session;
+    }
+
+    /**
+     * @param session the session
+     * @return the answer describing the session
+     */
+    private static String describe(Session session) {
+        return "SESSION " + session.id + " " + session.match.board.rows + " " + session.match.board.columns + "\n";
+    }
+
+    /**
+     * Plays a round of a {@code SHOT} command.
+     * @param session the session
+     * @param row the row of the shot tile
+     * @param column the column of the shot tile
+     * @return the answer with the outcomes of the round
+     */
+    private static String shoot(Session session, int row, int column) {
+        synchronized (session) {
+            Match match = session.match;
+            Match.Outcome outcome = match.shoot(match.opponent.cell(row, column));
+            if (outcome == Match.Outcome.WON)
+                return "RESULT WON\n";
+            int guess = match.lastGuess();
+            return "RESULT " + outcome + " " + match.board.row(guess) + " " + match.board.column(guess) + " "
+                    + Match.Outcome.of(match.board, guess) + "\n";
+        }
+    }
+
+    /**
+     * Draws the computer's board for a {@code BOARD} command.
+     * @param session the session
+     * @return the answer with the rows of the board
+     */
+    private static String board(Session session) {
+        synchronized (session) {
+            Board board = session.match.opponent;
+            StringBuilder answer = new StringBuilder("BOARD " + board.rows + " " + board.columns + "\n");
+            for (int row = 0; row < board.rows; row++) {
+                for (int column = 0; column < board.columns; column++) {
+                    int cell = board.cell(row, column);
+                    answer.append(!board.isDiscovered(cell) ? '.' : board.isShip(cell) ? '#' : 'o');
+                }
+                answer.append('\n');
+            }
+            return answer.toString();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        connections.shutdownNow();
+    }
+
+    /**
+     * Runs the server from the command line.
+     * <p>
+     * Options: {@code --port P}, {@code --sessions N}, the largest number of sessions hosted at once,
+     * and {@code --timeout S}, the seconds after which an unused session expires.
+     * @param args the options
+     * @throws IOException The port cannot be listened on.
+     * @throws InterruptedException The server was interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = PORT, maxSessions = 100_000;
+        long timeout = 300;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--sessions" -> maxSessions = Integer.parseInt(value);
+                case "--timeout" -> timeout = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        SessionManager sessions = new SessionManager(maxSessions, timeout, TimeUnit.SECONDS);
+        Server server = new Server(sessions, port);
+        System.out.println("Listening on localhost:" + server.port());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,48 @@
+package leventebajak.battleships;
+
+/**
+ * A match hosted by a {@link SessionManager}, identified by its id.
+ * The connections using the session have to synchronize on it.
+ */
+public class Session {
+
+    /**
+     * The id of the session.
+     */
+    public final long id;
+
+    /**
+     * The match played in the session.
+     */
+    public final Match match;
+
+    /**
+     * The time the session was last used, in nanoseconds of {@link System#nanoTime()}.
+     */
+    private volatile long lastUsed;
+
+    /**
+     * Creates a session.
+     * @param id the id of the session
+     * @param match the match played in the session
+     */
+    Session(long id, Match match) {
+        this.id = id;
+        this.match = match;
+        touch();
+    }
+
+    /**
+     * Marks the session as used now.
+     */
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * @return the time the session was last used, in nanoseconds of {@link System#nanoTime()}
+     */
+    long lastUsed() {
+        return lastUsed;
+    }
+}
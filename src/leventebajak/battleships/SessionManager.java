@@ -0,0 +1,133 @@
+package leventebajak.battleships;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates, looks up and expires the sessions of a server, each playing an independent match.
+ * <p>
+ * The sessions are kept in a concurrent map, so they can be created and used from many threads at once.
+ * A session takes one of a fixed number of slots before it is created, and gives it back when it is removed,
+ * so sessions created at the same time cannot exceed the limit.
+ * Sessions not used for longer than the timeout are removed by a background sweeper.
+ */
+public class SessionManager implements AutoCloseable {
+
+    /**
+     * The sessions, by their ids.
+     */
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * The id of the next session.
+     */
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * The slots of the sessions that are not taken.
+     */
+    private final Semaphore slots;
+
+    /**
+     * The time after which an unused session expires, in nanoseconds.
+     */
+    private final long timeout;
+
+    /**
+     * Removes the expired sessions periodically.
+     */
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Creates a session manager.
+     * @param maxSessions the largest number of sessions hosted at once
+     * @param timeout the time after which an unused session expires
+     * @param unit the unit of the timeout
+     */
+    public SessionManager(int maxSessions, long timeout, TimeUnit unit) {
+        slots = new Semaphore(maxSessions);
+        this.timeout = unit.toNanos(timeout);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, this.timeout / 2);
+        sweeper.scheduleAtFixedRate(this::expire, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a session with a new match.
+     * @param mode the mode of the computer
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param fleet the lengths of the ships
+     * @return the new session
+     * @throws IllegalStateException There are too many sessions.
+     * @throws IllegalArgumentException The fleet does not fit on the boards.
+     */
+    public Session create(AI.Mode mode, int rows, int columns, int[] fleet)
+            throws IllegalStateException, IllegalArgumentException {
+        if (!slots.tryAcquire())
+            throw new IllegalStateException("Too many sessions.");
+        try {
+            Match match = new Match(mode, rows, columns, fleet, new SplittableRandom());
+            Session session = new Session(nextId.getAndIncrement(), match);
+            sessions.put(session.id, session);
+            return session;
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up a session and marks it as used.
+     * @param id the id of the session
+     * @return the session, or null if there is no such session
+     */
+    public Session get(long id) {
+        Session session = sessions.get(id);
+        if (session != null)
+            session.touch();
+        return session;
+    }
+
+    /**
+     * Removes a session.
+     * @param id the id of the session
+     */
+    public void remove(long id) {
+        if (sessions.remove(id) != null)
+            slots.release();
+    }
+
+    /**
+     * @return the number of sessions hosted
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Removes the sessions that have not been used for longer than the timeout.
+     * @return the number of sessions removed
+     */
+    int expire() {
+        long now = System.nanoTime();
+        int expired = 0;
+        for (Session session : sessions.values())
+            if (now - session.lastUsed() > timeout && sessions.remove(session.id, session)) {
+                slots.release();
+                expired++;
+            }
+        return expired;
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        sessions.clear();
+    }
+}
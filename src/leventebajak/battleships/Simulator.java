@@ -0,0 +1,451 @@
+package leventebajak.battleships;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.random.RandomGenerator;
+
+/**
+ * Headless simulator, that plays many games of the computer against randomly placed fleets
+ * and reports how many shots the strategies need to win.
+ * <p>
+ * Every game gets its own source of randomness derived from the seed and the index of the game,
+ * so the results only depend on the seed, no matter how many threads play the games.
+ */
+public class Simulator {
+
+    /**
+     * The number of games a worker plays before picking up the next batch.
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * The statistics of the games played with one strategy against one fleet.
+     */
+    public static class Result {
+
+        /**
+         * The mode of the AI that played the games.
+         */
+        public final AI.Mode mode;
+
+        /**
+         * The lengths of the ships in the fleet.
+         */
+        public final int[] fleet;
+
+        /**
+         * The number of games won with each number of shots.
+         */
+        public final long[] histogram;
+
+        /**
+         * The number of games played.
+         */
+        public final long games;
+
+        /**
+         * The time the games took to play, in nanoseconds.
+         */
+        public final long nanos;
+
+        /**
+         * Creates the statistics.
+         * @param mode the mode of the AI that played the games
+         * @param fleet the lengths of the ships in the fleet
+         * @param histogram the number of games won with each number of shots
+         * @param nanos the time the games took to play, in nanoseconds
+         */
+        Result(AI.Mode mode, int[] fleet, long[] histogram, long nanos) {
+            this.mode = mode;
+            this.fleet = fleet;
+            this.histogram = histogram;
+            this.games = Arrays.stream(histogram).sum();
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the average number of shots needed to win
+         */
+        public double mean() {
+            long total = 0;
+            for (int shots = 0; shots < histogram.length; shots++)
+                total += shots * histogram[shots];
+            return (double) total / games;
+        }
+
+        /**
+         * Gets the smallest number of shots, that at least the given fraction of the games were won with.
+         * @param fraction the fraction of the games, between 0 and 1
+         * @return the percentile of the number of shots
+         */
+        public int percentile(double fraction) {
+            long needed = Math.max(1, (long) Math.ceil(fraction * games));
+            long seen = 0;
+            for (int shots = 0; shots < histogram.length; shots++)
+                if ((seen += histogram[shots]) >= needed)
+                    return shots;
+            return histogram.length - 1;
+        }
+
+        /**
+         * Renders the statistics as text, with a histogram of the number of shots.
+         * @return the report
+         */
+        public String report() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%s %s: %d games in %.2f s%n", mode, Arrays.toString(fleet), games, nanos / 1e9));
+            sb.append(String.format("  mean %.2f, min %d, p50 %d, p90 %d, p99 %d, max %d%n",
+                    mean(), percentile(0), percentile(0.5), percentile(0.9), percentile(0.99), percentile(1)));
+
+            int first = percentile(0), last = percentile(1);
+            int width = Math.max(1, (last - first + 20) / 20);
+            long[] bins = new long[(last - first) / width + 1];
+            for (int shots = first; shots <= last; shots++)
+                bins[(shots - first) / width] += histogram[shots];
+            long max = Arrays.stream(bins).max().orElse(1);
+            for (int bin = 0; bin < bins.length; bin++)
+                sb.append(String.format("  %4d-%-4d %8d %s%n", first + bin * width, first + bin * width + width - 1,
+                        bins[bin], "#".repeat((int) (50 * bins[bin] / max))));
+            return sb.toString();
+        }
+
+        /**
+         * Renders the statistics as a single line of JSON, for other programs to read.
+         * @return the statistics
+         */
+        public String json() {
+            return String.format(Locale.ROOT, "{\"mode\":\"%s\",\"fleet\":%s,\"games\":%d,\"seconds\":%.3f,"
+                            + "\"mean\":%.4f,\"min\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d}%n",
+                    mode, Arrays.toString(fleet).replace(" ", ""), games, nanos / 1e9, mean(),
+                    percentile(0), percentile(0.5), percentile(0.9), percentile(0.99), percentile(1));
+        }
+    }
+
+    /**
+     * The statistics of the matches played between two AIs, each against the other's randomly placed fleet.
+     */
+    public static class Duel {
+
+        /**
+         * The modes of the AIs that played the matches, the one starting the even matches first.
+         */
+        public final AI.Mode[] modes;
+
+        /**
+         * The lengths of the ships in the fleets.
+         */
+        public final int[] fleet;
+
+        /**
+         * The number of matches won by each AI.
+         */
+        public final long[] wins;
+
+        /**
+         * The number of matches played.
+         */
+        public final long games;
+
+        /**
+         * The total number of shots the winners took.
+         */
+        public final long shots;
+
+        /**
+         * The time the matches took to play, in nanoseconds.
+         */
+        public final long nanos;
+
+        /**
+         * Creates the statistics.
+         * @param modes the modes of the AIs that played the matches
+         * @param fleet the lengths of the ships in the fleets
+         * @param wins the number of matches won by each AI
+         * @param shots the total number of shots the winners took
+         * @param nanos the time the matches took to play, in nanoseconds
+         */
+        Duel(AI.Mode[] modes, int[] fleet, long[] wins, long shots, long nanos) {
+            this.modes = modes;
+            this.fleet = fleet;
+            this.wins = wins;
+            this.games = wins[0] + wins[1];
+            this.shots = shots;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Renders the statistics as text.
+         * @return the report
+         */
+        public String report() {
+            return String.format("%s vs %s %s: %d games in %.2f s%n  wins %d - %d (%.1f%%), winner's shots %.2f%n",
+                    modes[0], modes[1], Arrays.toString(fleet), games, nanos / 1e9, wins[0], wins[1],
+                    100.0 * wins[0] / games, (double) shots / games);
+        }
+
+        /**
+         * Renders the statistics as a single line of JSON, for other programs to read.
+         * @return the statistics
+         */
+        public String json() {
+            return String.format(Locale.ROOT, "{\"modes\":[\"%s\",\"%s\"],\"fleet\":%s,\"games\":%d,"
+                            + "\"seconds\":%.3f,\"wins\":[%d,%d],\"shots\":%.4f}%n",
+                    modes[0], modes[1], Arrays.toString(fleet).replace(" ", ""), games, nanos / 1e9,
+                    wins[0], wins[1], (double) shots / games);
+        }
+    }
+
+    /**
+     * Plays a game, adding its outcome to the totals of a batch.
+     */
+    private interface Task {
+
+        /**
+         * Plays a game.
+         * @param game the index of the game
+         * @param totals the totals of the batch
+         */
+        void play(long game, long[] totals);
+    }
+
+    /**
+     * Plays games of an AI against randomly placed fleets.
+     * @param mode the mode of the AI
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param fleet the lengths of the ships
+     * @param games the number of games to play
+     * @param seed the seed the randomness of every game is derived from
+     * @param threads the number of threads playing the games
+     * @return the statistics of the games
+     * @throws IllegalArgumentException The fleet does not fit on the board.
+     */
+    public static Result run(AI.Mode mode, int rows, int columns, int[] fleet, long games, long seed, int threads)
+            throws IllegalArgumentException {
+        long start = System.nanoTime();
+        ThreadLocal<Board> boards = ThreadLocal.withInitial(() -> new Board(rows, columns));
+        long[] histogram = batches(games, threads, rows * columns + 1, (game, totals) ->
+                totals[play(mode, boards.get(), fleet, new SplittableRandom(seed(seed, game)))]++);
+        return new Result(mode, fleet, histogram, System.nanoTime() - start);
+    }
+
+    /**
+     * Plays matches between two AIs, each against a randomly placed fleet of the other.
+     * As the guesses of an AI only depend on its own shots, the AI needing fewer shots to sink the other's fleet wins,
+     * and of two needing the same number, the one that started. The AIs take turns in starting.
+     * @param first the mode of the AI starting the even matches
+     * @param second the mode of the AI starting the odd matches
+     * @param rows the number of rows of the boards
+     * @param columns the number of columns of the boards
+     * @param fleet the lengths of the ships
+     * @param games the number of matches to play
+     * @param seed the seed the randomness of every match is derived from
+     * @param threads the number of threads playing the matches
+     * @return the statistics of the matches
+     * @throws IllegalArgumentException The fleet does not fit on the board.
+     */
+    public static Duel duel(AI.Mode first, AI.Mode second, int rows, int columns, int[] fleet,
+                            long games, long seed, int threads) throws IllegalArgumentException {
+        long start = System.nanoTime();
+        ThreadLocal<Board> boards = ThreadLocal.withInitial(() -> new Board(rows, columns));
+        long[] totals = batches(games, threads, 3, (game, local) -> {
+            RandomGenerator random = new SplittableRandom(seed(seed, game));
+            int firstShots = play(first, boards.get(), fleet, random);
+            int secondShots = play(second, boards.get(), fleet, random);
+            boolean firstWon = firstShots < secondShots || firstShots == secondShots && game % 2 == 0;
+            local[firstWon ? 0 : 1]++;
+            local[2] += Math.min(firstShots, secondShots);
+        });
+        return new Duel(new AI.Mode[]{first, second}, fleet, new long[]{totals[0], totals[1]}, totals[2],
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Plays games in batches on a pool of threads, adding up the totals of the batches.
+     * @param games the number of games to play
+     * @param threads the number of threads playing the games
+     * @param width the number of totals
+     * @param task plays a game
+     * @return the totals of all the games
+     * @throws IllegalArgumentException A game threw it.
+     */
+    private static long[] batches(long games, int threads, int width, Task task) throws IllegalArgumentException {
+        long[] totals = new long[width];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<long[]>> batches = new ArrayList<>();
+            for (long first = 0; first < games; first += BATCH) {
+                long from = first, to = Math.min(games, first + BATCH);
+                batches.add(pool.submit(() -> {
+                    long[] local = new long[width];
+                    for (long game = from; game < to; game++)
+                        task.play(game, local);
+                    return local;
+                }));
+            }
+            for (Future<long[]> batch : batches) {
+                long[] local = batch.get();
+                for (int i = 0; i < width; i++)
+                    totals[i] += local[i];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException iae)
+                throw iae;
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return totals;
+    }
+
+    /**
+     * Plays a single game of an AI against a randomly placed fleet.
+     * @param mode the mode of the AI
+     * @param rows the number of rows of the board
+     * @param columns the number of columns of the board
+     * @param fleet the lengths of the ships
+     * @param random the source of randomness of the game
+     * @return the number of shots needed to sink the whole fleet
+     * @throws IllegalArgumentException The fleet does not fit on the board.
+     */
+    public static int play(AI.Mode mode, int rows, int columns, int[] fleet, RandomGenerator random) throws IllegalArgumentException {
+        return play(mode, new Board(rows, columns), fleet, random);
+    }
+
+    /**
+     * Plays a single game of an AI against a randomly placed fleet, on a recycled board.
+     * The board is cleared first, so it can be reused from game to game, and the game is played
+     * exactly as on a new board.
+     * @param mode the mode of the AI
+     * @param board the board to play on, whatever is on it
+     * @param fleet the lengths of the ships
+     * @param random the source of randomness of the game
+     * @return the number of shots needed to sink the whole fleet
+     * @throws IllegalArgumentException The fleet does not fit on the board.
+     */
+    static int play(AI.Mode mode, Board board, int[] fleet, RandomGenerator random) throws IllegalArgumentException {
+        place(board, fleet, random);
+        Strategy strategy = mode.create(random, board);
+        int shots = 0;
+        while (board.shipsRemaining > 0) {
+            int guess = strategy.nextGuess(board);
+            board.shoot(guess);
+            strategy.update(board, guess);
+            shots++;
+        }
+        return shots;
+    }
+
+    /**
+     * Places a fleet on a new board, the same way the players' ships are placed.
+     * @param rows the number of rows of the board
+     * @param columns the number of columns of the board
+     * @param fleet the lengths of the ships
+     * @param random the source of randomness used for the placement
+     * @return the board with the fleet on it
+     * @throws IllegalArgumentException The fleet does not fit on the board.
+     */
+    static Board place(int rows, int columns, int[] fleet, RandomGenerator random) throws IllegalArgumentException {
+        return place(new Board(rows, columns), fleet, random);
+    }
+
+    /**
+     * Places a fleet on a cleared board, the same way the players' ships are placed.
+     * @param board the board, whatever is on it
+     * @param fleet the lengths of the ships
+     * @param random the source of randomness used for the placement
+     * @return the board with the fleet on it
+     * @throws IllegalArgumentException The fleet does not fit on the board.
+     */
+    static Board place(Board board, int[] fleet, RandomGenerator random) throws IllegalArgumentException {
+        final int max_attempts = 100;
+        for (int attempt = 0; attempt < max_attempts; attempt++) {
+            board.clear();
+            try {
+                for (int length : fleet)
+                    board.addShip(length, random);
+                return board;
+            } catch (NoMoreSpaceException ignored) {}
+        }
+        throw new IllegalArgumentException("The fleet does not fit on the board.");
+    }
+
+    /**
+     * Derives the seed of a game from the seed of the simulation.
+     * @param seed the seed of the simulation
+     * @param game the index of the game
+     * @return the seed of the game
+     */
+    static long seed(long seed, long game) {
+        long z = seed + (game + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Runs the simulation from the command line, without any UI.
+     * <p>
+     * Options: {@code --games N}, {@code --seed S}, {@code --threads T}, {@code --size ROWSxCOLUMNS},
+     * {@code --mode HUNT,DENSITY,ENDGAME} and {@code --fleet 5,4,3,3,2}, which can be given multiple times.
+     * With {@code --versus MODE}, every mode plays matches against that mode instead of playing alone.
+     * With {@code --format json}, every result is printed as a line of JSON instead of a report.
+     * @param args the options
+     * @throws IllegalArgumentException An option is unknown or invalid.
+     */
+    public static void main(String[] args) throws IllegalArgumentException {
+        long games = 100000, seed = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int rows = Player.ROWS, columns = Player.COLUMNS;
+        List<AI.Mode> modes = new ArrayList<>(List.of(AI.Mode.values()));
+        List<int[]> fleets = new ArrayList<>();
+        AI.Mode versus = null;
+        boolean json = false;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--games" -> games = Long.parseLong(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--size" -> {
+                    String[] size = value.toLowerCase().split("x");
+                    rows = Integer.parseInt(size[0]);
+                    columns = Integer.parseInt(size[1]);
+                }
+                case "--mode" -> {
+                    modes.clear();
+                    for (String mode : value.split(","))
+                        modes.add(AI.Mode.valueOf(mode.trim().toUpperCase()));
+                }
+                case "--fleet" -> fleets.add(Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray());
+                case "--versus" -> versus = AI.Mode.valueOf(value.trim().toUpperCase());
+                case "--format" -> json = switch (value.toLowerCase()) {
+                    case "json" -> true;
+                    case "text" -> false;
+                    default -> throw new IllegalArgumentException("Unknown format: " + value);
+                };
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (args.length % 2 != 0)
+            throw new IllegalArgumentException("Missing the value of " + args[args.length - 1]);
+        if (fleets.isEmpty())
+            fleets.add(new int[]{5, 4, 3, 3, 2});
+
+        for (int[] fleet : fleets)
+            for (AI.Mode mode : modes) {
+                if (versus != null) {
+                    Duel duel = duel(mode, versus, rows, columns, fleet, games, seed, threads);
+                    System.out.print(json ? duel.json() : duel.report());
+                } else {
+                    Result result = run(mode, rows, columns, fleet, games, seed, threads);
+                    System.out.print(json ? result.json() : result.report());
+                }
+                System.out.flush();
+            }
+    }
+}
@@ -0,0 +1,327 @@
+package leventebajak.battleships;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Serves the events of a broadcast to read-only spectators over TCP on localhost, one line of text per event.
+ * <p>
+ * A single selector thread accepts the spectators, and once every {@link #FLUSH_INTERVAL} milliseconds
+ * writes the events of their subscriptions to them, as much as their connections accept without blocking.
+ * A spectator reading too slowly falls behind its subscription, which is resynced with a snapshot of the game,
+ * so it never holds up the game or the other spectators. Whatever a spectator sends is ignored.
+ * The lines, with the boards numbered from 0, are:
+ * <ul>
+ *     <li>{@code START board rows columns}: a board is shown</li>
+ *     <li>{@code SHOT board row column}, then {@code HIT board row column} or {@code MISS board row column}</li>
+ *     <li>{@code REVEALED board row column}: a water tile revealed by the rules</li>
+ *     <li>{@code SUNK board row column length}: a ship sunk, with its first tile</li>
+ *     <li>{@code OVER board}: the last ship of the board sunk</li>
+ *     <li>{@code RESET}: the boards are shown again from scratch by the lines after</li>
+ * </ul>
+ */
+public class Spectators implements Closeable {
+
+    /**
+     * The default port of the spectators, next to the ports of the server and of the remote matches.
+     */
+    public static int PORT = 7779;
+
+    /**
+     * The time between writing the events to the spectators, in milliseconds.
+     */
+    public static long FLUSH_INTERVAL = 16;
+
+    /**
+     * The largest number of spectators served at once.
+     */
+    public static int MAX_SPECTATORS = 10_000;
+
+    /**
+     * The number of bytes written to a spectator at once.
+     */
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The longest line of an event.
+     */
+    private static final int MAX_LINE = 64;
+
+    /**
+     * The broadcast the events are taken from.
+     */
+    private final Broadcast broadcast;
+
+    /**
+     * The selector of the connections.
+     */
+    private final Selector selector;
+
+    /**
+     * The socket accepting the spectators.
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     * The spectators connected, only used by the selector thread.
+     */
+    private final ArrayList<Spectator> spectators = new ArrayList<>();
+
+    /**
+     * Whether the server has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * A connected spectator.
+     */
+    private static class Spectator {
+
+        /**
+         * The connection.
+         */
+        final SocketChannel channel;
+
+        /**
+         * The events of the spectator.
+         */
+        final Broadcast.Subscription subscription;
+
+        /**
+         * The bytes waiting to be written, between its position and its limit.
+         */
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+        /**
+         * The number of columns of the boards, to tell the rows and columns of the tiles.
+         */
+        final int[] columns = {1, 1};
+
+        /**
+         * Creates a spectator.
+         * @param channel the connection
+         * @param subscription the events of the spectator
+         */
+        Spectator(SocketChannel channel, Broadcast.Subscription subscription) {
+            this.channel = channel;
+            this.subscription = subscription;
+        }
+    }
+
+    /**
+     * Creates the server and starts accepting spectators.
+     * @param broadcast the broadcast the events are taken from
+     * @param port the port to listen on, 0 for any free port
+     * @throws IOException The port cannot be listened on.
+     */
+    public Spectators(Broadcast broadcast, int port) throws IOException {
+        this.broadcast = broadcast;
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+            server.configureBlocking(false);
+            selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        Thread thread = new Thread(this::run, "spectator-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Broadcasts the local games to the spectators, if the system property {@code battleships.spectators}
+     * is set to the port to serve them on, or to {@code true} (or nothing) for {@link #PORT}.
+     * @throws IOException The port cannot be listened on.
+     * @throws NumberFormatException The property is not a port.
+     */
+    public static void configure() throws IOException, NumberFormatException {
+        String property = System.getProperty("battleships.spectators");
+        if (property == null || property.equalsIgnoreCase("false"))
+            return;
+        int port = property.isBlank() || property.equalsIgnoreCase("true") ? PORT : Integer.parseInt(property.trim());
+        Game.BROADCAST = new Broadcast();
+        new Spectators(Game.BROADCAST, port);
+    }
+
+    /**
+     * @return the port the server listens on
+     * @throws IOException The server has been closed.
+     */
+    public int port() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Runs the selector loop until the server is closed.
+     */
+    private void run() {
+        ByteBuffer discarded = ByteBuffer.allocate(256);
+        try {
+            while (!closed) {
+                selector.select(FLUSH_INTERVAL);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else if (key.isReadable()) {
+                        Spectator spectator = (Spectator) key.attachment();
+                        try {
+                            if (spectator.channel.read(discarded.clear()) == -1)
+                                drop(spectator);
+                        } catch (IOException e) {
+                            drop(spectator);
+                        }
+                    }
+                }
+                for (int i = spectators.size() - 1; i >= 0; i--) {
+                    Spectator spectator = spectators.get(i);
+                    try {
+                        flush(spectator);
+                    } catch (IOException e) {
+                        drop(spectator);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException | IOException e) {
+            // The server was closed
+        } finally {
+            for (Spectator spectator : new ArrayList<>(spectators))
+                drop(spectator);
+            try {
+                selector.close();
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Accepts a waiting spectator, unless there are too many.
+     * @throws IOException The server socket failed.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null)
+            return;
+        if (spectators.size() >= MAX_SPECTATORS) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        Spectator spectator = new Spectator(channel, broadcast.subscribe());
+        channel.register(selector, SelectionKey.OP_READ, spectator);
+        spectators.add(spectator);
+    }
+
+    /**
+     * Disconnects a spectator and ends its subscription.
+     * @param spectator the spectator
+     */
+    private void drop(Spectator spectator) {
+        spectators.remove(spectator);
+        spectator.subscription.close();
+        try {
+            spectator.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Writes the bytes waiting for a spectator, then as many of its events as its connection accepts.
+     * The events are only taken once the bytes before them are written, so a slow spectator's events
+     * pile up in its subscription.
+     * @param spectator the spectator
+     * @throws IOException The connection was lost.
+     */
+    private void flush(Spectator spectator) throws IOException {
+        ByteBuffer out = spectator.out;
+        while (true) {
+            if (out.hasRemaining()) {
+                spectator.channel.write(out);
+                if (out.hasRemaining())
+                    return;
+            }
+            out.clear();
+            for (long packed; out.remaining() >= MAX_LINE && (packed = spectator.subscription.next()) != -1; )
+                line(spectator, Broadcast.Event.unpack(packed));
+            out.flip();
+            if (!out.hasRemaining())
+                return;
+        }
+    }
+
+    /**
+     * Writes the line of an event.
+     * @param spectator the spectator the line is written to
+     * @param event the event
+     */
+    private static void line(Spectator spectator, Broadcast.Event event) {
+        ByteBuffer out = spectator.out;
+        put(out, event.kind().name());
+        switch (event.kind()) {
+            case START -> {
+                spectator.columns[event.board()] = event.length();
+                put(out, event.board());
+                put(out, event.cell());
+                put(out, event.length());
+            }
+            case OVER -> put(out, event.board());
+            case RESET -> {
+            }
+            default -> {
+                int columns = spectator.columns[event.board()];
+                put(out, event.board());
+                put(out, event.cell() / columns);
+                put(out, event.cell() % columns);
+                if (event.kind() == Broadcast.Kind.SUNK)
+                    put(out, event.length());
+            }
+        }
+        out.put((byte) '\n');
+    }
+
+    /**
+     * Writes a word in ASCII.
+     * @param out the buffer to write to
+     * @param word the word
+     */
+    private static void put(ByteBuffer out, String word) {
+        for (int i = 0; i < word.length(); i++)
+            out.put((byte) word.charAt(i));
+    }
+
+    /**
+     * Writes a space and a non-negative number in decimal.
+     * @param out the buffer to write to
+     * @param number the number
+     */
+    private static void put(ByteBuffer out, int number) {
+        out.put((byte) ' ');
+        int digits = 1;
+        for (int rest = number / 10; rest != 0; rest /= 10)
+            digits++;
+        int end = out.position() + digits;
+        for (int i = end - 1; i >= out.position(); i--, number /= 10)
+            out.put(i, (byte) ('0' + number % 10));
+        out.position(end);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,74 @@
+package leventebajak.battleships;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A way for the computer to choose which tile of the opponent's board to shoot next.
+ */
+public interface Strategy {
+
+    /**
+     * Chooses the next tile to shoot.
+     * @param board the opponent's board
+     * @return the index of an undiscovered tile
+     */
+    int nextGuess(Board board);
+
+    /**
+     * Chooses the next tile to shoot, by a deadline: a strategy that searches
+     * returns the best guess it has found when the time is up.
+     * @param board the opponent's board
+     * @param deadline the time the guess is needed by, from {@link System#nanoTime()}
+     * @return the index of an undiscovered tile
+     */
+    default int nextGuess(Board board, long deadline) {
+        return nextGuess(board);
+    }
+
+    /**
+     * Lets the strategy learn the result of a shot.
+     * @param board the opponent's board after the shot
+     * @param cell the index of the shot tile
+     */
+    void update(Board board, int cell);
+
+    /**
+     * Makes the strategy prefer some tiles over others, while it has no lead on where the ships are.
+     * @param weights the weights of the tiles, {@link Habits#ONE} for the neutral weight, or null to treat all tiles alike
+     */
+    default void prior(int[] weights) {}
+
+    /**
+     * Counts the opponent's ships left afloat, if the strategy keeps count of them anyway.
+     * The count may be too low, but never too high.
+     * @param board the opponent's board
+     * @return the number of ships not sunk yet, or -1 if the strategy does not keep count
+     */
+    default int afloat(Board board) {
+        return -1;
+    }
+
+    /**
+     * @return the mode of the AI this strategy belongs to
+     */
+    AI.Mode mode();
+
+    /**
+     * @return the number of bytes the memory of the strategy takes up when written
+     */
+    default int bytes() {
+        return 0;
+    }
+
+    /**
+     * Writes the memory of the strategy, that cannot be rebuilt from the opponent's board.
+     * @param buffer the buffer to write to
+     */
+    default void write(ByteBuffer buffer) {}
+
+    /**
+     * Reads the memory of the strategy written by {@link #write(ByteBuffer)}.
+     * @param buffer the buffer to read from
+     */
+    default void read(ByteBuffer buffer) {}
+}
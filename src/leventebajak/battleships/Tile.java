@@ -1,22 +1,11 @@
 package leventebajak.battleships;
 
-import javax.swing.*;
-import javax.swing.border.LineBorder;
-import javax.swing.plaf.metal.MetalButtonUI;
 import java.awt.*;
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
-import java.io.*;
 
 /**
- * Class representing tiles on players' boards.
+ * Handle of a tile of a player's board.
  */
-public class Tile implements Serializable {
-
-    /**
-     * The button associated with the tile.
-     */
-    transient public JButton button;
+public class Tile {
 
     /**
      * The color of the field selected by the opponent.
@@ -54,17 +43,12 @@ public class Tile implements Serializable {
     private final int column;
 
     /**
-     * Whether this tile is part of a ship.
-     */
-    public boolean isShip = false;
-
-    /**
-     * Whether this tile has been discovered by the opponent.
+     * The index of the tile on the owner's board.
      */
-    public boolean isDiscovered = false;
+    private final int cell;
 
     /**
-     * Creates a new tile.
+     * Creates a handle of a tile.
      * @param owner the player whose board this tile lies on
      * @param row the row of the board this tile lies in
      * @param column the column of the board this tile lies in
@@ -73,120 +57,35 @@ public class Tile implements Serializable {
         this.owner = owner;
         this.row = row;
         this.column = column;
-        initialize();
+        this.cell = owner.board.cell(row, column);
     }
 
     /**
-     * Initializes UI components.
-     */
-    public void initialize() {
-        button = new JButton();
-        button.setBorder(new LineBorder(Color.BLACK));
-        button.setForeground(Color.RED);
-        button.setUI(new MetalButtonUI() { @Override protected Color getDisabledTextColor() { return Color.RED; } });
-        button.addActionListener(ae -> {
-            if(owner.selected != null)
-                owner.selected.repaint(false);
-            owner.selected = this;
-            if (!this.isDiscovered)
-                button.setBackground(SELECTED_COLOR);
-            Game.endRoundButton.setEnabled(!this.isDiscovered);
-        });
-        button.addKeyListener(new KeyAdapter() {
-            @Override
-            public void keyPressed(KeyEvent e) {
-                if (e.getKeyCode()==KeyEvent.VK_ENTER)
-                    Game.endRoundButton.doClick();
-            }
-        });
-        if (isDiscovered)
-            button.setText("X");
-        repaint(false);
+     * @return the index of the tile on the owner's board
+     */
+    int cell() {
+        return cell;
     }
 
     /**
-     * Shoots this tile and reveals neighboring tiles according to the rules.
+     * @return whether this tile is part of a ship
      */
-    public void shoot() {
-        if (this.isDiscovered)
-            return;
-
-        isDiscovered = true;
-        owner.selected = null;
-        button.setText("X");
-        if (isShip)
-            owner.shipsRemaining--;
-        repaint(false);
-
-        for (Direction d: new Direction[]{Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST}) {
-            try {
-                Tile neighbor = getNeighbor(d);
-                if (isShip && neighbor.isDiscovered) {
-                    if (neighbor.isShip) {
-                        try { this.getNeighbor(Direction.values()[(d.ordinal() + 2) % Direction.values().length]).shoot(); } catch (IndexOutOfBoundsException ignored) {}
-                        try { this.getNeighbor(Direction.values()[(d.ordinal() + 6) % Direction.values().length]).shoot(); } catch (IndexOutOfBoundsException ignored) {}
-                    }
-                    try { neighbor.getNeighbor(Direction.values()[(d.ordinal() + 2) % Direction.values().length]).shoot(); } catch (IndexOutOfBoundsException ignored) {}
-                    try { neighbor.getNeighbor(Direction.values()[(d.ordinal() + 6) % Direction.values().length]).shoot(); } catch (IndexOutOfBoundsException ignored) {}
-                }
-                else if (!isShip && neighbor.isShip && neighbor.isDiscovered) {
-                    try { this.getNeighbor(Direction.values()[(d.ordinal() + 2) % Direction.values().length]).shoot(); } catch (IndexOutOfBoundsException ignored) {}
-                    try { this.getNeighbor(Direction.values()[(d.ordinal() + 6) % Direction.values().length]).shoot(); } catch (IndexOutOfBoundsException ignored) {}
-                }
-            } catch (IndexOutOfBoundsException ignored) {}
-        }
-
-        // If the whole ship has been sunk, reveal all its surrounding tiles
-        checkSunken();
+    public boolean isShip() {
+        return owner.board.isShip(cell);
+    }
+
+    /**
+     * @return whether this tile has been discovered by the opponent
+     */
+    public boolean isDiscovered() {
+        return owner.board.isDiscovered(cell);
     }
 
     /**
-     * If the whole ship has been sunk, reveals all its surrounding tiles.
-     */
-    public void checkSunken() {
-        if (!isShip || !isDiscovered)
-            return;
-
-        for (Direction d: Direction.values()) {
-            try {
-                Tile neighbor = getNeighbor(d);
-                if (neighbor.isShip) {
-                    if (!neighbor.isDiscovered)
-                        return;
-                    while (true) {
-                        try {
-                            neighbor = neighbor.getNeighbor(d);
-                            if (neighbor.isShip && !neighbor.isDiscovered)
-                                return;
-                            if (!neighbor.isShip)
-                                break;
-                        } catch (IndexOutOfBoundsException e) { break; }
-                    }
-                    while (true) {
-                        try {
-                            neighbor = neighbor.getNeighbor(d.opposite());
-                            if (neighbor.isShip && !neighbor.isDiscovered)
-                                return;
-                            if (!neighbor.isShip)
-                                break;
-                        } catch (IndexOutOfBoundsException e) { break; }
-                    }
-                }
-            } catch (IndexOutOfBoundsException ignored) {}
-        }
-        for (Direction d: Direction.values()) {
-            try {
-                Tile neighbor = getNeighbor(d);
-                neighbor.shoot();
-                while (neighbor.isShip) {
-                    for (Direction dir : Direction.values())
-                        try {
-                            neighbor.getNeighbor(dir).shoot();
-                        } catch (IndexOutOfBoundsException ignored) {}
-                    neighbor = neighbor.getNeighbor(d);
-                }
-            } catch (IndexOutOfBoundsException ignored) {}
-        }
+     * Shoots this tile and reveals neighboring tiles according to the rules.
+     */
+    public void shoot() {
+        owner.shoot(cell);
     }
 
     /**
@@ -214,27 +113,24 @@ public class Tile implements Serializable {
      * @return whether a ship can be placed on the tile
      */
     boolean validPlacement() {
-        if (this.isShip)
-            return false;
-
-       for (Direction d: Direction.values())
-           try {
-               if (getNeighbor(d).isShip)
-                   return false;
-           } catch (IndexOutOfBoundsException ignored) {}
-       return true;
+        return owner.board.validPlacement(cell);
     }
 
 
     /**
-     * Updates the color of the tile.
-     * @param reveal whether to reveal the tile if it is undiscovered
+     * @return the color the tile is displayed with
      */
-    public void repaint(boolean reveal) {
-        if (reveal)
-            button.setBackground(isShip ? SHIP_COLOR : WATER_COLOR);
-        else
-            button.setBackground(isDiscovered ? isShip ? SHIP_COLOR : WATER_COLOR : UNDISCOVERED_COLOR);
-        button.repaint();
+    public Color color() {
+        return owner.panel.color(cell);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Tile tile && tile.owner == owner && tile.cell == cell;
+    }
+
+    @Override
+    public int hashCode() {
+        return cell;
     }
 }
@@ -0,0 +1,42 @@
+package leventebajak.battleships.legacy;
+
+import leventebajak.battleships.Direction;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Frozen copy of the fields of the computer as it was saved with Java serialization by the first versions.
+ */
+class AI extends Player implements Serializable {
+
+    /**
+     * The serial version of the class the computers were saved with.
+     */
+    private static final long serialVersionUID = 248348535177281887L;
+
+    /**
+     * The player to defeat.
+     */
+    Player opponent;
+
+    /**
+     * The most recently guessed tile.
+     */
+    Tile lastGuess;
+
+    /**
+     * The first discovered tile of the ship being followed.
+     */
+    Tile shipOrigin;
+
+    /**
+     * The different routes to check for ship tiles.
+     */
+    ArrayList<Direction> possibleRoutes;
+
+    /**
+     * The route chosen from the possible routes.
+     */
+    Direction chosenRoute;
+}
@@ -0,0 +1,34 @@
+package leventebajak.battleships.legacy;
+
+import java.io.Serializable;
+
+/**
+ * Frozen copy of the fields of the game as it was saved with Java serialization by the first versions.
+ */
+class Game implements Serializable {
+
+    /**
+     * The serial version of the class the games were saved with.
+     */
+    private static final long serialVersionUID = -8700637785262846130L;
+
+    /**
+     * The player whose turn was active.
+     */
+    Player activePlayer;
+
+    /**
+     * The computer, or the player who was waiting.
+     */
+    Player inactivePlayer;
+
+    /**
+     * Whether the opponent was another human.
+     */
+    boolean pvp;
+
+    /**
+     * Whether the game had ended.
+     */
+    boolean over;
+}
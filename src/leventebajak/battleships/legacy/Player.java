@@ -0,0 +1,35 @@
+package leventebajak.battleships.legacy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Frozen copy of the fields of a player as it was saved with Java serialization by the first versions.
+ */
+class Player implements Serializable {
+
+    /**
+     * The serial version of the class the players were saved with.
+     */
+    private static final long serialVersionUID = -5538749824390141314L;
+
+    /**
+     * The player's name.
+     */
+    String name;
+
+    /**
+     * The tiles of the player's board, by rows.
+     */
+    ArrayList<ArrayList<Tile>> board;
+
+    /**
+     * The tile of the board selected by the opponent.
+     */
+    Tile selected;
+
+    /**
+     * The number of undiscovered ship tiles remaining on the board.
+     */
+    int shipsRemaining;
+}
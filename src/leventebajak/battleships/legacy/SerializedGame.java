@@ -0,0 +1,193 @@
+package leventebajak.battleships.legacy;
+
+import leventebajak.battleships.Direction;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A game saved with Java serialization by the first versions, before the saved games had a format of their own.
+ * <p>
+ * The classes of the game have changed since, so the game is read into frozen copies of the classes
+ * it was saved with, which only keep their fields and the serial versions they had. The names of the old classes
+ * are mapped to the copies while reading, and no other classes are accepted, so a file cannot make
+ * anything else be instantiated. The players are numbered as they were saved: the active one is 0.
+ */
+public final class SerializedGame {
+
+    /**
+     * The frozen copies of the classes the games were saved with, named like them.
+     */
+    private static final List<Class<?>> COPIES = List.of(Game.class, Player.class, AI.class, Tile.class);
+
+    /**
+     * The other classes a saved game is made of.
+     */
+    private static final List<Class<?>> ALLOWED = List.of(ArrayList.class, Direction.class, Enum.class);
+
+    /**
+     * The game read.
+     */
+    private final Game game;
+
+    /**
+     * Creates a saved game.
+     * @param game the game read
+     */
+    private SerializedGame(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Reads a game saved with Java serialization.
+     * @param in the stream the game is read from
+     * @return the saved game
+     * @throws IOException The stream cannot be read, or it is not a saved game.
+     * @throws ClassNotFoundException Class of a serialized object cannot be found.
+     */
+    public static SerializedGame read(InputStream in) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objects = new ObjectInputStream(in) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                for (Class<?> copy : COPIES)
+                    if (desc.getName().equals("leventebajak.battleships." + copy.getSimpleName()))
+                        return copy;
+                for (Class<?> allowed : ALLOWED)
+                    if (desc.getName().equals(allowed.getName()))
+                        return allowed;
+                throw new InvalidClassException(desc.getName(), "Not part of a saved game.");
+            }
+        }) {
+            if (!(objects.readObject() instanceof Game game) || game.activePlayer == null || game.inactivePlayer == null)
+                throw new InvalidObjectException("Not a saved game.");
+            for (Player player : new Player[]{game.activePlayer, game.inactivePlayer})
+                if (player.board == null || player.board.isEmpty())
+                    throw new InvalidObjectException("The board of a player is missing.");
+            return new SerializedGame(game);
+        } catch (ClassCastException | NullPointerException e) {
+            throw new InvalidObjectException("Corrupt saved game: " + e);
+        }
+    }
+
+    /**
+     * @return whether the opponent was another human
+     */
+    public boolean pvp() {
+        return game.pvp;
+    }
+
+    /**
+     * @return whether the game had ended
+     */
+    public boolean over() {
+        return game.over;
+    }
+
+    /**
+     * @param player the index of the player, 0 for the active one
+     * @return the player's name
+     */
+    public String name(int player) {
+        return player(player).name;
+    }
+
+    /**
+     * @param player the index of the player, 0 for the active one
+     * @return whether the player is the computer
+     */
+    public boolean isComputer(int player) {
+        return player(player) instanceof AI;
+    }
+
+    /**
+     * @param player the index of the player, 0 for the active one
+     * @return the number of rows of the player's board
+     */
+    public int rows(int player) {
+        return player(player).board.size();
+    }
+
+    /**
+     * @param player the index of the player, 0 for the active one
+     * @return the number of columns of the player's board
+     */
+    public int columns(int player) {
+        return player(player).board.get(0).size();
+    }
+
+    /**
+     * @param player the index of the player, 0 for the active one
+     * @param row the row the tile lies in
+     * @param column the column the tile lies in
+     * @return whether the tile of the player's board is part of a ship
+     */
+    public boolean isShip(int player, int row, int column) {
+        return player(player).board.get(row).get(column).isShip;
+    }
+
+    /**
+     * @param player the index of the player, 0 for the active one
+     * @param row the row the tile lies in
+     * @param column the column the tile lies in
+     * @return whether the tile of the player's board has been discovered by the opponent
+     */
+    public boolean isDiscovered(int player, int row, int column) {
+        return player(player).board.get(row).get(column).isDiscovered;
+    }
+
+    /**
+     * @param player the index of the computer
+     * @return the index of the tile of the opponent's board the computer guessed last, or -1 if there is none
+     */
+    public int lastGuess(int player) {
+        return cell(((AI) player(player)).lastGuess);
+    }
+
+    /**
+     * @param player the index of the computer
+     * @return the index of the first discovered tile of the ship the computer follows, or -1 if there is none
+     */
+    public int shipOrigin(int player) {
+        return cell(((AI) player(player)).shipOrigin);
+    }
+
+    /**
+     * @param player the index of the computer
+     * @return the route the computer chose from the possible routes, or null
+     */
+    public Direction chosenRoute(int player) {
+        return ((AI) player(player)).chosenRoute;
+    }
+
+    /**
+     * @param player the index of the computer
+     * @return the routes left for the computer to check for ship tiles
+     */
+    public List<Direction> possibleRoutes(int player) {
+        ArrayList<Direction> routes = ((AI) player(player)).possibleRoutes;
+        return routes == null ? List.of() : Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * @param player the index of the player, 0 for the active one
+     * @return the player
+     * @throws IndexOutOfBoundsException The index is not 0 or 1.
+     */
+    private Player player(int player) throws IndexOutOfBoundsException {
+        return switch (player) {
+            case 0 -> game.activePlayer;
+            case 1 -> game.inactivePlayer;
+            default -> throw new IndexOutOfBoundsException();
+        };
+    }
+
+    /**
+     * @param tile a tile, or null
+     * @return the index of the tile on its board, or -1 for null
+     */
+    private static int cell(Tile tile) {
+        return tile == null ? -1 : tile.row * tile.owner.board.get(0).size() + tile.column;
+    }
+}
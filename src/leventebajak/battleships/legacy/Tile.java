@@ -0,0 +1,39 @@
+package leventebajak.battleships.legacy;
+
+import java.io.Serializable;
+
+/**
+ * Frozen copy of the fields of a tile as it was saved with Java serialization by the first versions.
+ */
+class Tile implements Serializable {
+
+    /**
+     * The serial version of the class the tiles were saved with.
+     */
+    private static final long serialVersionUID = 7132103378780007575L;
+
+    /**
+     * The owner of the board this tile is on.
+     */
+    Player owner;
+
+    /**
+     * The row of the board this tile lies in.
+     */
+    int row;
+
+    /**
+     * The column of the board this tile lies in.
+     */
+    int column;
+
+    /**
+     * Whether the tile is part of a ship.
+     */
+    boolean isShip;
+
+    /**
+     * Whether the tile has been discovered by the opponent.
+     */
+    boolean isDiscovered;
+}
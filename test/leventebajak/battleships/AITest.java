@@ -2,6 +2,9 @@ package leventebajak.battleships;
 
 import org.junit.Test;
 
+import java.util.Random;
+import java.util.SplittableRandom;
+
 import static org.junit.Assert.*;
 
 /**
@@ -21,21 +24,122 @@ public class AITest {
             p.addShip(2);
         } catch (NoMoreSpaceException e) { fail(); }
         AI ai = new AI(p, (int[]) null);
-        while (ai.shipOrigin == null)
+        HuntStrategy hunt = new HuntStrategy(new Random());
+        ai.strategy = hunt;
+        while (hunt.shipOrigin == -1)
             ai.makeAGuess();
-        Tile ship = ai.shipOrigin;
+        int ship = hunt.shipOrigin;
 
         int guesses = 0;
         while (true) {
             if (guesses > 4)
                 fail();
             ai.makeAGuess();
-            Tile guess = ai.lastGuess;
-            if (guess.isShip) {
-                assertEquals(ship, guess.getNeighbor(ai.chosenRoute.opposite()));
+            int guess = ai.lastGuess;
+            if (p.board.isShip(guess)) {
+                assertEquals(ship, p.board.getNeighbor(guess, hunt.chosenRoute.opposite()));
                 break;
             }
             guesses++;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Testing that the computer plays on a board the size of its opponent's.
+     */
+    @Test
+    public void boardSize() {
+        Player p = new Player("test_player", new Board(12, 20), 5, 4);
+        AI ai = new AI(p);
+        assertEquals(12, ai.board.rows);
+        assertEquals(20, ai.board.columns);
+        assertEquals(10, Player.ROWS);
+        assertEquals(AI.Mode.ENDGAME, ai.strategy.mode());
+
+        AI.Mode mode = AI.MODE;
+        try {
+            Player large = new Player("test_player", new Board(2000, 2000), 5, 4);
+            assertEquals(AI.Mode.HUNT, new AI(large, 5, 4).strategy.mode());
+            AI.MODE = AI.Mode.DENSITY;
+            assertEquals(AI.Mode.DENSITY, new AI(p).strategy.mode());
+            assertEquals(AI.Mode.HUNT, new AI(large, 5, 4).strategy.mode());
+        } finally {
+            AI.MODE = mode;
+        }
+    }
+
+    /**
+     * Testing that the placements and the guesses of the computer only depend on its seed.
+     */
+    @Test
+    public void seed() {
+        int[][] guesses = new int[2][];
+        Board[] boards = new Board[2];
+        for (int run = 0; run < 2; run++) {
+            Player p = new Player("test_player", new Board(10, 10), new SplittableRandom(1), Player.FLEET);
+            AI ai = new AI(p, new SplittableRandom(2), Player.FLEET);
+            guesses[run] = new int[30];
+            for (int i = 0; i < guesses[run].length; i++) {
+                ai.makeAGuess();
+                guesses[run][i] = ai.lastGuess;
+            }
+            boards[run] = ai.board;
+        }
+        assertArrayEquals(guesses[0], guesses[1]);
+        for (int cell = 0; cell < 100; cell++)
+            assertEquals(boards[0].isShip(cell), boards[1].isShip(cell));
+    }
+
+    /**
+     * Testing that the computer thinks of its guesses on its own thread without touching the boards,
+     * and that the guesses it plays sink the whole fleet.
+     */
+    @Test(timeout = 10000)
+    public void think() throws Exception {
+        Player p = new Player("test_player", new Board(10, 10), new SplittableRandom(3), Player.FLEET);
+        AI ai = new AI(p, new SplittableRandom(4), Player.FLEET);
+        assertThrows(NullPointerException.class, () -> new AI(null).think(0));
+
+        int shots = 0;
+        while (p.board.shipsRemaining > 0) {
+            int discovered = discovered(p.board);
+            long deadline = System.nanoTime() + AI.DEADLINE;
+            int guess = AI.THINKER.submit(() -> ai.think(deadline)).get();
+            assertEquals(discovered, discovered(p.board));
+            assertFalse(p.board.isDiscovered(guess));
+            ai.play(guess);
+            assertEquals(guess, ai.lastGuess);
+            assertTrue(p.board.isDiscovered(guess));
+            assertTrue(++shots <= 100);
+        }
+    }
+
+    /**
+     * Testing the guess played when the strategy fails.
+     */
+    @Test
+    public void scan() {
+        assertThrows(NullPointerException.class, () -> new AI(null).scan());
+
+        Player p = new Player("test_player", new Board(2, 2), 2);
+        AI ai = new AI(p, (int[]) null);
+        assertEquals(0, ai.scan());
+        p.board.reveal(0, p.board.isShip(0));
+        p.board.reveal(1, p.board.isShip(1));
+        assertEquals(2, ai.scan());
+        p.board.reveal(2, p.board.isShip(2));
+        p.board.reveal(3, p.board.isShip(3));
+        assertThrows(IllegalStateException.class, ai::scan);
+    }
+
+    /**
+     * @param board a board
+     * @return the number of discovered tiles of the board
+     */
+    private static int discovered(Board board) {
+        int count = 0;
+        for (int word = 0; word < board.words(); word++)
+            count += Long.bitCount(board.discoveredWord(word));
+        return count;
+    }
+}
@@ -0,0 +1,336 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Board class.
+ */
+public class BoardTest {
+
+    /**
+     * Testing the cell, row and column methods.
+     */
+    @Test
+    public void cell() {
+        assertThrows(IllegalArgumentException.class, () -> new Board(0, 10));
+        Board b = new Board(4, 7);
+        assertEquals(28, b.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> b.cell(-1, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> b.cell(0, 7));
+        assertThrows(IndexOutOfBoundsException.class, () -> b.cell(4, 0));
+        int cell = b.cell(3, 5);
+        assertEquals(3, b.row(cell));
+        assertEquals(5, b.column(cell));
+        assertEquals(b.cell(2, 5), b.getNeighbor(cell, Direction.NORTH));
+        assertEquals(b.cell(2, 6), b.getNeighbor(cell, Direction.NORTH_EAST));
+        assertThrows(IndexOutOfBoundsException.class, () -> b.getNeighbor(cell, Direction.SOUTH));
+    }
+
+    /**
+     * Testing that shooting water only reveals the shot tile.
+     */
+    @Test
+    public void shootWater() {
+        Board b = new Board(10, 10);
+        b.shoot(b.cell(4, 4));
+        for (int cell = 0; cell < b.size(); cell++)
+            assertEquals(cell == b.cell(4, 4), b.isDiscovered(cell));
+    }
+
+    /**
+     * Testing that sinking a ship reveals all its surrounding tiles.
+     */
+    @Test
+    public void shootSunken() {
+        Board b = new Board(10, 10);
+        b.setShip(b.cell(2, 2));
+        b.setShip(b.cell(2, 3));
+        assertEquals(2, b.shipsRemaining);
+
+        b.shoot(b.cell(2, 2));
+        assertEquals(1, b.shipsRemaining);
+        assertFalse(b.isDiscovered(b.cell(2, 1)));
+
+        b.shoot(b.cell(2, 3));
+        assertEquals(0, b.shipsRemaining);
+        for (int row = 0; row < b.rows; row++)
+            for (int column = 0; column < b.columns; column++)
+                assertEquals(row >= 1 && row <= 3 && column >= 1 && column <= 4, b.isDiscovered(b.cell(row, column)));
+    }
+
+    /**
+     * Testing that the tiles diagonal to a hit are revealed next to discovered water.
+     */
+    @Test
+    public void shootNextToWater() {
+        Board b = new Board(10, 10);
+        b.setShip(b.cell(5, 5));
+        b.setShip(b.cell(5, 6));
+        b.shoot(b.cell(4, 5));
+        b.shoot(b.cell(5, 5));
+        assertTrue(b.isDiscovered(b.cell(4, 4)));
+        assertTrue(b.isDiscovered(b.cell(4, 6)));
+        assertFalse(b.isDiscovered(b.cell(6, 4)));
+        assertFalse(b.isDiscovered(b.cell(5, 6)));
+    }
+
+    /**
+     * Testing the addShip method.
+     */
+    @Test
+    public void addShip() {
+        Board b = new Board(10, 10);
+        assertThrows(IllegalArgumentException.class, () -> b.addShip(1, new Random()));
+        assertThrows(IllegalArgumentException.class, () -> b.addShip(11, new Random()));
+        try {
+            b.addShip(5, new Random(1));
+            b.addShip(3, new Random(2));
+        } catch (NoMoreSpaceException e) { fail(); }
+        assertEquals(List.of(5, 3), b.fleet());
+        assertEquals(8, b.shipsRemaining);
+
+        int ships = 0;
+        for (int cell = 0; cell < b.size(); cell++)
+            if (b.isShip(cell)) ships++;
+        assertEquals(8, ships);
+    }
+
+    /**
+     * Testing that a written board is read back the same.
+     */
+    @Test
+    public void writeAndRead() {
+        Board b = DensityStrategyTest.fleet(new Random(11));
+        for (int cell = 0; cell < b.size(); cell += 7)
+            b.shoot(cell);
+        ByteBuffer buffer = ByteBuffer.allocate(b.bytes());
+        b.write(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        Board read = Board.read(buffer);
+        assertEquals(b.rows, read.rows);
+        assertEquals(b.columns, read.columns);
+        assertEquals(b.fleet(), read.fleet());
+        assertEquals(b.shipsRemaining, read.shipsRemaining);
+        for (int cell = 0; cell < b.size(); cell++) {
+            assertEquals(b.isShip(cell), read.isShip(cell));
+            assertEquals(b.isDiscovered(cell), read.isDiscovered(cell));
+        }
+    }
+
+    /**
+     * Testing that boards written by older versions, which always wrote every word, can be read.
+     */
+    @Test
+    public void readDense() {
+        Board b = new Board(3, 30);
+        b.setShip(b.cell(1, 1));
+        b.setShip(b.cell(1, 2));
+        b.shoot(b.cell(1, 1));
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 2 + 2 * 8 * b.words());
+        buffer.putInt(3).putInt(30).putShort((short) 0);
+        for (int word = 0; word < b.words(); word++)
+            buffer.putLong(word == 0 ? 1L << b.cell(1, 1) | 1L << b.cell(1, 2) : 0);
+        for (int word = 0; word < b.words(); word++)
+            buffer.putLong(b.discoveredWord(word));
+        buffer.flip();
+
+        Board read = Board.read(buffer, false);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(1, read.shipsRemaining);
+        for (int cell = 0; cell < b.size(); cell++) {
+            assertEquals(b.isShip(cell), read.isShip(cell));
+            assertEquals(b.isDiscovered(cell), read.isDiscovered(cell));
+        }
+    }
+
+    /**
+     * Testing that a very large board can be played on, and is saved sparsely.
+     */
+    @Test(timeout = 5000)
+    public void large() {
+        Board b = new Board(10_000, 10_000);
+        assertThrows(IllegalArgumentException.class, () -> new Board(100_000, 100_000));
+        Random random = new Random(5);
+        try {
+            for (int length : new int[]{5, 4, 3, 3, 2})
+                b.addShip(length, random);
+        } catch (NoMoreSpaceException e) { fail(); }
+        assertEquals(17, b.shipsRemaining);
+
+        // Sink every ship, as its tiles would be found
+        for (int cell = 0; cell < b.size(); cell++)
+            if (b.isShip(cell))
+                b.shoot(cell);
+        assertEquals(0, b.shipsRemaining);
+        int chunks = 0;
+        for (int chunk = 0; chunk < b.chunks(); chunk++)
+            if (b.hasDiscovered(chunk))
+                chunks++;
+        assertTrue(chunks <= 5 * 3 * 2);
+
+        ByteBuffer buffer = ByteBuffer.allocate(b.bytes());
+        b.write(buffer);
+        assertTrue(buffer.capacity() < 4096);
+        buffer.flip();
+        Board read = Board.read(buffer);
+        for (int chunk = 0; chunk < b.chunks(); chunk++)
+            for (int word = chunk * Board.CHUNK_WORDS; b.hasDiscovered(chunk) && word < (chunk + 1) * Board.CHUNK_WORDS; word++)
+                assertEquals(b.discoveredWord(word), read.discoveredWord(word));
+    }
+
+    /**
+     * Testing that the ships are tracked by their own counters of remaining hits.
+     */
+    @Test
+    public void shipIdentity() {
+        Board b = new Board(10, 10);
+        try {
+            b.addShip(4, new Random(8));
+            b.addShip(3, new Random(9));
+        } catch (NoMoreSpaceException e) { fail(); }
+        for (int cell = 0; cell < b.size(); cell++) {
+            if (!b.isShip(cell))
+                continue;
+            int start = b.shipStart(cell);
+            assertEquals(0, b.sunkLength(cell));
+            assertTrue(start <= cell);
+            assertTrue(b.isShip(start));
+        }
+
+        // Sinking a ship tile by tile only reports it sunk after the last hit
+        int first = -1;
+        for (int cell = 0; cell < b.size() && first == -1; cell++)
+            if (b.isShip(cell))
+                first = cell;
+        int start = b.shipStart(first);
+        ArrayList<Integer> tiles = new ArrayList<>();
+        for (int cell = 0; cell < b.size(); cell++)
+            if (b.isShip(cell) && b.shipStart(cell) == start)
+                tiles.add(cell);
+        for (int i = 0; i < tiles.size(); i++) {
+            assertEquals(0, b.sunkLength(tiles.get(0)));
+            b.shoot(tiles.get(i));
+        }
+        assertEquals(tiles.size(), b.sunkLength(tiles.get(0)));
+        for (int tile : tiles)
+            for (Direction d : Direction.values())
+                try {
+                    assertTrue(b.isDiscovered(b.getNeighbor(tile, d)));
+                } catch (IndexOutOfBoundsException ignored) {}
+    }
+
+    /**
+     * Testing that the revealed tiles do not depend on the order of the shots.
+     */
+    @Test
+    public void shotOrder() {
+        Random random = new Random(12);
+        Board forward = DensityStrategyTest.fleet(random);
+        Board backward = new Board(forward.rows, forward.columns);
+        for (int cell = 0; cell < forward.size(); cell++)
+            if (forward.isShip(cell))
+                backward.setShip(cell);
+        for (int cell = 0; cell < forward.size(); cell += 3) {
+            forward.shoot(cell);
+            backward.shoot(forward.size() - 1 - cell - (forward.size() - 1) % 3);
+        }
+        for (int cell = 0; cell < forward.size(); cell++)
+            assertEquals(forward.isDiscovered(cell), backward.isDiscovered(cell));
+        assertEquals(forward.shipsRemaining, backward.shipsRemaining);
+    }
+
+    /**
+     * Testing that sinking a very long ship reveals its surroundings without overflowing the stack.
+     */
+    @Test
+    public void longShip() {
+        Board b = new Board(3, 500_000);
+        for (int column = 0; column < b.columns; column++)
+            b.setShip(b.cell(1, column));
+        for (int column = b.columns - 1; column >= 0; column--)
+            b.shoot(b.cell(1, column));
+        assertEquals(0, b.shipsRemaining);
+        assertEquals(b.columns, b.sunkLength(b.cell(1, 0)));
+        for (int cell = 0; cell < b.size(); cell++)
+            assertTrue(b.isDiscovered(cell));
+    }
+
+    /**
+     * Testing that the board lists the tiles changed by the shots and their cascades, until there are too many.
+     */
+    @Test
+    public void changes() {
+        Board b = new Board(10, 10);
+        b.setShip(b.cell(0, 0));
+        List<Integer> changed = new ArrayList<>();
+        assertTrue(b.takeChanges(changed::add));
+        assertEquals(List.of(0), changed);
+
+        // Sinking the ship reveals its halo too
+        changed.clear();
+        List<Integer> revealed = new ArrayList<>();
+        b.shoot(0, revealed::add);
+        assertTrue(b.takeChanges(changed::add));
+        assertEquals(revealed, changed);
+        assertEquals(4, changed.size());
+        changed.clear();
+        assertTrue(b.takeChanges(changed::add));
+        assertTrue(changed.isEmpty());
+
+        int max = Board.MAX_CHANGES;
+        try {
+            Board.MAX_CHANGES = 3;
+            b.shoot(b.cell(5, 5));
+            b.shoot(b.cell(7, 7));
+            assertTrue(b.takeChanges(changed::add));
+            assertEquals(List.of(b.cell(5, 5), b.cell(7, 7)), changed);
+            for (int row = 0; row < 4; row++)
+                b.shoot(b.cell(row, 9));
+            assertFalse(b.takeChanges(changed::add));
+            assertTrue(b.takeChanges(changed::add));
+
+            b.restore(new Board(10, 10));
+            assertFalse(b.takeChanges(changed::add));
+        } finally {
+            Board.MAX_CHANGES = max;
+        }
+    }
+
+    /**
+     * Testing that a cleared board places the same ships as a new one, and that they are sunk the same way.
+     */
+    @Test
+    public void clear() {
+        Board b = Simulator.place(10, 10, Player.FLEET, new Random(6));
+        for (int cell = 0; cell < b.size(); cell += 7)
+            b.shoot(cell);
+        b.clear();
+        assertTrue(b.fleet().isEmpty());
+        assertEquals(0, b.shipsRemaining);
+        assertFalse(b.takeChanges(cell -> {}));
+        for (int cell = 0; cell < b.size(); cell++) {
+            assertFalse(b.isShip(cell));
+            assertFalse(b.isDiscovered(cell));
+        }
+
+        Simulator.place(b, Player.FLEET, new Random(7));
+        Board fresh = Simulator.place(10, 10, Player.FLEET, new Random(7));
+        assertEquals(fresh.fleet(), b.fleet());
+        for (int cell = 0; cell < b.size(); cell++)
+            assertEquals(fresh.isShip(cell), b.isShip(cell));
+        for (int cell = 0; cell < b.size(); cell++) {
+            assertEquals(fresh.shoot(cell), b.shoot(cell));
+            assertEquals(fresh.sunkLength(cell), b.sunkLength(cell));
+        }
+        assertEquals(0, b.shipsRemaining);
+    }
+}
@@ -0,0 +1,96 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the BoardView class.
+ */
+public class BoardViewTest {
+
+    /**
+     * Testing that clicks and arrow keys select the right tiles.
+     */
+    @Test
+    public void select() {
+        Player p = new Player("test", (int[]) null);
+        BoardView view = p.panel;
+        int size = view.tileSize;
+        view.dispatchEvent(new MouseEvent(view, MouseEvent.MOUSE_PRESSED, 0, 0,
+                3 * size + 1, 2 * size + 1, 1, false, MouseEvent.BUTTON1));
+        assertEquals(p.getTile(2, 3), p.selected);
+        assertEquals(Tile.SELECTED_COLOR, p.selected.color());
+
+        press(view, KeyEvent.VK_LEFT);
+        assertEquals(p.getTile(2, 2), p.selected);
+        assertEquals(Tile.UNDISCOVERED_COLOR, p.getTile(2, 3).color());
+        press(view, KeyEvent.VK_UP);
+        assertEquals(p.getTile(1, 2), p.selected);
+
+        p.setEnabled(false);
+        view.dispatchEvent(new MouseEvent(view, MouseEvent.MOUSE_PRESSED, 0, 0,
+                1, 1, 1, false, MouseEvent.BUTTON1));
+        assertEquals(p.getTile(1, 2), p.selected);
+
+        p.shoot(p.selected.cell());
+        assertNull(p.selected);
+    }
+
+    /**
+     * Presses a key on a board, the keyboard focus manager is bypassed, as the board is not displayed.
+     * @param view the board
+     * @param key the code of the key
+     */
+    private static void press(BoardView view, int key) {
+        KeyEvent e = new KeyEvent(view, KeyEvent.KEY_PRESSED, 0, 0, key, KeyEvent.CHAR_UNDEFINED);
+        for (KeyListener listener : view.getKeyListeners())
+            listener.keyPressed(e);
+    }
+
+    /**
+     * Testing that the tiles are painted with their colors.
+     */
+    @Test
+    public void paint() {
+        Player p = new Player("test", (int[]) null);
+        p.board.setShip(p.board.cell(0, 0));
+        p.shoot(p.board.cell(0, 0));
+        p.shoot(p.board.cell(5, 5));
+        BoardView view = p.panel;
+        int size = view.tileSize;
+        view.setSize(view.getPreferredSize());
+        BufferedImage image = new BufferedImage(view.getWidth(), view.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        view.paint(g);
+        g.dispose();
+        assertEquals(Tile.SHIP_COLOR.getRGB(), image.getRGB(2, 2));
+        assertEquals(Tile.WATER_COLOR.getRGB(), image.getRGB(5 * size + 2, 5 * size + 2));
+        assertEquals(Tile.UNDISCOVERED_COLOR.getRGB(), image.getRGB(9 * size + 2, 9 * size + 2));
+        assertEquals(new Rectangle(5 * size, 5 * size, size + 1, size + 1), view.bounds(p.board.cell(5, 5)));
+    }
+
+    /**
+     * Testing that the tiles get smaller on larger boards.
+     */
+    @Test
+    public void tileSize() {
+        int rows = Player.ROWS, columns = Player.COLUMNS;
+        try {
+            Player.ROWS = Player.COLUMNS = 100;
+            BoardView view = new Player("test", (int[]) null).panel;
+            assertTrue(view.tileSize < BoardView.MAX_TILE_SIZE);
+            assertTrue(view.tileSize >= BoardView.MIN_TILE_SIZE);
+            assertEquals(100 * view.tileSize + 1, view.getPreferredSize().width);
+        } finally {
+            Player.ROWS = rows;
+            Player.COLUMNS = columns;
+        }
+    }
+}
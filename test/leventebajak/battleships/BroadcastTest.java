@@ -0,0 +1,148 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Broadcast class.
+ */
+public class BroadcastTest {
+
+    /**
+     * Testing the events of the shots, from the snapshot of the boards to the end of the game.
+     */
+    @Test
+    public void events() {
+        Player player = new Player("test", new Board(4, 4));
+        player.board.setShip(player.board.cell(0, 0));
+        player.board.setShip(player.board.cell(0, 1));
+        Player other = new Player("other", new Board(4, 4));
+        Broadcast broadcast = new Broadcast();
+        broadcast.reset(player.board, other.board);
+        player.broadcast = broadcast;
+        Broadcast.Subscription subscription = broadcast.subscribe();
+
+        List<Broadcast.Event> events = new ArrayList<>();
+        subscription.drain(events::add);
+        assertEquals(List.of(new Broadcast.Event(Broadcast.Kind.RESET, 0, 0, 0),
+                new Broadcast.Event(Broadcast.Kind.START, 0, 4, 4),
+                new Broadcast.Event(Broadcast.Kind.START, 1, 4, 4)), events);
+
+        events.clear();
+        player.shoot(player.board.cell(2, 2));
+        player.shoot(player.board.cell(0, 0));
+        player.shoot(player.board.cell(0, 1));
+        subscription.drain(events::add);
+        assertEquals(new Broadcast.Event(Broadcast.Kind.SHOT, 0, 10, 0), events.get(0));
+        assertEquals(new Broadcast.Event(Broadcast.Kind.MISS, 0, 10, 0), events.get(1));
+        assertEquals(new Broadcast.Event(Broadcast.Kind.SHOT, 0, 0, 0), events.get(2));
+        assertEquals(new Broadcast.Event(Broadcast.Kind.HIT, 0, 0, 0), events.get(3));
+        assertEquals(new Broadcast.Event(Broadcast.Kind.SHOT, 0, 1, 0), events.get(4));
+        assertEquals(new Broadcast.Event(Broadcast.Kind.HIT, 0, 1, 0), events.get(5));
+        // The halo of the sunk ship is revealed, then the ship is sunk, and the game is over
+        for (int i = 6; i < events.size() - 2; i++)
+            assertEquals(Broadcast.Kind.REVEALED, events.get(i).kind());
+        assertEquals(4, events.size() - 8);
+        assertEquals(new Broadcast.Event(Broadcast.Kind.SUNK, 0, 0, 2), events.get(events.size() - 2));
+        assertEquals(new Broadcast.Event(Broadcast.Kind.OVER, 0, 0, 0), events.get(events.size() - 1));
+        assertNull(subscription.poll());
+
+        // A late subscriber gets the same boards from the snapshot
+        Broadcast.Subscription late = broadcast.subscribe();
+        List<Broadcast.Event> snapshot = new ArrayList<>();
+        late.drain(snapshot::add);
+        assertEquals(Broadcast.Kind.RESET, snapshot.get(0).kind());
+        assertTrue(snapshot.contains(new Broadcast.Event(Broadcast.Kind.SUNK, 0, 0, 2)));
+        assertEquals(new Broadcast.Event(Broadcast.Kind.OVER, 0, 0, 0), snapshot.get(snapshot.size() - 1));
+        late.close();
+        subscription.close();
+        assertEquals(0, broadcast.subscribers());
+    }
+
+    /**
+     * Testing that a subscriber falling behind is resynced with a snapshot, without holding up the publisher.
+     */
+    @Test
+    public void overflow() {
+        int capacity = Broadcast.CAPACITY;
+        try {
+            Broadcast.CAPACITY = 4;
+            Board board = new Board(4, 4);
+            Broadcast broadcast = new Broadcast();
+            broadcast.reset(board, new Board(2, 2));
+            Broadcast.Subscription slow = broadcast.subscribe();
+            assertEquals(3, slow.drain(event -> {}));
+            assertEquals(1, slow.resyncs());
+
+            for (int cell = 0; cell < 10; cell++)
+                broadcast.publish(new Broadcast.Event(Broadcast.Kind.MISS, 0, cell, 0));
+            assertEquals(10, broadcast.published());
+            List<Broadcast.Event> events = new ArrayList<>();
+            slow.drain(events::add);
+            assertEquals(2, slow.resyncs());
+            assertEquals(Broadcast.Kind.RESET, events.get(0).kind());
+            assertEquals(3 + 10, events.size());
+            assertEquals(new Broadcast.Event(Broadcast.Kind.MISS, 0, 9, 0), events.get(12));
+
+            // After the snapshot the events arrive through the ring again
+            broadcast.publish(new Broadcast.Event(Broadcast.Kind.MISS, 0, 10, 0));
+            assertEquals(new Broadcast.Event(Broadcast.Kind.MISS, 0, 10, 0), slow.poll());
+            assertNull(slow.poll());
+            assertEquals(2, slow.resyncs());
+        } finally {
+            Broadcast.CAPACITY = capacity;
+        }
+    }
+
+    /**
+     * Testing that a subscriber resynced while the game publishes gets every event exactly once after the snapshot.
+     */
+    @Test(timeout = 20000)
+    public void concurrentResync() throws InterruptedException {
+        int capacity = Broadcast.CAPACITY;
+        try {
+            Broadcast.CAPACITY = 4;
+            Broadcast broadcast = new Broadcast();
+            broadcast.reset(new Board(100, 100), new Board(2, 2));
+            Broadcast.Subscription slow = broadcast.subscribe();
+            int count = 100_000;
+            Thread game = new Thread(() -> {
+                for (int cell = 0; cell < count; cell++)
+                    broadcast.publish(new Broadcast.Event(Broadcast.Kind.MISS, 0, cell, 0));
+            });
+            game.start();
+
+            // After every reset, the shots have to follow each other from the first one without gaps
+            int[] next = {0};
+            Runnable read = () -> slow.drain(event -> {
+                if (event.kind() == Broadcast.Kind.RESET)
+                    next[0] = 0;
+                else if (event.kind() == Broadcast.Kind.MISS)
+                    assertEquals(next[0]++, event.cell());
+            });
+            while (game.isAlive())
+                read.run();
+            game.join();
+            read.run();
+            assertEquals(count, next[0]);
+            assertTrue(slow.resyncs() > 1);
+        } finally {
+            Broadcast.CAPACITY = capacity;
+        }
+    }
+
+    /**
+     * Testing that the events keep their values when packed into the rings.
+     */
+    @Test
+    public void pack() {
+        Broadcast.Event event = new Broadcast.Event(Broadcast.Kind.SUNK, 1, Board.MAX_SIZE - 1, Board.MAX_SIZE - 1);
+        assertEquals(event, Broadcast.Event.unpack(event.pack()));
+        for (Broadcast.Kind kind : Broadcast.Kind.values())
+            assertNotEquals(-1, new Broadcast.Event(kind, 0, 0, 0).pack());
+    }
+}
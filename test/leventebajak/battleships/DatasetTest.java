@@ -0,0 +1,131 @@
+package leventebajak.battleships;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Dataset class.
+ */
+public class DatasetTest {
+
+    /**
+     * The file of the dataset.
+     */
+    private File file;
+
+    /**
+     * Creates the file of the dataset.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("battleships", ".bshd");
+    }
+
+    /**
+     * Deletes the file of the dataset.
+     */
+    @After
+    public void tearDown() {
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Testing that the games read back are the ones the simulator plays with the same seeds.
+     */
+    @Test
+    public void generateAndRead() throws IOException {
+        Dataset.generate(file, AI.Mode.HUNT, 10, 10, Player.FLEET, 600, 5, 2);
+        try (Dataset dataset = new Dataset(file)) {
+            assertEquals(AI.Mode.HUNT, dataset.mode);
+            assertEquals(10, dataset.rows);
+            assertArrayEquals(Player.FLEET, dataset.fleet);
+            assertEquals(600, dataset.games);
+            assertEquals((600 + Dataset.BLOCK - 1) / Dataset.BLOCK, dataset.blocks());
+
+            long games = 0, shots = 0;
+            for (int b = 0; b < dataset.blocks(); b++) {
+                Dataset.Block block = dataset.block(b);
+                assertEquals(games, block.firstGame);
+                int shot = 0, revealed = 0, shipTiles = 17;
+                for (int g = 0; g < block.games(); g++) {
+                    long game = block.firstGame + g;
+                    assertEquals(Simulator.play(AI.Mode.HUNT, 10, 10, Player.FLEET,
+                            new SplittableRandom(Simulator.seed(5, game))), block.shots[g]);
+                    Board board = Simulator.place(10, 10, Player.FLEET, new SplittableRandom(Simulator.seed(5, game)));
+                    for (int i = 0; i < shipTiles; i++)
+                        assertTrue(board.isShip(block.ships[g * shipTiles + i]));
+
+                    for (int s = 0; s < block.shots[g]; s++, shot++) {
+                        assertEquals(block.cells[shot], block.revealedCells[revealed]);
+                        assertEquals(board.shoot(block.cells[shot]), block.revealed[shot]);
+                        assertEquals(Match.Outcome.of(board, block.cells[shot]), block.outcome(shot));
+                        revealed += block.revealed[shot];
+                    }
+                    assertEquals(0, board.shipsRemaining);
+                }
+                assertEquals(block.cells.length, shot);
+                assertEquals(block.revealedCells.length, revealed);
+                games += block.games();
+                shots += shot;
+            }
+            assertEquals(600, games);
+            assertEquals(shots, dataset.shots());
+        }
+    }
+
+    /**
+     * Testing that the file only depends on the seed, not on the number of threads.
+     */
+    @Test
+    public void deterministic() throws IOException {
+        Dataset.generate(file, AI.Mode.DENSITY, 10, 10, Player.FLEET, 300, 7, 1);
+        byte[] single = Files.readAllBytes(file.toPath());
+        Dataset.generate(file, AI.Mode.DENSITY, 10, 10, Player.FLEET, 300, 7, 3);
+        assertArrayEquals(single, Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Testing that the file is the same when the index does not fit in memory.
+     */
+    @Test
+    public void spilledIndex() throws IOException {
+        int buffer = Dataset.INDEX_BUFFER, block = Dataset.BLOCK;
+        try {
+            Dataset.BLOCK = 16;
+            Dataset.generate(file, AI.Mode.HUNT, 10, 10, Player.FLEET, 300, 9, 2);
+            byte[] kept = Files.readAllBytes(file.toPath());
+            Dataset.INDEX_BUFFER = 3;
+            Dataset.generate(file, AI.Mode.HUNT, 10, 10, Player.FLEET, 300, 9, 2);
+            assertArrayEquals(kept, Files.readAllBytes(file.toPath()));
+        } finally {
+            Dataset.INDEX_BUFFER = buffer;
+            Dataset.BLOCK = block;
+        }
+        try (Dataset dataset = new Dataset(file)) {
+            assertEquals((300 + 15) / 16, dataset.blocks());
+            for (int b = 0; b < dataset.blocks(); b++)
+                assertEquals(16 * b, dataset.block(b).firstGame);
+        }
+    }
+
+    /**
+     * Testing that a damaged file is rejected.
+     */
+    @Test
+    public void corrupt() throws IOException {
+        Dataset.generate(file, AI.Mode.HUNT, 10, 10, Player.FLEET, 10, 1, 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertThrows(IOException.class, () -> new Dataset(file));
+    }
+}
@@ -0,0 +1,87 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the DensityStrategy class.
+ */
+public class DensityStrategyTest {
+
+    /**
+     * Creates a board with the default fleet.
+     * @param random the source of randomness used for placing the ships
+     * @return the new board
+     */
+    static Board fleet(Random random) {
+        Board board = new Board(10, 10);
+        try {
+            for (int length : new int[]{5, 4, 3, 3, 2})
+                board.addShip(length, random);
+        } catch (NoMoreSpaceException e) { fail(); }
+        return board;
+    }
+
+    /**
+     * Testing that the strategy only guesses undiscovered tiles and finishes the game.
+     */
+    @Test(timeout = 1000)
+    public void nextGuess() {
+        Random random = new Random(42);
+        for (int game = 0; game < 50; game++) {
+            Board board = fleet(random);
+            DensityStrategy strategy = new DensityStrategy(random);
+            int shots = 0;
+            while (board.shipsRemaining > 0) {
+                int guess = strategy.nextGuess(board);
+                assertFalse(board.isDiscovered(guess));
+                board.shoot(guess);
+                strategy.update(board, guess);
+                shots++;
+            }
+            assertTrue(shots <= board.size());
+        }
+    }
+
+    /**
+     * Testing that the incrementally updated heatmap matches a freshly built one.
+     */
+    @Test
+    public void density() {
+        Random random = new Random(7);
+        Board board = fleet(random);
+        DensityStrategy strategy = new DensityStrategy(random);
+        for (int shot = 0; shot < 40 && board.shipsRemaining > 0; shot++) {
+            int guess = strategy.nextGuess(board);
+            board.shoot(guess);
+            strategy.update(board, guess);
+
+            DensityStrategy fresh = new DensityStrategy(random);
+            for (int cell = 0; cell < board.size(); cell++) {
+                assertEquals(fresh.density(board, cell), strategy.density(board, cell));
+                if (board.isDiscovered(cell))
+                    assertEquals(0, strategy.density(board, cell));
+            }
+        }
+    }
+
+    /**
+     * Testing that after a hit, the strategy keeps shooting next to it.
+     */
+    @Test
+    public void target() {
+        Board board = fleet(new Random(3));
+        int hit = 0;
+        while (!board.isShip(hit))
+            hit++;
+        DensityStrategy strategy = new DensityStrategy(new Random(3));
+        board.shoot(hit);
+        strategy.update(board, hit);
+
+        int guess = strategy.nextGuess(board);
+        assertEquals(1, Math.abs(board.row(guess) - board.row(hit)) + Math.abs(board.column(guess) - board.column(hit)));
+    }
+}
@@ -0,0 +1,123 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the EndgameStrategy class.
+ */
+public class EndgameStrategyTest {
+
+    /**
+     * Testing the expected number of shots of a position small enough to solve by hand.
+     */
+    @Test
+    public void solve() {
+        // A ship of two on a row of four: shooting an inner tile first takes 1 + 2/3 * 1.5 + 1/3 * 2 shots on average
+        Board board = Board.mirror(1, 4, new int[]{2});
+        EndgameStrategy endgame = new EndgameStrategy(new HuntStrategy(new Random(1)));
+        assertEquals(8.0 / 3, endgame.solve(board), 1e-9);
+        int guess = endgame.nextGuess(board);
+        assertTrue(guess == 1 || guess == 2);
+        assertEquals(1, endgame.solved());
+
+        // After a hit on the left inner tile, the ship is on one of its sides
+        board.reveal(1, true);
+        assertEquals(1.5, endgame.solve(board), 1e-9);
+        guess = endgame.nextGuess(board);
+        assertTrue(guess == 0 || guess == 2);
+    }
+
+    /**
+     * Testing that the other strategy is played until the endgame, and when the search runs out of time.
+     */
+    @Test
+    public void fallback() {
+        Board board = Simulator.place(10, 10, Player.FLEET, new Random(2));
+        EndgameStrategy endgame = new EndgameStrategy(new DensityStrategy(new Random(3)));
+        assertTrue(Double.isNaN(endgame.solve(board)));
+        endgame.nextGuess(board);
+        assertEquals(0, endgame.solved());
+
+        long budget = EndgameStrategy.BUDGET;
+        try {
+            Board open = Board.mirror(3, 4, new int[]{3});
+            assertFalse(Double.isNaN(endgame.solve(open)));
+            EndgameStrategy.BUDGET = -1;
+            assertTrue(Double.isNaN(endgame.solve(open)));
+        } finally {
+            EndgameStrategy.BUDGET = budget;
+        }
+    }
+
+    /**
+     * Testing that the guess is found by its deadline: the other strategy's if the search had no time at all.
+     */
+    @Test
+    public void deadline() {
+        Board board = Board.mirror(3, 4, new int[]{3});
+        EndgameStrategy endgame = new EndgameStrategy(new DensityStrategy(new Random(4)));
+        int guess = endgame.nextGuess(board, System.nanoTime() - 1);
+        assertFalse(board.isDiscovered(guess));
+        assertEquals(0, endgame.solved());
+
+        guess = endgame.nextGuess(board, System.nanoTime() + 1_000_000_000L);
+        assertFalse(board.isDiscovered(guess));
+        assertEquals(1, endgame.solved());
+    }
+
+    /**
+     * Testing that the guesses without a deadline only depend on the board, so seeded games are replayed exactly.
+     */
+    @Test
+    public void reproducible() {
+        long budget = EndgameStrategy.BUDGET;
+        try {
+            EndgameStrategy.BUDGET = 50;
+            for (int game = 0; game < 20; game++)
+                assertEquals(Simulator.play(AI.Mode.ENDGAME, 10, 10, Player.FLEET, new SplittableRandom(game)),
+                        Simulator.play(AI.Mode.ENDGAME, 10, 10, Player.FLEET, new SplittableRandom(game)));
+        } finally {
+            EndgameStrategy.BUDGET = budget;
+        }
+    }
+
+    /**
+     * Testing that the search saves shots compared to the density strategy alone,
+     * on a board small enough to search from the first shot.
+     */
+    @Test
+    public void fewerShots() {
+        int placements = EndgameStrategy.MAX_PLACEMENTS;
+        try {
+            EndgameStrategy.MAX_PLACEMENTS = 16;
+            Simulator.Result density = Simulator.run(AI.Mode.DENSITY, 4, 4, new int[]{3}, 300, 1, 1);
+            Simulator.Result endgame = Simulator.run(AI.Mode.ENDGAME, 4, 4, new int[]{3}, 300, 1, 1);
+            assertTrue(endgame.mean() < density.mean());
+        } finally {
+            EndgameStrategy.MAX_PLACEMENTS = placements;
+        }
+    }
+
+    /**
+     * Testing that the expected number of shots is exact when a hit may sink a ship, not just an upper bound:
+     * the games played with the search take as many shots on average.
+     */
+    @Test
+    public void sinking() {
+        int placements = EndgameStrategy.MAX_PLACEMENTS;
+        try {
+            EndgameStrategy.MAX_PLACEMENTS = 64;
+            Board board = Board.mirror(3, 4, new int[]{3, 2});
+            double expected = new EndgameStrategy(new DensityStrategy(new Random(5))).solve(board);
+            Simulator.Result endgame = Simulator.run(AI.Mode.ENDGAME, 3, 4, new int[]{3, 2}, 1000, 1, 1);
+            assertEquals(expected, endgame.mean(), 0.1);
+        } finally {
+            EndgameStrategy.MAX_PLACEMENTS = placements;
+        }
+    }
+}
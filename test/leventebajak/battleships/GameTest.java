@@ -42,6 +42,14 @@ public class GameTest {
         assertThrows(IOException.class, () -> Game.load(f3));
     }
 
+    /**
+     * Testing that a game saved with Java serialization by the first version still loads.
+     */
+    @Test
+    public void loadLegacy() throws Exception {
+        Game.load(new File(GameTest.class.getResource("legacy/baseline.save").toURI()));
+    }
+
     @After
     public void cleanup() {
         f1.delete();
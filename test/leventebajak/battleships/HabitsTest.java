@@ -0,0 +1,121 @@
+package leventebajak.battleships;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Habits class.
+ */
+public class HabitsTest {
+
+    /**
+     * The file of the model.
+     */
+    private File file;
+
+    /**
+     * Creates the file of the model.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("battleships", ".bshh");
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Deletes the file of the model.
+     */
+    @After
+    public void tearDown() {
+        assertTrue(!file.exists() || file.delete());
+    }
+
+    /**
+     * Testing that the tiles preferred by the player get larger weights, and that the model persists.
+     */
+    @Test
+    public void learn() throws IOException, NoMoreSpaceException {
+        Habits habits = new Habits(file, 10, 10);
+        assertEquals(0, habits.games());
+        assertTrue(Arrays.stream(habits.weights()).allMatch(w -> w == Habits.ONE));
+        long length = file.length();
+
+        Random random = new Random(1);
+        for (int game = 0; game < 50; game++) {
+            // The player always puts a ship in the top left corner, the rest are random
+            Board board = new Board(10, 10);
+            for (int column = 0; column < 5; column++)
+                board.setShip(column);
+            for (int ship : new int[]{4, 3, 3, 2})
+                board.addShip(ship, random);
+            habits.learn(board);
+        }
+        assertEquals(50, habits.games());
+        assertEquals(50, habits.count(0));
+        assertTrue(habits.weights()[0] > Habits.ONE);
+        assertTrue(habits.weights()[99] < habits.weights()[0]);
+        assertEquals(length, file.length());
+
+        Habits reopened = new Habits(file, 10, 10);
+        assertEquals(50, reopened.games());
+        assertArrayEquals(habits.weights(), reopened.weights());
+        assertThrows(IOException.class, () -> new Habits(file, 12, 12));
+        assertThrows(IllegalArgumentException.class, () -> habits.learn(new Board(12, 12)));
+    }
+
+    /**
+     * Testing that the counts are halved instead of overflowing.
+     */
+    @Test
+    public void saturate() throws IOException {
+        Board board = new Board(10, 10);
+        board.setShip(0);
+        board.setShip(1);
+        new Habits(file, 10, 10).learn(board);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(file.length() - 200);
+            raf.writeShort(0xFFFF);
+        }
+        Habits habits = new Habits(file, 10, 10);
+        habits.learn(board);
+        assertEquals(0x7FFF + 1, habits.count(0));
+        assertEquals(1, habits.count(1));
+        assertEquals(1, habits.games());
+    }
+
+    /**
+     * Testing that the strategies follow the weights while they have no lead.
+     */
+    @Test
+    public void prior() {
+        // The corner is covered by the fewest placements, only the weight can make it the best guess
+        Board board = Board.mirror(10, 10, Player.FLEET);
+        int[] weights = new int[100];
+        Arrays.fill(weights, Habits.ONE);
+        weights[0] = 8 * Habits.ONE;
+        Strategy density = AI.Mode.DENSITY.create(new Random(1), board);
+        density.prior(weights);
+        assertEquals(0, density.nextGuess(board));
+
+        board = new Board(10, 10);
+        board.setShip(0);
+        Arrays.fill(weights, 1);
+        weights[0] = Habits.ONE;
+        Strategy hunt = AI.Mode.HUNT.create(new Random(2), board);
+        hunt.prior(weights);
+        int corner = 0;
+        for (int i = 0; i < 100; i++)
+            if (hunt.nextGuess(board) == 0)
+                corner++;
+        assertTrue(corner > 50);
+    }
+}
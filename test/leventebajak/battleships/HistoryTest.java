@@ -0,0 +1,116 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the History class.
+ */
+public class HistoryTest {
+
+    /**
+     * Checks that two boards have the same discovered tiles.
+     * @param expected the expected board
+     * @param actual the actual board
+     */
+    private static void assertSameState(Board expected, Board actual) {
+        assertEquals(expected.shipsRemaining, actual.shipsRemaining);
+        for (int word = 0; word < expected.words(); word++)
+            assertEquals(expected.discoveredWord(word), actual.discoveredWord(word));
+    }
+
+    /**
+     * Plays a turn: shoots a random undiscovered tile of a board.
+     * @param history the history recording the turn
+     * @param board the board to shoot
+     * @param random the source of randomness
+     * @param turn the index of the turn, encoded as the state of the game
+     * @return the index of the shot tile
+     */
+    private static int turn(History history, Board board, Random random, int turn) {
+        int cell;
+        do cell = random.nextInt(board.size());
+        while (board.isDiscovered(cell));
+        history.begin();
+        board.shoot(cell, history.shot(board));
+        history.end(new byte[]{(byte) turn});
+        return cell;
+    }
+
+    /**
+     * Testing that every turn of a long game on large boards can be undone and redone,
+     * and that the history stays small.
+     */
+    @Test
+    public void undoAndRedo() {
+        Random random = new Random(1);
+        Board first = Simulator.place(200, 200, Player.FLEET, random);
+        Board second = Simulator.place(200, 200, Player.FLEET, random);
+        History history = new History(first, second, new byte[]{-1});
+        assertFalse(history.canUndo());
+        assertNull(history.undo());
+
+        ArrayList<Board[]> states = new ArrayList<>();
+        states.add(new Board[]{Recording.copy(first), Recording.copy(second)});
+        for (int turn = 0; turn < 200; turn++) {
+            turn(history, turn % 2 == 0 ? second : first, random, turn);
+            states.add(new Board[]{Recording.copy(first), Recording.copy(second)});
+        }
+        assertTrue(history.bytes() < 200 * 64);
+
+        for (int turn = 199; turn >= 0; turn--) {
+            assertEquals((byte) (turn - 1), history.undo()[0]);
+            assertSameState(states.get(turn)[0], first);
+            assertSameState(states.get(turn)[1], second);
+        }
+        assertFalse(history.canUndo());
+        for (int turn = 0; turn < 200; turn++) {
+            assertEquals((byte) turn, history.redo()[0]);
+            assertSameState(states.get(turn + 1)[0], first);
+            assertSameState(states.get(turn + 1)[1], second);
+        }
+        assertFalse(history.canRedo());
+        assertNull(history.redo());
+    }
+
+    /**
+     * Testing that the undone turns are forgotten when a new turn is played,
+     * and that the ships can be sunk again after undoing.
+     */
+    @Test
+    public void branch() {
+        Random random = new Random(2);
+        Board first = Simulator.place(10, 10, Player.FLEET, random);
+        Board second = Simulator.place(10, 10, Player.FLEET, random);
+        History history = new History(first, second, new byte[]{-1});
+        while (second.shipsRemaining > 0)
+            turn(history, second, random, history.position());
+        int turns = history.position();
+
+        Board end = Recording.copy(second);
+        for (int turn = 0; turn < 5; turn++)
+            history.undo();
+        assertTrue(second.shipsRemaining > 0);
+        assertTrue(history.canRedo());
+        // Shooting every tile again sinks the whole fleet, so the counters of the ships were restored
+        history.begin();
+        for (int cell = 0; cell < second.size(); cell++)
+            second.shoot(cell, history.shot(second));
+        history.end(new byte[]{0});
+        assertEquals(0, second.shipsRemaining);
+        assertEquals(turns - 4, history.position());
+        assertFalse(history.canRedo());
+        history.undo();
+        history.begin();
+        for (int cell = 0; cell < second.size(); cell++)
+            if (end.isDiscovered(cell))
+                second.shoot(cell, history.shot(second));
+        history.end(new byte[]{0});
+        assertSameState(end, second);
+        assertThrows(IllegalArgumentException.class, () -> history.shot(new Board(10, 10)));
+    }
+}
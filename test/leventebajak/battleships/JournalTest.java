@@ -0,0 +1,150 @@
+package leventebajak.battleships;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Journal class.
+ */
+public class JournalTest {
+
+    /**
+     * The file of the journal.
+     */
+    private File file;
+
+    /**
+     * Creates the file of the journal.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("battleships", ".journal");
+    }
+
+    /**
+     * Deletes the file of the journal.
+     */
+    @After
+    public void tearDown() {
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Testing that the appended records are replayed in order, with the strategy's memory.
+     */
+    @Test
+    public void appendAndReplay() throws IOException {
+        Board board = DensityStrategyTest.fleet(new Random(3));
+        HuntStrategy strategy = new HuntStrategy(new Random(4));
+        ArrayList<Integer> cells = new ArrayList<>();
+        try (Journal journal = new Journal(file, 12, strategy.bytes())) {
+            journal.append(Journal.PLAYER_SHOT, 7, null);
+            for (int i = 0; i < 5; i++) {
+                int cell = strategy.nextGuess(board);
+                board.shoot(cell);
+                strategy.update(board, cell);
+                journal.append(Journal.AI_SHOT, cell, strategy);
+                cells.add(cell);
+            }
+        }
+
+        HuntStrategy replayed = new HuntStrategy(new Random());
+        ArrayList<Integer> kinds = new ArrayList<>();
+        ArrayList<Integer> replayedCells = new ArrayList<>();
+        int count = Journal.replay(file, 12, (kind, cell, memory) -> {
+            kinds.add((int) kind);
+            if (kind == Journal.AI_SHOT) {
+                replayedCells.add(cell);
+                replayed.read(memory);
+            } else
+                assertEquals(7, cell);
+        });
+        assertEquals(6, count);
+        assertEquals(Journal.PLAYER_SHOT, (int) kinds.get(0));
+        assertEquals(cells, replayedCells);
+        assertEquals(strategy.lastGuess, replayed.lastGuess);
+        assertEquals(strategy.shipOrigin, replayed.shipOrigin);
+        assertEquals(strategy.chosenRoute, replayed.chosenRoute);
+    }
+
+    /**
+     * Testing that a record torn by a crash is ignored.
+     */
+    @Test
+    public void tornRecord() throws IOException {
+        try (Journal journal = new Journal(file, 0, 0)) {
+            journal.append(Journal.PLAYER_SHOT, 1, null);
+            journal.append(Journal.PLAYER_SHOT, 2, null);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        ArrayList<Integer> cells = new ArrayList<>();
+        assertEquals(1, Journal.replay(file, 0, (kind, cell, memory) -> cells.add(cell)));
+        assertEquals(1, (int) cells.get(0));
+    }
+
+    /**
+     * Testing that replaying stops at a record that fails its checksum, and at a zero-filled tail.
+     */
+    @Test
+    public void corruptRecord() throws IOException {
+        long length;
+        try (Journal journal = new Journal(file, 0, 0)) {
+            journal.append(Journal.PLAYER_SHOT, 1, null);
+            journal.append(Journal.PLAYER_SHOT, 2, null);
+            journal.append(Journal.PLAYER_SHOT, 3, null);
+            length = file.length();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length + 64);
+        }
+        assertEquals(3, Journal.replay(file, 0, (kind, cell, memory) -> {}));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(length - 2 * (length - 12) / 3 + 4);
+            raf.writeInt(99);
+        }
+        ArrayList<Integer> cells = new ArrayList<>();
+        assertEquals(1, Journal.replay(file, 0, (kind, cell, memory) -> cells.add(cell)));
+        assertEquals(1, (int) cells.get(0));
+    }
+
+    /**
+     * Testing that the records rejected by the handler fail the replay.
+     */
+    @Test(expected = IOException.class)
+    public void rejectedRecord() throws IOException {
+        try (Journal journal = new Journal(file, 0, 0)) {
+            journal.append((byte) 7, 1, null);
+        }
+        Journal.replay(file, 0, (kind, cell, memory) -> {
+            if (kind != Journal.PLAYER_SHOT)
+                throw new IOException("Invalid kind");
+        });
+    }
+
+    /**
+     * Testing that a journal is only replayed onto the snapshot it belongs to.
+     */
+    @Test
+    public void otherSnapshot() throws IOException {
+        try (Journal journal = new Journal(file, 100, 0)) {
+            journal.append(Journal.PLAYER_SHOT, 1, null);
+            journal.reset(200);
+            journal.append(Journal.PLAYER_SHOT, 2, null);
+        }
+        assertEquals(0, Journal.replay(file, 100, (kind, cell, memory) -> fail()));
+        assertEquals(1, Journal.replay(file, 200, (kind, cell, memory) -> assertEquals(2, cell)));
+        assertEquals(0, Journal.replay(new File(file.getPath() + ".missing"), 0, (kind, cell, memory) -> fail()));
+    }
+}
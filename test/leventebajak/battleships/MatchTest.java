@@ -0,0 +1,44 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Match class.
+ */
+public class MatchTest {
+
+    /**
+     * Testing that a match is played by the rules until either side wins.
+     */
+    @Test
+    public void shoot() {
+        Match match = new Match(AI.Mode.HUNT, 10, 10, Player.FLEET, new Random(6));
+        assertEquals(17, match.board.shipsRemaining);
+        assertEquals(17, match.opponent.shipsRemaining);
+        assertThrows(IndexOutOfBoundsException.class, () -> match.shoot(100));
+
+        Match.Outcome outcome = null;
+        for (int cell = 0; cell < match.opponent.size() && !match.isOver(); cell++) {
+            if (match.opponent.isDiscovered(cell)) {
+                int shot = cell;
+                assertThrows(IllegalArgumentException.class, () -> match.shoot(shot));
+                continue;
+            }
+            int turns = match.turns();
+            outcome = match.shoot(cell);
+            assertTrue(match.opponent.isDiscovered(cell));
+            assertEquals(match.opponent.isShip(cell), outcome != Match.Outcome.MISS);
+            if (outcome != Match.Outcome.WON) {
+                assertEquals(turns + 2, match.turns());
+                assertTrue(match.board.isDiscovered(match.lastGuess()));
+            }
+        }
+        assertTrue(match.isOver());
+        assertTrue(outcome == Match.Outcome.WON || match.board.shipsRemaining == 0);
+        assertThrows(IllegalStateException.class, () -> match.shoot(0));
+    }
+}
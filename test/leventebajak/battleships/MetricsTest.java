@@ -0,0 +1,88 @@
+package leventebajak.battleships;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Metrics class.
+ */
+public class MetricsTest {
+
+    /**
+     * Disables and clears the metrics after every test.
+     */
+    @After
+    public void tearDown() {
+        Metrics.ENABLED = false;
+        Metrics.reset();
+    }
+
+    /**
+     * Testing the percentiles and the statistics of a histogram.
+     */
+    @Test
+    public void histogram() {
+        Metrics.Histogram h = new Metrics.Histogram("test", "ns");
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentile(0.5));
+        for (int value = 1; value <= 100; value++)
+            h.record(value);
+        h.record(-5);
+        assertEquals(101, h.count());
+        assertEquals(100, h.max());
+        assertEquals(5050 / 101.0, h.mean(), 1e-9);
+        assertEquals(0, h.percentile(0));
+        assertEquals(63, h.percentile(0.5));
+        assertEquals(100, h.percentile(0.99));
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.max());
+    }
+
+    /**
+     * Testing that nothing is measured while the metrics are disabled.
+     */
+    @Test
+    public void disabled() {
+        assertEquals(0, Metrics.start());
+        Metrics.ROUND.since(Metrics.start());
+        Player p = new Player("test", new Board(10, 10), new Random(1), Player.FLEET);
+        p.shoot(0);
+        assertEquals(0, Metrics.ROUND.count());
+        assertEquals(0, Metrics.CASCADE.count());
+        assertEquals(0, Metrics.PLACEMENTS.sum());
+    }
+
+    /**
+     * Testing the shots and the placements measured, and that the MBean reports them.
+     */
+    @Test
+    public void enabled() throws Exception {
+        Metrics.ENABLED = true;
+        Player p = new Player("test", new Board(10, 10), new Random(1), Player.FLEET);
+        assertEquals(Player.FLEET.length, Metrics.PLACEMENTS.sum());
+        assertEquals(0, Metrics.FAILED_PLACEMENTS.sum());
+        assertThrows(IllegalArgumentException.class, () -> p.addShip(11));
+        assertEquals(1, Metrics.FAILED_PLACEMENTS.sum());
+
+        for (int cell = 0; cell < p.board.size(); cell++)
+            p.shoot(cell);
+        assertEquals(p.board.size(), Metrics.CASCADE.count());
+        assertEquals(p.board.size(), Math.round(Metrics.CASCADE.mean() * Metrics.CASCADE.count()));
+
+        Metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals((long) p.board.size(), server.getAttribute(name, "CascadeCount"));
+        assertEquals((long) Player.FLEET.length + 1, server.getAttribute(name, "Placements"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "CascadeCount"));
+    }
+}
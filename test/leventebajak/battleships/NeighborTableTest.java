@@ -0,0 +1,39 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the NeighborTable class.
+ */
+public class NeighborTableTest {
+
+    /**
+     * Testing the neighbors against the rows and columns of the tiles, including boards a single tile wide.
+     */
+    @Test
+    public void neighbor() {
+        int[][] shapes = {{1, 1}, {1, 7}, {7, 1}, {2, 2}, {4, 9}, {10, 10}};
+        for (int[] shape : shapes) {
+            int rows = shape[0], columns = shape[1];
+            NeighborTable table = NeighborTable.of(rows, columns);
+            assertSame(table, NeighborTable.of(rows, columns));
+            for (int cell = 0; cell < rows * columns; cell++)
+                for (Direction d : Direction.VALUES) {
+                    int row = cell / columns + switch (d) {
+                        case NORTH, NORTH_EAST, NORTH_WEST -> -1;
+                        case SOUTH, SOUTH_EAST, SOUTH_WEST -> 1;
+                        default -> 0;
+                    };
+                    int column = cell % columns + switch (d) {
+                        case EAST, NORTH_EAST, SOUTH_EAST -> 1;
+                        case WEST, NORTH_WEST, SOUTH_WEST -> -1;
+                        default -> 0;
+                    };
+                    boolean inside = row >= 0 && row < rows && column >= 0 && column < columns;
+                    assertEquals(inside ? row * columns + column : -1, table.neighbor(cell, d.ordinal()));
+                }
+        }
+    }
+}
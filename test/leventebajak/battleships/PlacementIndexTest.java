@@ -0,0 +1,70 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the PlacementIndex class through Board.addShip.
+ */
+public class PlacementIndexTest {
+
+    /**
+     * Testing that the placed ships never touch each other.
+     */
+    @Test
+    public void stamp() {
+        Random random = new Random(5);
+        for (int game = 0; game < 200; game++) {
+            Board b = new Board(10, 10);
+            int placed = 0;
+            try {
+                while (true) {
+                    b.addShip(2 + random.nextInt(4), random);
+                    placed++;
+                }
+            } catch (NoMoreSpaceException ignored) {}
+            assertEquals(placed, b.fleet().size());
+
+            // Every ship tile has at most two ship neighbors, all in a straight line, and none diagonally
+            for (int cell = 0; cell < b.size(); cell++)
+                if (b.isShip(cell))
+                    for (Direction d : new Direction[]{Direction.NORTH_EAST, Direction.SOUTH_EAST, Direction.SOUTH_WEST, Direction.NORTH_WEST})
+                        try {
+                            assertFalse(b.isShip(b.getNeighbor(cell, d)));
+                        } catch (IndexOutOfBoundsException ignored) {}
+            int tiles = 0;
+            for (int cell = 0; cell < b.size(); cell++)
+                if (b.isShip(cell)) tiles++;
+            assertEquals(b.fleet().stream().mapToInt(Integer::intValue).sum(), tiles);
+        }
+    }
+
+    /**
+     * Testing that running out of space is detected exactly.
+     */
+    @Test
+    public void pick() {
+        Board b = new Board(2, 5);
+        try {
+            b.addShip(5, new Random());
+        } catch (NoMoreSpaceException e) { fail(); }
+        assertThrows(NoMoreSpaceException.class, () -> b.addShip(5, new Random()));
+        assertThrows(NoMoreSpaceException.class, () -> b.addShip(2, new Random()));
+
+        Board c = new Board(1, 5);
+        try {
+            c.addShip(2, new Random());
+        } catch (NoMoreSpaceException e) { fail(); }
+        // The second ship fits only if the first one is at an end of the row
+        boolean end = c.isShip(0) || c.isShip(4);
+        if (end)
+            try {
+                c.addShip(2, new Random());
+            } catch (NoMoreSpaceException e) { fail(); }
+        else
+            assertThrows(NoMoreSpaceException.class, () -> c.addShip(2, new Random()));
+    }
+}
@@ -3,6 +3,8 @@ package leventebajak.battleships;
 import jdk.jfr.Timespan;
 import org.junit.Test;
 
+import java.util.SplittableRandom;
+
 import static org.junit.Assert.*;
 
 /**
@@ -16,14 +18,11 @@ public class PlayerTest {
     @Test
     public void setEnabled() {
         Player p = new Player("test", (int[]) null);
-        for (int i = 0; i < Player.ROWS * Player.COLUMNS; i++)
-            assertTrue(p.getTile(i / Player.COLUMNS, i % Player.COLUMNS).button.isEnabled());
+        assertTrue(p.panel.isEnabled());
         p.setEnabled(false);
-        for (int i = 0; i < Player.ROWS * Player.COLUMNS; i++)
-            assertFalse(p.getTile(i / Player.COLUMNS, i % Player.COLUMNS).button.isEnabled());
+        assertFalse(p.panel.isEnabled());
         p.setEnabled(true);
-        for (int i = 0; i < Player.ROWS * Player.COLUMNS; i++)
-            assertTrue(p.getTile(i / Player.COLUMNS, i % Player.COLUMNS).button.isEnabled());
+        assertTrue(p.panel.isEnabled());
     }
 
     /**
@@ -34,12 +33,12 @@ public class PlayerTest {
         Player p = new Player("test", (int[]) null);
         for (int i = 0; i < Player.ROWS * Player.COLUMNS; i++) {
             Tile t = p.getTile(i / Player.COLUMNS, i % Player.COLUMNS);
-            assertEquals(t.button.getBackground(), t.isDiscovered ? t.isShip ? Tile.SHIP_COLOR : Tile.WATER_COLOR : Tile.UNDISCOVERED_COLOR);
+            assertEquals(t.color(), t.isDiscovered() ? t.isShip() ? Tile.SHIP_COLOR : Tile.WATER_COLOR : Tile.UNDISCOVERED_COLOR);
         }
         p.showAll();
         for (int i = 0; i < Player.ROWS * Player.COLUMNS; i++) {
             Tile t = p.getTile(i / Player.COLUMNS, i % Player.COLUMNS);
-            assertEquals(t.button.getBackground(), t.isShip ? Tile.SHIP_COLOR : Tile.WATER_COLOR);
+            assertEquals(t.color(), t.isShip() ? Tile.SHIP_COLOR : Tile.WATER_COLOR);
         }
     }
 
@@ -51,12 +50,36 @@ public class PlayerTest {
         Player p = new Player("test", (int[]) null);
         for (int i = 0; i < Player.ROWS * Player.COLUMNS; i++) {
             Tile t = p.getTile(i / Player.COLUMNS, i % Player.COLUMNS);
-            assertEquals(t.button.getBackground(), t.isDiscovered ? t.isShip ? Tile.SHIP_COLOR : Tile.WATER_COLOR : Tile.UNDISCOVERED_COLOR);
+            assertEquals(t.color(), t.isDiscovered() ? t.isShip() ? Tile.SHIP_COLOR : Tile.WATER_COLOR : Tile.UNDISCOVERED_COLOR);
         }
         p.showDiscovered();
         for (int i = 0; i < Player.ROWS * Player.COLUMNS; i++) {
             Tile t = p.getTile(i / Player.COLUMNS, i % Player.COLUMNS);
-            assertEquals(t.button.getBackground(), t.isDiscovered ? t.isShip ? Tile.SHIP_COLOR : Tile.WATER_COLOR : Tile.UNDISCOVERED_COLOR);
+            assertEquals(t.color(), t.isDiscovered() ? t.isShip() ? Tile.SHIP_COLOR : Tile.WATER_COLOR : Tile.UNDISCOVERED_COLOR);
+        }
+    }
+
+    /**
+     * Testing that a reset player places the same ships as a new one, on the same board and view.
+     */
+    @Test
+    public void reset() {
+        Player p = new Player("test", new Board(10, 10), new SplittableRandom(1), Player.FLEET);
+        Board board = p.board;
+        BoardView panel = p.panel;
+        p.shoot(0);
+        p.panel.select(1);
+        p.reset(new SplittableRandom(2), Player.FLEET);
+        assertSame(board, p.board);
+        assertSame(panel, p.panel);
+        assertNull(p.selected);
+
+        Player fresh = new Player("fresh", new Board(10, 10), new SplittableRandom(2), Player.FLEET);
+        assertEquals(fresh.board.fleet(), p.board.fleet());
+        assertEquals(fresh.board.shipsRemaining, p.board.shipsRemaining);
+        for (int cell = 0; cell < p.board.size(); cell++) {
+            assertFalse(p.board.isDiscovered(cell));
+            assertEquals(fresh.board.isShip(cell), p.board.isShip(cell));
         }
     }
 
@@ -90,15 +113,15 @@ public class PlayerTest {
         // Placing ships according to the game rules
         try {
             p.addShip(5);
-            assertEquals(5, p.shipsRemaining);
+            assertEquals(5, p.board.shipsRemaining);
             p.addShip(4);
-            assertEquals(5+4, p.shipsRemaining);
+            assertEquals(5+4, p.board.shipsRemaining);
             p.addShip(3);
-            assertEquals(5+4+3, p.shipsRemaining);
+            assertEquals(5+4+3, p.board.shipsRemaining);
             p.addShip(3);
-            assertEquals(5+4+3+3, p.shipsRemaining);
+            assertEquals(5+4+3+3, p.board.shipsRemaining);
             p.addShip(2);
-            assertEquals(5+4+3+3+2, p.shipsRemaining);
+            assertEquals(5+4+3+3+2, p.board.shipsRemaining);
         } catch (NoMoreSpaceException e) { fail(); }
 
         // Repeatedly adding ships until there is no more space left
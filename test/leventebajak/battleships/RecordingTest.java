@@ -0,0 +1,107 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Recording class.
+ */
+public class RecordingTest {
+
+    /**
+     * Plays a recorded game by shooting random tiles of both boards, until either side has no ships left.
+     * @param first the first player
+     * @param second the second player
+     * @param random the source of randomness
+     * @return the recording of the game
+     */
+    static Recording play(Player first, Player second, Random random) {
+        Recording recording = new Recording(first, second, 1);
+        Player[] players = {first, second};
+        for (int turn = 0; first.board.shipsRemaining > 0 && second.board.shipsRemaining > 0; turn++) {
+            Player target = players[turn % 2];
+            int cell;
+            do cell = random.nextInt(target.board.size());
+            while (target.board.isDiscovered(cell));
+            target.shoot(cell);
+        }
+        return recording;
+    }
+
+    /**
+     * Testing that the shots are recorded with the number of tiles they revealed.
+     */
+    @Test
+    public void record() {
+        Player first = new Player("first", new Board(10, 10), Player.FLEET);
+        Player second = new Player("second", new Board(10, 10), Player.FLEET);
+        Recording recording = new Recording(first, second, 1);
+        second.shoot(42);
+        first.shoot(7);
+        assertEquals(2, recording.shots());
+        assertEquals(1, recording.board(0));
+        assertEquals(42, recording.cell(0));
+        assertEquals(0, recording.board(1));
+        assertEquals(7, recording.cell(1));
+        int discovered = 0;
+        for (int cell = 0; cell < 100; cell++)
+            if (second.board.isDiscovered(cell))
+                discovered++;
+        assertEquals(discovered, recording.revealed(0));
+        assertNotEquals(Recording.EMPTY_DIGEST, recording.digest());
+    }
+
+    /**
+     * Testing that a written recording is read back the same.
+     */
+    @Test
+    public void writeRead() throws IOException {
+        Player first = new Player("first", new Board(8, 12), Player.FLEET);
+        Player second = new Player("second", new Board(8, 12), Player.FLEET);
+        Recording recording = play(first, second, new Random(1));
+        ByteBuffer buffer = ByteBuffer.allocate(recording.bytes());
+        recording.write(buffer);
+        assertFalse(buffer.hasRemaining());
+
+        Recording read = Recording.read(buffer.flip());
+        assertEquals(recording.shots(), read.shots());
+        for (int i = 0; i < recording.shots(); i++) {
+            assertEquals(recording.cell(i), read.cell(i));
+            assertEquals(recording.board(i), read.board(i));
+            assertEquals(recording.revealed(i), read.revealed(i));
+        }
+        assertEquals(recording.digest(), read.digest());
+        assertEquals("second", read.names[1]);
+        assertEquals(1, read.seed());
+
+        // Recording continues after attaching the players, in any order
+        read.attach(second, first);
+        Player third = new Player("third", new Board(8, 12));
+        assertThrows(IllegalArgumentException.class, () -> read.attach(first, third));
+    }
+
+    /**
+     * Testing that invalid recordings are rejected.
+     */
+    @Test
+    public void corrupt() {
+        assertThrows(IOException.class, () -> Recording.read(ByteBuffer.allocate(16)));
+        assertThrows(IOException.class, () -> Recording.read(ByteBuffer.allocate(2)));
+
+        // A count of shots or a name that cannot fit into the rest of the recording
+        Player first = new Player("first", new Board(10, 10), Player.FLEET);
+        Player second = new Player("second", new Board(10, 10), Player.FLEET);
+        Recording recording = new Recording(first, second, 1);
+        ByteBuffer buffer = ByteBuffer.allocate(recording.bytes());
+        recording.write(buffer);
+        buffer.putInt(buffer.capacity() - 8 - 4, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> Recording.read(buffer.flip()));
+        buffer.putInt(buffer.capacity() - 8 - 4, 0).putShort(4 + 2 + 8, (short) -1);
+        assertThrows(IOException.class, () -> Recording.read(buffer.rewind()));
+    }
+}
@@ -0,0 +1,150 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the RemoteMatch class.
+ */
+public class RemoteMatchTest {
+
+    /**
+     * Testing that two bots can play a match to the end over a local connection,
+     * and that the copies of the boards match the originals.
+     */
+    @Test(timeout = 20000)
+    public void play() throws IOException, InterruptedException {
+        RemoteMatch.Bot hostBot = new RemoteMatch.Bot(new Random(1));
+        RemoteMatch.Bot joinBot = new RemoteMatch.Bot(new Random(2));
+        try (RemoteMatch host = RemoteMatch.host(0, 12, 9, Player.FLEET, new Random(3), Runnable::run, hostBot);
+             RemoteMatch join = RemoteMatch.join("localhost", host.port(), new Random(4), Runnable::run, joinBot)) {
+            assertTrue(hostBot.done.await(15, TimeUnit.SECONDS));
+            assertTrue(joinBot.done.await(15, TimeUnit.SECONDS));
+            assertNull(hostBot.error);
+            assertNull(joinBot.error);
+            assertTrue(hostBot.won ^ joinBot.won);
+            assertTrue(host.isOver() && join.isOver());
+            assertEquals(host.turns(), join.turns());
+
+            assertEquals(12, join.board().rows);
+            assertEquals(9, join.board().columns);
+            assertEquals(join.board().fleet(), host.opponent().fleet());
+            assertMirrored(host.board(), join.opponent());
+            assertMirrored(join.board(), host.opponent());
+            assertEquals(0, (hostBot.won ? join.board() : host.board()).shipsRemaining);
+            assertEquals(0, (hostBot.won ? host.opponent() : join.opponent()).shipsRemaining);
+            assertTrue(hostBot.roundTrips().length > 0);
+        }
+    }
+
+    /**
+     * Checks that a copy of a board knows exactly the discovered tiles of the original.
+     * @param board the original board
+     * @param mirror the copy of the board
+     */
+    private static void assertMirrored(Board board, Board mirror) {
+        for (int cell = 0; cell < board.size(); cell++) {
+            assertEquals(board.isDiscovered(cell), mirror.isDiscovered(cell));
+            assertEquals(board.isDiscovered(cell) && board.isShip(cell), mirror.isShip(cell));
+        }
+    }
+
+    /**
+     * Testing that the player can only shoot in its turn.
+     */
+    @Test(timeout = 10000)
+    public void turns() throws IOException, InterruptedException {
+        RemoteMatch.Bot bot = new RemoteMatch.Bot(new Random(1));
+        try (RemoteMatch host = RemoteMatch.host(0, 10, 10, Player.FLEET, new Random(2), Runnable::run, bot)) {
+            assertNull(host.board());
+            assertFalse(host.isTurn());
+            assertThrows(IllegalStateException.class, () -> host.shoot(0));
+        }
+    }
+
+    /**
+     * Testing that a shot out of turn ends the match.
+     */
+    @Test(timeout = 10000)
+    public void violation() throws IOException, InterruptedException {
+        RemoteMatch.Bot bot = new RemoteMatch.Bot(new Random(1));
+        try (RemoteMatch host = RemoteMatch.host(0, 10, 10, Player.FLEET, new Random(2), Runnable::run, bot);
+             Link link = Link.join("localhost", host.port(), new Link.Listener() {
+                 @Override
+                 public void connected() {
+                 }
+
+                 @Override
+                 public void received(byte type, ByteBuffer payload) {
+                 }
+
+                 @Override
+                 public void closed(IOException cause) {
+                 }
+             })) {
+            link.send(RemoteMatch.SHOT, ByteBuffer.allocate(4).putInt(0).flip());
+            assertTrue(bot.done.await(5, TimeUnit.SECONDS));
+            assertTrue(bot.error instanceof ProtocolException);
+            assertTrue(host.isOver());
+        }
+    }
+
+    /**
+     * Testing that an invalid description of the boards ends the match, before anything is allocated for it.
+     */
+    @Test(timeout = 20000)
+    public void hello() throws IOException, InterruptedException {
+        int[][] invalid = {
+                {10, 10, Integer.MAX_VALUE},
+                {100_000, 100_000, 1, 2},
+                {0, 10, 1, 2},
+                {10, 10, 1, 11},
+                {10, 10, 1, 0}
+        };
+        for (int[] values : invalid) {
+            ByteBuffer payload = ByteBuffer.allocate(4 * values.length);
+            for (int value : values)
+                payload.putInt(value);
+            assertTrue(hello(payload.flip()) instanceof ProtocolException);
+        }
+    }
+
+    /**
+     * Joins a host that describes its boards with the given frame.
+     * @param payload the payload of the frame describing the boards
+     * @return the error that ended the match
+     */
+    private static IOException hello(ByteBuffer payload) throws IOException, InterruptedException {
+        RemoteMatch.Bot bot = new RemoteMatch.Bot(new Random(1));
+        CountDownLatch connected = new CountDownLatch(1);
+        try (Link host = Link.host(0, new Link.Listener() {
+                 @Override
+                 public void connected() {
+                     connected.countDown();
+                 }
+
+                 @Override
+                 public void received(byte type, ByteBuffer payload) {
+                 }
+
+                 @Override
+                 public void closed(IOException cause) {
+                 }
+             });
+             RemoteMatch join = RemoteMatch.join("localhost", host.port(), new Random(2), Runnable::run, bot)) {
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+            host.send(RemoteMatch.HELLO, payload);
+            assertTrue(bot.done.await(5, TimeUnit.SECONDS));
+            assertTrue(join.isOver());
+            return bot.error;
+        }
+    }
+}
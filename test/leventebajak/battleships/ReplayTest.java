@@ -0,0 +1,68 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Replay class.
+ */
+public class ReplayTest {
+
+    /**
+     * Testing that a replay reproduces the boards after every shot, also when seeking backwards.
+     */
+    @Test
+    public void replay() {
+        Player first = new Player("first", new Board(10, 10), Player.FLEET);
+        Player second = new Player("second", new Board(10, 10), Player.FLEET);
+        Recording recording = new Recording(first, second, 1);
+        Random random = new Random(2);
+        ArrayList<Board[]> states = new ArrayList<>();
+        states.add(new Board[]{Recording.copy(first.board), Recording.copy(second.board)});
+        Player[] players = {first, second};
+        for (int turn = 0; first.board.shipsRemaining > 0 && second.board.shipsRemaining > 0; turn++) {
+            Player target = players[turn % 2];
+            int cell;
+            do cell = random.nextInt(target.board.size());
+            while (target.board.isDiscovered(cell));
+            target.shoot(cell);
+            states.add(new Board[]{Recording.copy(first.board), Recording.copy(second.board)});
+        }
+
+        Replay replay = new Replay(recording);
+        replay.run();
+        assertEquals(recording.shots(), replay.position());
+        assertFalse(replay.step());
+        assertEquals(first.board.shipsRemaining, replay.board(0).shipsRemaining);
+        for (int shot : new int[]{recording.shots() / 2, 0, 3, recording.shots()}) {
+            replay.seek(shot);
+            for (int i = 0; i < 2; i++)
+                for (int cell = 0; cell < 100; cell++)
+                    assertEquals(states.get(shot)[i].isDiscovered(cell), replay.board(i).isDiscovered(cell));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> replay.seek(recording.shots() + 1));
+    }
+
+    /**
+     * Testing that a replay revealing different tiles than the recording is detected.
+     */
+    @Test
+    public void diverge() {
+        Player first = new Player("first", new Board(10, 10));
+        Player second = new Player("second", new Board(10, 10));
+        second.board.setShip(second.board.cell(4, 4));
+        second.board.setShip(second.board.cell(4, 5));
+        Recording recording = new Recording(first, second, 1);
+        second.shoot(second.board.cell(4, 4));
+        second.shoot(second.board.cell(4, 5));
+
+        // Without the ship, the shots reveal fewer tiles
+        recording.initial(1).restore(new Board(10, 10));
+        Replay replay = new Replay(recording);
+        assertThrows(IllegalStateException.class, replay::run);
+    }
+}
@@ -0,0 +1,124 @@
+package leventebajak.battleships;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Server class.
+ */
+public class ServerTest {
+
+    /**
+     * The sessions hosted by the server.
+     */
+    private SessionManager sessions;
+
+    /**
+     * The server.
+     */
+    private Server server;
+
+    /**
+     * Starts the server on a free port.
+     */
+    @Before
+    public void setUp() throws IOException {
+        sessions = new SessionManager(1000, 1, TimeUnit.MINUTES);
+        server = new Server(sessions, 0);
+    }
+
+    /**
+     * Stops the server.
+     */
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        sessions.close();
+    }
+
+    /**
+     * Testing the commands of the protocol.
+     */
+    @Test(timeout = 10000)
+    public void protocol() throws IOException {
+        try (Socket socket = new Socket("localhost", server.port());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            assertTrue(send(in, out, "SHOT 0 0").startsWith("ERROR"));
+            assertTrue(send(in, out, "FIRE").startsWith("ERROR"));
+            assertTrue(send(in, out, "NEW 30000x30000").startsWith("ERROR"));
+            assertEquals(0, sessions.size());
+
+            String[] session = send(in, out, "NEW 8x9 HUNT").split(" ");
+            assertEquals("SESSION", session[0]);
+            assertEquals("8", session[2]);
+            assertEquals("9", session[3]);
+            assertEquals(1, sessions.size());
+
+            String[] result = send(in, out, "SHOT 2 3").split(" ");
+            assertEquals("RESULT", result[0]);
+            assertEquals(5, result.length);
+            assertTrue(send(in, out, "SHOT 2 3").startsWith("ERROR"));
+            assertTrue(send(in, out, "SHOT 8 0").startsWith("ERROR"));
+
+            assertEquals("BOARD 8 9", send(in, out, "BOARD"));
+            for (int row = 0; row < 8; row++) {
+                String line = in.readLine();
+                assertEquals(9, line.length());
+                if (row == 2)
+                    assertNotEquals('.', line.charAt(3));
+            }
+
+            assertEquals("BYE", send(in, out, "QUIT"));
+            assertEquals(0, sessions.size());
+        }
+    }
+
+    /**
+     * Testing that concurrent clients can play their matches to the end.
+     */
+    @Test(timeout = 30000)
+    public void load() throws IOException {
+        LoadClient.Result result = LoadClient.run("localhost", server.port(), 8, 2, "10x10 HUNT");
+        assertEquals(16, result.games);
+        assertTrue(result.latencies.length >= 16);
+        assertTrue(result.percentile(0.99) <= result.percentile(1));
+        assertEquals(0, sessions.size());
+    }
+
+    /**
+     * Testing that a line longer than the limit ends the connection instead of being buffered.
+     */
+    @Test(timeout = 10000)
+    public void longLine() throws IOException {
+        try (Socket socket = new Socket("localhost", server.port());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            assertTrue(send(in, out, "FIRE").startsWith("ERROR"));
+            out.write("X".repeat(Server.MAX_LINE + 1));
+            out.flush();
+            assertNull(in.readLine());
+        }
+    }
+
+    /**
+     * Sends a line and reads the first line of the answer.
+     * @param in the input of the connection
+     * @param out the output of the connection
+     * @param line the line to send
+     * @return the first line of the answer
+     */
+    private static String send(BufferedReader in, Writer out, String line) throws IOException {
+        out.write(line + "\n");
+        out.flush();
+        return in.readLine();
+    }
+}
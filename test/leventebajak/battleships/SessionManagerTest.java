@@ -0,0 +1,85 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the SessionManager class.
+ */
+public class SessionManagerTest {
+
+    /**
+     * Testing creating, looking up and removing sessions.
+     */
+    @Test
+    public void create() {
+        try (SessionManager sessions = new SessionManager(2, 1, TimeUnit.HOURS)) {
+            Session first = sessions.create(AI.Mode.HUNT, 10, 10, Player.FLEET);
+            Session second = sessions.create(AI.Mode.DENSITY, 8, 12, Player.FLEET);
+            assertNotEquals(first.id, second.id);
+            assertEquals(12, second.match.board.columns);
+            assertThrows(IllegalStateException.class, () -> sessions.create(AI.Mode.HUNT, 10, 10, Player.FLEET));
+            assertSame(first, sessions.get(first.id));
+            sessions.remove(first.id);
+            assertNull(sessions.get(first.id));
+            assertEquals(1, sessions.size());
+            assertThrows(IllegalArgumentException.class, () -> sessions.create(AI.Mode.HUNT, 3, 3, Player.FLEET));
+        }
+    }
+
+    /**
+     * Testing that sessions created at the same time do not exceed the limit, and that removing them frees their slots.
+     */
+    @Test(timeout = 30000)
+    public void limit() throws InterruptedException {
+        try (SessionManager sessions = new SessionManager(4, 1, TimeUnit.HOURS)) {
+            Queue<Session> created = new ConcurrentLinkedQueue<>();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[16];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                        created.add(sessions.create(AI.Mode.HUNT, 10, 10, Player.FLEET));
+                    } catch (IllegalStateException | InterruptedException ignored) {
+                    }
+                });
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread thread : threads)
+                thread.join();
+            assertEquals(4, created.size());
+            assertEquals(4, sessions.size());
+
+            assertThrows(IllegalStateException.class, () -> sessions.create(AI.Mode.HUNT, 10, 10, Player.FLEET));
+            sessions.remove(created.remove().id);
+            sessions.create(AI.Mode.HUNT, 10, 10, Player.FLEET);
+            assertEquals(4, sessions.size());
+        }
+    }
+
+    /**
+     * Testing that the unused sessions expire.
+     */
+    @Test
+    public void expire() throws InterruptedException {
+        try (SessionManager sessions = new SessionManager(10, 1, TimeUnit.HOURS)) {
+            Session session = sessions.create(AI.Mode.HUNT, 10, 10, Player.FLEET);
+            assertEquals(0, sessions.expire());
+            assertNotNull(sessions.get(session.id));
+        }
+        try (SessionManager sessions = new SessionManager(10, 50, TimeUnit.MILLISECONDS)) {
+            Session session = sessions.create(AI.Mode.HUNT, 10, 10, Player.FLEET);
+            Thread.sleep(300);
+            assertNull(sessions.get(session.id));
+            assertEquals(0, sessions.size());
+        }
+    }
+}
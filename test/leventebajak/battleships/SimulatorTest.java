@@ -0,0 +1,90 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Simulator class.
+ */
+public class SimulatorTest {
+
+    /**
+     * Testing that the results only depend on the seed, not on the number of threads.
+     */
+    @Test
+    public void run() {
+        int[] fleet = {5, 4, 3, 3, 2};
+        Simulator.Result single = Simulator.run(AI.Mode.DENSITY, 10, 10, fleet, 1000, 123, 1);
+        Simulator.Result parallel = Simulator.run(AI.Mode.DENSITY, 10, 10, fleet, 1000, 123, 4);
+        assertEquals(1000, single.games);
+        assertArrayEquals(single.histogram, parallel.histogram);
+        assertTrue(single.percentile(0) >= 17);
+        assertTrue(single.percentile(1) <= 100);
+        assertTrue(single.mean() >= single.percentile(0) && single.mean() <= single.percentile(1));
+        assertThrows(IllegalArgumentException.class, () -> Simulator.run(AI.Mode.HUNT, 3, 3, new int[]{3, 3, 3}, 10, 0, 1));
+    }
+
+    /**
+     * Testing the percentile method.
+     */
+    @Test
+    public void percentile() {
+        Simulator.Result r = new Simulator.Result(AI.Mode.HUNT, new int[]{2}, new long[]{0, 0, 1, 2, 1}, 0);
+        assertEquals(4, r.games);
+        assertEquals(3.0, r.mean(), 1e-9);
+        assertEquals(2, r.percentile(0));
+        assertEquals(3, r.percentile(0.5));
+        assertEquals(4, r.percentile(1));
+    }
+
+    /**
+     * Testing that a single game can be reproduced from its seed.
+     */
+    @Test
+    public void reproduce() {
+        for (long game = 0; game < 20; game++) {
+            int shots = Simulator.play(AI.Mode.HUNT, 10, 10, Player.FLEET, new SplittableRandom(Simulator.seed(9, game)));
+            assertEquals(shots, Simulator.play(AI.Mode.HUNT, 10, 10, Player.FLEET,
+                    new SplittableRandom(Simulator.seed(9, game))));
+        }
+    }
+
+    /**
+     * Testing that the games played on a recycled board are the same as on new boards.
+     */
+    @Test
+    public void recycle() {
+        Board board = new Board(10, 10);
+        for (long game = 0; game < 20; game++)
+            assertEquals(Simulator.play(AI.Mode.DENSITY, 10, 10, Player.FLEET, new SplittableRandom(Simulator.seed(4, game))),
+                    Simulator.play(AI.Mode.DENSITY, board, Player.FLEET, new SplittableRandom(Simulator.seed(4, game))));
+    }
+
+    /**
+     * Testing that the matches between two AIs only depend on the seed, and that the better AI wins more.
+     */
+    @Test
+    public void duel() {
+        int[] fleet = {5, 4, 3, 3, 2};
+        Simulator.Duel single = Simulator.duel(AI.Mode.DENSITY, AI.Mode.HUNT, 10, 10, fleet, 600, 5, 1);
+        Simulator.Duel parallel = Simulator.duel(AI.Mode.DENSITY, AI.Mode.HUNT, 10, 10, fleet, 600, 5, 3);
+        assertEquals(600, single.games);
+        assertArrayEquals(single.wins, parallel.wins);
+        assertEquals(single.shots, parallel.shots);
+        assertTrue(single.wins[0] > single.wins[1]);
+        assertTrue(single.json().startsWith("{\"modes\":[\"DENSITY\",\"HUNT\"],\"fleet\":[5,4,3,3,2],\"games\":600,"));
+    }
+
+    /**
+     * Testing the statistics printed for other programs.
+     */
+    @Test
+    public void json() {
+        Simulator.Result r = new Simulator.Result(AI.Mode.HUNT, new int[]{2}, new long[]{0, 0, 1, 2, 1}, 1_500_000_000L);
+        assertEquals("{\"mode\":\"HUNT\",\"fleet\":[2],\"games\":4,\"seconds\":1.500,\"mean\":3.0000,"
+                + "\"min\":2,\"p50\":3,\"p90\":4,\"p99\":4,\"max\":4}", r.json().trim());
+    }
+}
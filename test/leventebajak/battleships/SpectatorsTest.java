@@ -0,0 +1,48 @@
+package leventebajak.battleships;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the Spectators class.
+ */
+public class SpectatorsTest {
+
+    /**
+     * Testing that a spectator gets the boards first, then the shots as lines of text.
+     */
+    @Test(timeout = 10000)
+    public void lines() throws IOException {
+        Player player = new Player("test", new Board(3, 5));
+        player.board.setShip(player.board.cell(2, 4));
+        Broadcast broadcast = new Broadcast();
+        broadcast.reset(player.board, new Board(2, 2));
+        player.broadcast = broadcast;
+        try (Spectators spectators = new Spectators(broadcast, 0);
+             Socket socket = new Socket("localhost", spectators.port());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("RESET", in.readLine());
+            assertEquals("START 0 3 5", in.readLine());
+            assertEquals("START 1 2 2", in.readLine());
+
+            player.shoot(player.board.cell(1, 3));
+            assertEquals("SHOT 0 1 3", in.readLine());
+            assertEquals("MISS 0 1 3", in.readLine());
+            player.shoot(player.board.cell(2, 4));
+            assertEquals("SHOT 0 2 4", in.readLine());
+            assertEquals("HIT 0 2 4", in.readLine());
+            String line;
+            while ((line = in.readLine()).startsWith("REVEALED"))
+                assertTrue(line.matches("REVEALED 0 [12] [34]"));
+            assertEquals("SUNK 0 2 4 1", line);
+            assertEquals("OVER 0", in.readLine());
+        }
+    }
+}
@@ -13,22 +13,25 @@ public class TileTest {
      * Testing the colors.
      */
     @Test
-    public void repaint() {
-        Tile t = new Tile(null, 0, 0);
-        assertEquals(t.button.getBackground(), Tile.UNDISCOVERED_COLOR);
-        assertFalse(t.isDiscovered);
-        t.repaint(false);
-        assertEquals(t.button.getBackground(), Tile.UNDISCOVERED_COLOR);
-        t.isDiscovered = true;
-        t.repaint(false);
-        assertEquals(t.button.getBackground(), Tile.WATER_COLOR);
-        assertFalse(t.isShip);
-        t.isShip = true;
-        t.repaint(false);
-        assertEquals(t.button.getBackground(), Tile.SHIP_COLOR);
-        t.isDiscovered = false;
-        t.repaint(true);
-        assertEquals(t.button.getBackground(), Tile.SHIP_COLOR);
+    public void color() {
+        Player p = new Player("test", (int[]) null);
+        Tile t = p.getTile(0, 0);
+        assertEquals(t.color(), Tile.UNDISCOVERED_COLOR);
+        assertFalse(t.isDiscovered());
+        p.showDiscovered();
+        assertEquals(t.color(), Tile.UNDISCOVERED_COLOR);
+        p.showAll();
+        assertEquals(t.color(), Tile.WATER_COLOR);
+        assertFalse(t.isShip());
+        p.board.setShip(p.board.cell(0, 0));
+        assertEquals(t.color(), Tile.SHIP_COLOR);
+        p.showDiscovered();
+        assertEquals(t.color(), Tile.UNDISCOVERED_COLOR);
+        t.shoot();
+        assertEquals(t.color(), Tile.SHIP_COLOR);
+        Tile water = p.getTile(Player.ROWS - 1, Player.COLUMNS - 1);
+        water.shoot();
+        assertEquals(water.color(), Tile.WATER_COLOR);
     }
 
     /**
@@ -36,15 +39,12 @@ public class TileTest {
      */
     @Test
     public void shoot() {
-        Tile t = new Tile(new Player("test", (int[]) null), 0, 0);
-        assertFalse(t.isDiscovered);
-        assertEquals(t.button.getText(), "");
+        Tile t = new Player("test", (int[]) null).getTile(0, 0);
+        assertFalse(t.isDiscovered());
         t.shoot();
-        assertTrue(t.isDiscovered);
-        assertEquals(t.button.getText(), "X");
+        assertTrue(t.isDiscovered());
         t.shoot();
-        assertTrue(t.isDiscovered);
-        assertEquals(t.button.getText(), "X");
+        assertTrue(t.isDiscovered());
     }
 
     /**
@@ -87,7 +87,7 @@ public class TileTest {
         for (int row = 0; row < Player.ROWS; row++)
             for (int column = 0; column < Player.COLUMNS; column++) {
                 Tile t = p.getTile(row, column);
-                if (t.isShip) {
+                if (t.isShip()) {
                     assertFalse(t.validPlacement());
                     for (Direction direction : Direction.values())
                         try {
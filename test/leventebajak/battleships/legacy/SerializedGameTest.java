@@ -0,0 +1,77 @@
+package leventebajak.battleships.legacy;
+
+import leventebajak.battleships.Direction;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testing the SerializedGame class.
+ */
+public class SerializedGameTest {
+
+    /**
+     * The computer's board in the saved game: # for the ships, X for the hits and o for the discovered water.
+     */
+    private static final String[] COMPUTER = {
+            "..#.###...",
+            "..#......#",
+            "..#......#",
+            "#o#ooooo..",
+            "XoooXXXooo",
+            "#o.ooooo..",
+            "#.........",
+            "#.........",
+            "..........",
+            ".........."
+    };
+
+    /**
+     * Testing that a game saved by the first version, mid-game against the computer, is read as it was saved.
+     */
+    @Test
+    public void read() throws IOException, ClassNotFoundException {
+        SerializedGame saved;
+        try (InputStream in = SerializedGameTest.class.getResourceAsStream("baseline.save")) {
+            assertNotNull(in);
+            saved = SerializedGame.read(in);
+        }
+        assertFalse(saved.pvp());
+        assertFalse(saved.over());
+        assertEquals("YOU", saved.name(0));
+        assertEquals("Computer", saved.name(1));
+        assertFalse(saved.isComputer(0));
+        assertTrue(saved.isComputer(1));
+        assertEquals(10, saved.rows(1));
+        assertEquals(10, saved.columns(1));
+        for (int row = 0; row < 10; row++)
+            for (int column = 0; column < 10; column++) {
+                char tile = COMPUTER[row].charAt(column);
+                assertEquals(tile == '#' || tile == 'X', saved.isShip(1, row, column));
+                assertEquals(tile == 'X' || tile == 'o', saved.isDiscovered(1, row, column));
+            }
+
+        // The computer was following the ship it hit on the second row of the player's board
+        assertEquals(11, saved.shipOrigin(1));
+        assertEquals(12, saved.lastGuess(1));
+        assertEquals(Direction.EAST, saved.chosenRoute(1));
+        assertEquals(List.of(Direction.NORTH, Direction.SOUTH, Direction.WEST), saved.possibleRoutes(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> saved.name(2));
+    }
+
+    /**
+     * Testing that no class other than the ones of a saved game is read.
+     */
+    @Test
+    public void foreign() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new Date());
+        }
+        assertThrows(InvalidClassException.class, () -> SerializedGame.read(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}